@@ -56,6 +56,7 @@ package basicide;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.undo.*;
@@ -143,6 +144,48 @@ public void loadFile(String pFileName, String pFullpath)
 }//end of EditorFrame::loadFile
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// EditorFrame::findRig
+//
+// Returns the EditorRig holding the file at pFullpath, or null if that file
+// is not open.
+//
+
+public EditorRig findRig(String pFullpath)
+{
+
+    File file = normalize(pFullpath);
+
+    for (int i = 0; i < editorTabPane.getTabCount(); i++){
+        Component c = editorTabPane.getComponentAt(i);
+        if (!(c instanceof EditorRig)) {continue;}
+        EditorRig rig = (EditorRig)c;
+        if (rig.fullPath != null
+                                && normalize(rig.fullPath).equals(file)){
+            return(rig);
+        }
+    }
+
+    return(null);
+
+}//end of EditorFrame::findRig
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorFrame::normalize
+//
+// Returns the absolute form of the path pPath with any "." and ".." parts
+// removed, so that two paths to the same file compare equal.
+//
+
+static File normalize(String pPath)
+{
+
+    return(new File(pPath).toPath().toAbsolutePath().normalize().toFile());
+
+}//end of EditorFrame::normalize
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // EditorFrame::saveFile
 //
@@ -24,10 +24,18 @@
 
 package basicide;
 
+import codehandler.C54xAssembler;
+import codehandler.CoverageReport;
+import codehandler.HazardLinter;
+import codehandler.PeepholeAdvisor;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.text.*;
@@ -53,8 +61,10 @@ public class EditorRig extends JPanel{
     //each EditorRig, and thus each document, will have its own undo manager so
     //changes can be tracked separately for each
     public UndoManager undo = new UndoManager();
+    UndoableEditListener undoableEditListener;
 
     JTextPane textPane;
+    JScrollPane scrollPane;
     AbstractDocument doc = null;
     JPanel toolPanel;
     TextSearcher textSearcher;
@@ -62,6 +72,37 @@ public class EditorRig extends JPanel{
 
     private boolean docModified; //true if the document has been modified
 
+    //the highlights marking covered and uncovered lines
+    ArrayList<Object> coverageHighlights = new ArrayList<Object>();
+
+    static final Color COVERED_COLOR = new Color(0xdd, 0xf5, 0xdd);
+    static final Color UNCOVERED_COLOR = new Color(0xff, 0xd8, 0xd8);
+
+    //the check of an assembler document for pipeline hazards, run in the
+    //background once the document has been left unchanged for a moment --
+    //each check is numbered so that the results of one overtaken by an edit
+    //are thrown away
+    HazardLinter hazardLinter;
+    Timer hazardTimer;
+    int hazardCheckNumber;
+    JLabel hazardLabel;
+
+    //the highlights marking lines with hazards, and the description of the
+    //hazards on each line, by line number
+    ArrayList<Object> hazardHighlights = new ArrayList<Object>();
+    HashMap<Integer, String> hazardMessages = new HashMap<Integer, String>();
+
+    static final Color HAZARD_COLOR = new Color(0xff, 0xe4, 0xa8);
+
+    //the highlights marking lines with problems found by the last assembly,
+    //and the description of the problems on each line, by line number
+    ArrayList<Object> errorHighlights = new ArrayList<Object>();
+    HashMap<Integer, String> errorMessages = new HashMap<Integer, String>();
+
+    static final Color ERROR_COLOR = new Color(0xff, 0xb8, 0xb8);
+    static final Color WARNING_COLOR = new Color(0xf0, 0xf0, 0xa0);
+    static final int HAZARD_CHECK_DELAY = 750;
+
 //-----------------------------------------------------------------------------
 // EditorRig::EditorRig (constructor)
 //
@@ -87,8 +128,15 @@ public void init(UndoableEditListener pUndoableEditListener)
 
     setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
 
-    //create the text pane and configure it
-    textPane = new JTextPane();
+    //create the text pane and configure it -- the tool tip of a line
+    //describes any assembly problems and pipeline hazards on it
+    textPane = new JTextPane(){
+        @Override
+        public String getToolTipText(MouseEvent pEvent) {
+            return(getLineMessage(pEvent.getPoint()));
+        }
+    };
+    ToolTipManager.sharedInstance().registerComponent(textPane);
     textPane.setAlignmentX(Component.LEFT_ALIGNMENT);
     textPane.setCaretPosition(0);
     textPane.setMargin(new Insets(5,5,5,5));
@@ -103,7 +151,7 @@ public void init(UndoableEditListener pUndoableEditListener)
         System.exit(-1);
     }
 
-    JScrollPane scrollPane = new JScrollPane(textPane);
+    scrollPane = new JScrollPane(textPane);
     scrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
     Settings.setSizes(scrollPane, 1000, 535);
 
@@ -127,11 +175,23 @@ public void init(UndoableEditListener pUndoableEditListener)
     statusPanel.add(caretListenerLabel);
     toolPanel.add(statusPanel);
 
+    //a label for the number of pipeline hazards in the document
+    hazardLabel = new JLabel("");
+    hazardLabel.setAlignmentY(Component.BOTTOM_ALIGNMENT);
+    toolPanel.add(hazardLabel);
+
+    hazardTimer = new Timer(HAZARD_CHECK_DELAY, new ActionListener(){
+        @Override
+        public void actionPerformed(ActionEvent e) { checkHazards(); }
+    });
+    hazardTimer.setRepeats(false);
+
     //add the components to the editor rig panel
     add(scrollPane);
     add(toolPanel);
 
     //Start watching for undoable edits and caret changes.
+    undoableEditListener = pUndoableEditListener;
     doc.addUndoableEditListener(pUndoableEditListener);
 
     textPane.addCaretListener(caretListenerLabel);
@@ -465,9 +525,482 @@ public void loadFile(String pFilepath)
     //flag gets set -- unset it as the document is yet unchanged by the user
     clearDocumentModifiedFlag();
 
+    //assembler source is checked for pipeline hazards as it is edited
+    if (pFilepath.toLowerCase().endsWith(".asm")){
+        hazardLinter = new HazardLinter();
+        hazardLinter.init();
+        scheduleHazardCheck();
+    }
+
 }//end of EditorRig::loadFile
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// EditorRig::showHeat
+//
+// Shows the share of the profiled cycles spent on each line of the document
+// in a gutter beside the text. pLineCycles holds the cycles of each line,
+// indexed by line number, and pTotalCycles the cycles of the whole profile.
+//
+
+public void showHeat(long[] pLineCycles, long pTotalCycles)
+{
+
+    HeatGutter gutter = new HeatGutter(textPane, pLineCycles, pTotalCycles);
+    gutter.init();
+
+    scrollPane.setRowHeaderView(gutter);
+
+}//end of EditorRig::showHeat
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::clearHeat
+//
+// Removes the gutter shown by showHeat, if any.
+//
+
+public void clearHeat()
+{
+
+    scrollPane.setRowHeaderView(null);
+
+}//end of EditorRig::clearHeat
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::showCoverage
+//
+// Shades each line of the document which assembled to instructions: green
+// if any was executed and red if none was. pLineStatus holds the
+// CoverageReport status of each line, indexed by line number.
+//
+
+public void showCoverage(byte[] pLineStatus)
+{
+
+    clearCoverage();
+
+    Highlighter highlighter = textPane.getHighlighter();
+
+    Highlighter.HighlightPainter covered =
+                new DefaultHighlighter.DefaultHighlightPainter(COVERED_COLOR);
+    Highlighter.HighlightPainter uncovered =
+              new DefaultHighlighter.DefaultHighlightPainter(UNCOVERED_COLOR);
+
+    Element root = doc.getDefaultRootElement();
+
+    for (int i = 0; i < root.getElementCount(); i++){
+
+        int line = i + 1;
+        if (line >= pLineStatus.length) {break;}
+
+        if (pLineStatus[line] == CoverageReport.NO_CODE) {continue;}
+
+        Element e = root.getElement(i);
+
+        try{
+            coverageHighlights.add(highlighter.addHighlight(
+                    e.getStartOffset(), e.getEndOffset() - 1,
+                    pLineStatus[line] == CoverageReport.COVERED
+                                                    ? covered : uncovered));
+        }
+        catch(BadLocationException ex){
+            //the line is always within the document
+        }
+
+    }
+
+}//end of EditorRig::showCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::clearCoverage
+//
+// Removes the shading added by showCoverage, if any.
+//
+
+public void clearCoverage()
+{
+
+    Highlighter highlighter = textPane.getHighlighter();
+
+    for (Object tag : coverageHighlights) {highlighter.removeHighlight(tag);}
+
+    coverageHighlights.clear();
+
+}//end of EditorRig::clearCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::scheduleHazardCheck
+//
+// Checks the document for pipeline hazards once it has been left unchanged
+// for HAZARD_CHECK_DELAY milliseconds, if it is assembler source. Each call
+// restarts the wait.
+//
+
+void scheduleHazardCheck()
+{
+
+    if (hazardLinter != null) {hazardTimer.restart();}
+
+}//end of EditorRig::scheduleHazardCheck
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::checkHazards
+//
+// Starts a check of the text of the document for pipeline hazards on a
+// background thread. The hazards are shown when it is done unless the
+// document was changed meanwhile, in which case another check follows.
+// Only lines near changes are checked again -- see HazardLinter.
+//
+
+void checkHazards()
+{
+
+    final String text = textPane.getText();
+    final String file = fullPath;
+    final int number = ++hazardCheckNumber;
+    final HazardLinter linter = hazardLinter;
+
+    Thread thread = new Thread(new Runnable(){
+        @Override
+        public void run() {
+            final ArrayList<HazardLinter.Hazard> hazards =
+                                                    linter.lint(file, text);
+            SwingUtilities.invokeLater(new Runnable(){
+                @Override
+                public void run() {
+                    if (number == hazardCheckNumber) {showHazards(hazards);}
+                }
+            });
+        }
+    }, "Hazard Check");
+
+    thread.setDaemon(true);
+    thread.start();
+
+}//end of EditorRig::checkHazards
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::showHazards
+//
+// Marks each line of the document with a hazard in pHazards and shows the
+// number found. The descriptions are shown as the tool tips of the lines.
+//
+
+void showHazards(ArrayList<HazardLinter.Hazard> pHazards)
+{
+
+    Highlighter highlighter = textPane.getHighlighter();
+
+    for (Object tag : hazardHighlights) {highlighter.removeHighlight(tag);}
+    hazardHighlights.clear();
+    hazardMessages.clear();
+
+    Highlighter.HighlightPainter painter =
+                new DefaultHighlighter.DefaultHighlightPainter(HAZARD_COLOR);
+
+    Element root = doc.getDefaultRootElement();
+
+    int conflicts = 0, unneeded = 0;
+
+    for (HazardLinter.Hazard h : pHazards){
+
+        if (h.kind == HazardLinter.Hazard.CONFLICT) {conflicts++;}
+        else {unneeded++;}
+
+        String message = hazardMessages.get(h.line);
+        hazardMessages.put(h.line,
+                    message == null ? h.message : message + "; " + h.message);
+
+        if (message != null || h.line > root.getElementCount()) {continue;}
+
+        Element e = root.getElement(h.line - 1);
+
+        try{
+            hazardHighlights.add(highlighter.addHighlight(
+                    e.getStartOffset(), e.getEndOffset() - 1, painter));
+        }
+        catch(BadLocationException ex){
+            //the line is always within the document
+        }
+
+    }
+
+    hazardLabel.setText(pHazards.isEmpty() ? "" : conflicts
+            + " pipeline hazard(s), " + unneeded + " unneeded nop(s)  ");
+
+}//end of EditorRig::showHazards
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::getHazardMessage
+//
+// Returns the description of the hazards on the line at pPoint in the text
+// pane, or null if there are none.
+//
+
+String getHazardMessage(Point pPoint)
+{
+
+    if (hazardMessages.isEmpty()) {return(null);}
+
+    int offset = HeatGutter.offsetAt(textPane, pPoint);
+    if (offset < 0) {return(null);}
+
+    int line = doc.getDefaultRootElement().getElementIndex(offset) + 1;
+
+    return(hazardMessages.get(line));
+
+}//end of EditorRig::getHazardMessage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::getLineMessage
+//
+// Returns the description of the assembly problems and the hazards on the
+// line at pPoint in the text pane, or null if there are none.
+//
+
+String getLineMessage(Point pPoint)
+{
+
+    String hazard = getHazardMessage(pPoint);
+
+    if (errorMessages.isEmpty()) {return(hazard);}
+
+    int offset = HeatGutter.offsetAt(textPane, pPoint);
+    if (offset < 0) {return(hazard);}
+
+    int line = doc.getDefaultRootElement().getElementIndex(offset) + 1;
+    String error = errorMessages.get(line);
+
+    if (error == null) {return(hazard);}
+
+    return(hazard == null ? error : error + "; " + hazard);
+
+}//end of EditorRig::getLineMessage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::showErrors
+//
+// Marks each line of the document with a problem in pProblems, found by the
+// assembler, replacing the marks of the last assembly. A line with an error
+// is marked in red, one with only warnings in yellow. The descriptions are
+// shown as the tool tips of the lines. An empty list clears the marks.
+//
+
+public void showErrors(ArrayList<C54xAssembler.Problem> pProblems)
+{
+
+    Highlighter highlighter = textPane.getHighlighter();
+
+    for (Object tag : errorHighlights) {highlighter.removeHighlight(tag);}
+    errorHighlights.clear();
+    errorMessages.clear();
+
+    HashSet<Integer> errorLines = new HashSet<Integer>();
+
+    for (C54xAssembler.Problem p : pProblems){
+        String message = errorMessages.get(p.line);
+        errorMessages.put(p.line,
+                    message == null ? p.message : message + "; " + p.message);
+        if (p.kind == C54xAssembler.Problem.ERROR) {errorLines.add(p.line);}
+    }
+
+    Highlighter.HighlightPainter errorPainter =
+                new DefaultHighlighter.DefaultHighlightPainter(ERROR_COLOR);
+    Highlighter.HighlightPainter warningPainter =
+                new DefaultHighlighter.DefaultHighlightPainter(WARNING_COLOR);
+
+    Element root = doc.getDefaultRootElement();
+
+    for (int line : errorMessages.keySet()){
+
+        if (line < 1 || line > root.getElementCount()) {continue;}
+
+        Element e = root.getElement(line - 1);
+
+        try{
+            errorHighlights.add(highlighter.addHighlight(
+                    e.getStartOffset(), e.getEndOffset() - 1,
+                    errorLines.contains(line) ? errorPainter : warningPainter));
+        }
+        catch(BadLocationException ex){
+            //the line is always within the document
+        }
+
+    }
+
+}//end of EditorRig::showErrors
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::goToLine
+//
+// Selects the tab of this rig and moves the caret to the start of line
+// pLine of the document.
+//
+
+public void goToLine(int pLine)
+{
+
+    Element root = doc.getDefaultRootElement();
+
+    if (pLine < 1 || pLine > root.getElementCount()) {return;}
+
+    editorTabPane.setSelectedComponent(this);
+
+    textPane.setCaretPosition(root.getElement(pLine - 1).getStartOffset());
+    textPane.requestFocusInWindow();
+
+}//end of EditorRig::goToLine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::applyAdvice
+//
+// Makes the edits of each rewrite in pAdvice to the document and returns
+// those applied. A rewrite is left out if any line it replaces no longer
+// holds the text it was made from, or if an earlier one in the list
+// replaces the same line. The edits are made from the bottom of the
+// document up so that each leaves the line numbers of the rest as they
+// were, and are undone together.
+//
+
+public ArrayList<PeepholeAdvisor.Advice> applyAdvice(
+                                    ArrayList<PeepholeAdvisor.Advice> pAdvice)
+{
+
+    ArrayList<PeepholeAdvisor.Advice> applied =
+                                    new ArrayList<PeepholeAdvisor.Advice>();
+    ArrayList<PeepholeAdvisor.Edit> edits =
+                                    new ArrayList<PeepholeAdvisor.Edit>();
+    HashSet<Integer> lines = new HashSet<Integer>();
+
+    for (PeepholeAdvisor.Advice a : pAdvice){
+
+        boolean current = true;
+
+        for (PeepholeAdvisor.Edit e : a.edits){
+            if (lines.contains(e.line) || !e.text.equals(getLine(e.line))){
+                current = false;
+            }
+        }
+
+        if (!current) {continue;}
+
+        for (PeepholeAdvisor.Edit e : a.edits) {lines.add(e.line);}
+        edits.addAll(a.edits);
+        applied.add(a);
+
+    }
+
+    if (edits.isEmpty()) {return(applied);}
+
+    Collections.sort(edits, new Comparator<PeepholeAdvisor.Edit>(){
+        @Override
+        public int compare(PeepholeAdvisor.Edit pA, PeepholeAdvisor.Edit pB)
+        {
+            return(Integer.compare(pB.line, pA.line));
+        }
+    });
+
+    //the edits are gathered into one so that a single undo reverses them
+
+    final CompoundEdit compound = new CompoundEdit();
+
+    UndoableEditListener gatherer = new UndoableEditListener(){
+        @Override
+        public void undoableEditHappened(UndoableEditEvent e) {
+            compound.addEdit(e.getEdit());
+        }
+    };
+
+    editorTabPane.setSelectedComponent(this);
+
+    doc.removeUndoableEditListener(undoableEditListener);
+    doc.addUndoableEditListener(gatherer);
+
+    try{
+        for (PeepholeAdvisor.Edit e : edits) {replaceLine(e);}
+    }
+    catch(BadLocationException ex){
+        //the lines were all found above
+    }
+    finally{
+        doc.removeUndoableEditListener(gatherer);
+        doc.addUndoableEditListener(undoableEditListener);
+    }
+
+    compound.end();
+    undoableEditListener.undoableEditHappened(
+                                    new UndoableEditEvent(doc, compound));
+
+    return(applied);
+
+}//end of EditorRig::applyAdvice
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::replaceLine
+//
+// Replaces the line of the document numbered by pEdit with its replacement
+// lines, removing the line entirely if there are none.
+//
+
+void replaceLine(PeepholeAdvisor.Edit pEdit) throws BadLocationException
+{
+
+    Element e = doc.getDefaultRootElement().getElement(pEdit.line - 1);
+
+    int start = e.getStartOffset();
+    int end = Math.min(e.getEndOffset(), doc.getLength());
+
+    if (pEdit.replacement.length == 0){
+        doc.remove(start, end - start);
+        return;
+    }
+
+    int length = e.getEndOffset() - 1 - start;
+
+    doc.replace(start, length, String.join("\n", pEdit.replacement), null);
+
+}//end of EditorRig::replaceLine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EditorRig::getLine
+//
+// Returns the text of the line numbered pLine, the first being line 1, or
+// null if there is no such line.
+//
+
+String getLine(int pLine)
+{
+
+    Element root = doc.getDefaultRootElement();
+
+    if (pLine < 1 || pLine > root.getElementCount()) {return(null);}
+
+    Element e = root.getElement(pLine - 1);
+
+    try{
+        return(doc.getText(e.getStartOffset(),
+                                e.getEndOffset() - 1 - e.getStartOffset()));
+    }
+    catch(BadLocationException ex){
+        return(null);
+    }
+
+}//end of EditorRig::getLine
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // EditorRig::saveFile
 //
@@ -1004,6 +1537,8 @@ public void insertUpdate(DocumentEvent e)
 
     flagDocumentAsModified(); //set a flag to show that a change has occurred
 
+    editorRig.scheduleHazardCheck(); //check the changed text in a moment
+
     displayEditInfo(e);
 }
 
@@ -1012,6 +1547,8 @@ public void removeUpdate(DocumentEvent e)
 
     flagDocumentAsModified(); //set a flag to show that a change has occurred
 
+    editorRig.scheduleHazardCheck(); //check the changed text in a moment
+
     displayEditInfo(e);
 }
 
@@ -0,0 +1,291 @@
+/******************************************************************************
+* Title: Universal IDE - HeatGutter.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class is a gutter shown beside the text of an EditorRig which marks
+* each source line with the share of the profiled cycles spent on it. The
+* hotter the line, the redder its mark; lines which used no cycles are left
+* blank.
+*
+* The gutter is placed as the row header of the editor's scroll pane so that
+* it scrolls with the text. The cycles are indexed by line number, the first
+* line of the document being line 1.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+//-----------------------------------------------------------------------------
+
+package basicide;
+
+import java.awt.*;
+import javax.swing.*;
+import javax.swing.text.*;
+
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+// class HeatGutter
+//
+//
+
+public class HeatGutter extends JComponent{
+
+    JTextPane textPane;
+
+    long[] lineCycles;
+    long totalCycles;
+    long maxLineCycles;
+
+    static final int GUTTER_WIDTH = 56;
+
+//-----------------------------------------------------------------------------
+// HeatGutter::HeatGutter (constructor)
+//
+// Creates a gutter showing pLineCycles, the cycles of each line of the
+// document in pTextPane, as shares of pTotalCycles.
+//
+
+public HeatGutter(JTextPane pTextPane, long[] pLineCycles, long pTotalCycles)
+{
+
+    textPane = pTextPane; lineCycles = pLineCycles;
+    totalCycles = pTotalCycles;
+
+}//end of HeatGutter::HeatGutter (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    for (long c : lineCycles) {maxLineCycles = Math.max(maxLineCycles, c);}
+
+    setFont(new Font("Monospaced", Font.PLAIN, 11));
+    setToolTipText("");
+
+}//end of HeatGutter::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::getPreferredSize
+//
+// Returns the gutter's size, which is as tall as the text.
+//
+
+@Override
+public Dimension getPreferredSize()
+{
+
+    return(new Dimension(GUTTER_WIDTH, textPane.getPreferredSize().height));
+
+}//end of HeatGutter::getPreferredSize
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::paintComponent
+//
+// Paints the mark of each line which is in the clipped area and used
+// cycles.
+//
+
+@Override
+protected void paintComponent(Graphics pG)
+{
+
+    Rectangle clip = pG.getClipBounds();
+
+    pG.setColor(getBackground() != null ? getBackground() : Color.WHITE);
+    pG.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+    if (maxLineCycles == 0) {return;}
+
+    Element root = textPane.getDocument().getDefaultRootElement();
+
+    int first = lineAt(clip.y);
+    int last = lineAt(clip.y + clip.height);
+
+    FontMetrics metrics = pG.getFontMetrics();
+
+    for (int i = first; i <= last && i < root.getElementCount(); i++){
+
+        int line = i + 1;
+        if (line >= lineCycles.length || lineCycles[line] == 0) {continue;}
+
+        Rectangle r = lineBounds(root.getElement(i));
+        if (r == null) {continue;}
+
+        //shade from pale yellow for the coolest line to red for the hottest
+
+        float heat = (float)lineCycles[line] / maxLineCycles;
+        pG.setColor(new Color(1.0f, 0.9f * (1 - heat), 0.6f * (1 - heat)));
+        pG.fillRect(0, r.y, GUTTER_WIDTH, r.height);
+
+        double percent = 100.0 * lineCycles[line] / totalCycles;
+
+        pG.setColor(heat > 0.5 ? Color.WHITE : Color.BLACK);
+        pG.drawString(String.format("%5.1f%%", percent), 2,
+                                    r.y + r.height - metrics.getDescent());
+
+    }
+
+}//end of HeatGutter::paintComponent
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::getToolTipText
+//
+// Returns the cycles of the line under the mouse.
+//
+
+@Override
+public String getToolTipText(java.awt.event.MouseEvent pEvent)
+{
+
+    int line = lineAt(pEvent.getY()) + 1;
+
+    if (line >= lineCycles.length || lineCycles[line] == 0) {return(null);}
+
+    return("line " + line + ": " + lineCycles[line] + " cycles");
+
+}//end of HeatGutter::getToolTipText
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::lineAt
+//
+// Returns the index of the document line at the height pY.
+//
+
+int lineAt(int pY)
+{
+
+    int offset = offsetAt(textPane, new Point(0, pY));
+
+    return(textPane.getDocument().getDefaultRootElement()
+                                                   .getElementIndex(offset));
+
+}//end of HeatGutter::lineAt
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::lineBounds
+//
+// Returns the bounds in the text pane of the start of the line pLine, or
+// null if it has not been laid out.
+//
+
+Rectangle lineBounds(Element pLine)
+{
+
+    View root = textPane.getUI().getRootView(textPane);
+
+    readLock(textPane);
+
+    try{
+        return(root.modelToView(pLine.getStartOffset(), textBounds(textPane),
+                                        Position.Bias.Forward).getBounds());
+    }
+    catch(BadLocationException e){
+        return(null);
+    }
+    finally{
+        readUnlock(textPane);
+    }
+
+}//end of HeatGutter::lineBounds
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::offsetAt
+//
+// Returns the offset in the document of pText nearest the point pPoint, or
+// -1 if there is none. The offset is found from the views laying out the
+// text rather than through JTextComponent.viewToModel, which is deprecated.
+//
+
+static int offsetAt(JTextComponent pText, Point pPoint)
+{
+
+    View root = pText.getUI().getRootView(pText);
+
+    readLock(pText);
+
+    try{
+        return(root.viewToModel(pPoint.x, pPoint.y, textBounds(pText),
+                                                    new Position.Bias[1]));
+    }
+    finally{
+        readUnlock(pText);
+    }
+
+}//end of HeatGutter::offsetAt
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::textBounds
+//
+// Returns the area of pText, inside its border, in which its views lay out
+// the text.
+//
+
+static Rectangle textBounds(JTextComponent pText)
+{
+
+    Insets insets = pText.getInsets();
+
+    return(new Rectangle(insets.left, insets.top,
+                        pText.getWidth() - insets.left - insets.right,
+                        pText.getHeight() - insets.top - insets.bottom));
+
+}//end of HeatGutter::textBounds
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::readLock
+//
+// Locks the document of pText against changes while its views are used.
+//
+
+static void readLock(JTextComponent pText)
+{
+
+    Document doc = pText.getDocument();
+
+    if (doc instanceof AbstractDocument) {((AbstractDocument)doc).readLock();}
+
+}//end of HeatGutter::readLock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HeatGutter::readUnlock
+//
+// Releases the lock taken by readLock.
+//
+
+static void readUnlock(JTextComponent pText)
+{
+
+    Document doc = pText.getDocument();
+
+    if (doc instanceof AbstractDocument){
+        ((AbstractDocument)doc).readUnlock();
+    }
+
+}//end of HeatGutter::readUnlock
+//-----------------------------------------------------------------------------
+
+}//end of class HeatGutter
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
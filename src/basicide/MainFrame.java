@@ -18,7 +18,11 @@ package basicide;
 
 //-----------------------------------------------------------------------------
 
+import codehandler.C54xAssembler;
 import codehandler.CodeHandler;
+import codehandler.CoverageReport;
+import codehandler.PeepholeAdvisor;
+import codehandler.ProfileReport;
 import codehandler.TMS320VC5441CodeHandler;
 import dspsimulation.Chip;
 import java.awt.BorderLayout;
@@ -33,6 +37,8 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.io.File;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -285,6 +291,31 @@ public void actionPerformed(ActionEvent e)
         return;
     }
 
+    //display the profile report which is the source of the event
+    if ("Show profile".equals(e.getActionCommand())) {
+        showProfile((ProfileReport)e.getSource());
+        return;
+    }
+
+    //display the coverage report which is the source of the event
+    if ("Show coverage".equals(e.getActionCommand())) {
+        showCoverage((CoverageReport)e.getSource());
+        return;
+    }
+
+    //display the peephole advice which is the source of the event
+    if ("Show peephole advice".equals(e.getActionCommand())) {
+        showPeepholeAdvice((PeepholeAdvisor)e.getSource());
+        return;
+    }
+
+    //mark the problems found by the assembler which is the source of the
+    //event
+    if ("Show assembly errors".equals(e.getActionCommand())) {
+        showAssemblyErrors((C54xAssembler)e.getSource());
+        return;
+    }
+
 }//end of MainFrame::actionPerformed
 //-----------------------------------------------------------------------------
 
@@ -308,6 +339,199 @@ public void loadFileIntoTab(String pFullFilePath)
 }//end of MainFrame::loadFileIntoTab
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// MainFrame::showProfile
+//
+// Displays the routines of pReport in a table and marks the cycles spent on
+// each line of the source files, loading any files not already open.
+//
+
+public void showProfile(ProfileReport pReport)
+{
+
+    ProfileDialog dialog = new ProfileDialog(this, pReport);
+    dialog.init();
+    dialog.setVisible(true);
+
+    for (String path : pReport.getFiles()){
+
+        EditorRig rig = editorFrame.findRig(path);
+
+        if (rig == null){
+            loadFileIntoTab(path);
+            rig = editorFrame.findRig(path);
+        }
+
+        //the file may have been moved since it was assembled
+        if (rig == null) {continue;}
+
+        rig.showHeat(pReport.getLineCycles(path), pReport.getTotalCycles());
+
+    }
+
+}//end of MainFrame::showProfile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MainFrame::showCoverage
+//
+// Shades the lines of the source files which were and were not executed,
+// loading any files not already open, and shows how much was covered.
+//
+
+public void showCoverage(CoverageReport pReport)
+{
+
+    for (String path : pReport.getFiles()){
+
+        EditorRig rig = editorFrame.findRig(path);
+
+        if (rig == null){
+            loadFileIntoTab(path);
+            rig = editorFrame.findRig(path);
+        }
+
+        //the file may have been moved since it was assembled
+        if (rig == null) {continue;}
+
+        rig.showCoverage(pReport.getLineStatus(path));
+
+    }
+
+    int total = pReport.getNumCodeWords();
+    int covered = pReport.getNumCoveredWords();
+
+    JOptionPane.showMessageDialog(this, String.format(
+            "%d of %d instruction words executed (%.1f%%)", covered, total,
+            total == 0 ? 0.0 : 100.0 * covered / total),
+            "Coverage - " + pReport.getTitle(),
+            JOptionPane.INFORMATION_MESSAGE);
+
+}//end of MainFrame::showCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MainFrame::showPeepholeAdvice
+//
+// Displays the rewrites proposed by pAdvisor in a table from which they can
+// be applied.
+//
+
+public void showPeepholeAdvice(PeepholeAdvisor pAdvisor)
+{
+
+    PeepholeDialog dialog = new PeepholeDialog(this, pAdvisor);
+    dialog.init();
+    dialog.setVisible(true);
+
+}//end of MainFrame::showPeepholeAdvice
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MainFrame::showAssemblyErrors
+//
+// Marks the lines with problems found by pAssembler in each source file it
+// read which is open, loading any file with an error which is not, and
+// clears the marks of the last assembly from the rest. The caret is moved to
+// the first error.
+//
+
+public void showAssemblyErrors(C54xAssembler pAssembler)
+{
+
+    C54xAssembler.Problem first = null;
+
+    for (C54xAssembler.Problem p : pAssembler.getProblems()){
+        if (p.kind == C54xAssembler.Problem.ERROR) {first = p; break;}
+    }
+
+    for (String path : pAssembler.getFiles()){
+
+        ArrayList<C54xAssembler.Problem> problems =
+                                                pAssembler.getProblems(path);
+
+        EditorRig rig = editorFrame.findRig(path);
+
+        if (rig == null && first != null && hasError(problems)){
+            loadFileIntoTab(path);
+            rig = editorFrame.findRig(path);
+        }
+
+        if (rig != null) {rig.showErrors(problems);}
+
+    }
+
+    if (first == null) {return;}
+
+    EditorRig rig = editorFrame.findRig(first.file);
+    if (rig != null) {rig.goToLine(first.line);}
+
+}//end of MainFrame::showAssemblyErrors
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MainFrame::hasError
+//
+// Returns true if any of pProblems is an error rather than a warning.
+//
+
+static boolean hasError(ArrayList<C54xAssembler.Problem> pProblems)
+{
+
+    for (C54xAssembler.Problem p : pProblems){
+        if (p.kind == C54xAssembler.Problem.ERROR) {return(true);}
+    }
+
+    return(false);
+
+}//end of MainFrame::hasError
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MainFrame::applyAdvice
+//
+// Makes the rewrites in pAdvice to the source files in the editor, loading
+// any files not already open, and returns those applied -- see
+// EditorRig.applyAdvice.
+//
+
+public ArrayList<PeepholeAdvisor.Advice> applyAdvice(
+                                    ArrayList<PeepholeAdvisor.Advice> pAdvice)
+{
+
+    LinkedHashMap<String, ArrayList<PeepholeAdvisor.Advice>> byFile =
+            new LinkedHashMap<String, ArrayList<PeepholeAdvisor.Advice>>();
+
+    for (PeepholeAdvisor.Advice a : pAdvice){
+        if (!byFile.containsKey(a.file)){
+            byFile.put(a.file, new ArrayList<PeepholeAdvisor.Advice>());
+        }
+        byFile.get(a.file).add(a);
+    }
+
+    ArrayList<PeepholeAdvisor.Advice> applied =
+                                    new ArrayList<PeepholeAdvisor.Advice>();
+
+    for (String path : byFile.keySet()){
+
+        EditorRig rig = editorFrame.findRig(path);
+
+        if (rig == null){
+            loadFileIntoTab(path);
+            rig = editorFrame.findRig(path);
+        }
+
+        if (rig == null) {continue;}
+
+        applied.addAll(rig.applyAdvice(byFile.get(path)));
+
+    }
+
+    return(applied);
+
+}//end of MainFrame::applyAdvice
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // MainFrame::stateChanged
 //
@@ -0,0 +1,361 @@
+/******************************************************************************
+* Title: Universal IDE - PeepholeDialog.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class displays the rewrites proposed by a PeepholeAdvisor in a table,
+* most cycles saved first, and applies those the user checks to the source
+* in the editor as one batch. Clicking a column heading sorts the table by
+* that column. The lines of a rewrite are shown as its tool tip.
+*
+* A rewrite whose lines have changed since the advice was made is left out
+* -- the advisor should be run again for it.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+//-----------------------------------------------------------------------------
+
+package basicide;
+
+import codehandler.PeepholeAdvisor;
+import codehandler.PeepholeAdvisor.Advice;
+import codehandler.PeepholeAdvisor.Edit;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.ArrayList;
+import javax.swing.*;
+import javax.swing.table.*;
+
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+// class PeepholeDialog
+//
+//
+
+public class PeepholeDialog extends JDialog implements ActionListener{
+
+    MainFrame mainFrame;
+    PeepholeAdvisor advisor;
+
+    JTable table;
+    AdviceTableModel model;
+
+    static final String[] COLUMN_NAMES = {"Apply", "File", "Line", "Kind",
+            "Cycles Saved", "Per", "Executions", "Saved in Profile",
+            "Description"};
+
+    static final Class<?>[] COLUMN_CLASSES = {Boolean.class, String.class,
+            Integer.class, String.class, Integer.class, String.class,
+            Long.class, Long.class, String.class};
+
+//-----------------------------------------------------------------------------
+// PeepholeDialog::PeepholeDialog (constructor)
+//
+
+public PeepholeDialog(MainFrame pMainFrame, PeepholeAdvisor pAdvisor)
+{
+
+    super(pMainFrame, "Peephole Advice - " + pAdvisor.getTitle(), false);
+
+    mainFrame = pMainFrame; advisor = pAdvisor;
+
+}//end of PeepholeDialog::PeepholeDialog (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeDialog::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    model = new AdviceTableModel(advisor.getAdvice());
+
+    //the tool tip of each row shows the lines its rewrite replaces
+
+    table = new JTable(model){
+        @Override
+        public String getToolTipText(MouseEvent pEvent) {
+            int row = rowAtPoint(pEvent.getPoint());
+            if (row < 0) {return(null);}
+            return(getEditText(model.getAdvice(convertRowIndexToModel(row))));
+        }
+    };
+    table.setAutoCreateRowSorter(true);
+
+    table.getColumnModel().getColumn(0).setPreferredWidth(40);
+    table.getColumnModel().getColumn(1).setPreferredWidth(150);
+    table.getColumnModel().getColumn(8).setPreferredWidth(400);
+
+    JScrollPane scrollPane = new JScrollPane(table);
+    Settings.setSizes(scrollPane, 1000, 400);
+
+    String summary = " " + advisor.getAdvice().size() + " rewrite(s) found"
+            + (advisor.hasProfile() ? ", weighed by the last profile"
+                                    : " -- profile a scenario to weigh them");
+
+    JButton apply = new JButton("Apply Checked");
+    apply.setToolTipText("Makes the checked rewrites in the editor.");
+    apply.setActionCommand("Apply Checked");
+    apply.addActionListener(this);
+
+    JPanel panel = new JPanel(new BorderLayout());
+    panel.add(new JLabel(summary), BorderLayout.CENTER);
+    panel.add(apply, BorderLayout.EAST);
+
+    getContentPane().add(scrollPane, BorderLayout.CENTER);
+    getContentPane().add(panel, BorderLayout.SOUTH);
+
+    setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    pack();
+
+}//end of PeepholeDialog::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeDialog::actionPerformed
+//
+// Responds to button events.
+//
+
+@Override
+public void actionPerformed(ActionEvent e)
+{
+
+    if ("Apply Checked".equals(e.getActionCommand())) {
+        applyChecked();
+    }
+
+}//end of PeepholeDialog::actionPerformed
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeDialog::applyChecked
+//
+// Applies the checked rewrites in the editor, removes those applied from
+// the table, and tells the user of any left out.
+//
+
+void applyChecked()
+{
+
+    if (table.isEditing()) {table.getCellEditor().stopCellEditing();}
+
+    ArrayList<Advice> checked = model.getChecked();
+    if (checked.isEmpty()) {return;}
+
+    ArrayList<Advice> applied = mainFrame.applyAdvice(checked);
+
+    model.remove(applied);
+
+    int left = checked.size() - applied.size();
+
+    if (left > 0){
+        JOptionPane.showMessageDialog(this, applied.size()
+            + " rewrite(s) applied. " + left + " left out as their lines"
+            + " have changed -- run the advisor again for those.",
+            "Peephole Advice", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+}//end of PeepholeDialog::applyChecked
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeDialog::getEditText
+//
+// Returns the lines replaced by pAdvice and those replacing them, as html
+// for a tool tip.
+//
+
+static String getEditText(Advice pAdvice)
+{
+
+    StringBuilder text = new StringBuilder("<html><pre>");
+
+    for (Edit e : pAdvice.edits){
+        text.append(e.line).append(" - ").append(escape(e.text))
+                                                            .append('\n');
+        for (String r : e.replacement){
+            text.append(e.line).append(" + ").append(escape(r))
+                                                            .append('\n');
+        }
+    }
+
+    return(text.append("</pre></html>").toString());
+
+}//end of PeepholeDialog::getEditText
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeDialog::escape
+//
+// Returns pText with the characters special to html replaced and tabs
+// expanded.
+//
+
+static String escape(String pText)
+{
+
+    return(pText.replace("&", "&amp;").replace("<", "&lt;")
+                            .replace(">", "&gt;").replace("\t", "    "));
+
+}//end of PeepholeDialog::escape
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+// class AdviceTableModel
+//
+// Presents the rewrites of a PeepholeAdvisor as table rows, each with a
+// box to check it for applying.
+//
+
+static class AdviceTableModel extends AbstractTableModel{
+
+    ArrayList<Advice> advice;
+    ArrayList<Boolean> checked;
+
+//-----------------------------------------------------------------------------
+// AdviceTableModel::AdviceTableModel (constructor)
+//
+
+public AdviceTableModel(ArrayList<Advice> pAdvice)
+{
+
+    advice = new ArrayList<Advice>(pAdvice);
+
+    checked = new ArrayList<Boolean>();
+    for (int i = 0; i < advice.size(); i++) {checked.add(false);}
+
+}//end of AdviceTableModel::AdviceTableModel (constructor)
+//-----------------------------------------------------------------------------
+
+@Override
+public int getRowCount() { return(advice.size()); }
+
+@Override
+public int getColumnCount() { return(COLUMN_NAMES.length); }
+
+@Override
+public String getColumnName(int pColumn) { return(COLUMN_NAMES[pColumn]); }
+
+@Override
+public Class<?> getColumnClass(int pColumn)
+{
+    return(COLUMN_CLASSES[pColumn]);
+}
+
+@Override
+public boolean isCellEditable(int pRow, int pColumn)
+{
+    return(pColumn == 0);
+}
+
+@Override
+public void setValueAt(Object pValue, int pRow, int pColumn)
+{
+    if (pColumn == 0) {checked.set(pRow, (Boolean)pValue);}
+}
+
+//-----------------------------------------------------------------------------
+// AdviceTableModel::getValueAt
+//
+// Returns the value for the column pColumn of the rewrite in row pRow.
+// Counts from a profile are blank when there is none.
+//
+
+@Override
+public Object getValueAt(int pRow, int pColumn)
+{
+
+    Advice a = advice.get(pRow);
+
+    switch (pColumn){
+        case 0: return(checked.get(pRow));
+        case 1: return(new File(a.file).getName());
+        case 2: return(a.line);
+        case 3: return(a.kind);
+        case 4: return(a.cyclesSaved);
+        case 5: return(a.per);
+        case 6: return(a.executions < 0 ? null : a.executions);
+        case 7: return(a.totalSaved < 0 ? null : a.totalSaved);
+        default: return(a.description);
+    }
+
+}//end of AdviceTableModel::getValueAt
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AdviceTableModel::getAdvice
+//
+// Returns the rewrite in row pRow.
+//
+
+public Advice getAdvice(int pRow)
+{
+
+    return(advice.get(pRow));
+
+}//end of AdviceTableModel::getAdvice
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AdviceTableModel::getChecked
+//
+// Returns the rewrites checked, in the order listed by the advisor.
+//
+
+public ArrayList<Advice> getChecked()
+{
+
+    ArrayList<Advice> list = new ArrayList<Advice>();
+
+    for (int i = 0; i < advice.size(); i++){
+        if (checked.get(i)) {list.add(advice.get(i));}
+    }
+
+    return(list);
+
+}//end of AdviceTableModel::getChecked
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AdviceTableModel::remove
+//
+// Removes the rows of the rewrites in pAdvice.
+//
+
+public void remove(ArrayList<Advice> pAdvice)
+{
+
+    for (Advice a : pAdvice){
+        int i = advice.indexOf(a);
+        if (i < 0) {continue;}
+        advice.remove(i);
+        checked.remove(i);
+    }
+
+    fireTableDataChanged();
+
+}//end of AdviceTableModel::remove
+//-----------------------------------------------------------------------------
+
+}//end of class AdviceTableModel
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+
+}//end of class PeepholeDialog
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
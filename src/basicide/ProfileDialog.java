@@ -0,0 +1,167 @@
+/******************************************************************************
+* Title: Universal IDE - ProfileDialog.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class displays the routines of a ProfileReport in a table, most
+* cycles first. Clicking a column heading sorts the table by that column.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+//-----------------------------------------------------------------------------
+
+package basicide;
+
+import codehandler.ProfileReport;
+import codehandler.ProfileReport.Routine;
+import java.awt.*;
+import java.util.ArrayList;
+import javax.swing.*;
+import javax.swing.table.*;
+
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+// class ProfileDialog
+//
+//
+
+public class ProfileDialog extends JDialog{
+
+    ProfileReport report;
+
+    static final String[] COLUMN_NAMES = {"Routine", "Entries",
+                    "Instructions", "Cycles", "Cycles/Entry", "% of Cycles"};
+
+    static final Class<?>[] COLUMN_CLASSES = {String.class, Long.class,
+                    Long.class, Long.class, Double.class, Double.class};
+
+    static final int CYCLES_COLUMN = 3;
+
+//-----------------------------------------------------------------------------
+// ProfileDialog::ProfileDialog (constructor)
+//
+
+public ProfileDialog(Frame pOwner, ProfileReport pReport)
+{
+
+    super(pOwner, "Profile - " + pReport.getTitle(), false);
+
+    report = pReport;
+
+}//end of ProfileDialog::ProfileDialog (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileDialog::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    JTable table = new JTable(new RoutineTableModel(report));
+    table.setAutoCreateRowSorter(true);
+
+    //most cycles first until the user picks another column
+
+    ArrayList<RowSorter.SortKey> keys = new ArrayList<RowSorter.SortKey>();
+    keys.add(new RowSorter.SortKey(CYCLES_COLUMN, SortOrder.DESCENDING));
+    table.getRowSorter().setSortKeys(keys);
+
+    table.getColumnModel().getColumn(0).setPreferredWidth(200);
+
+    JScrollPane scrollPane = new JScrollPane(table);
+    Settings.setSizes(scrollPane, 700, 400);
+
+    JLabel total = new JLabel(" " + report.getTotalCycles()
+                                                    + " cycles profiled");
+
+    getContentPane().add(scrollPane, BorderLayout.CENTER);
+    getContentPane().add(total, BorderLayout.SOUTH);
+
+    setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    pack();
+
+}//end of ProfileDialog::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+// class RoutineTableModel
+//
+// Presents the routines of a ProfileReport as table rows.
+//
+
+static class RoutineTableModel extends AbstractTableModel{
+
+    ArrayList<Routine> routines;
+    long totalCycles;
+
+//-----------------------------------------------------------------------------
+// RoutineTableModel::RoutineTableModel (constructor)
+//
+
+public RoutineTableModel(ProfileReport pReport)
+{
+
+    routines = pReport.getRoutines();
+    totalCycles = pReport.getTotalCycles();
+
+}//end of RoutineTableModel::RoutineTableModel (constructor)
+//-----------------------------------------------------------------------------
+
+@Override
+public int getRowCount() { return(routines.size()); }
+
+@Override
+public int getColumnCount() { return(COLUMN_NAMES.length); }
+
+@Override
+public String getColumnName(int pColumn) { return(COLUMN_NAMES[pColumn]); }
+
+@Override
+public Class<?> getColumnClass(int pColumn)
+{
+    return(COLUMN_CLASSES[pColumn]);
+}
+
+//-----------------------------------------------------------------------------
+// RoutineTableModel::getValueAt
+//
+// Returns the value for the column pColumn of the routine in row pRow.
+//
+
+@Override
+public Object getValueAt(int pRow, int pColumn)
+{
+
+    Routine r = routines.get(pRow);
+
+    switch (pColumn){
+        case 0: return(r.name);
+        case 1: return(r.entries);
+        case 2: return(r.instructions);
+        case 3: return(r.cycles);
+        case 4: return(r.getCyclesPerEntry());
+        default: return(totalCycles == 0 ? 0.0
+                                        : 100.0 * r.cycles / totalCycles);
+    }
+
+}//end of RoutineTableModel::getValueAt
+//-----------------------------------------------------------------------------
+
+}//end of class RoutineTableModel
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+
+}//end of class ProfileDialog
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,303 @@
+/******************************************************************************
+* Title: Universal IDE - BatchRunner.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This program runs test scenarios for the DSP firmware on the simulator
+* without the user interface, such as on a build machine after each change
+* to the firmware.
+*
+*   java batchrunner.BatchRunner [-threads n] [-coverage file]
+*                                             <program.hex> <scenario>...
+*
+* The program is an Intel hex file as created by the TI hex conversion
+* utility. Each scenario argument is a scenario file or a folder whose .scn
+* files are all run -- see Scenario for the file format.
+*
+* Each scenario is run on its own simulated chip, or its own Sweep of chips
+* if it varies any settings. The scenarios are run in parallel by a
+* fork-join pool with one thread per host processor unless set by -threads.
+* The cores of each chip are run in turn on the pool thread rather than on
+* threads of their own.
+*
+* The result of each scenario and its results table, if any, are printed,
+* followed by the number which passed and the throughput in scenarios and
+* simulated cycles per second.
+* The exit status is 0 if every scenario passed and 1 otherwise.
+*
+* If a coverage file is given, the program words executed by each core in
+* all the scenarios are merged into it, so that the coverage of many runs
+* builds up in the one file. The file is created if it does not exist.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package batchrunner;
+
+import dspsimulation.Coverage;
+import dspsimulation.ProgramImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//-----------------------------------------------------------------------------
+// class BatchRunner
+//
+
+public class BatchRunner
+{
+
+    ProgramImage image;
+    ArrayList<Scenario> scenarios;
+
+    int numThreads;
+
+    //the file the coverage is merged into -- null if none was given
+    File coverageFile;
+
+    static final String SCENARIO_EXTENSION = ".scn";
+
+//-----------------------------------------------------------------------------
+// BatchRunner::BatchRunner (constructor)
+//
+
+public BatchRunner()
+{
+
+}//end of BatchRunner::BatchRunner (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BatchRunner::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    scenarios = new ArrayList<Scenario>();
+    numThreads = Runtime.getRuntime().availableProcessors();
+
+}//end of BatchRunner::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BatchRunner::parseArguments
+//
+// Loads the program and finds the scenarios named in the command line
+// arguments pArgs.
+//
+
+void parseArguments(String[] pArgs) throws IOException
+{
+
+    int i = 0;
+
+    for (; i < pArgs.length - 1 && pArgs[i].startsWith("-"); i += 2){
+        if (pArgs[i].equals("-threads")){
+            try{
+                numThreads = Math.max(1, Integer.parseInt(pArgs[i + 1]));
+            }
+            catch(NumberFormatException e){
+                throw new IOException("bad thread count " + pArgs[i + 1]);
+            }
+        }
+        else
+        if (pArgs[i].equals("-coverage")){
+            coverageFile = new File(pArgs[i + 1]);
+        }
+        else {throw new IOException("unknown option " + pArgs[i]);}
+    }
+
+    if (pArgs.length - i < 2){
+        throw new IOException("usage: BatchRunner [-threads n] "
+                + "[-coverage file] <program.hex> <scenario>...");
+    }
+
+    image = ProgramImage.loadIntelHex(new File(pArgs[i++]));
+
+    for (; i < pArgs.length; i++) {addScenarios(new File(pArgs[i]));}
+
+    if (scenarios.isEmpty()) {throw new IOException("no scenarios found");}
+
+}//end of BatchRunner::parseArguments
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BatchRunner::addScenarios
+//
+// Adds the scenario in pFile or, if pFile is a folder, the scenarios in the
+// folder in name order.
+//
+
+void addScenarios(File pFile) throws IOException
+{
+
+    if (!pFile.exists()) {throw new IOException(pFile + " not found");}
+
+    if (!pFile.isDirectory()) {addScenario(pFile); return;}
+
+    File[] files = pFile.listFiles();
+    Arrays.sort(files);
+
+    for (File f : files){
+        if (f.getName().toLowerCase().endsWith(SCENARIO_EXTENSION)){
+            addScenario(f);
+        }
+    }
+
+}//end of BatchRunner::addScenarios
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BatchRunner::addScenario
+//
+// Adds the scenario in pFile.
+//
+
+void addScenario(File pFile)
+{
+
+    Scenario s = new Scenario(pFile, image);
+    s.init();
+
+    scenarios.add(s);
+
+}//end of BatchRunner::addScenario
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BatchRunner::run
+//
+// Runs all scenarios in parallel and prints the results.
+//
+// Returns true if every scenario passed.
+//
+
+boolean run()
+{
+
+    ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+    long start = System.nanoTime();
+
+    pool.invoke(new RecursiveAction(){
+        @Override
+        protected void compute() { invokeAll(scenarios); }
+    });
+
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    pool.shutdown();
+
+    int numPassed = 0;
+    long cycles = 0;
+
+    for (Scenario s : scenarios){
+
+        System.out.printf("%s  %s  (%d cycles, %.3f s)%n",
+                        s.passed ? "PASS" : "FAIL", s.getName(), s.cycles,
+                        s.elapsedNanos / 1e9);
+
+        for (String f : s.failures) {System.out.println("    " + f);}
+        for (String r : s.results) {System.out.println("    " + r);}
+
+        if (s.passed) {numPassed++;}
+        cycles += s.cycles;
+
+    }
+
+    System.out.printf("%d of %d scenarios passed in %.3f s on %d threads%n",
+                    numPassed, scenarios.size(), seconds, numThreads);
+    System.out.printf("%.1f scenarios/s, %.3g simulated cycles/s%n",
+                    scenarios.size() / seconds, cycles / seconds);
+
+    if (coverageFile != null){
+        try{
+            saveCoverage();
+        }
+        catch(IOException e){
+            System.err.println(e.getMessage());
+            return(false);
+        }
+    }
+
+    return(numPassed == scenarios.size());
+
+}//end of BatchRunner::run
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BatchRunner::saveCoverage
+//
+// Merges the coverage of all scenarios into the coverage file, which is
+// loaded first if it exists, and prints the words covered by each core.
+//
+// Throws an IOException if the file cannot be read or written.
+//
+
+void saveCoverage() throws IOException
+{
+
+    Coverage[] total = null;
+
+    if (coverageFile.exists()) {total = Coverage.load(coverageFile);}
+
+    for (Scenario s : scenarios){
+        if (s.coverage == null) {continue;}
+        if (total == null || total.length < s.coverage.length){
+            Coverage[] t = s.coverage;
+            if (total != null) {Coverage.mergeAll(t, total);}
+            total = t;
+        }
+        else {Coverage.mergeAll(total, s.coverage);}
+    }
+
+    if (total == null) {return;}
+
+    Coverage.save(coverageFile, total);
+
+    for (int i = 0; i < total.length; i++){
+        System.out.printf("core %c covered %d words%n", 'A' + i,
+                                                total[i].getNumCovered());
+    }
+
+}//end of BatchRunner::saveCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BatchRunner::main
+//
+
+public static void main(String[] args)
+{
+
+    BatchRunner runner = new BatchRunner();
+    runner.init();
+
+    try{
+        runner.parseArguments(args);
+    }
+    catch(IOException e){
+        System.err.println(e.getMessage());
+        System.exit(2);
+    }
+
+    System.exit(runner.run() ? 0 : 1);
+
+}//end of BatchRunner::main
+//-----------------------------------------------------------------------------
+
+}//end of class BatchRunner
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,882 @@
+/******************************************************************************
+* Title: Universal IDE - Scenario.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class runs one test scenario for the DSP firmware on its own simulated
+* TMS320VC5441 and records whether the results were as expected.
+*
+* A scenario file is a list of steps, one per line, carried out in order
+* after the program has been loaded and the chip reset. Blank lines and
+* anything following a ';' are ignored. Numbers may be decimal or hex with a
+* leading 0x. Cores are given as letters A-D; a list such as ACD or the word
+* all selects several. File names are relative to the scenario file.
+*
+*   name <text>                     name shown in the report
+*   run <cycles>                    runs all cores for the number of cycles
+*   samples <cores> <addr> <file>   loads a capture of input samples into
+*                                   data memory
+*   replay <cores> <addr> <file> <words> <period> [first]
+*                                   stores a frame of the given number of
+*                                   words from a capture of pulses into data
+*                                   memory every period cycles, starting
+*                                   with pulse first, or 0 -- see
+*                                   CaptureReplay
+*   seek <cores> <pulse>            restarts the replay at a pulse
+*   command <core> <msg id> [bytes] sends a packet from the host to the
+*                                   serial port shared by all cores
+*   poke <cores> <addr> <value>     writes a word of data memory
+*   expect <cores> <addr> <value> [mask]
+*                                   fails the scenario if the data word
+*                                   masked by mask does not equal value
+*   vary <cores> <addr> <value>...  runs the rest of the scenario once for
+*                                   each value written to the data word
+*   report <cores> <addr>           adds the data word, as an unsigned
+*                                   number, to the results table
+*   pace <speed>                    runs the following run steps at speed
+*                                   times real time, such as 1 or 0.25, or
+*                                   as fast as possible for fast or 0
+*   profile <cores>                 counts the cycles used at each program
+*                                   address from here on -- see Profiler
+*
+* A value for vary may also be a range written as first..last or
+* first..last/step. Each vary multiplies the number of runs, so two with ten
+* values each give a hundred. The runs are simulated together as a Sweep,
+* which forks the chip in its state at the vary rather than rerunning the
+* steps before it. Each expect is checked in every run, and the results
+* table has a row for each run showing the values it was given and the
+* words reported. All vary steps must come before the first report and the
+* first profile.
+*
+* The profiles of all cores profiled in all runs are added together in
+* profile once the scenario ends. Profiling steps every instruction, so it
+* slows the runs.
+*
+* The program words executed by each core in any run are merged into
+* coverage once the scenario ends -- see Coverage.
+*
+* A capture file holds 16 bit words, either as text numbers separated by
+* white space or commas, or, for files ending in .bin, as binary words with
+* the high byte first.
+*
+* Host packets are built in the format read by the firmware's readSerialPort
+* function and sent to McBSP1 of each core, which receives them at the rate
+* of the serial link -- a packet arrives over the following 800 or so
+* cycles, so a run step should follow before the results are expected.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package batchrunner;
+
+import dspsimulation.CaptureReplay;
+import dspsimulation.Chip;
+import dspsimulation.Core;
+import dspsimulation.Coverage;
+import dspsimulation.ProgramImage;
+import dspsimulation.Profiler;
+import dspsimulation.Sweep;
+import hostlink.HostLink;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import specificchips.C54xCore;
+import specificchips.TMS320VC5441;
+
+//-----------------------------------------------------------------------------
+// class Scenario
+//
+
+public class Scenario extends RecursiveAction
+{
+
+    File file;
+    String name;
+
+    //the program to be loaded -- shared by all scenarios and not modified
+    ProgramImage image;
+
+    //the runs of the scenario -- a single chip until the first vary step
+    Sweep sweep;
+
+    //the capture being replayed -- null until a replay step
+    CaptureReplay replay;
+
+    //the values given to each run by the vary steps, and the names of the
+    //words given
+
+    String[][] runValues;
+    ArrayList<String> variedNames;
+
+    //the words reported by each run, and their names
+
+    ArrayList<String[]> reportValues;
+    ArrayList<String> reportNames;
+
+    //the results -- failures lists each expectation not met and any error
+    //which stopped the scenario; results holds the lines of the results
+    //table, which is empty if there are no report steps
+
+    public boolean passed;
+    public ArrayList<String> failures;
+    public ArrayList<String> results;
+    public long cycles;
+    public long elapsedNanos;
+
+    //the sum of the profiles of the cores profiled -- null if none were
+    public Profiler profile;
+
+    //the program words executed by each core in any run -- null if the
+    //chip could not be created
+    public Coverage[] coverage;
+
+    //if true, all cores are profiled from the start of the scenario
+    boolean profileAll;
+    boolean profiling;
+
+    //the most values a range in a vary step may hold
+    static final int MAX_RANGE = 10000;
+
+//-----------------------------------------------------------------------------
+// Scenario::Scenario (constructor)
+//
+// Creates a scenario which runs pImage as described in pFile.
+//
+
+public Scenario(File pFile, ProgramImage pImage)
+{
+
+    file = pFile; image = pImage;
+
+}//end of Scenario::Scenario (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    name = file.getName();
+    failures = new ArrayList<String>();
+    results = new ArrayList<String>();
+
+    runValues = new String[][] {{}};
+    variedNames = new ArrayList<String>();
+    reportValues = new ArrayList<String[]>();
+    reportNames = new ArrayList<String>();
+
+}//end of Scenario::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::compute
+//
+// Runs the scenario. Called by the fork-join pool.
+//
+
+@Override
+protected void compute()
+{
+
+    long start = System.nanoTime();
+
+    try{
+        TMS320VC5441 chip = new TMS320VC5441();
+        chip.init();
+
+        //the pool keeps every host processor busy with other chips
+        chip.getCoreGroup().setThreaded(false);
+
+        chip.loadProgram(image);
+        chip.reset();
+
+        if (profileAll) {chip.setProfiling(true); profiling = true;}
+
+        sweep = new Sweep(chip);
+        sweep.init();
+
+        runSteps();
+
+        buildResults();
+    }
+    catch(IOException e){
+        failures.add(e.getMessage());
+    }
+    catch(RuntimeException e){
+        //a fault in the simulator fails only this scenario
+        failures.add("simulator error: " + e);
+    }
+
+    for (int k = 0; sweep != null && k < sweep.getNumInstances(); k++){
+        Chip chip = sweep.getInstance(k);
+        for (int i = 0; i < chip.getNumCores(); i++){
+            cycles += chip.getCore(i).cycles;
+        }
+    }
+
+    for (int k = 0; sweep != null && k < sweep.getNumInstances(); k++){
+        Coverage[] c = sweep.getInstance(k).getCoverage();
+        if (coverage == null) {coverage = c;}
+        else {Coverage.mergeAll(coverage, c);}
+    }
+
+    for (int k = 0; profiling && sweep != null
+                                        && k < sweep.getNumInstances(); k++){
+        Profiler p = sweep.getInstance(k).getProfile();
+        if (p == null) {continue;}
+        if (profile == null) {profile = p;} else {profile.add(p);}
+    }
+
+    sweep = null;
+
+    elapsedNanos = System.nanoTime() - start;
+    passed = failures.isEmpty();
+
+}//end of Scenario::compute
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::setProfiling
+//
+// If pProfileAll is true, every core is profiled from the start of the
+// scenario. Should be called before the scenario is run.
+//
+
+public void setProfiling(boolean pProfileAll)
+{
+
+    profileAll = pProfileAll;
+
+}//end of Scenario::setProfiling
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::runSteps
+//
+// Reads the scenario file and carries out each step.
+//
+
+private void runSteps() throws IOException
+{
+
+    BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+    try{
+
+        String line;
+        int lineNum = 0;
+
+        while ((line = reader.readLine()) != null){
+
+            lineNum++;
+
+            int comment = line.indexOf(';');
+            if (comment >= 0) {line = line.substring(0, comment);}
+
+            line = line.trim();
+            if (line.isEmpty()) {continue;}
+
+            try{
+                runStep(line);
+            }
+            catch(IllegalArgumentException e){
+                throw new IOException(
+                  file.getName() + " line " + lineNum + ": " + e.getMessage());
+            }
+
+        }
+
+    }
+    finally{
+        reader.close();
+    }
+
+}//end of Scenario::runSteps
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::runStep
+//
+// Carries out the step on pLine.
+//
+
+private void runStep(String pLine) throws IOException
+{
+
+    String[] t = pLine.split("\\s+");
+    String step = t[0].toLowerCase();
+
+    if (step.equals("name")){
+        name = pLine.substring(t[0].length()).trim();
+    }
+    else
+    if (step.equals("run")){
+        checkCount(t, 2, 2);
+        sweep.run(parseNumber(t[1]));
+    }
+    else
+    if (step.equals("samples")){
+        checkCount(t, 4, 4);
+        short[] words = loadCapture(new File(file.getParentFile(), t[3]));
+        int address = (int)parseNumber(t[2]);
+        for (int k = 0; k < sweep.getNumInstances(); k++){
+            for (int c : parseCores(t[1])){
+                sweep.getInstance(k).getCore(c).data.load(address, words);
+            }
+        }
+    }
+    else
+    if (step.equals("replay")){
+        checkCount(t, 6, 7);
+        startReplay(t);
+    }
+    else
+    if (step.equals("seek")){
+        checkCount(t, 3, 3);
+        if (replay == null) {throw new IllegalArgumentException("no replay");}
+        seekReplay(parseCores(t[1]), parseNumber(t[2]));
+    }
+    else
+    if (step.equals("command")){
+        checkCount(t, 3, 3 + HostLink.PACKET_DATA_SIZE);
+        sendPacket(t);
+    }
+    else
+    if (step.equals("poke")){
+        checkCount(t, 4, 4);
+        int address = (int)parseNumber(t[2]), value = (int)parseNumber(t[3]);
+        for (int k = 0; k < sweep.getNumInstances(); k++){
+            for (int c : parseCores(t[1])){
+                sweep.getInstance(k).getCore(c).data.write16(address, value);
+            }
+        }
+    }
+    else
+    if (step.equals("expect")){
+        checkCount(t, 4, 5);
+        for (int k = 0; k < sweep.getNumInstances(); k++){
+            checkExpected(t, k);
+        }
+    }
+    else
+    if (step.equals("vary")){
+        checkCount(t, 4, Integer.MAX_VALUE);
+        vary(t);
+    }
+    else
+    if (step.equals("report")){
+        checkCount(t, 3, 3);
+        report(t);
+    }
+    else
+    if (step.equals("pace")){
+        checkCount(t, 2, 2);
+        sweep.setSpeed(parseSpeed(t[1]));
+    }
+    else
+    if (step.equals("profile")){
+        checkCount(t, 2, 2);
+        for (int k = 0; k < sweep.getNumInstances(); k++){
+            for (int c : parseCores(t[1])){
+                sweep.getInstance(k).getCore(c).startProfile();
+            }
+        }
+        profiling = true;
+    }
+    else{
+        throw new IllegalArgumentException("unknown step " + t[0]);
+    }
+
+}//end of Scenario::runStep
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::startReplay
+//
+// Maps the capture named in the tokens of a replay step and starts feeding
+// its frames to the cores of every run. Any earlier replay feeding those
+// cores is stopped.
+//
+
+private void startReplay(String[] pTokens) throws IOException
+{
+
+    int[] cores = parseCores(pTokens[1]);
+
+    if (replay != null) {seekReplay(cores, -1);}
+
+    replay = new CaptureReplay(new File(file.getParentFile(), pTokens[3]),
+                    (int)parseNumber(pTokens[2]), (int)parseNumber(pTokens[4]),
+                    parseNumber(pTokens[5]));
+    replay.init();
+
+    seekReplay(cores, pTokens.length > 6 ? parseNumber(pTokens[6]) : 0);
+
+}//end of Scenario::startReplay
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::seekReplay
+//
+// Restarts the replay at pulse pPulse for pCores of every run, or stops it
+// if pPulse is -1.
+//
+
+private void seekReplay(int[] pCores, long pPulse)
+{
+
+    for (int k = 0; k < sweep.getNumInstances(); k++){
+        for (int c : pCores){
+            Core core = sweep.getInstance(k).getCore(c);
+            if (pPulse < 0) {replay.stop(core);}
+            else {replay.start(core, pPulse);}
+        }
+    }
+
+}//end of Scenario::seekReplay
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::sendPacket
+//
+// Builds a host packet from the tokens of a command step and delivers it to
+// every core -- the serial port is shared and each core ignores packets
+// addressed to the others.
+//
+
+private void sendPacket(String[] pTokens)
+{
+
+    int[] cores = parseCores(pTokens[1]);
+    if (cores.length != 1){
+        throw new IllegalArgumentException("a packet is sent to one core");
+    }
+
+    int[] data = new int[pTokens.length - 3];
+    for (int i = 0; i < data.length; i++){
+        data[i] = (int)parseNumber(pTokens[3 + i]);
+    }
+
+    byte[] packet = HostLink.buildPacket(cores[0],
+                                        (int)parseNumber(pTokens[2]), data);
+
+    for (int k = 0; k < sweep.getNumInstances(); k++){
+        Chip chip = sweep.getInstance(k);
+        for (int c = 0; c < chip.getNumCores(); c++){
+            C54xCore core = (C54xCore)chip.getCore(c);
+            for (byte b : packet) {core.hostReceive(b & 0xff);}
+        }
+    }
+
+}//end of Scenario::sendPacket
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::checkExpected
+//
+// Compares the data word named in the tokens of an expect step with the
+// expected value in run pRun and records a failure if they differ.
+//
+
+private void checkExpected(String[] pTokens, int pRun)
+{
+
+    int[] cores = parseCores(pTokens[1]);
+    int address = (int)parseNumber(pTokens[2]);
+    int expected = (int)parseNumber(pTokens[3]) & 0xffff;
+    int mask = pTokens.length > 4 ? (int)parseNumber(pTokens[4]) : 0xffff;
+
+    Chip chip = sweep.getInstance(pRun);
+
+    for (int c : cores){
+
+        int value = chip.getCore(c).data.peek(address);
+
+        if ((value & mask) != (expected & mask)){
+            failures.add(describeRun(pRun) + String.format(
+                    "core %c data 0x%04x: expected 0x%04x, found 0x%04x",
+                    'A' + c, address, expected & mask, value & mask));
+        }
+
+    }
+
+}//end of Scenario::checkExpected
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::vary
+//
+// Forks each run into one run for each value in the tokens of a vary step
+// and writes the value to the data word named in the step.
+//
+
+private void vary(String[] pTokens)
+{
+
+    if (!reportNames.isEmpty()){
+        throw new IllegalArgumentException("vary must come before report");
+    }
+
+    if (profiling){
+        throw new IllegalArgumentException("vary must come before profile");
+    }
+
+    int[] cores = parseCores(pTokens[1]);
+    int address = (int)parseNumber(pTokens[2]);
+
+    ArrayList<String> values = new ArrayList<String>();
+    for (int i = 3; i < pTokens.length; i++) {parseValues(pTokens[i], values);}
+
+    int m = values.size();
+
+    sweep.fork(m);
+
+    String[][] forked = new String[runValues.length * m][];
+
+    for (int k = 0; k < forked.length; k++){
+
+        //the copies of each run follow it in order of the values
+        String[] parent = runValues[k / m];
+        String value = values.get(k % m);
+
+        forked[k] = Arrays.copyOf(parent, parent.length + 1);
+        forked[k][parent.length] = value;
+
+        Chip chip = sweep.getInstance(k);
+        for (int c : cores){
+            chip.getCore(c).data.write16(address, (int)parseNumber(value));
+        }
+
+    }
+
+    runValues = forked;
+    variedNames.add(describeWord(pTokens[1], address));
+
+}//end of Scenario::vary
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::parseValues
+//
+// Adds the value or range of values in pText to pValues. A range is written
+// as first..last or first..last/step.
+//
+
+private static void parseValues(String pText, ArrayList<String> pValues)
+{
+
+    int dots = pText.indexOf("..");
+
+    if (dots < 0) {parseNumber(pText); pValues.add(pText); return;}
+
+    int slash = pText.indexOf('/', dots);
+    if (slash < 0) {slash = pText.length();}
+
+    long first = parseNumber(pText.substring(0, dots));
+    long last = parseNumber(pText.substring(dots + 2, slash));
+    long step = slash < pText.length()
+                                ? parseNumber(pText.substring(slash + 1)) : 1;
+
+    if (step <= 0 || last < first || (last - first) / step >= MAX_RANGE){
+        throw new IllegalArgumentException("bad range " + pText);
+    }
+
+    for (long v = first; v <= last; v += step) {pValues.add(Long.toString(v));}
+
+}//end of Scenario::parseValues
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::report
+//
+// Records the data word named in the tokens of a report step in each run for
+// the results table.
+//
+
+private void report(String[] pTokens)
+{
+
+    int[] cores = parseCores(pTokens[1]);
+    int address = (int)parseNumber(pTokens[2]);
+
+    for (int c : cores){
+
+        String[] values = new String[sweep.getNumInstances()];
+
+        for (int k = 0; k < values.length; k++){
+            int word = sweep.getInstance(k).getCore(c).data.peek(address);
+            values[k] = Integer.toString(word);
+        }
+
+        reportValues.add(values);
+        reportNames.add(describeWord(Character.toString((char)('A' + c)),
+                                                                    address));
+
+    }
+
+}//end of Scenario::report
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::buildResults
+//
+// Builds the lines of the results table from the reported words -- a
+// heading and a row for each run.
+//
+
+private void buildResults()
+{
+
+    if (reportNames.isEmpty()) {return;}
+
+    StringBuilder line = new StringBuilder();
+
+    for (String n : variedNames) {line.append(String.format("%14s", n));}
+    line.append(" |");
+    for (String n : reportNames) {line.append(String.format("%14s", n));}
+
+    results.add(line.toString());
+
+    for (int k = 0; k < runValues.length; k++){
+
+        line.setLength(0);
+
+        for (String v : runValues[k]) {line.append(String.format("%14s", v));}
+        line.append(" |");
+        for (String[] v : reportValues){
+            line.append(String.format("%14s", v[k]));
+        }
+
+        results.add(line.toString());
+
+    }
+
+}//end of Scenario::buildResults
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::describeRun
+//
+// Returns a prefix naming the values given to run pRun by the vary steps, or
+// an empty string if there are none.
+//
+
+private String describeRun(int pRun)
+{
+
+    if (variedNames.isEmpty()) {return("");}
+
+    StringBuilder sb = new StringBuilder("[");
+
+    for (int i = 0; i < variedNames.size(); i++){
+        if (i > 0) {sb.append(", ");}
+        sb.append(variedNames.get(i)).append('=').append(runValues[pRun][i]);
+    }
+
+    return(sb.append("] ").toString());
+
+}//end of Scenario::describeRun
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::describeWord
+//
+// Returns the name of the data word at pAddress of pCores as shown in the
+// report, such as A:0x2001.
+//
+
+private static String describeWord(String pCores, int pAddress)
+{
+
+    return(String.format("%s:0x%04x", pCores.toUpperCase(), pAddress));
+
+}//end of Scenario::describeWord
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::loadCapture
+//
+// Returns the words of the sample capture in pFile.
+//
+
+static short[] loadCapture(File pFile) throws IOException
+{
+
+    ArrayList<Short> words = new ArrayList<Short>();
+
+    if (pFile.getName().toLowerCase().endsWith(".bin")){
+
+        DataInputStream in = new DataInputStream(new FileInputStream(pFile));
+
+        try{
+            while (true) {words.add(in.readShort());}
+        }
+        catch(EOFException e){
+            //end of the capture
+        }
+        finally{
+            in.close();
+        }
+
+    }
+    else{
+
+        BufferedReader reader = new BufferedReader(
+                   new InputStreamReader(new FileInputStream(pFile), "UTF-8"));
+
+        try{
+            String line;
+            while ((line = reader.readLine()) != null){
+                for (String s : line.trim().split("[\\s,]+")){
+                    if (!s.isEmpty()) {words.add((short)parseNumber(s));}
+                }
+            }
+        }
+        catch(IllegalArgumentException e){
+            throw new IOException(pFile.getName() + ": " + e.getMessage());
+        }
+        finally{
+            reader.close();
+        }
+
+    }
+
+    short[] array = new short[words.size()];
+    for (int i = 0; i < array.length; i++) {array[i] = words.get(i);}
+
+    return(array);
+
+}//end of Scenario::loadCapture
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::parseCores
+//
+// Returns the core indices for pCores -- letters A-D or the word all.
+//
+
+private int[] parseCores(String pCores)
+{
+
+    int numCores = sweep.getInstance(0).getNumCores();
+
+    if (pCores.equalsIgnoreCase("all")){
+        int[] all = new int[numCores];
+        for (int i = 0; i < all.length; i++) {all[i] = i;}
+        return(all);
+    }
+
+    int[] cores = new int[pCores.length()];
+
+    for (int i = 0; i < cores.length; i++){
+        cores[i] = Character.toUpperCase(pCores.charAt(i)) - 'A';
+        if (cores[i] < 0 || cores[i] >= numCores){
+            throw new IllegalArgumentException("bad core " + pCores);
+        }
+    }
+
+    return(cores);
+
+}//end of Scenario::parseCores
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::parseNumber
+//
+// Returns the value of pText, which is decimal or hex with a leading 0x.
+//
+
+static long parseNumber(String pText)
+{
+
+    try{
+        if (pText.startsWith("0x") || pText.startsWith("0X")){
+            return(Long.parseLong(pText.substring(2), 16));
+        }
+        return(Long.parseLong(pText));
+    }
+    catch(NumberFormatException e){
+        throw new IllegalArgumentException("bad number " + pText);
+    }
+
+}//end of Scenario::parseNumber
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::parseSpeed
+//
+// Returns the speed relative to real time given by pText for a pace step --
+// 0 for the word fast.
+//
+
+private static double parseSpeed(String pText)
+{
+
+    if (pText.equalsIgnoreCase("fast")) {return(0);}
+
+    try{
+        double speed = Double.parseDouble(pText);
+        if (speed >= 0 && !Double.isInfinite(speed)) {return(speed);}
+    }
+    catch(NumberFormatException e){
+        //reported below
+    }
+
+    throw new IllegalArgumentException("bad speed " + pText);
+
+}//end of Scenario::parseSpeed
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::checkCount
+//
+// Throws an exception if the number of tokens in pTokens is not from pMin
+// to pMax.
+//
+
+private static void checkCount(String[] pTokens, int pMin, int pMax)
+{
+
+    if (pTokens.length < pMin || pTokens.length > pMax){
+        throw new IllegalArgumentException("wrong number of values for "
+                                                                + pTokens[0]);
+    }
+
+}//end of Scenario::checkCount
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Scenario::getName
+//
+// Returns the name of the scenario.
+//
+
+public String getName()
+{
+
+    return(name);
+
+}//end of Scenario::getName
+//-----------------------------------------------------------------------------
+
+}//end of class Scenario
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,1041 @@
+/******************************************************************************
+* Title: Universal IDE - AsmSource.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class reads the source of a program written for the TI assembler and
+* splits each line into an AsmStatement, so that the tools which examine the
+* source need not each parse it.
+*
+* The source follows the rules of the TI assembler: a label starts in the
+* first column and may end with a colon, a comment starts with ';' anywhere
+* or with '*' in the first column, and the operands are separated by commas.
+* Files named by .include or .copy are read in place, relative to the folder
+* of the file naming them -- a file which cannot be found is noted as a
+* warning and left out.
+*
+* Local labels, such as $1, may be used again after a .newblock directive, a
+* change of section, or the start or end of an included file. Each is given
+* a name unique to its block by adding "@" and the block number, both where
+* it is defined and where it is used. A '$' alone stands for the address of
+* the statement it is in and is left as it is.
+*
+* The symbols set by .equ and .set are kept so that expressions can be
+* evaluated. The lines between .if and .endif are left out if the condition
+* is false; a condition which cannot be evaluated, such as one using a
+* symbol from a missing include file, is noted as a warning and taken as
+* true so that the code is examined rather than missed.
+*
+* A digest of the text of each file read is kept, so that a tool may keep
+* its results for a file and use them again while the file is unchanged.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//-----------------------------------------------------------------------------
+// class AsmSource
+//
+
+public class AsmSource
+{
+
+    ArrayList<AsmStatement> statements;
+
+    //the statement index of each label
+    HashMap<String, Integer> labels;
+
+    //the expression of each symbol set by .equ or .set
+    HashMap<String, String> symbols;
+
+    ArrayList<String> warnings;
+
+    //the number of the current block of local labels
+    int block;
+
+    //for each .if being read, whether its lines are kept -- bit 0 is set if
+    //the lines are being kept, bit 1 if any earlier part of the .if was kept
+    ArrayList<Integer> conditions;
+
+    //the section being read, as named by .text, .data, or .sect
+    String section;
+    boolean inDataSection;
+
+    //the digest of the text of each file read, in the order read
+    LinkedHashMap<String, String> fileDigests;
+
+    //include files which were read, to catch a file including itself
+    HashSet<String> including;
+
+    static final Pattern LOCAL_LABEL = Pattern.compile("\\$\\d+");
+
+    static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    static final int KEEP = 1;
+    static final int KEPT = 2;
+
+//-----------------------------------------------------------------------------
+// AsmSource::AsmSource (constructor)
+//
+
+public AsmSource()
+{
+
+}//end of AsmSource::AsmSource (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    statements = new ArrayList<AsmStatement>();
+    labels = new HashMap<String, Integer>();
+    symbols = new HashMap<String, String>();
+    warnings = new ArrayList<String>();
+    conditions = new ArrayList<Integer>();
+    including = new HashSet<String>();
+    fileDigests = new LinkedHashMap<String, String>();
+
+    section = ".text";
+
+}//end of AsmSource::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::load
+//
+// Reads the source file pFile and the files it includes.
+//
+// Throws an IOException if pFile cannot be read.
+//
+
+public void load(File pFile) throws IOException
+{
+
+    read(pFile.getPath(), new InputStreamReader(
+                            new FileInputStream(pFile), "ISO-8859-1"));
+
+}//end of AsmSource::load
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::parse
+//
+// Reads the source pText, which is the contents of the file pFile, such as
+// the text being edited, and the files it includes.
+//
+
+public void parse(String pFile, String pText)
+{
+
+    try{
+        read(pFile, new StringReader(pText));
+    }
+    catch(IOException e){
+        //cannot happen when reading from a string
+    }
+
+}//end of AsmSource::parse
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::read
+//
+// Reads the lines of the file pFile from pReader, which is closed when done.
+//
+// Throws an IOException if the lines cannot be read.
+//
+
+void read(String pFile, Reader pReader) throws IOException
+{
+
+    BufferedReader reader = new BufferedReader(pReader);
+
+    including.add(new File(pFile).getAbsolutePath());
+    block++;
+
+    int depth = conditions.size();
+
+    MessageDigest digest = null;
+    try{
+        digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch(NoSuchAlgorithmException e){
+        //without a digest the file is always taken as changed
+    }
+
+    try{
+
+        String text;
+        int line = 0;
+
+        while ((text = reader.readLine()) != null){
+            line++;
+            if (digest != null){
+                digest.update((text + "\n").getBytes(LATIN_1));
+            }
+            parseLine(pFile, line, text);
+        }
+
+        if (digest != null){
+            fileDigests.put(pFile, toHex(digest.digest()));
+        }
+
+    }
+    finally{
+        reader.close();
+        including.remove(new File(pFile).getAbsolutePath());
+        block++;
+    }
+
+    if (conditions.size() > depth){
+        warnings.add(pFile + ": .if without .endif");
+        while (conditions.size() > depth){
+            conditions.remove(conditions.size() - 1);
+        }
+    }
+
+}//end of AsmSource::read
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::parseLine
+//
+// Splits line number pLine of pFile, the text pText, into a statement and
+// adds it unless it is in the false part of an .if. Directives which affect
+// the reading of the source are acted upon.
+//
+
+void parseLine(String pFile, int pLine, String pText)
+{
+
+    AsmStatement s = new AsmStatement(pFile, pLine, pText);
+    s.init();
+
+    //a '*' in the first column makes the whole line a comment
+
+    if (pText.startsWith("*")){
+        s.comment = pText.substring(1);
+        if (isKept()) {add(s);}
+        return;
+    }
+
+    int semicolon = findOutsideQuotes(pText, ';');
+    String code = pText;
+    if (semicolon >= 0){
+        s.comment = pText.substring(semicolon + 1);
+        code = pText.substring(0, semicolon);
+    }
+
+    //a label starts in the first column
+
+    int p = 0;
+
+    if (code.length() > 0 && !Character.isWhitespace(code.charAt(0))
+                                                  && !code.startsWith("||")){
+        while (p < code.length() && !Character.isWhitespace(code.charAt(p))
+                                                  && code.charAt(p) != ':'){
+            p++;
+        }
+        s.label = code.substring(0, p);
+        if (p < code.length() && code.charAt(p) == ':'){
+            s.labelHasColon = true;
+            p++;
+        }
+    }
+
+    String rest = code.substring(p).trim();
+
+    if (rest.startsWith("||")){
+        s.parallel = true;
+        rest = rest.substring(2).trim();
+    }
+
+    if (!rest.isEmpty()){
+        String[] parts = rest.split("\\s+", 2);
+        s.mnemonic = parts[0].toLowerCase();
+        if (parts.length > 1) {s.operands = splitOperands(parts[1]);}
+    }
+
+    //conditional assembly is acted upon even in lines which are left out
+
+    if (s.mnemonic != null && s.mnemonic.matches("\\.(if|elseif|else|endif)")){
+        doConditional(s);
+        return;
+    }
+
+    if (!isKept()) {return;}
+
+    if (s.mnemonic != null) {doDirective(s);}
+
+    //local labels are renamed after any .newblock on their line
+
+    if (s.label != null && s.label.startsWith("$")){
+        s.label = localName(s.label);
+    }
+
+    for (int i = 0; i < s.operands.length; i++){
+        s.operands[i] = renameLocals(s.operands[i]);
+    }
+
+    s.section = section;
+    s.inDataSection = inDataSection;
+
+    add(s);
+
+    if (s.mnemonic != null && (s.mnemonic.equals(".include")
+                                          || s.mnemonic.equals(".copy"))){
+        include(s);
+    }
+
+}//end of AsmSource::parseLine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::add
+//
+// Adds pStatement to the list and records its label.
+//
+
+void add(AsmStatement pStatement)
+{
+
+    pStatement.index = statements.size();
+    statements.add(pStatement);
+
+    if (pStatement.label == null || pStatement.label.isEmpty()) {return;}
+
+    if (labels.containsKey(pStatement.label)
+                        && !".set".equals(pStatement.mnemonic)){
+        warnings.add(pStatement.file + ":" + pStatement.line
+                    + ": label " + pStatement.label + " is defined again");
+        return;
+    }
+
+    labels.put(pStatement.label, pStatement.index);
+
+}//end of AsmSource::add
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::doDirective
+//
+// Acts on the directive of pStatement if it affects the reading of the
+// source: symbols, sections, and the blocks of local labels.
+//
+
+void doDirective(AsmStatement pStatement)
+{
+
+    String m = pStatement.mnemonic;
+
+    if ((m.equals(".equ") || m.equals(".set")) && pStatement.label != null){
+        symbols.put(pStatement.label, pStatement.getOperand(0));
+    }
+    else
+    if (m.equals(".newblock")){
+        block++;
+    }
+    else
+    if (m.equals(".text") || m.equals(".sect")){
+        block++;
+        section = m.equals(".text") ? m
+                            : pStatement.getOperand(0).replace("\"", "");
+        inDataSection = false;
+    }
+    else
+    if (m.equals(".data")){
+        block++;
+        section = m;
+        inDataSection = true;
+    }
+
+}//end of AsmSource::doDirective
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::doConditional
+//
+// Acts on the .if, .elseif, .else, or .endif directive of pStatement.
+//
+
+void doConditional(AsmStatement pStatement)
+{
+
+    String m = pStatement.mnemonic;
+    int last = conditions.size() - 1;
+
+    if (m.equals(".if")){
+        //the lines within an .if which is being left out are all left out,
+        //as are those of its .else
+        if (!isKept()) {conditions.add(KEPT);}
+        else if (isTrue(pStatement)) {conditions.add(KEEP | KEPT);}
+        else {conditions.add(0);}
+        return;
+    }
+
+    if (last < 0){
+        warnings.add(pStatement.file + ":" + pStatement.line + ": "
+                                          + m + " without .if");
+        return;
+    }
+
+    int state = conditions.get(last);
+
+    if (m.equals(".endif")){
+        conditions.remove(last);
+    }
+    else
+    if ((state & KEPT) != 0){
+        conditions.set(last, KEPT);
+    }
+    else
+    if (m.equals(".else") || isTrue(pStatement)){
+        conditions.set(last, KEEP | KEPT);
+    }
+
+}//end of AsmSource::doConditional
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::isTrue
+//
+// Returns true if the condition of the .if or .elseif in pStatement is not
+// zero or cannot be evaluated.
+//
+
+boolean isTrue(AsmStatement pStatement)
+{
+
+    Long value = evaluate(pStatement.getOperand(0));
+
+    if (value == null){
+        warnings.add(pStatement.file + ":" + pStatement.line
+            + ": cannot evaluate " + pStatement.getOperand(0)
+            + " -- taken as true");
+        return(true);
+    }
+
+    return(value != 0);
+
+}//end of AsmSource::isTrue
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::isKept
+//
+// Returns true if the lines being read are not in the false part of an .if.
+//
+
+boolean isKept()
+{
+
+    return(conditions.isEmpty()
+                        || (conditions.get(conditions.size() - 1) & KEEP) != 0);
+
+}//end of AsmSource::isKept
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::include
+//
+// Reads the file named by the .include or .copy in pStatement, which is
+// looked for in the folder of the file naming it.
+//
+
+void include(AsmStatement pStatement)
+{
+
+    String name = pStatement.getOperand(0).replace("\"", "");
+
+    File file = new File(name);
+    if (!file.isAbsolute()){
+        file = new File(new File(pStatement.file).getAbsoluteFile()
+                                                    .getParentFile(), name);
+    }
+
+    String where = pStatement.file + ":" + pStatement.line + ": ";
+
+    if (!file.exists()){
+        warnings.add(where + "include file " + name + " not found");
+        return;
+    }
+
+    if (including.contains(file.getAbsolutePath())){
+        warnings.add(where + name + " includes itself");
+        return;
+    }
+
+    try{
+        boolean data = inDataSection;
+        String sect = section;
+        load(file);
+        inDataSection = data; section = sect;
+    }
+    catch(IOException e){
+        warnings.add(where + "cannot read " + name);
+    }
+
+}//end of AsmSource::include
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::localName
+//
+// Returns the name of the local label pLabel unique to the current block.
+//
+
+String localName(String pLabel)
+{
+
+    return(pLabel + "@" + block);
+
+}//end of AsmSource::localName
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::renameLocals
+//
+// Returns pOperand with each local label in it renamed for the current
+// block.
+//
+
+String renameLocals(String pOperand)
+{
+
+    if (pOperand.indexOf('$') < 0) {return(pOperand);}
+
+    Matcher m = LOCAL_LABEL.matcher(pOperand);
+    StringBuffer sb = new StringBuffer();
+
+    while (m.find()){
+        m.appendReplacement(sb, Matcher.quoteReplacement(
+                                                    localName(m.group())));
+    }
+    m.appendTail(sb);
+
+    return(sb.toString());
+
+}//end of AsmSource::renameLocals
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::splitOperands
+//
+// Returns the operands in pText, which are separated by commas which are not
+// within quotes or parentheses.
+//
+
+static String[] splitOperands(String pText)
+{
+
+    ArrayList<String> operands = new ArrayList<String>();
+
+    int depth = 0, start = 0;
+    char quote = 0;
+
+    for (int i = 0; i < pText.length(); i++){
+        char c = pText.charAt(i);
+        if (quote != 0) {if (c == quote) {quote = 0;} continue;}
+        if (c == '"' || c == '\'') {quote = c;}
+        else if (c == '(') {depth++;}
+        else if (c == ')') {depth--;}
+        else
+        if (c == ',' && depth == 0){
+            operands.add(pText.substring(start, i).trim());
+            start = i + 1;
+        }
+    }
+
+    operands.add(pText.substring(start).trim());
+
+    return(operands.toArray(new String[operands.size()]));
+
+}//end of AsmSource::splitOperands
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::findOutsideQuotes
+//
+// Returns the position of the first pChar in pText which is not within
+// quotes, or -1 if there is none.
+//
+
+static int findOutsideQuotes(String pText, char pChar)
+{
+
+    char quote = 0;
+
+    for (int i = 0; i < pText.length(); i++){
+        char c = pText.charAt(i);
+        if (quote != 0) {if (c == quote) {quote = 0;} continue;}
+        if (c == pChar) {return(i);}
+        if (c == '"' || c == '\'') {quote = c;}
+    }
+
+    return(-1);
+
+}//end of AsmSource::findOutsideQuotes
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::evaluate
+//
+// Returns the value of the expression pText, which may use numbers written
+// as the TI assembler allows -- such as 12, 0ch, 0x0c, and 1100b -- and the
+// symbols set by .equ and .set.
+//
+// Returns null if the expression uses a symbol which is not known or cannot
+// be read.
+//
+
+public Long evaluate(String pText)
+{
+
+    Expression e = new Expression(pText, 0);
+
+    try{
+        long value = e.parseOr();
+        e.skipSpaces();
+        if (e.pos < pText.length()) {return(null);}
+        return(value);
+    }
+    catch(NumberFormatException ex){
+        return(null);
+    }
+
+}//end of AsmSource::evaluate
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::define
+//
+// Sets the symbol pSymbol to pValue, such as the address of a label found by
+// an assembler, so that expressions using it can be evaluated.
+//
+
+public void define(String pSymbol, long pValue)
+{
+
+    symbols.put(pSymbol, Long.toString(pValue));
+
+}//end of AsmSource::define
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::isDefined
+//
+// Returns true if pSymbol has been set by .equ, .set, or define.
+//
+
+public boolean isDefined(String pSymbol)
+{
+
+    return(symbols.containsKey(pSymbol));
+
+}//end of AsmSource::isDefined
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::getStatements
+//
+// Returns the statements in the order they were read.
+//
+
+public ArrayList<AsmStatement> getStatements()
+{
+
+    return(statements);
+
+}//end of AsmSource::getStatements
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::getStatement
+//
+// Returns the statement at pIndex.
+//
+
+public AsmStatement getStatement(int pIndex)
+{
+
+    return(statements.get(pIndex));
+
+}//end of AsmSource::getStatement
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::findLabel
+//
+// Returns the index of the statement labeled pLabel, or -1 if there is none.
+//
+
+public int findLabel(String pLabel)
+{
+
+    Integer index = labels.get(pLabel);
+
+    return(index == null ? -1 : index);
+
+}//end of AsmSource::findLabel
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::nextInstruction
+//
+// Returns the index of the first instruction at or after pIndex which is not
+// executed in parallel with the one before it, or -1 if there is none.
+// Stops at any directive which places data.
+//
+
+public int nextInstruction(int pIndex)
+{
+
+    for (int i = pIndex; i < statements.size(); i++){
+        AsmStatement s = statements.get(i);
+        if (s.isInstruction() && !s.parallel) {return(i);}
+        if (s.isDirective() && isDataDirective(s.mnemonic)) {return(-1);}
+    }
+
+    return(-1);
+
+}//end of AsmSource::nextInstruction
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::isDataDirective
+//
+// Returns true if pDirective places data or changes the section, so that
+// execution cannot run through it.
+//
+
+static boolean isDataDirective(String pDirective)
+{
+
+    return(pDirective.matches(
+        "\\.(word|int|short|long|byte|char|string|pstring|float|xfloat"
+        + "|field|space|bes|text|data|sect)"));
+
+}//end of AsmSource::isDataDirective
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::isRoutineLabel
+//
+// Returns true if pStatement has the label of a routine -- a label ending
+// with a colon which is not local, on code rather than data.
+//
+
+public boolean isRoutineLabel(AsmStatement pStatement)
+{
+
+    return(pStatement.label != null && pStatement.labelHasColon
+                && !pStatement.label.startsWith("$")
+                && !pStatement.inDataSection && !pStatement.isDirective()
+                && nextInstruction(pStatement.index) >= 0);
+
+}//end of AsmSource::isRoutineLabel
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::getFiles
+//
+// Returns the paths of the files read, in the order they were read.
+//
+
+public ArrayList<String> getFiles()
+{
+
+    return(new ArrayList<String>(fileDigests.keySet()));
+
+}//end of AsmSource::getFiles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::getFileDigest
+//
+// Returns the SHA-1 digest of the text of the file pFile as read, in hex, or
+// null if the file was not read.
+//
+
+public String getFileDigest(String pFile)
+{
+
+    return(fileDigests.get(pFile));
+
+}//end of AsmSource::getFileDigest
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::toHex
+//
+// Returns pBytes as a string of hex digits.
+//
+
+static String toHex(byte[] pBytes)
+{
+
+    StringBuilder hex = new StringBuilder();
+
+    for (byte b : pBytes) {hex.append(String.format("%02x", b & 0xff));}
+
+    return(hex.toString());
+
+}//end of AsmSource::toHex
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmSource::getWarnings
+//
+// Returns the problems found while reading, each with its file and line.
+//
+
+public ArrayList<String> getWarnings()
+{
+
+    return(warnings);
+
+}//end of AsmSource::getWarnings
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+// class Expression
+//
+// Evaluates an expression by recursive descent, from the lowest precedence
+// operators to the highest. Throws a NumberFormatException for anything it
+// cannot evaluate.
+//
+
+class Expression
+{
+
+    String text;
+    int pos;
+
+    //the depth of symbols being evaluated, to stop a symbol defined by
+    //itself
+    int depth;
+
+//-----------------------------------------------------------------------------
+// Expression::Expression (constructor)
+//
+
+Expression(String pText, int pDepth)
+{
+
+    text = pText; depth = pDepth;
+
+}//end of Expression::Expression (constructor)
+//-----------------------------------------------------------------------------
+
+long parseOr()
+{
+    long v = parseXor();
+    while (take("|")) {v |= parseXor();}
+    return(v);
+}
+
+long parseXor()
+{
+    long v = parseAnd();
+    while (take("^")) {v ^= parseAnd();}
+    return(v);
+}
+
+long parseAnd()
+{
+    long v = parseShift();
+    while (take("&")) {v &= parseShift();}
+    return(v);
+}
+
+long parseShift()
+{
+    long v = parseSum();
+    while (true){
+        if (take("<<")) {v <<= parseSum();}
+        else if (take(">>")) {v >>= parseSum();}
+        else {return(v);}
+    }
+}
+
+long parseSum()
+{
+    long v = parseProduct();
+    while (true){
+        if (take("+")) {v += parseProduct();}
+        else if (take("-")) {v -= parseProduct();}
+        else {return(v);}
+    }
+}
+
+long parseProduct()
+{
+    long v = parseUnary();
+    while (true){
+        if (take("*")) {v *= parseUnary();}
+        else
+        if (take("/") || take("%")){
+            boolean divide = text.charAt(pos - 1) == '/';
+            long d = parseUnary();
+            if (d == 0) {throw new NumberFormatException("divide by zero");}
+            v = divide ? v / d : v % d;
+        }
+        else {return(v);}
+    }
+}
+
+long parseUnary()
+{
+    if (take("-")) {return(-parseUnary());}
+    if (take("+")) {return(parseUnary());}
+    if (take("~")) {return(~parseUnary());}
+    if (take("!")) {return(parseUnary() == 0 ? 1 : 0);}
+    return(parseTerm());
+}
+
+//-----------------------------------------------------------------------------
+// Expression::parseTerm
+//
+// Returns the value of a parenthesized expression, a number, a character
+// constant, or a symbol.
+//
+
+long parseTerm()
+{
+
+    skipSpaces();
+
+    if (take("(")){
+        long v = parseOr();
+        if (!take(")")) {throw new NumberFormatException("missing )");}
+        return(v);
+    }
+
+    if (pos + 2 < text.length() && text.charAt(pos) == '\''
+                                           && text.charAt(pos + 2) == '\''){
+        pos += 3;
+        return(text.charAt(pos - 2));
+    }
+
+    int start = pos;
+    while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos))
+             || text.charAt(pos) == '_' || text.charAt(pos) == '$'
+             || text.charAt(pos) == '.' || text.charAt(pos) == '@')){
+        pos++;
+    }
+
+    String token = text.substring(start, pos);
+
+    if (token.isEmpty()) {throw new NumberFormatException("no value");}
+
+    if (Character.isDigit(token.charAt(0))) {return(parseNumber(token));}
+
+    String value = symbols.get(token);
+
+    if (value == null || depth > 32){
+        throw new NumberFormatException("unknown symbol " + token);
+    }
+
+    Expression e = new Expression(value, depth + 1);
+    long v = e.parseOr();
+    e.skipSpaces();
+    if (e.pos < value.length()) {throw new NumberFormatException(value);}
+
+    return(v);
+
+}//end of Expression::parseTerm
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Expression::parseNumber
+//
+// Returns the value of the number pToken -- decimal, hex with an h suffix
+// or 0x prefix, binary with a b suffix, or octal with a q suffix.
+//
+
+long parseNumber(String pToken)
+{
+
+    String t = pToken.toLowerCase();
+
+    if (t.startsWith("0x")) {return(Long.parseLong(t.substring(2), 16));}
+    if (t.endsWith("h")){
+        return(Long.parseLong(t.substring(0, t.length() - 1), 16));
+    }
+    if (t.endsWith("b")){
+        return(Long.parseLong(t.substring(0, t.length() - 1), 2));
+    }
+    if (t.endsWith("q")){
+        return(Long.parseLong(t.substring(0, t.length() - 1), 8));
+    }
+
+    return(Long.parseLong(t));
+
+}//end of Expression::parseNumber
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Expression::take
+//
+// Skips spaces and returns true and moves past pOperator if it is next.
+//
+
+boolean take(String pOperator)
+{
+
+    skipSpaces();
+
+    if (!text.startsWith(pOperator, pos)) {return(false);}
+
+    pos += pOperator.length();
+
+    return(true);
+
+}//end of Expression::take
+//-----------------------------------------------------------------------------
+
+void skipSpaces()
+{
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))){
+        pos++;
+    }
+}
+
+}//end of class Expression
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
+
+}//end of class AsmSource
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
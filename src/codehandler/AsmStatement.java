@@ -0,0 +1,159 @@
+/******************************************************************************
+* Title: Universal IDE - AsmStatement.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class holds one statement of assembler source as split up by
+* AsmSource: its label, its mnemonic or directive, its operands, and its
+* comment, along with the file and line it came from.
+*
+* A statement written on a line beginning with "||" is executed in parallel
+* with the statement before it, as in "st A, *AR4+ || ld *AR3+, A", and is
+* marked as parallel. Local labels, which begin with '$', are renamed by
+* AsmSource so that each is unique to its block -- the name as written is
+* kept in the text.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+//-----------------------------------------------------------------------------
+// class AsmStatement
+//
+
+public class AsmStatement
+{
+
+    //the file and line number the statement came from, the first line of a
+    //file being line 1
+    public String file;
+    public int line;
+
+    //the position of the statement in its AsmSource
+    public int index;
+
+    //the label, without any colon, or null if none -- local labels have been
+    //made unique to their block
+    public String label;
+    public boolean labelHasColon;
+
+    //the mnemonic or directive in lower case, or null if none
+    public String mnemonic;
+
+    //the operands with surrounding spaces removed
+    public String[] operands;
+
+    //the comment without its leading ';' or '*', or null if none
+    public String comment;
+
+    //true if the statement is executed in parallel with the one before it
+    public boolean parallel;
+
+    //the section the statement is in, as named by .text, .data, or .sect
+    public String section;
+
+    //true if the statement is in a section which holds data, such as .data
+    public boolean inDataSection;
+
+    //the text of the line as written
+    public String text;
+
+    static final String[] NO_OPERANDS = new String[0];
+
+//-----------------------------------------------------------------------------
+// AsmStatement::AsmStatement (constructor)
+//
+// Creates a statement from line pLine of the file pFile.
+//
+
+public AsmStatement(String pFile, int pLine, String pText)
+{
+
+    file = pFile; line = pLine; text = pText;
+
+}//end of AsmStatement::AsmStatement (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmStatement::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    operands = NO_OPERANDS;
+
+}//end of AsmStatement::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmStatement::isInstruction
+//
+// Returns true if the statement is a machine instruction rather than a
+// directive or a line holding only a label or a comment.
+//
+
+public boolean isInstruction()
+{
+
+    return(mnemonic != null && !mnemonic.startsWith("."));
+
+}//end of AsmStatement::isInstruction
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmStatement::isDirective
+//
+// Returns true if the statement is an assembler directive such as .word.
+//
+
+public boolean isDirective()
+{
+
+    return(mnemonic != null && mnemonic.startsWith("."));
+
+}//end of AsmStatement::isDirective
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmStatement::getOperand
+//
+// Returns the operand at pIndex, or an empty string if there are not that
+// many.
+//
+
+public String getOperand(int pIndex)
+{
+
+    return(pIndex < operands.length ? operands[pIndex] : "");
+
+}//end of AsmStatement::getOperand
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// AsmStatement::toString
+//
+// Returns the file, line, and text of the statement for messages.
+//
+
+@Override
+public String toString()
+{
+
+    return(file + ":" + line + ": " + text.trim());
+
+}//end of AsmStatement::toString
+//-----------------------------------------------------------------------------
+
+}//end of class AsmStatement
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
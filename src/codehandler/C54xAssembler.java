@@ -0,0 +1,2122 @@
+/******************************************************************************
+* Title: Universal IDE - C54xAssembler.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class assembles the source of a TMS320C54x program in two passes,
+* writing the program as an Intel format hex file which the simulator and
+* the chips can load, and a listing in the form written by the TI assembler
+* so that the program can be profiled and its coverage found.
+*
+* The first pass finds the size of each statement and so the offset of each
+* label in its section. The form of each instruction is chosen from its
+* operands as C54xTiming does, so the sizes do not depend on the values of
+* the labels and the tools which time the source agree with the program.
+* The sections are then placed and the second pass encodes each statement.
+*
+* The program is assembled as a whole rather than linked, so each section is
+* placed at an address given by setSectionStart. By default the reset
+* vectors are placed at the top of program memory, the code in the program
+* memory shared by the cores of each subsystem, and the initialized data in
+* the memory overlaid on the first pages of data space. The variables of
+* .bss follow the data, starting on a page of their own.
+*
+* The directives handled are those used by our programs: .mmregs, .include,
+* .copy, .equ, .set, .bss, .global, .def, .ref, .newblock, .text, .data,
+* .sect, .word, .int, .long, .byte, .string, .space, .align, and .end, with
+* local labels such as $1 and the conditional directives handled by
+* AsmSource. The instructions are those the simulator knows -- see
+* C54xInstructions.
+*
+* Each problem found is kept with its file and line so that the lines can be
+* marked in the editor. Nothing is written if any error is found.
+*
+* The assembler may be run without the user interface:
+*
+*   java codehandler.C54xAssembler <program.asm> [<program.hex>
+*                                                      [<program.lst>]]
+*
+* The exit status is 0 if the program assembled without error and 1
+* otherwise.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import dspsimulation.Instruction;
+import dspsimulation.ProgramImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import specificchips.C54xInstruction;
+
+//-----------------------------------------------------------------------------
+// class C54xAssembler
+//
+
+public class C54xAssembler
+{
+
+    String title;
+
+    AsmSource source;
+    C54xTiming timing;
+
+    ArrayList<Problem> problems;
+
+    //the address of each section given by setSectionStart
+    HashMap<String, Integer> sectionStarts;
+
+    //the size in words of each section, in the order first used, the
+    //statement which first used each, and the address each was placed at
+    LinkedHashMap<String, Integer> sectionSizes;
+    HashMap<String, AsmStatement> sectionUses;
+    HashMap<String, Integer> sectionBases;
+
+    //for each statement, by index: the section and offset of the space it
+    //takes or -1 if none, the words it takes, the form of an instruction,
+    //the index of the ld paired with an st, and the words assembled
+    String[] sections;
+    int[] offsets;
+    int[] sizes;
+    Instruction[] forms;
+    int[] partners;
+    int[][] code;
+
+    //the section and offset of each label and variable, and the address of
+    //each once the sections are placed
+    LinkedHashMap<String, String> symbolSections;
+    HashMap<String, Integer> symbolOffsets;
+    HashMap<String, Integer> addresses;
+
+    //the symbols named by .global, .def, and .ref, and where each was named
+    LinkedHashMap<String, AsmStatement> globals;
+
+    //the words of the program by address
+    TreeMap<Integer, Integer> image;
+
+    static final int PROGRAM_SIZE = 0x10000;
+    static final int PAGE_SIZE = 128;
+
+    //the default placing of the sections -- see the notes at the top
+    static final int VECTORS_START = 0xff80;
+    static final int TEXT_START = 0x8000;
+    static final int DATA_START = 0x0080;
+
+    static final String BSS = ".bss";
+
+    //the words placed in each record of the hex file
+    static final int WORDS_PER_RECORD = 16;
+
+    //the memory-mapped registers named by .mmregs
+    static final String[] MMR_NAMES = {
+        "IMR", "IFR", "", "", "", "", "ST0", "ST1", "AL", "AH", "AG", "BL",
+        "BH", "BG", "T", "TRN", "AR0", "AR1", "AR2", "AR3", "AR4", "AR5",
+        "AR6", "AR7", "SP", "BK", "BRC", "RSA", "REA", "PMST", "XPC", "",
+        "DRR20", "DRR10", "DXR20", "DXR10", "TIM", "PRD", "TCR", "",
+        "SWWSR", "BSCR", "", "SWCR", "HPIC", "", "", "", "DRR22", "DRR12",
+        "DXR22", "DXR12", "SPSA2", "SPSD2", "", "", "SPSA0", "SPSD0", "", "",
+        "GPIOCR", "GPIOSR", "CSIDR", "", "DRR21", "DRR11", "DXR21", "DXR11",
+        "", "", "", "", "SPSA1", "SPSD1", "", "", "", "", "", "", "", "", "",
+        "", "DMPREC", "DMSA", "DMSDI", "DMSDN", "CLKMD"};
+
+    //the code of each condition, which are ORed when more than one is given
+    static final HashMap<String, Integer> CONDITION_CODES =
+                                                new HashMap<String, Integer>();
+
+    //the status bits named by ssbx and rsbx: the register in bit 4, and the
+    //bit number in the low bits
+    static final HashMap<String, Integer> STATUS_BITS =
+                                                new HashMap<String, Integer>();
+
+    static{
+        String[] names = {"aeq", "aneq", "agt", "ageq", "alt", "aleq",
+            "aov", "anov", "beq", "bneq", "bgt", "bgeq", "blt", "bleq",
+            "bov", "bnov", "tc", "ntc", "c", "nc", "bio", "nbio", "unc"};
+        int[] codes = {0x45, 0x44, 0x46, 0x42, 0x43, 0x47, 0x70, 0x60,
+            0x4d, 0x4c, 0x4e, 0x4a, 0x4b, 0x4f, 0x78, 0x68, 0x30, 0x20, 0x0c,
+            0x08, 0x03, 0x02, 0x00};
+        for (int i = 0; i < names.length; i++){
+            CONDITION_CODES.put(names[i], codes[i]);
+        }
+
+        String[] bits = {"tc", "c", "ova", "ovb", "braf", "cpl", "xf", "hm",
+                   "intm", "ovm", "sxm", "c16", "frct", "cmpt"};
+        int[] values = {12, 11, 10, 9, 0x1f, 0x1e, 0x1d, 0x1c, 0x1b, 0x19,
+                   0x18, 0x17, 0x16, 0x15};
+        for (int i = 0; i < bits.length; i++){
+            STATUS_BITS.put(bits[i], values[i]);
+        }
+    }
+
+    //the indirect addressing modes, by what follows the register, and those
+    //of the dual operand instructions
+    static final Pattern INDIRECT = Pattern.compile(
+                            "(?i)\\*(\\+)?AR([0-7])(|-|\\+|-0B|-0|\\+0|\\+0B"
+                            + "|-%|-0%|\\+%|\\+0%|\\((.+)\\)(%?))");
+    static final Pattern ABSOLUTE = Pattern.compile("\\*\\((.+)\\)");
+    static final Pattern DUAL = Pattern.compile(
+                                        "(?i)\\*AR([2-5])(|-|\\+|\\+0%)");
+
+    static final String[] INDIRECT_MODES = {"", "-", "+", null, "-0b", "-0",
+                        "+0", "+0b", "-%", "-0%", "+%", "+0%"};
+    static final String[] DUAL_MODES = {"", "-", "+", "+0%"};
+
+    static final Pattern SYMBOL = Pattern.compile("[A-Za-z_$.][\\w$.@]*");
+
+    //the directives which only affect the listing, and are passed over
+    static final HashSet<String> IGNORED = new HashSet<String>(Arrays.asList(
+        ".title", ".version", ".width", ".length", ".list", ".nolist",
+        ".option", ".page", ".tab", ".sslist", ".ssnolist", ".mlist",
+        ".mnolist", ".drlist", ".drnolist", ".fclist", ".fcnolist"));
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::C54xAssembler (constructor)
+//
+// Creates an assembler for the program titled pTitle, usually the name of
+// its main source file.
+//
+
+public C54xAssembler(String pTitle)
+{
+
+    title = pTitle;
+
+}//end of C54xAssembler::C54xAssembler (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    problems = new ArrayList<Problem>();
+
+    sectionStarts = new HashMap<String, Integer>();
+    sectionStarts.put("vectors", VECTORS_START);
+    sectionStarts.put(".text", TEXT_START);
+    sectionStarts.put(".data", DATA_START);
+
+}//end of C54xAssembler::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::setSectionStart
+//
+// Places the section named pSection, such as .text or vectors, at pAddress.
+// The .bss section is in data space, the others in program space.
+//
+
+public void setSectionStart(String pSection, int pAddress)
+{
+
+    sectionStarts.put(pSection, pAddress);
+
+}//end of C54xAssembler::setSectionStart
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::assemble
+//
+// Reads the source file pFile and the files it includes and assembles them.
+// The problems found are kept -- see getProblems.
+//
+// Throws an IOException if pFile cannot be read.
+//
+
+public void assemble(File pFile) throws IOException
+{
+
+    AsmSource s = new AsmSource();
+    s.init();
+    s.load(pFile);
+
+    assemble(s);
+
+}//end of C54xAssembler::assemble
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::assemble
+//
+// Assembles the statements of pSource, which has been read. The labels
+// found are added to its symbols.
+//
+
+public void assemble(AsmSource pSource)
+{
+
+    source = pSource;
+
+    timing = new C54xTiming(source);
+    timing.init();
+
+    int count = source.getStatements().size();
+
+    sections = new String[count];
+    offsets = new int[count];
+    sizes = new int[count];
+    forms = new Instruction[count];
+    partners = new int[count];
+    code = new int[count][];
+    Arrays.fill(offsets, -1);
+    Arrays.fill(partners, -1);
+
+    sectionSizes = new LinkedHashMap<String, Integer>();
+    sectionUses = new HashMap<String, AsmStatement>();
+    sectionBases = new HashMap<String, Integer>();
+    symbolSections = new LinkedHashMap<String, String>();
+    symbolOffsets = new HashMap<String, Integer>();
+    addresses = new HashMap<String, Integer>();
+    globals = new LinkedHashMap<String, AsmStatement>();
+    image = new TreeMap<Integer, Integer>();
+
+    addSourceProblems();
+
+    layOut();
+    placeSections();
+    encode();
+    checkGlobals();
+
+}//end of C54xAssembler::assemble
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::addSourceProblems
+//
+// Adds the problems found while reading the source. A file which could not
+// be read or a label defined twice is an error, the rest are warnings.
+//
+
+void addSourceProblems()
+{
+
+    Pattern where = Pattern.compile("(.*?):(\\d+): (.*)");
+
+    for (String w : source.getWarnings()){
+
+        Problem p = new Problem();
+        Matcher m = where.matcher(w);
+
+        if (m.matches()){
+            p.file = m.group(1);
+            p.line = Integer.parseInt(m.group(2));
+            p.message = m.group(3);
+        }
+        else{
+            int colon = w.indexOf(": ");
+            p.file = colon < 0 ? title : w.substring(0, colon);
+            p.message = colon < 0 ? w : w.substring(colon + 2);
+        }
+
+        p.kind = p.message.matches(
+            ".*(not found|defined again|includes itself|cannot read).*")
+                                            ? Problem.ERROR : Problem.WARNING;
+
+        problems.add(p);
+
+    }
+
+}//end of C54xAssembler::addSourceProblems
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::layOut
+//
+// The first pass: finds the words each statement takes and the offset in
+// its section of each statement and label.
+//
+
+void layOut()
+{
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    for (int i = 0; i < statements.size(); i++){
+
+        AsmStatement s = statements.get(i);
+
+        if (s.mnemonic == null){
+            if (s.label != null) {defineLabel(s.label, s.section, s);}
+            continue;
+        }
+
+        if (s.isDirective()){
+            if (s.mnemonic.equals(".end")) {return;}
+            layOutDirective(s);
+            continue;
+        }
+
+        if (s.parallel){
+            if (!isPaired(i)){
+                error(s, "only an ld may be run in parallel, with an st of"
+                                                    + " an accumulator");
+            }
+            continue;
+        }
+
+        if (s.label != null) {defineLabel(s.label, s.section, s);}
+
+        Instruction form = selectForm(s);
+        if (form == null) {continue;}
+
+        forms[i] = form;
+
+        int words = form.numWords;
+        for (String o : s.operands){
+            if (o.startsWith("*") && o.indexOf('(') >= 0) {words++;}
+        }
+
+        if (((C54xInstruction)form).format == C54xInstruction.ST_LD){
+            pairStore(s);
+        }
+
+        place(s, s.section, words);
+
+    }
+
+}//end of C54xAssembler::layOut
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::layOutDirective
+//
+// Finds the words taken by the directive pStatement, allots the variables
+// of .bss, and acts on .mmregs and .global.
+//
+
+void layOutDirective(AsmStatement pStatement)
+{
+
+    String m = pStatement.mnemonic;
+
+    if (m.matches("\\.(equ|set|include|copy|newblock)") || IGNORED.contains(m)){
+        return;
+    }
+
+    if (m.matches("\\.(text|data|sect)")){
+        if (pStatement.label != null){
+            defineLabel(pStatement.label, pStatement.section, pStatement);
+        }
+        return;
+    }
+
+    if (m.equals(".mmregs")){
+        for (int i = 0; i < MMR_NAMES.length; i++){
+            if (MMR_NAMES[i].isEmpty()) {continue;}
+            source.define(MMR_NAMES[i], i);
+            source.define(MMR_NAMES[i].toLowerCase(), i);
+        }
+        return;
+    }
+
+    if (m.matches("\\.(global|globl|def|ref)")){
+        for (String o : pStatement.operands){
+            if (!o.isEmpty() && !globals.containsKey(o)){
+                globals.put(o, pStatement);
+            }
+        }
+        return;
+    }
+
+    if (m.equals(".bss")){
+        allot(pStatement);
+        return;
+    }
+
+    if (pStatement.label != null){
+        defineLabel(pStatement.label, pStatement.section, pStatement);
+    }
+
+    try{
+
+        if (m.equals(".align")){
+            long boundary = pStatement.operands.length == 0 ? PAGE_SIZE
+                                : constant(pStatement.getOperand(0), 1, 0x8000);
+            if (Long.bitCount(boundary) != 1){
+                throw new AssemblyError(".align needs a power of 2");
+            }
+            Integer size = sectionSizes.get(pStatement.section);
+            int offset = size == null ? 0 : size;
+            int aligned = (int)((offset + boundary - 1) & -boundary);
+            place(pStatement, pStatement.section, aligned - offset);
+            sizes[pStatement.index] = 0;
+            return;
+        }
+
+        if (!isDataDirective(m)){
+            throw new AssemblyError("directive " + m + " is not supported");
+        }
+
+        int words = dataSize(pStatement);
+
+        place(pStatement, pStatement.section, words);
+
+        //the label of .bes is at its last word
+        if (m.equals(".bes") && pStatement.label != null && words > 0){
+            symbolOffsets.put(pStatement.label,
+                                        offsets[pStatement.index] + words - 1);
+        }
+
+    }
+    catch(AssemblyError e){
+        error(pStatement, e.getMessage());
+    }
+
+}//end of C54xAssembler::layOutDirective
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::allot
+//
+// Allots the words for the variable named by the .bss in pStatement, given
+// as: symbol, size in words [, blocking flag [, alignment]]. A variable
+// which is blocked does not cross a page boundary unless it is larger than
+// a page.
+//
+
+void allot(AsmStatement pStatement)
+{
+
+    String name = pStatement.getOperand(0);
+
+    try{
+
+        if (!SYMBOL.matcher(name).matches()){
+            throw new AssemblyError(".bss needs the name of a variable");
+        }
+
+        long words = constant(pStatement.getOperand(1), 0, PROGRAM_SIZE);
+
+        Integer size = sectionSizes.get(BSS);
+        int offset = size == null ? 0 : size;
+
+        if (pStatement.operands.length > 3){
+            long boundary = constant(pStatement.getOperand(3), 1, 0x8000);
+            if (Long.bitCount(boundary) != 1){
+                throw new AssemblyError(".bss alignment must be a power of 2");
+            }
+            offset = (int)((offset + boundary - 1) & -boundary);
+        }
+
+        if (pStatement.operands.length > 2
+                    && constant(pStatement.getOperand(2), 0, 0xffff) != 0
+                    && words <= PAGE_SIZE
+                    && offset % PAGE_SIZE + words > PAGE_SIZE){
+            offset = (offset / PAGE_SIZE + 1) * PAGE_SIZE;
+        }
+
+        if (!sectionSizes.containsKey(BSS)) {sectionUses.put(BSS, pStatement);}
+        sectionSizes.put(BSS, offset + (int)words);
+
+        defineLabel(name, BSS, pStatement);
+        symbolOffsets.put(name, offset);
+
+    }
+    catch(AssemblyError e){
+        error(pStatement, e.getMessage());
+    }
+
+}//end of C54xAssembler::allot
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::place
+//
+// Places the pWords words of pStatement at the end of pSection.
+//
+
+void place(AsmStatement pStatement, String pSection, int pWords)
+{
+
+    Integer size = sectionSizes.get(pSection);
+
+    if (size == null){
+        size = 0;
+        sectionUses.put(pSection, pStatement);
+    }
+
+    sections[pStatement.index] = pSection;
+    offsets[pStatement.index] = size;
+    sizes[pStatement.index] = pWords;
+
+    sectionSizes.put(pSection, size + pWords);
+
+}//end of C54xAssembler::place
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::defineLabel
+//
+// Records that the label pLabel of pStatement is at the end of pSection.
+//
+
+void defineLabel(String pLabel, String pSection, AsmStatement pStatement)
+{
+
+    if (symbolSections.containsKey(pLabel)){
+        //a label defined twice was noted as the source was read
+        if (pSection.equals(BSS)) {error(pStatement, pLabel
+                                                + " is defined again");}
+        return;
+    }
+
+    Integer size = sectionSizes.get(pSection);
+
+    symbolSections.put(pLabel, pSection);
+    symbolOffsets.put(pLabel, size == null ? 0 : size);
+
+}//end of C54xAssembler::defineLabel
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::selectForm
+//
+// Returns the form of the instruction in pStatement which its operands fit,
+// choosing the shortest as C54xTiming does, or null if there is none. A
+// number written where an address is expected is taken as one if no form
+// fits it as a number.
+//
+
+Instruction selectForm(AsmStatement pStatement)
+{
+
+    Instruction first =
+                    timing.instructionSet.findMnemonic(pStatement.mnemonic);
+
+    if (first == null){
+        error(pStatement, "unknown instruction " + pStatement.mnemonic);
+        return(null);
+    }
+
+    StringBuilder kinds = new StringBuilder();
+    for (String o : pStatement.operands) {kinds.append(timing.operandKind(o));}
+
+    Instruction form = findForm(first, kinds.toString());
+
+    if (form == null){
+        form = findForm(first, kinds.toString().replaceAll("[nh]", "m"));
+    }
+
+    if (form == null){
+        error(pStatement, "operands do not fit any form of "
+                                                      + pStatement.mnemonic);
+    }
+
+    return(form);
+
+}//end of C54xAssembler::selectForm
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::findForm
+//
+// Returns the shortest of the forms starting with pFirst whose operands
+// match the kinds pKinds -- see C54xTiming.operandKind -- or null if none
+// does.
+//
+
+static Instruction findForm(Instruction pFirst, String pKinds)
+{
+
+    Instruction best = null;
+
+    for (Instruction i = pFirst; i != null; i = i.nextForm){
+
+        if (!(i instanceof C54xInstruction)) {continue;}
+        int format = ((C54xInstruction)i).format;
+
+        if (format >= C54xTiming.FORMAT_PATTERNS.length
+                        || !pKinds.matches(C54xTiming.FORMAT_PATTERNS[format])){
+            continue;
+        }
+
+        if (best == null || i.numWords < best.numWords) {best = i;}
+
+    }
+
+    return(best);
+
+}//end of C54xAssembler::findForm
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::pairStore
+//
+// Pairs the st of an accumulator in pStatement with the ld which must run in
+// parallel with it on the next line.
+//
+
+void pairStore(AsmStatement pStatement)
+{
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    for (int i = pStatement.index + 1; i < statements.size(); i++){
+
+        AsmStatement s = statements.get(i);
+        if (s.mnemonic == null) {continue;}
+
+        if (s.parallel && s.mnemonic.equals("ld")){
+            partners[pStatement.index] = i;
+            return;
+        }
+
+        break;
+
+    }
+
+    error(pStatement, "st of an accumulator needs a parallel ld");
+
+}//end of C54xAssembler::pairStore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::isPaired
+//
+// Returns true if the statement at pIndex is the ld paired with an st.
+//
+
+boolean isPaired(int pIndex)
+{
+
+    for (int i = pIndex - 1; i >= 0; i--){
+        if (partners[i] == pIndex) {return(true);}
+        if (source.getStatement(i).mnemonic != null) {return(false);}
+    }
+
+    return(false);
+
+}//end of C54xAssembler::isPaired
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::placeSections
+//
+// Places each section at its given start and sets the address of each
+// label. Unless given, .bss starts on the first page after .data. Sections
+// which overlap or run past the end of memory are errors.
+//
+
+void placeSections()
+{
+
+    for (String name : sectionSizes.keySet()){
+
+        Integer start = sectionStarts.get(name);
+
+        if (start == null && name.equals(BSS)){
+            Integer data = sectionSizes.get(".data");
+            int end = sectionStarts.get(".data") + (data == null ? 0 : data);
+            start = (end + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+        }
+
+        if (start == null){
+            error(sectionUses.get(name), "no address is given for section "
+                                                                    + name);
+            continue;
+        }
+
+        sectionBases.put(name, start);
+
+        if (start + sectionSizes.get(name) > PROGRAM_SIZE){
+            error(sectionUses.get(name), "section " + name
+                                            + " runs past the end of memory");
+        }
+
+    }
+
+    //each section of the program is checked against those placed before
+    //it -- the variables of .bss are not part of the program
+
+    ArrayList<String> placed = new ArrayList<String>(sectionBases.keySet());
+    placed.remove(BSS);
+
+    for (int i = 0; i < placed.size(); i++){
+        for (int j = 0; j < i; j++){
+            String a = placed.get(i), b = placed.get(j);
+            int startA = sectionBases.get(a);
+            int endA = startA + sectionSizes.get(a);
+            int startB = sectionBases.get(b);
+            int endB = startB + sectionSizes.get(b);
+            if (startA < endB && startB < endA){
+                error(sectionUses.get(a), "section " + a
+                                                + " overlaps section " + b);
+            }
+        }
+    }
+
+    for (Map.Entry<String, String> e : symbolSections.entrySet()){
+        Integer base = sectionBases.get(e.getValue());
+        int address = (base == null ? 0 : base)
+                                            + symbolOffsets.get(e.getKey());
+        addresses.put(e.getKey(), address);
+        source.define(e.getKey(), address);
+    }
+
+}//end of C54xAssembler::placeSections
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::encode
+//
+// The second pass: assembles the words of each statement and places them in
+// the program.
+//
+
+void encode()
+{
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    for (int i = 0; i < statements.size(); i++){
+
+        AsmStatement s = statements.get(i);
+
+        if (offsets[i] < 0 || sizes[i] == 0) {continue;}
+        if (s.isInstruction() && forms[i] == null) {continue;}
+
+        Integer base = sectionBases.get(sections[i]);
+        if (base == null) {continue;}
+
+        int address = base + offsets[i];
+
+        //the symbol $ stands for the address of the statement
+        source.define("$", address);
+
+        try{
+            code[i] = s.isInstruction() ? encodeInstruction(s)
+                                        : encodeData(s);
+            if (code[i].length != sizes[i]){
+                throw new AssemblyError("size changed between passes");
+            }
+        }
+        catch(AssemblyError e){
+            error(s, e.getMessage());
+            code[i] = new int[sizes[i]];
+        }
+
+        for (int j = 0; j < code[i].length; j++){
+            image.put(address + j, code[i][j]);
+        }
+
+    }
+
+}//end of C54xAssembler::encode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::encodeInstruction
+//
+// Returns the words of the instruction in pStatement, the inverse of
+// C54xInstruction.decode. The Smem field of a form with a shift prefix is
+// in the prefix word, and a long offset word follows the opcode word(s) and
+// precedes any other extension word.
+//
+// Throws an AssemblyError if an operand is not valid.
+//
+
+int[] encodeInstruction(AsmStatement pStatement) throws AssemblyError
+{
+
+    C54xInstruction form = (C54xInstruction)forms[pStatement.index];
+    String[] o = pStatement.operands;
+
+    int op = form.opcode;
+    int smem = -1;
+    int ext = -1;
+
+    switch(form.format){
+
+        case C54xInstruction.NONE: break;
+
+        case C54xInstruction.SMEM: case C54xInstruction.MMR:
+            smem = smem(o[0]); break;
+
+        case C54xInstruction.SMEM_ACC: case C54xInstruction.SMEM_16_ACC:
+        case C54xInstruction.MMR_ACC:
+            smem = smem(o[0]); op |= accumulator(o[o.length - 1]) << 8;
+            break;
+
+        case C54xInstruction.SMEM_SHIFT_ACC:
+            smem = smem(o[0]);
+            op |= accumulator(o[2]) << 8 | constant(o[1], -16, 15) & 0x1f;
+            break;
+
+        case C54xInstruction.ACC_SMEM: case C54xInstruction.ACC_MMR:
+            op |= accumulator(o[0]) << 8; smem = smem(o[1]); break;
+
+        case C54xInstruction.ACC_SHIFT_SMEM:
+            op |= accumulator(o[0]) << 8 | constant(o[1], -16, 15) & 0x1f;
+            smem = smem(o[2]);
+            break;
+
+        case C54xInstruction.SMEM_LK:
+            smem = smem(o[0]); ext = longConstant(o[1]); break;
+
+        case C54xInstruction.LK_SMEM: case C54xInstruction.LK_MMR:
+            ext = longConstant(o[0]); smem = smem(o[1]); break;
+
+        case C54xInstruction.K8_ACC:
+            op |= constant(o[0], 0, 255) | accumulator(o[1]) << 8; break;
+
+        case C54xInstruction.K9_DP: op |= dataPage(o[0]); break;
+
+        case C54xInstruction.K5_ASM: op |= constant(o[0], -16, 15) & 0x1f;
+            break;
+
+        case C54xInstruction.K3_ARP: op |= constant(o[0], 0, 7); break;
+
+        case C54xInstruction.K8: op |= constant(o[0], 0, 255); break;
+
+        case C54xInstruction.LK: ext = longConstant(o[0]); break;
+
+        case C54xInstruction.ACC_LK:
+            op |= accumulator(o[0]) << 8; ext = longConstant(o[1]); break;
+
+        case C54xInstruction.LK_SHFT_SD: case C54xInstruction.LK_16_SD:
+            ext = longConstant(o[0]);
+            int shift = 0, first = 1;
+            if (!isAccumulator(o[1])){
+                if (form.format == C54xInstruction.LK_SHFT_SD){
+                    shift = (int)constant(o[1], 0, 15);
+                }
+                first = 2;
+            }
+            op |= shift | sourceAndDestination(form, o, first);
+            break;
+
+        case C54xInstruction.SRC_SHIFT_DST:
+            int amount = 0, next = 1;
+            if (o.length > 1 && !isAccumulator(o[1])){
+                amount = (int)constant(o[1], -16, 15); next = 2;
+            }
+            int src = accumulator(o[0]);
+            int dst = o.length > next ? accumulator(o[next]) : src;
+            op |= src << 9 | dst << 8 | amount & 0x1f;
+            break;
+
+        case C54xInstruction.SRC_DST:
+            op |= sourceAndDestination(form, o, 0); break;
+
+        case C54xInstruction.ACC: op |= accumulator(o[0]) << 8; break;
+
+        case C54xInstruction.PMAD: ext = address(o[0]); break;
+
+        case C54xInstruction.COND_PMAD:
+            ext = address(o[0]); op |= conditions(o, 1); break;
+
+        case C54xInstruction.COND: op |= conditions(o, 0); break;
+
+        case C54xInstruction.N_COND:
+            op |= (constant(o[0], 1, 2) - 1) << 9 | conditions(o, 1); break;
+
+        case C54xInstruction.SMEM_PMAD:
+            ext = address(o[0]); smem = smem(o[1]); break;
+
+        case C54xInstruction.XMEM_YMEM:
+            op |= dual(o[0]) << 4 | dual(o[1]); break;
+
+        case C54xInstruction.MMRX_MMRY:
+            op |= moveRegister(o[0]) << 4 | moveRegister(o[1]); break;
+
+        case C54xInstruction.ST_LD:
+            op |= storeAndLoad(pStatement); break;
+
+        case C54xInstruction.SBIT: op |= statusBit(o); break;
+
+        case C54xInstruction.IDLE:
+            if (o.length > 0) {op |= (constant(o[0], 1, 3) - 1) << 8;}
+            break;
+
+        default:
+            throw new AssemblyError("cannot encode " + pStatement.mnemonic);
+
+    }
+
+    ArrayList<Integer> words = new ArrayList<Integer>();
+
+    if (form.prefixMask != 0){
+        words.add(form.prefixOpcode | (smem < 0 ? 0 : smem & 0xff));
+        words.add(op);
+    }
+    else{
+        words.add(op | (smem < 0 ? 0 : smem & 0xff));
+    }
+
+    if (smem >= 0 && C54xInstruction.hasLongOffset(smem & 0xff)){
+        words.add((smem >>> 8) & 0xffff);
+    }
+
+    if (ext >= 0) {words.add(ext);}
+
+    int[] result = new int[words.size()];
+    for (int i = 0; i < result.length; i++) {result[i] = words.get(i);}
+
+    return(result);
+
+}//end of C54xAssembler::encodeInstruction
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::smem
+//
+// Returns the Smem field for the operand pOperand, with any long offset word
+// shifted into the upper bits as C54xInstruction.decode stores it. A symbol
+// or number is a direct address, of which the low 7 bits are used.
+//
+// Throws an AssemblyError if the operand is not valid.
+//
+
+int smem(String pOperand) throws AssemblyError
+{
+
+    Matcher m = ABSOLUTE.matcher(pOperand);
+    if (m.matches()){
+        return(0xf8 | (int)(evaluate(m.group(1)) & 0xffff) << 8);
+    }
+
+    m = INDIRECT.matcher(pOperand);
+
+    if (!m.matches()){
+        if (pOperand.startsWith("*")){
+            throw new AssemblyError("bad indirect address " + pOperand);
+        }
+        String text = pOperand.startsWith("@") ? pOperand.substring(1)
+                                                                : pOperand;
+        long value = evaluate(text);
+        if (value < 0 || value > 0xffff){
+            throw new AssemblyError(pOperand + " is not a data address");
+        }
+        return((int)value & 0x7f);
+    }
+
+    boolean preIncrement = m.group(1) != null;
+    int ar = Integer.parseInt(m.group(2));
+    String mode = m.group(3).toLowerCase();
+    int modify;
+
+    if (m.group(4) != null){
+        //a long offset -- *ARx(lk), *+ARx(lk), or *+ARx(lk)%
+        boolean circular = !m.group(5).isEmpty();
+        if (circular && !preIncrement){
+            throw new AssemblyError("bad indirect address " + pOperand);
+        }
+        modify = circular ? 14 : preIncrement ? 13 : 12;
+        int lk = (int)(evaluate(m.group(4)) & 0xffff);
+        return(0x80 | modify << 3 | ar | lk << 8);
+    }
+
+    if (preIncrement){
+        if (!mode.isEmpty()){
+            throw new AssemblyError("bad indirect address " + pOperand);
+        }
+        return(0x80 | 3 << 3 | ar);
+    }
+
+    modify = Arrays.asList(INDIRECT_MODES).indexOf(mode);
+
+    return(0x80 | modify << 3 | ar);
+
+}//end of C54xAssembler::smem
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::dual
+//
+// Returns the 4 bit Xmem or Ymem field for the operand pOperand of a dual
+// operand instruction, which may only use AR2-AR5.
+//
+// Throws an AssemblyError if the operand is not valid.
+//
+
+static int dual(String pOperand) throws AssemblyError
+{
+
+    Matcher m = DUAL.matcher(pOperand);
+
+    if (!m.matches()){
+        throw new AssemblyError(pOperand + " is not a dual operand address"
+                            + " -- use *ARx, *ARx-, *ARx+, or *ARx+0% of"
+                            + " AR2-AR5");
+    }
+
+    int modify = Arrays.asList(DUAL_MODES).indexOf(m.group(2));
+
+    return(modify << 2 | (Integer.parseInt(m.group(1)) - 2));
+
+}//end of C54xAssembler::dual
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::storeAndLoad
+//
+// Returns the fields of the st in pStatement and the ld run in parallel with
+// it: the source and destination accumulators and the Xmem and Ymem fields.
+//
+// Throws an AssemblyError if an operand is not valid.
+//
+
+int storeAndLoad(AsmStatement pStatement) throws AssemblyError
+{
+
+    int index = partners[pStatement.index];
+    if (index < 0) {throw new AssemblyError("st needs a parallel ld");}
+
+    AsmStatement load = source.getStatement(index);
+
+    if (load.operands.length != 2){
+        throw new AssemblyError("the parallel ld needs Xmem, dst");
+    }
+
+    return(accumulator(pStatement.getOperand(0)) << 9
+            | accumulator(load.operands[1]) << 8
+            | dual(load.operands[0]) << 4 | dual(pStatement.getOperand(1)));
+
+}//end of C54xAssembler::storeAndLoad
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::sourceAndDestination
+//
+// Returns the source and destination accumulator fields, bits 9 and 8, for
+// the accumulators in pOperands from pFirst on. With one, it is both source
+// and destination, unless the source bit is fixed by the opcode of pForm as
+// it is for ld, in which case it is the destination.
+//
+// Throws an AssemblyError if an operand is not valid.
+//
+
+static int sourceAndDestination(C54xInstruction pForm, String[] pOperands,
+                                            int pFirst) throws AssemblyError
+{
+
+    int src = accumulator(pOperands[pFirst]);
+    int count = pOperands.length - pFirst;
+
+    if ((pForm.opcodeMask & 0x200) != 0){
+        if (count > 1){
+            throw new AssemblyError(pForm.mnemonic + " takes one accumulator");
+        }
+        return(src << 8);
+    }
+
+    int dst = count > 1 ? accumulator(pOperands[pFirst + 1]) : src;
+
+    return(src << 9 | dst << 8);
+
+}//end of C54xAssembler::sourceAndDestination
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::isAccumulator
+//
+// Returns true if pOperand names accumulator A or B.
+//
+
+static boolean isAccumulator(String pOperand)
+{
+
+    return(pOperand.equalsIgnoreCase("a") || pOperand.equalsIgnoreCase("b"));
+
+}//end of C54xAssembler::isAccumulator
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::accumulator
+//
+// Returns 0 for accumulator A or 1 for B named by pOperand.
+//
+// Throws an AssemblyError if the operand is neither.
+//
+
+static int accumulator(String pOperand) throws AssemblyError
+{
+
+    if (!isAccumulator(pOperand)){
+        throw new AssemblyError("expected accumulator A or B, not "
+                                                                + pOperand);
+    }
+
+    return(pOperand.equalsIgnoreCase("a") ? 0 : 1);
+
+}//end of C54xAssembler::accumulator
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::conditions
+//
+// Returns the code for the conditions in pOperands from pFirst on, which are
+// ORed together.
+//
+// Throws an AssemblyError if a condition is not known.
+//
+
+static int conditions(String[] pOperands, int pFirst) throws AssemblyError
+{
+
+    int code = 0;
+
+    for (int i = pFirst; i < pOperands.length; i++){
+        Integer c = CONDITION_CODES.get(pOperands[i].toLowerCase());
+        if (c == null){
+            throw new AssemblyError("unknown condition " + pOperands[i]);
+        }
+        code |= c;
+    }
+
+    return(code);
+
+}//end of C54xAssembler::conditions
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::moveRegister
+//
+// Returns the code of the register named by pOperand for mvmm: 0-7 for
+// AR0-AR7 and 8 for SP.
+//
+// Throws an AssemblyError if the operand is not one of those.
+//
+
+int moveRegister(String pOperand) throws AssemblyError
+{
+
+    long value = evaluate(pOperand);
+
+    if (value >= 0x10 && value <= 0x18) {return((int)value - 0x10);}
+
+    throw new AssemblyError("mvmm only moves AR0-AR7 and SP, not "
+                                                                + pOperand);
+
+}//end of C54xAssembler::moveRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::statusBit
+//
+// Returns the fields of ssbx or rsbx for pOperands: the register in bit 11
+// and the bit number in the low bits. The bit may be named alone, or given
+// as the register number and the bit.
+//
+// Throws an AssemblyError if the bit is not known.
+//
+
+int statusBit(String[] pOperands) throws AssemblyError
+{
+
+    String name = pOperands[pOperands.length - 1];
+    Integer bit = STATUS_BITS.get(name.toLowerCase());
+
+    if (pOperands.length == 1){
+        if (bit == null){
+            throw new AssemblyError("unknown status bit " + name);
+        }
+        return((bit >> 4) << 11 | bit & 0xf);
+    }
+
+    int register = (int)constant(pOperands[0], 0, 1);
+    int number = bit != null ? bit & 0xf : (int)constant(name, 0, 15);
+
+    if (bit != null && bit >> 4 != register){
+        throw new AssemblyError(name + " is not in ST" + register);
+    }
+
+    return(register << 11 | number);
+
+}//end of C54xAssembler::statusBit
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::dataPage
+//
+// Returns the data page for ld #k9, DP. As with the TI assembler, the page
+// of an address is taken if the operand names a label or variable, while a
+// number is used as it is.
+//
+// Throws an AssemblyError if the operand is not valid.
+//
+
+int dataPage(String pOperand) throws AssemblyError
+{
+
+    String text = pOperand.startsWith("#") ? pOperand.substring(1) : pOperand;
+
+    if (isAddress(text, 0)) {return((int)(evaluate(text) >> 7) & 0x1ff);}
+
+    return((int)constant(text, 0, 0x1ff));
+
+}//end of C54xAssembler::dataPage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::isAddress
+//
+// Returns true if the expression pText uses a label or variable, directly or
+// through symbols set by .equ. pDepth stops a symbol defined by itself.
+//
+
+boolean isAddress(String pText, int pDepth)
+{
+
+    Matcher m = SYMBOL.matcher(pText);
+
+    while (m.find()){
+        //a match inside a number, such as the h of 0ch, is not a symbol
+        if (m.start() > 0 && Character.isLetterOrDigit(
+                                            pText.charAt(m.start() - 1))){
+            continue;
+        }
+        String name = m.group();
+        if (addresses.containsKey(name)) {return(true);}
+        String value = source.symbols.get(name);
+        if (value != null && pDepth < 32 && isAddress(value, pDepth + 1)){
+            return(true);
+        }
+    }
+
+    return(false);
+
+}//end of C54xAssembler::isAddress
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::address
+//
+// Returns the program address given by the expression pOperand.
+//
+// Throws an AssemblyError if it cannot be evaluated or is out of range.
+//
+
+int address(String pOperand) throws AssemblyError
+{
+
+    long value = evaluate(pOperand);
+
+    if (value < 0 || value > 0xffff){
+        throw new AssemblyError(pOperand + " is not a program address");
+    }
+
+    return((int)value);
+
+}//end of C54xAssembler::address
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::longConstant
+//
+// Returns the 16 bit constant pOperand, which may be written with or
+// without the leading '#', signed or not.
+//
+// Throws an AssemblyError if it cannot be evaluated or is out of range.
+//
+
+int longConstant(String pOperand) throws AssemblyError
+{
+
+    return((int)constant(pOperand, -0x8000, 0xffff) & 0xffff);
+
+}//end of C54xAssembler::longConstant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::constant
+//
+// Returns the value of the constant pOperand, which may be written with or
+// without the leading '#', after checking it is from pMin to pMax.
+//
+// Throws an AssemblyError if it cannot be evaluated or is out of range.
+//
+
+long constant(String pOperand, long pMin, long pMax) throws AssemblyError
+{
+
+    String text = pOperand.startsWith("#") ? pOperand.substring(1) : pOperand;
+
+    long value = evaluate(text);
+
+    if (value < pMin || value > pMax){
+        throw new AssemblyError(pOperand + " is out of range -- " + pMin
+                                                            + " to " + pMax);
+    }
+
+    return(value);
+
+}//end of C54xAssembler::constant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::evaluate
+//
+// Returns the value of the expression pText.
+//
+// Throws an AssemblyError naming the first symbol which is not defined, or
+// the expression if it cannot be evaluated otherwise.
+//
+
+long evaluate(String pText) throws AssemblyError
+{
+
+    Long value = source.evaluate(pText);
+    if (value != null) {return(value);}
+
+    Matcher m = SYMBOL.matcher(pText);
+
+    while (m.find()){
+        if (m.start() > 0 && Character.isLetterOrDigit(
+                                            pText.charAt(m.start() - 1))){
+            continue;
+        }
+        if (!source.isDefined(m.group())){
+            throw new AssemblyError("undefined symbol "
+                                                  + plainName(m.group()));
+        }
+    }
+
+    throw new AssemblyError("cannot evaluate " + plainName(pText));
+
+}//end of C54xAssembler::evaluate
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::plainName
+//
+// Returns pText with the block numbers added to local labels removed, as
+// the label was written.
+//
+
+static String plainName(String pText)
+{
+
+    return(pText.replaceAll("(\\$\\d+)@\\d+", "$1"));
+
+}//end of C54xAssembler::plainName
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::isDataDirective
+//
+// Returns true if pDirective places data in its section.
+//
+
+static boolean isDataDirective(String pDirective)
+{
+
+    return(pDirective.matches("\\.(word|uword|int|uint|short|ushort|long"
+        + "|ulong|xlong|byte|ubyte|char|uchar|string|pstring|space|bes)"));
+
+}//end of C54xAssembler::isDataDirective
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::dataSize
+//
+// Returns the number of words placed by the data directive pStatement. The
+// size of .space and .bes is given in bits.
+//
+// Throws an AssemblyError if a size cannot be evaluated.
+//
+
+int dataSize(AsmStatement pStatement) throws AssemblyError
+{
+
+    String m = pStatement.mnemonic;
+
+    if (m.equals(".space") || m.equals(".bes")){
+        long bits = constant(pStatement.getOperand(0), 0, PROGRAM_SIZE * 16L);
+        return((int)((bits + 15) / 16));
+    }
+
+    if (m.matches("\\.(u?long|xlong)")){
+        return(pStatement.operands.length * 2);
+    }
+
+    if (m.matches("\\.(u?byte|u?char|string|pstring)")){
+        int bytes = 0;
+        for (String o : pStatement.operands){
+            bytes += isString(o) ? o.length() - 2 : 1;
+        }
+        return(m.equals(".pstring") ? (bytes + 1) / 2 : bytes);
+    }
+
+    return(pStatement.operands.length);
+
+}//end of C54xAssembler::dataSize
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::encodeData
+//
+// Returns the words placed by the data directive pStatement. The characters
+// of .byte and .string are placed one to a word, and those of .pstring two
+// to a word, the first in the high byte.
+//
+// Throws an AssemblyError if a value is not valid.
+//
+
+int[] encodeData(AsmStatement pStatement) throws AssemblyError
+{
+
+    String m = pStatement.mnemonic;
+
+    if (m.equals(".space") || m.equals(".bes")){
+        return(new int[dataSize(pStatement)]);
+    }
+
+    ArrayList<Integer> words = new ArrayList<Integer>();
+
+    if (m.matches("\\.(u?long|xlong)")){
+        for (String o : pStatement.operands){
+            long value = constant(o, -0x80000000L, 0xffffffffL);
+            words.add((int)(value >> 16) & 0xffff);
+            words.add((int)value & 0xffff);
+        }
+    }
+    else
+    if (m.matches("\\.(u?byte|u?char|string|pstring)")){
+        for (String o : pStatement.operands){
+            if (isString(o)){
+                for (int i = 1; i < o.length() - 1; i++){
+                    words.add(o.charAt(i) & 0xff);
+                }
+            }
+            else{
+                words.add((int)constant(o, -0x80, 0xff) & 0xff);
+            }
+        }
+        if (m.equals(".pstring")){
+            ArrayList<Integer> packed = new ArrayList<Integer>();
+            for (int i = 0; i < words.size(); i += 2){
+                int low = i + 1 < words.size() ? words.get(i + 1) : 0;
+                packed.add(words.get(i) << 8 | low);
+            }
+            words = packed;
+        }
+    }
+    else{
+        for (String o : pStatement.operands) {words.add(longConstant(o));}
+    }
+
+    int[] result = new int[words.size()];
+    for (int i = 0; i < result.length; i++) {result[i] = words.get(i);}
+
+    return(result);
+
+}//end of C54xAssembler::encodeData
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::isString
+//
+// Returns true if pOperand is a string in double quotes.
+//
+
+static boolean isString(String pOperand)
+{
+
+    return(pOperand.length() >= 2 && pOperand.startsWith("\"")
+                                                && pOperand.endsWith("\""));
+
+}//end of C54xAssembler::isString
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::checkGlobals
+//
+// Warns of each symbol named by .global and the like which is not defined
+// anywhere in the program, as there is no other module to define it.
+//
+
+void checkGlobals()
+{
+
+    for (Map.Entry<String, AsmStatement> e : globals.entrySet()){
+        if (!source.isDefined(e.getKey())){
+            warning(e.getValue(), "global symbol " + e.getKey()
+                                                    + " is not defined");
+        }
+    }
+
+}//end of C54xAssembler::checkGlobals
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::error
+//
+// Adds the error pMessage for pStatement.
+//
+
+void error(AsmStatement pStatement, String pMessage)
+{
+
+    addProblem(pStatement, Problem.ERROR, pMessage);
+
+}//end of C54xAssembler::error
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::warning
+//
+// Adds the warning pMessage for pStatement.
+//
+
+void warning(AsmStatement pStatement, String pMessage)
+{
+
+    addProblem(pStatement, Problem.WARNING, pMessage);
+
+}//end of C54xAssembler::warning
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::addProblem
+//
+// Adds a problem of pKind with pMessage at the file and line of pStatement.
+//
+
+void addProblem(AsmStatement pStatement, int pKind, String pMessage)
+{
+
+    Problem p = new Problem();
+    p.file = pStatement.file;
+    p.line = pStatement.line;
+    p.kind = pKind;
+    p.message = pMessage;
+
+    problems.add(p);
+
+}//end of C54xAssembler::addProblem
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::getProblems
+//
+// Returns the problems found, in the order found.
+//
+
+public ArrayList<Problem> getProblems()
+{
+
+    return(problems);
+
+}//end of C54xAssembler::getProblems
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::getProblems
+//
+// Returns the problems found in the file pFile, by line.
+//
+
+public ArrayList<Problem> getProblems(String pFile)
+{
+
+    ArrayList<Problem> list = new ArrayList<Problem>();
+
+    File file = new File(pFile).getAbsoluteFile();
+
+    for (Problem p : problems){
+        if (new File(p.file).getAbsoluteFile().equals(file)) {list.add(p);}
+    }
+
+    return(list);
+
+}//end of C54xAssembler::getProblems
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::getNumErrors
+//
+// Returns the number of errors found.
+//
+
+public int getNumErrors()
+{
+
+    int count = 0;
+
+    for (Problem p : problems) {if (p.kind == Problem.ERROR) {count++;}}
+
+    return(count);
+
+}//end of C54xAssembler::getNumErrors
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::getFiles
+//
+// Returns the paths of the source files read, and of any other file with a
+// problem, in the order read.
+//
+
+public ArrayList<String> getFiles()
+{
+
+    LinkedHashSet<String> files = new LinkedHashSet<String>();
+
+    if (source != null) {files.addAll(source.getFiles());}
+    for (Problem p : problems) {files.add(p.file);}
+
+    return(new ArrayList<String>(files));
+
+}//end of C54xAssembler::getFiles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::getTitle
+//
+// Returns the title of the program.
+//
+
+public String getTitle()
+{
+
+    return(title);
+
+}//end of C54xAssembler::getTitle
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::getImage
+//
+// Returns the assembled program, each run of consecutive words as a block.
+//
+
+public ProgramImage getImage()
+{
+
+    ProgramImage program = new ProgramImage();
+    program.init();
+
+    ArrayList<Integer> run = new ArrayList<Integer>();
+    int start = -1, next = -1;
+
+    for (Map.Entry<Integer, Integer> e : image.entrySet()){
+        if (e.getKey() != next){
+            addBlock(program, start, run);
+            start = e.getKey();
+        }
+        run.add(e.getValue());
+        next = e.getKey() + 1;
+    }
+
+    addBlock(program, start, run);
+
+    return(program);
+
+}//end of C54xAssembler::getImage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::addBlock
+//
+// Adds the words in pRun, if any, to pProgram as a block at pStart and
+// empties pRun.
+//
+
+static void addBlock(ProgramImage pProgram, int pStart,
+                                                    ArrayList<Integer> pRun)
+{
+
+    if (pRun.isEmpty()) {return;}
+
+    short[] words = new short[pRun.size()];
+    for (int i = 0; i < words.length; i++) {words[i] = (short)(int)pRun.get(i);}
+
+    pProgram.addBlock(pStart, words);
+    pRun.clear();
+
+}//end of C54xAssembler::addBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::getSourceMap
+//
+// Returns the map of each program address to the source line it was
+// assembled from, with the routines named by the labels of the code.
+//
+
+public SourceMap getSourceMap()
+{
+
+    SourceMap map = new SourceMap(PROGRAM_SIZE);
+    map.init();
+
+    for (AsmStatement s : source.getStatements()){
+
+        int i = s.index;
+        if (code[i] == null || sectionBases.get(sections[i]) == null){
+            continue;
+        }
+
+        int address = sectionBases.get(sections[i]) + offsets[i];
+
+        for (int j = 0; j < code[i].length; j++){
+            map.add(address + j, s.file, s.line);
+            if (s.isDirective()) {map.markData(address + j);}
+        }
+
+    }
+
+    for (AsmStatement s : source.getStatements()){
+        if (source.isRoutineLabel(s) && addresses.containsKey(s.label)){
+            map.addRoutine(addresses.get(s.label), s.label);
+        }
+    }
+
+    return(map);
+
+}//end of C54xAssembler::getSourceMap
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::writeIntelHex
+//
+// Writes the program to pFile in Intel hex format as ProgramImage reads it:
+// the words high byte first at byte addresses, twice the word addresses,
+// with an extended address record wherever the upper bits change.
+//
+// Throws an IOException if the file cannot be written.
+//
+
+public void writeIntelHex(File pFile) throws IOException
+{
+
+    PrintStream out = new PrintStream(pFile, "UTF-8");
+
+    try{
+
+        ProgramImage program = getImage();
+        int upper = 0;
+
+        for (int b = 0; b < program.getNumBlocks(); b++){
+
+            short[] words = program.getWords(b);
+            int address = program.getAddress(b);
+
+            for (int i = 0; i < words.length; i += WORDS_PER_RECORD){
+
+                int bytes = (address + i) * 2;
+
+                if (bytes >> 16 != upper){
+                    upper = bytes >> 16;
+                    writeRecord(out, 0, 4,
+                                    new int[] {upper >> 8, upper & 0xff});
+                }
+
+                int count = Math.min(WORDS_PER_RECORD, words.length - i);
+                int[] data = new int[count * 2];
+                for (int j = 0; j < count; j++){
+                    data[j * 2] = (words[i + j] >> 8) & 0xff;
+                    data[j * 2 + 1] = words[i + j] & 0xff;
+                }
+
+                writeRecord(out, bytes & 0xffff, 0, data);
+
+            }
+
+        }
+
+        writeRecord(out, 0, 1, new int[0]);
+
+    }
+    finally{
+        out.close();
+    }
+
+}//end of C54xAssembler::writeIntelHex
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::writeRecord
+//
+// Writes an Intel hex record of type pType at pOffset holding the bytes in
+// pData, followed by its checksum.
+//
+
+static void writeRecord(PrintStream pOut, int pOffset, int pType,
+                                                                int[] pData)
+{
+
+    StringBuilder record = new StringBuilder(":");
+
+    int sum = pData.length + (pOffset >> 8) + (pOffset & 0xff) + pType;
+
+    record.append(String.format("%02X%04X%02X", pData.length, pOffset, pType));
+
+    for (int d : pData) {record.append(String.format("%02X", d)); sum += d;}
+
+    record.append(String.format("%02X", -sum & 0xff));
+
+    pOut.println(record);
+
+}//end of C54xAssembler::writeRecord
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::writeListing
+//
+// Writes a listing of the program to pFile in the form written by the TI
+// assembler, so that SourceMap can read it: the line number of each
+// statement, marked with a letter for the depth of an included file, the
+// address and first word of any code, and the statement, with each further
+// word on a line of its own. The addresses are absolute.
+//
+// Throws an IOException if the file cannot be written.
+//
+
+public void writeListing(File pFile) throws IOException
+{
+
+    PrintStream out = new PrintStream(pFile, "ISO-8859-1");
+
+    try{
+
+        File folder = pFile.getAbsoluteFile().getParentFile();
+
+        out.println("TMS320C54x Assembler -- " + title);
+        String main = source.getStatements().isEmpty() ? title
+                                            : source.getStatement(0).file;
+
+        out.println(" \"" + relativePath(folder, main) + "\"  PAGE    1");
+        out.println();
+
+        //the files being read, the main file first
+
+        ArrayList<String> nesting = new ArrayList<String>();
+
+        for (AsmStatement s : source.getStatements()){
+
+            if (nesting.contains(s.file)){
+                while (!nesting.get(nesting.size() - 1).equals(s.file)){
+                    nesting.remove(nesting.size() - 1);
+                }
+            }
+            else {nesting.add(s.file);}
+
+            int depth = nesting.size() - 1;
+            String mark = depth == 0 ? " "
+                                : String.valueOf((char)('A' + depth - 1));
+
+            int i = s.index;
+            Integer base = sections[i] == null ? null
+                                            : sectionBases.get(sections[i]);
+            boolean placed = base != null && !BSS.equals(sections[i]);
+            int address = placed ? base + offsets[i] : 0;
+
+            if (!placed && s.label != null && !BSS.equals(symbolSections.get(
+                        s.label)) && addresses.containsKey(s.label)){
+                placed = true; address = addresses.get(s.label);
+            }
+
+            String text = s.text.replace("\t", "    ");
+
+            if (!placed){
+                out.println(String.format("%s%6d %-13s %s", mark, s.line, "",
+                                                                        text));
+                continue;
+            }
+
+            int[] words = code[i] == null ? new int[0] : code[i];
+
+            out.println(String.format("%s%6d %06X %-6s %s", mark, s.line,
+                address, words.length == 0 ? ""
+                                    : String.format("%04X", words[0]), text));
+
+            for (int j = 1; j < words.length; j++){
+                out.println(String.format("%7s %06X %04X", "", address + j,
+                                                                    words[j]));
+            }
+
+        }
+
+    }
+    finally{
+        out.close();
+    }
+
+}//end of C54xAssembler::writeListing
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::relativePath
+//
+// Returns the path of pFile relative to pFolder if it is within it, else its
+// absolute path.
+//
+
+static String relativePath(File pFolder, String pFile)
+{
+
+    String folder = pFolder.getPath() + File.separator;
+    String file = new File(pFile).getAbsolutePath();
+
+    return(file.startsWith(folder) ? file.substring(folder.length()) : file);
+
+}//end of C54xAssembler::relativePath
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::print
+//
+// Prints the problems found and the placing of each section to pOut.
+//
+
+public void print(PrintStream pOut)
+{
+
+    pOut.println("Assembly - " + title);
+    pOut.println();
+
+    //the problems by file, in the order read, and by line
+
+    final ArrayList<String> files = getFiles();
+    ArrayList<Problem> sorted = new ArrayList<Problem>(problems);
+
+    Collections.sort(sorted, new Comparator<Problem>(){
+        @Override
+        public int compare(Problem pA, Problem pB)
+        {
+            int c = Integer.compare(files.indexOf(pA.file),
+                                                    files.indexOf(pB.file));
+            return(c != 0 ? c : Integer.compare(pA.line, pB.line));
+        }
+    });
+
+    for (Problem p : sorted) {pOut.println(p);}
+    if (!problems.isEmpty()) {pOut.println();}
+
+    int errors = getNumErrors();
+
+    pOut.println(errors + " error(s), " + (problems.size() - errors)
+                                                        + " warning(s)");
+
+    if (sectionSizes == null || sectionSizes.isEmpty()) {return;}
+
+    pOut.println();
+
+    for (String name : sectionSizes.keySet()){
+        Integer base = sectionBases.get(name);
+        int size = sectionSizes.get(name);
+        pOut.println(String.format("%-12s %s %5d word(s)%s", name,
+            base == null ? "not placed " : String.format("%04X-%04X",
+            base, base + Math.max(size, 1) - 1),
+            size, name.equals(BSS) ? " in data space" : ""));
+    }
+
+}//end of C54xAssembler::print
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAssembler::main
+//
+// Assembles the source named on the command line and prints the problems
+// found, writing the hex file and listing if named and there are no errors.
+//
+
+public static void main(String[] args)
+{
+
+    if (args.length < 1 || args.length > 3){
+        System.err.println("usage: C54xAssembler <program.asm>"
+                                    + " [<program.hex> [<program.lst>]]");
+        System.exit(2);
+    }
+
+    try{
+
+        File file = new File(args[0]);
+
+        C54xAssembler assembler = new C54xAssembler(file.getName());
+        assembler.init();
+        assembler.assemble(file);
+
+        assembler.print(System.out);
+
+        if (assembler.getNumErrors() > 0) {System.exit(1);}
+
+        if (args.length > 1) {assembler.writeIntelHex(new File(args[1]));}
+        if (args.length > 2) {assembler.writeListing(new File(args[2]));}
+
+        System.exit(0);
+
+    }
+    catch(IOException e){
+        System.err.println(e.getMessage());
+        System.exit(2);
+    }
+
+}//end of C54xAssembler::main
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Problem
+//
+// One problem found: an ERROR, which stops the program being written, or a
+// WARNING.
+//
+
+public static class Problem
+{
+
+    public static final int ERROR = 0;
+    public static final int WARNING = 1;
+
+    public String file;
+    public int line;
+    public int kind;
+    public String message;
+
+    @Override
+    public String toString()
+    {
+        return(new File(file).getName() + ":" + line + ": "
+                    + (kind == ERROR ? "error: " : "warning: ") + message);
+    }
+
+}//end of class Problem
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class AssemblyError
+//
+// Thrown when a statement cannot be assembled, with the reason.
+//
+
+static class AssemblyError extends Exception
+{
+
+    AssemblyError(String pMessage)
+    {
+        super(pMessage);
+    }
+
+}//end of class AssemblyError
+//-----------------------------------------------------------------------------
+
+}//end of class C54xAssembler
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,306 @@
+/******************************************************************************
+* Title: Universal IDE - C54xTiming.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class finds the size and execution time of each instruction in the
+* source of a TMS320C54x program, for the tools which examine the source
+* rather than the assembled program.
+*
+* The sizes and cycle counts are taken from the instruction table of the
+* simulator so that the two always agree. The form of each instruction is
+* picked by the kinds of its operands -- accumulator, constant, memory,
+* condition, and so on -- and where more than one form fits, the shortest
+* is taken as the assembler would. A memory operand using a long offset,
+* such as *+AR2(-6), adds a word and a cycle. The constant of stm may be
+* written without its '#', as the TI assembler allows.
+*
+* An instruction whose mnemonic is not in the table, or whose operands fit
+* none of its forms, is noted as a warning. The former is taken as one word
+* and one cycle, the latter as its slowest form.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import dspsimulation.Instruction;
+import dspsimulation.InstructionSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import specificchips.C54xInstruction;
+import specificchips.C54xInstructions;
+
+//-----------------------------------------------------------------------------
+// class C54xTiming
+//
+
+public class C54xTiming
+{
+
+    AsmSource source;
+
+    InstructionSet instructionSet;
+
+    ArrayList<String> warnings;
+
+    //the timing of each statement already timed
+    HashMap<AsmStatement, Timing> timings;
+
+    //the operand kinds each format accepts, indexed by format, as a pattern
+    //of the characters returned by operandKind
+    static final String[] FORMAT_PATTERNS = {
+        "",                 // NONE
+        "m",                // SMEM
+        "m",                // MMR
+        "ma",               // SMEM_ACC
+        "mha",              // SMEM_16_ACC
+        "m[nh]a",           // SMEM_SHIFT_ACC
+        "ma",               // MMR_ACC
+        "am",               // ACC_SMEM
+        "a[nh]m",           // ACC_SHIFT_SMEM
+        "am",               // ACC_MMR
+        "m[k#]",            // SMEM_LK
+        "[k#]m",            // LK_SMEM
+        "[k#mnh]m",         // LK_MMR
+        "ka",               // K8_ACC
+        "[k#]D",            // K9_DP
+        "[k#]S",            // K5_ASM
+        "[k#]P",            // K3_ARP
+        "k",                // K8
+        "[k#]",             // LK
+        "a[k#]",            // ACC_LK
+        "[k#]n?aa?",        // LK_SHFT_SD
+        "[k#]haa?",         // LK_16_SD
+        "a[nh]?a?",         // SRC_SHIFT_DST
+        "aa?",              // SRC_DST
+        "a",                // ACC
+        "m",                // PMAD
+        "mc+",              // COND_PMAD
+        "c+",               // COND
+        "nc+",              // N_COND
+        "mm",               // SMEM_PMAD
+        "mm",               // XMEM_YMEM
+        "mm",               // MMRX_MMRY
+        "am",               // ST_LD
+        "n?[mc]",           // SBIT
+        "n?",               // IDLE
+    };
+
+    //the condition codes of the conditional instructions
+    static final HashSet<String> CONDITIONS = new HashSet<String>(
+        Arrays.asList("aeq", "aneq", "agt", "ageq", "alt", "aleq", "aov",
+                      "anov", "beq", "bneq", "bgt", "bgeq", "blt", "bleq",
+                      "bov", "bnov", "tc", "ntc", "c", "nc", "bio", "nbio",
+                      "unc"));
+
+//-----------------------------------------------------------------------------
+// C54xTiming::C54xTiming (constructor)
+//
+// Creates a timer for the statements of pSource, whose symbols are used to
+// evaluate constants.
+//
+
+public C54xTiming(AsmSource pSource)
+{
+
+    source = pSource;
+
+}//end of C54xTiming::C54xTiming (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xTiming::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    warnings = new ArrayList<String>();
+    timings = new HashMap<AsmStatement, Timing>();
+
+    instructionSet = new InstructionSet();
+    instructionSet.init();
+    C54xInstructions.addInstructions(instructionSet);
+    instructionSet.compile();
+
+}//end of C54xTiming::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xTiming::getTiming
+//
+// Returns the size and cycle counts of the instruction in pStatement, which
+// must be an instruction, or null if it is executed in parallel with the
+// one before it and so adds nothing.
+//
+
+public Timing getTiming(AsmStatement pStatement)
+{
+
+    if (pStatement.parallel) {return(null);}
+
+    Timing t = timings.get(pStatement);
+    if (t != null) {return(t);}
+
+    t = new Timing();
+    timings.put(pStatement, t);
+    t.words = 1; t.cycles = 1; t.cyclesTaken = 1;
+
+    Instruction first = instructionSet.findMnemonic(pStatement.mnemonic);
+
+    if (first == null){
+        warnings.add(pStatement + " -- unknown instruction, taken as "
+                                                            + "one cycle");
+        return(t);
+    }
+
+    //the kinds of the operands and whether any uses a long offset
+
+    StringBuilder kinds = new StringBuilder();
+    boolean longOffset = false;
+
+    for (String o : pStatement.operands){
+        char k = operandKind(o);
+        kinds.append(k);
+        if (k == 'm' && o.startsWith("*") && o.indexOf('(') >= 0){
+            longOffset = true;
+        }
+    }
+
+    String signature = kinds.toString();
+
+    //the shortest form the operands fit, or the slowest if none fits
+
+    Instruction best = null, slowest = null;
+
+    for (Instruction i = first; i != null; i = i.nextForm){
+
+        if (slowest == null || i.numCyclesTaken > slowest.numCyclesTaken){
+            slowest = i;
+        }
+
+        if (!(i instanceof C54xInstruction)) {continue;}
+        int format = ((C54xInstruction)i).format;
+        if (format >= FORMAT_PATTERNS.length
+                            || !signature.matches(FORMAT_PATTERNS[format])){
+            continue;
+        }
+
+        if (best == null || i.numWords < best.numWords) {best = i;}
+
+    }
+
+    if (best == null){
+        warnings.add(pStatement + " -- operands not recognized, taken as "
+                                                            + "slowest form");
+        best = slowest;
+    }
+
+    t.instruction = best;
+    t.words = best.numWords;
+    t.cycles = best.numCycles;
+    t.cyclesTaken = best.numCyclesTaken;
+
+    if (longOffset){
+        t.words++; t.cycles++; t.cyclesTaken++;
+    }
+
+    return(t);
+
+}//end of C54xTiming::getTiming
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xTiming::operandKind
+//
+// Returns a character for the kind of the operand pOperand:
+//
+//  a   accumulator A or B
+//  k   constant (#) which fits in 8 bits unsigned
+//  #   any other constant, or one which cannot be evaluated
+//  h   the number 16, a shift which selects the 16 bit forms
+//  n   any other number
+//  c   condition code
+//  D   data page pointer DP
+//  S   accumulator shift mode ASM
+//  P   auxiliary register pointer ARP
+//  m   memory -- indirect, a symbol, a register, or a program address
+//
+
+char operandKind(String pOperand)
+{
+
+    String o = pOperand.toLowerCase();
+
+    if (o.equals("a") || o.equals("b")) {return('a');}
+    if (o.equals("dp")) {return('D');}
+    if (o.equals("asm")) {return('S');}
+    if (o.equals("arp")) {return('P');}
+    if (CONDITIONS.contains(o)) {return('c');}
+
+    if (o.startsWith("#")){
+        Long value = source.evaluate(pOperand.substring(1));
+        return(value != null && value >= 0 && value <= 255 ? 'k' : '#');
+    }
+
+    if (o.isEmpty() || o.startsWith("*")) {return('m');}
+
+    char c = o.charAt(0);
+    if (Character.isDigit(c) || c == '-' || c == '+'){
+        Long value = source.evaluate(pOperand);
+        if (value != null) {return(value == 16 ? 'h' : 'n');}
+    }
+
+    return('m');
+
+}//end of C54xTiming::operandKind
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xTiming::getWarnings
+//
+// Returns the instructions which could not be timed exactly.
+//
+
+public ArrayList<String> getWarnings()
+{
+
+    return(warnings);
+
+}//end of C54xTiming::getWarnings
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Timing
+//
+// The size and cycle counts of one instruction. For a conditional
+// instruction, cyclesTaken is the count when the condition is met -- for
+// others it is the same as cycles. The instruction is the form from the
+// table, or null if the mnemonic is not known.
+//
+
+public static class Timing
+{
+
+    public Instruction instruction;
+    public int words;
+    public int cycles;
+    public int cyclesTaken;
+
+}//end of class Timing
+//-----------------------------------------------------------------------------
+
+}//end of class C54xTiming
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -41,6 +41,11 @@ public class CodeHandler implements ActionListener
     JMenu dspMenu;
     JMenuItem assembleProject;
     JMenuItem copyHexFileToTargetFolder;
+    JMenuItem profileScenario;
+    JMenuItem showCoverage;
+    JMenuItem worstCaseCycles;
+    JMenuItem stackDepth;
+    JMenuItem peepholeAdvice;
     
     ActionListener actionListener;
 
@@ -109,6 +114,36 @@ public void addMenuToMenuBar()
     copyHexFileToTargetFolder.addActionListener(this);
     dspMenu.add(copyHexFileToTargetFolder);
 
+    profileScenario = new JMenuItem("Profile Scenario...");
+    profileScenario.setToolTipText(
+      "Runs a test scenario on the simulator and shows where the cycles go.");
+    profileScenario.addActionListener(this);
+    dspMenu.add(profileScenario);
+
+    showCoverage = new JMenuItem("Show Coverage...");
+    showCoverage.setToolTipText(
+          "Shades the source lines which the test runs did and did not reach.");
+    showCoverage.addActionListener(this);
+    dspMenu.add(showCoverage);
+
+    worstCaseCycles = new JMenuItem("Worst Case Cycles...");
+    worstCaseCycles.setToolTipText(
+          "Finds the most cycles each routine can take from the source code.");
+    worstCaseCycles.addActionListener(this);
+    dspMenu.add(worstCaseCycles);
+
+    stackDepth = new JMenuItem("Stack Depth...");
+    stackDepth.setToolTipText(
+             "Finds the deepest the stack can get from the source code.");
+    stackDepth.addActionListener(this);
+    dspMenu.add(stackDepth);
+
+    peepholeAdvice = new JMenuItem("Peephole Advice...");
+    peepholeAdvice.setToolTipText(
+            "Finds instruction sequences which could be rewritten faster.");
+    peepholeAdvice.addActionListener(this);
+    dspMenu.add(peepholeAdvice);
+
 }//end of CodeHandler::addMenuToMenuBar
 //-----------------------------------------------------------------------------
 
@@ -148,6 +183,36 @@ public void actionPerformed(ActionEvent e)
         copyHexFileToTargetFolder();
         return;
     }
+
+    //run a scenario on the simulator and show its profile
+    if ("Profile Scenario...".equals(e.getActionCommand())) {
+        profileScenario();
+        return;
+    }
+
+    //show the coverage recorded by test runs on the simulator
+    if ("Show Coverage...".equals(e.getActionCommand())) {
+        showCoverage();
+        return;
+    }
+
+    //find the worst case cycles of each routine from the source
+    if ("Worst Case Cycles...".equals(e.getActionCommand())) {
+        worstCaseCycles();
+        return;
+    }
+
+    //find the greatest depth of the stack from the source
+    if ("Stack Depth...".equals(e.getActionCommand())) {
+        stackDepth();
+        return;
+    }
+
+    //find sequences of instructions which could be rewritten faster
+    if ("Peephole Advice...".equals(e.getActionCommand())) {
+        peepholeAdvice();
+        return;
+    }
         
 }//end of CodeHandler::actionPerformed
 //-----------------------------------------------------------------------------
@@ -180,6 +245,66 @@ public void copyHexFileToTargetFolder()
 }//end of CodeHandler::copyHexFileToTargetFolder
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// CodeHandler::profileScenario
+//
+// Child classes should override this method to provide appropriate processing.
+//
+
+public void profileScenario()
+{
+
+}//end of CodeHandler::profileScenario
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CodeHandler::showCoverage
+//
+// Child classes should override this method to provide appropriate processing.
+//
+
+public void showCoverage()
+{
+
+}//end of CodeHandler::showCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CodeHandler::worstCaseCycles
+//
+// Child classes should override this method to provide appropriate processing.
+//
+
+public void worstCaseCycles()
+{
+
+}//end of CodeHandler::worstCaseCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CodeHandler::stackDepth
+//
+// Child classes should override this method to provide appropriate processing.
+//
+
+public void stackDepth()
+{
+
+}//end of CodeHandler::stackDepth
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CodeHandler::peepholeAdvice
+//
+// Child classes should override this method to provide appropriate processing.
+//
+
+public void peepholeAdvice()
+{
+
+}//end of CodeHandler::peepholeAdvice
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // CodeHandler::errorMsg
 //
@@ -0,0 +1,218 @@
+/******************************************************************************
+* Title: Universal IDE - CoverageReport.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class maps the program words executed by a set of test runs to the
+* source lines through a SourceMap, so that code the tests never reach --
+* such as the branch for a gate flag no capture sets -- can be seen in the
+* editor.
+*
+* Each line which assembled to instructions is marked COVERED if any of its
+* words was executed and UNCOVERED if none was; other lines, including those
+* placing data among the code, are NO_CODE. The coverage of all cores is
+* merged, as they run the same program.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import dspsimulation.Coverage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+//-----------------------------------------------------------------------------
+// class CoverageReport
+//
+
+public class CoverageReport
+{
+
+    String title;
+    Coverage[] coverage;
+    SourceMap sourceMap;
+
+    //the coverage of each line of each source file, indexed by line number
+    LinkedHashMap<String, byte[]> lineStatus;
+
+    int numCodeWords;
+    int numCoveredWords;
+
+    public static final byte NO_CODE = 0;
+    public static final byte COVERED = 1;
+    public static final byte UNCOVERED = 2;
+
+//-----------------------------------------------------------------------------
+// CoverageReport::CoverageReport (constructor)
+//
+// Creates a report titled pTitle of pCoverage, one record per core, mapped
+// to the source through pSourceMap.
+//
+
+public CoverageReport(String pTitle, Coverage[] pCoverage,
+                                                       SourceMap pSourceMap)
+{
+
+    title = pTitle; coverage = pCoverage; sourceMap = pSourceMap;
+
+}//end of CoverageReport::CoverageReport (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoverageReport::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+// Marks each source line from the coverage of its words.
+//
+
+public void init()
+{
+
+    lineStatus = new LinkedHashMap<String, byte[]>();
+
+    //the highest line of each file, to size its array
+
+    HashMap<String, Integer> lastLine = new HashMap<String, Integer>();
+
+    int n = sourceMap.getProgramSize();
+
+    for (int a = 0; a < n; a++){
+        String file = sourceMap.getFile(a);
+        if (file == null) {continue;}
+        Integer last = lastLine.get(file);
+        int line = sourceMap.getLine(a);
+        if (last == null || line > last) {lastLine.put(file, line);}
+    }
+
+    for (String file : sourceMap.getFiles()){
+        if (lastLine.containsKey(file)){
+            lineStatus.put(file, new byte[lastLine.get(file) + 1]);
+        }
+    }
+
+    for (int a = 0; a < n; a++){
+
+        String file = sourceMap.getFile(a);
+        if (file == null || sourceMap.isData(a)) {continue;}
+
+        byte[] status = lineStatus.get(file);
+        int line = sourceMap.getLine(a);
+
+        numCodeWords++;
+
+        if (isCovered(a)){
+            numCoveredWords++;
+            status[line] = COVERED;
+        }
+        else
+        if (status[line] == NO_CODE) {status[line] = UNCOVERED;}
+
+    }
+
+}//end of CoverageReport::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoverageReport::isCovered
+//
+// Returns true if any core executed the word at pAddress.
+//
+
+boolean isCovered(int pAddress)
+{
+
+    for (Coverage c : coverage){
+        if (pAddress < c.getProgramSize() && c.isCovered(pAddress)){
+            return(true);
+        }
+    }
+
+    return(false);
+
+}//end of CoverageReport::isCovered
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoverageReport::getTitle
+//
+// Returns the title of the report.
+//
+
+public String getTitle()
+{
+
+    return(title);
+
+}//end of CoverageReport::getTitle
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoverageReport::getFiles
+//
+// Returns the paths of the source files which hold any code.
+//
+
+public ArrayList<String> getFiles()
+{
+
+    return(new ArrayList<String>(lineStatus.keySet()));
+
+}//end of CoverageReport::getFiles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoverageReport::getLineStatus
+//
+// Returns NO_CODE, COVERED, or UNCOVERED for each line of the source file
+// pFile, indexed by line number, or null if the file holds no code.
+//
+
+public byte[] getLineStatus(String pFile)
+{
+
+    return(lineStatus.get(pFile));
+
+}//end of CoverageReport::getLineStatus
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoverageReport::getNumCodeWords
+//
+// Returns the number of instruction words which came from the source.
+//
+
+public int getNumCodeWords()
+{
+
+    return(numCodeWords);
+
+}//end of CoverageReport::getNumCodeWords
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoverageReport::getNumCoveredWords
+//
+// Returns the number of instruction words from the source which were
+// executed.
+//
+
+public int getNumCoveredWords()
+{
+
+    return(numCoveredWords);
+
+}//end of CoverageReport::getNumCoveredWords
+//-----------------------------------------------------------------------------
+
+}//end of class CoverageReport
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
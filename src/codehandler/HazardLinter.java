@@ -0,0 +1,792 @@
+/******************************************************************************
+* Title: Universal IDE - HazardLinter.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class finds pipeline hazards in the source of a TMS320C54x program:
+* instructions placed too close together for the pipeline to give the
+* intended result. The C54x does not stall for these as it does for most
+* conflicts -- the later instruction simply uses the old value -- so each
+* must be fixed by moving the instructions apart, usually with a nop.
+*
+* The hazards found are:
+*
+*   an auxiliary register used to form an address too soon after it is
+*   written: stm or mvmm may be followed at once, st, mvdk, mvdm, popm, and
+*   popd need one word between, stlm, stl, and sth need two
+*
+*   circular addressing too soon after BK is written: one word after stm
+*   and the others above, two after stlm, stl, and sth
+*
+*   an xc testing a condition set less than two words before it, which the
+*   xc does not yet see
+*
+* Each is reported with the cycles the fix costs: the nops needed to make up
+* the distance. The distance is counted in instruction words along the path
+* which runs straight on from the write -- a call, branch, or return ends
+* the search.
+*
+* A nop placed to avoid a hazard, with "pipeline", "conflict", "protect", or
+* "latency" in its comment, which is found to protect nothing is reported
+* as well: it is a stall which could be removed, saving its cycle. A nop is
+* only reported if the path past it can be followed far enough to be sure.
+*
+* The result for each instruction depends only on the few lines around it,
+* so the results are kept by the text of those lines. When the source is
+* checked again, as it is while being edited, only instructions near lines
+* which have changed are checked again.
+*
+* The linter may be run without the user interface:
+*
+*   java codehandler.HazardLinter <program.asm>
+*
+* The exit status is 0 if no hazard which must be fixed is found and 1
+* otherwise.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+//-----------------------------------------------------------------------------
+// class HazardLinter
+//
+
+public class HazardLinter
+{
+
+    AsmSource source;
+    C54xTiming timing;
+
+    //the findings of each instruction, by the text of the lines around it,
+    //kept from the last check of the source
+    HashMap<String, ArrayList<Hazard>> kept;
+
+    int numChecked;
+    int numKept;
+
+    //set by scanForUse if the path could not be followed to the end of the
+    //distance searched
+    boolean scanCut;
+
+    //the instructions before and after each one whose text its findings
+    //depend on
+    static final int WINDOW_BEFORE = 3;
+    static final int WINDOW_AFTER = 4;
+
+    static final Pattern AUX_REGISTER = Pattern.compile("(?i)^AR[0-7]$");
+
+    static final Pattern PROTECTION_COMMENT = Pattern.compile(
+                                "(?i)pipeline|conflict|protect|latency");
+
+    //instructions after which the path cannot be followed
+    static final Pattern ENDS_PATH = Pattern.compile(
+        "f?(b|bacc|call|cala|ret|rete|trap|intr|idle|reset)");
+
+    //instructions which set the carry and the test control flag
+    static final Pattern SETS_CARRY = Pattern.compile(
+                            "(add|sub|max|min|sft|rol|ror|neg|abs|sat).*");
+    static final Pattern SETS_TC = Pattern.compile(
+                                    "bit|bitf|bitt|cmpm|cmpr|cmps|sftc");
+
+    //the words needed between an instruction setting a condition and an xc
+    //testing it
+    static final int XC_LATENCY = 2;
+
+    //the conditions on the value or overflow of an accumulator
+    static final Pattern ACCUMULATOR_CONDITION = Pattern.compile(
+                                        "[ab](eq|neq|gt|geq|lt|leq|ov|nov)");
+
+//-----------------------------------------------------------------------------
+// HazardLinter::HazardLinter (constructor)
+//
+
+public HazardLinter()
+{
+
+}//end of HazardLinter::HazardLinter (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    kept = new HashMap<String, ArrayList<Hazard>>();
+
+}//end of HazardLinter::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::lint
+//
+// Checks pText, the text of the file pFile such as the document being
+// edited, and returns the hazards in it, leaving out those in the files it
+// includes. May be called from any thread.
+//
+
+public synchronized ArrayList<Hazard> lint(String pFile, String pText)
+{
+
+    AsmSource s = new AsmSource();
+    s.init();
+    s.parse(pFile, pText);
+
+    ArrayList<Hazard> hazards = new ArrayList<Hazard>();
+
+    for (Hazard h : check(s)){
+        if (h.file.equals(pFile)) {hazards.add(h);}
+    }
+
+    return(hazards);
+
+}//end of HazardLinter::lint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::check
+//
+// Returns the hazards in pSource. Findings kept from the last check are
+// used for instructions whose surrounding lines are unchanged.
+//
+
+public synchronized ArrayList<Hazard> check(AsmSource pSource)
+{
+
+    source = pSource;
+
+    timing = new C54xTiming(source);
+    timing.init();
+
+    numChecked = 0; numKept = 0;
+
+    HashMap<String, ArrayList<Hazard>> found =
+                                    new HashMap<String, ArrayList<Hazard>>();
+
+    ArrayList<Hazard> hazards = new ArrayList<Hazard>();
+
+    for (AsmStatement s : source.getStatements()){
+
+        if (!s.isInstruction() || s.parallel || s.inDataSection) {continue;}
+
+        String key = getWindowText(s.index);
+
+        ArrayList<Hazard> findings = found.get(key);
+        if (findings == null) {findings = kept.get(key);}
+
+        if (findings != null){
+            numKept++;
+        }
+        else{
+            findings = checkInstruction(s);
+            numChecked++;
+        }
+
+        found.put(key, findings);
+
+        for (Hazard f : findings){
+            Hazard h = new Hazard();
+            h.file = s.file; h.line = s.line; h.kind = f.kind;
+            h.cycles = f.cycles; h.message = f.message;
+            hazards.add(h);
+        }
+
+    }
+
+    kept = found;
+
+    return(hazards);
+
+}//end of HazardLinter::check
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::getWindowText
+//
+// Returns the text of the lines around the instruction at pIndex, with the
+// size of each instruction, which is all its findings depend on.
+//
+
+String getWindowText(int pIndex)
+{
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    int first = pIndex, last = pIndex;
+
+    for (int n = 0; first > 0 && n < WINDOW_BEFORE; ){
+        first--;
+        if (statements.get(first).isInstruction()) {n++;}
+    }
+
+    for (int n = 0; last < statements.size() - 1 && n < WINDOW_AFTER; ){
+        last++;
+        if (statements.get(last).isInstruction()) {n++;}
+    }
+
+    StringBuilder text = new StringBuilder();
+
+    for (int i = first; i <= last; i++){
+        AsmStatement s = statements.get(i);
+        if (i == pIndex) {text.append('>');}
+        text.append(s.text).append('\u0000');
+        if (s.isInstruction() && !s.parallel){
+            text.append(getWords(s));
+        }
+        text.append('\n');
+    }
+
+    return(text.toString());
+
+}//end of HazardLinter::getWindowText
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::checkInstruction
+//
+// Returns the findings for the instruction pStatement, with no file or line.
+//
+
+ArrayList<Hazard> checkInstruction(AsmStatement pStatement)
+{
+
+    ArrayList<Hazard> findings = new ArrayList<Hazard>();
+
+    checkWrite(pStatement, -1, findings);
+
+    String m = pStatement.mnemonic;
+
+    if (m.equals("xc")) {checkCondition(pStatement, -1, findings);}
+
+    if (m.equals("nop") && pStatement.comment != null
+            && PROTECTION_COMMENT.matcher(pStatement.comment).find()
+            && isUnneeded(pStatement)){
+        addFinding(findings, Hazard.UNNEEDED, 1,
+                    "nop placed for the pipeline protects nothing -- "
+                    + "removing it saves 1 cycle");
+    }
+
+    return(findings);
+
+}//end of HazardLinter::checkInstruction
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::checkWrite
+//
+// If pStatement writes an auxiliary register or BK, adds a finding to
+// pFindings for a use which follows too soon, ignoring the instruction at
+// pSkip. Returns true if there is such a use or the path could not be
+// followed far enough to be sure there is none.
+//
+
+boolean checkWrite(AsmStatement pStatement, int pSkip,
+                                                ArrayList<Hazard> pFindings)
+{
+
+    String register = getWrittenRegister(pStatement);
+    if (register == null) {return(false);}
+
+    String m = pStatement.mnemonic;
+
+    int latency;
+    if (m.matches("stlm|stl|sth")) {latency = 2;}
+    else if (m.matches("stm|mvmm")) {latency = register.equals("BK") ? 1 : 0;}
+    else {latency = 1;}
+
+    if (latency == 0) {return(false);}
+
+    int words = scanForUse(pStatement, register, latency, pSkip);
+
+    if (words < 0) {return(scanCut);}
+
+    int missing = latency - words;
+
+    String use = register.equals("BK") ? "circular addressing"
+                                       : register + " is used for addressing";
+
+    addFinding(pFindings, Hazard.CONFLICT, missing, use + " " + words
+            + " word(s) after the " + m + " writing " + register
+            + " -- needs " + latency + ", add " + missing + " nop(s)");
+
+    return(true);
+
+}//end of HazardLinter::checkWrite
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::getWrittenRegister
+//
+// Returns the auxiliary register, such as "AR3", or "BK" written by
+// pStatement, or null if it writes neither.
+//
+
+static String getWrittenRegister(AsmStatement pStatement)
+{
+
+    String m = pStatement.mnemonic;
+
+    if (!m.matches("stm|stlm|stl|sth|st|mvmm|mvdk|mvdm|popm|popd")) {
+        return(null);
+    }
+
+    String dest = pStatement.operands.length == 0 ? ""
+                : pStatement.operands[pStatement.operands.length - 1].trim();
+
+    dest = dest.toUpperCase();
+
+    if (AUX_REGISTER.matcher(dest).matches() || dest.equals("BK")){
+        return(dest);
+    }
+
+    return(null);
+
+}//end of HazardLinter::getWrittenRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::scanForUse
+//
+// Follows the path straight on from pWriter for pLatency words, ignoring
+// the instruction at pSkip, looking for a use of pRegister -- BK meaning
+// circular addressing. Returns the words between pWriter and the first use,
+// or -1 if there is none. Sets scanCut if the path could not be followed
+// for the full distance.
+//
+
+int scanForUse(AsmStatement pWriter, String pRegister, int pLatency,
+                                                                    int pSkip)
+{
+
+    scanCut = false;
+
+    int words = 0;
+    int i = source.nextInstruction(pWriter.index + 1);
+
+    while (words < pLatency){
+
+        if (i < 0) {scanCut = true; return(-1);}
+
+        if (i == pSkip) {i = source.nextInstruction(i + 1); continue;}
+
+        AsmStatement s = source.getStatement(i);
+
+        if (usesRegister(i, pRegister)) {return(words);}
+
+        if (WcetAnalyzer.isFlow(s.mnemonic)){
+            scanCut = true;
+            if (ENDS_PATH.matcher(s.mnemonic).matches()) {return(-1);}
+        }
+
+        words += getWords(s);
+        i = source.nextInstruction(i + 1);
+
+    }
+
+    return(-1);
+
+}//end of HazardLinter::scanForUse
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::usesRegister
+//
+// Returns true if the instruction at pIndex, or the one executed in
+// parallel with it, forms an address with pRegister, or uses circular
+// addressing if pRegister is BK.
+//
+
+boolean usesRegister(int pIndex, String pRegister)
+{
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    for (int i = pIndex; i < statements.size(); i++){
+
+        AsmStatement s = statements.get(i);
+        if (i > pIndex && s.isInstruction() && !s.parallel) {break;}
+        if (!s.isInstruction()) {continue;}
+
+        for (String o : s.operands){
+            if (!o.startsWith("*")) {continue;}
+            String u = o.toUpperCase();
+            if (pRegister.equals("BK") ? u.indexOf('%') >= 0
+                                       : u.contains(pRegister)){
+                return(true);
+            }
+        }
+
+    }
+
+    return(false);
+
+}//end of HazardLinter::usesRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::checkCondition
+//
+// Adds a finding to pFindings if the xc pStatement tests a condition set
+// less than two words before it, ignoring the instruction at pSkip. Returns
+// true if there is such a finding.
+//
+
+boolean checkCondition(AsmStatement pStatement, int pSkip,
+                                                ArrayList<Hazard> pFindings)
+{
+
+    int words = 0;
+    int index = pStatement.index;
+
+    while (words < XC_LATENCY){
+
+        AsmStatement before = getInstructionBefore(index, pSkip);
+        if (before == null) {return(false);}
+
+        for (int i = 1; i < pStatement.operands.length; i++){
+
+            String condition = pStatement.operands[i].toLowerCase();
+            if (!setsCondition(before, condition)) {continue;}
+
+            int missing = XC_LATENCY - words;
+
+            addFinding(pFindings, Hazard.CONFLICT, missing, "xc tests "
+                + condition.toUpperCase() + " set by " + before.mnemonic
+                + " " + words + " word(s) before it -- needs "
+                + XC_LATENCY + ", add " + missing + " nop(s)");
+
+            return(true);
+
+        }
+
+        words += getWords(before);
+        index = before.index;
+
+    }
+
+    return(false);
+
+}//end of HazardLinter::checkCondition
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::getInstructionBefore
+//
+// Returns the instruction before the one at pIndex, ignoring the one at
+// pSkip, or null if there is none or a label comes between, as the
+// instruction may then be reached from elsewhere.
+//
+
+AsmStatement getInstructionBefore(int pIndex, int pSkip)
+{
+
+    for (int i = pIndex; i >= 0; i--){
+
+        AsmStatement s = source.getStatement(i);
+
+        if (s.label != null && !s.label.isEmpty()) {return(null);}
+        if (i == pIndex || i == pSkip) {continue;}
+        if (s.isDirective() && AsmSource.isDataDirective(s.mnemonic)){
+            return(null);
+        }
+        if (s.isInstruction() && !s.parallel) {return(s);}
+
+    }
+
+    return(null);
+
+}//end of HazardLinter::getInstructionBefore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::setsCondition
+//
+// Returns true if pStatement may change the condition pCondition, such as
+// "agt", as tested by xc.
+//
+
+static boolean setsCondition(AsmStatement pStatement, String pCondition)
+{
+
+    String m = pStatement.mnemonic;
+
+    if (pCondition.matches("n?tc")) {return(SETS_TC.matcher(m).matches());}
+
+    String accumulator = getWrittenAccumulator(pStatement);
+    if (accumulator == null) {return(false);}
+
+    if (pCondition.matches("n?c")) {return(SETS_CARRY.matcher(m).matches());}
+
+    return(ACCUMULATOR_CONDITION.matcher(pCondition).matches()
+                                    && pCondition.startsWith(accumulator));
+
+}//end of HazardLinter::setsCondition
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::getWrittenAccumulator
+//
+// Returns "a" or "b" for the accumulator written by pStatement, or null if
+// it writes neither. The accumulator written is the last one named, except
+// by stores and compares, which only read them.
+//
+
+static String getWrittenAccumulator(AsmStatement pStatement)
+{
+
+    String m = pStatement.mnemonic;
+
+    if (m.startsWith("st") || m.startsWith("cmp") || m.startsWith("b")
+                        || m.matches("xc|cc|rc|cala|bacc|wrtp|writa")){
+        return(null);
+    }
+
+    for (int i = pStatement.operands.length - 1; i >= 0; i--){
+        String o = pStatement.operands[i].trim().toLowerCase();
+        if (o.equals("a") || o.equals("b")) {return(o);}
+    }
+
+    return(null);
+
+}//end of HazardLinter::getWrittenAccumulator
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::isUnneeded
+//
+// Returns true if the nop pStatement could be removed without causing a
+// hazard. The writes in the two instructions before it are checked as if it
+// were gone, as is an xc within two words after it.
+//
+
+boolean isUnneeded(AsmStatement pStatement)
+{
+
+    if (pStatement.label != null && !pStatement.label.isEmpty()){
+        return(false);
+    }
+
+    ArrayList<Hazard> ignored = new ArrayList<Hazard>();
+
+    int index = pStatement.index;
+
+    for (int n = 0; n < 2; n++){
+        AsmStatement before = getInstructionBefore(index, -1);
+        if (before == null) {return(false);}
+        if (checkWrite(before, pStatement.index, ignored)) {return(false);}
+        index = before.index;
+    }
+
+    int words = 0;
+    int next = source.nextInstruction(pStatement.index + 1);
+
+    while (words < XC_LATENCY){
+
+        if (next < 0) {return(false);}
+
+        AsmStatement after = source.getStatement(next);
+
+        if (after.mnemonic.equals("xc")){
+            return(!checkCondition(after, pStatement.index, ignored));
+        }
+
+        if (WcetAnalyzer.isFlow(after.mnemonic)) {return(false);}
+
+        words += getWords(after);
+        next = source.nextInstruction(next + 1);
+
+    }
+
+    return(true);
+
+}//end of HazardLinter::isUnneeded
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::getWords
+//
+// Returns the number of words in the instruction pStatement.
+//
+
+int getWords(AsmStatement pStatement)
+{
+
+    C54xTiming.Timing t = timing.getTiming(pStatement);
+
+    return(t == null ? 0 : t.words);
+
+}//end of HazardLinter::getWords
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::addFinding
+//
+// Adds a finding of pKind costing or saving pCycles, described by pMessage,
+// to pFindings.
+//
+
+static void addFinding(ArrayList<Hazard> pFindings, int pKind, int pCycles,
+                                                            String pMessage)
+{
+
+    Hazard h = new Hazard();
+    h.kind = pKind; h.cycles = pCycles; h.message = pMessage;
+
+    pFindings.add(h);
+
+}//end of HazardLinter::addFinding
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::getNumChecked
+//
+// Returns the number of instructions checked by the last check.
+//
+
+public int getNumChecked()
+{
+
+    return(numChecked);
+
+}//end of HazardLinter::getNumChecked
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::getNumKept
+//
+// Returns the number of instructions whose findings were kept from the
+// check before the last one.
+//
+
+public int getNumKept()
+{
+
+    return(numKept);
+
+}//end of HazardLinter::getNumKept
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::print
+//
+// Prints pHazards to pOut with the number of each kind and their cycles.
+//
+
+public static void print(PrintStream pOut, String pTitle,
+                                                    ArrayList<Hazard> pHazards)
+{
+
+    pOut.println("Pipeline hazards - " + pTitle);
+    pOut.println();
+
+    int conflicts = 0, unneeded = 0;
+    long cost = 0, saving = 0;
+
+    for (Hazard h : pHazards){
+        pOut.println(h);
+        if (h.kind == Hazard.CONFLICT) {conflicts++; cost += h.cycles;}
+        else {unneeded++; saving += h.cycles;}
+    }
+
+    if (!pHazards.isEmpty()) {pOut.println();}
+
+    pOut.println("Hazards to fix: " + conflicts + ", costing " + cost
+                                                        + " cycle(s) of nops");
+    pOut.println("Unneeded nops: " + unneeded + ", wasting " + saving
+                                                            + " cycle(s)");
+
+}//end of HazardLinter::print
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HazardLinter::main
+//
+// Checks the source named on the command line and prints the hazards.
+//
+
+public static void main(String[] args)
+{
+
+    if (args.length != 1){
+        System.err.println("usage: HazardLinter <program.asm>");
+        System.exit(2);
+    }
+
+    try{
+
+        File file = new File(args[0]);
+
+        AsmSource source = new AsmSource();
+        source.init();
+        source.load(file);
+
+        HazardLinter linter = new HazardLinter();
+        linter.init();
+        ArrayList<Hazard> hazards = linter.check(source);
+
+        print(System.out, file.getName(), hazards);
+
+        for (Hazard h : hazards){
+            if (h.kind == Hazard.CONFLICT) {System.exit(1);}
+        }
+
+        System.exit(0);
+
+    }
+    catch(IOException e){
+        System.err.println(e.getMessage());
+        System.exit(2);
+    }
+
+}//end of HazardLinter::main
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Hazard
+//
+// One finding: a CONFLICT which must be fixed, costing the cycles of the
+// nops needed, or an UNNEEDED nop, whose removal saves its cycles.
+//
+
+public static class Hazard
+{
+
+    public static final int CONFLICT = 0;
+    public static final int UNNEEDED = 1;
+
+    public String file;
+    public int line;
+    public int kind;
+    public int cycles;
+    public String message;
+
+    @Override
+    public String toString()
+    {
+        return(new File(file).getName() + ":" + line + ": "
+            + (kind == CONFLICT ? "hazard: " : "stall: ") + message);
+    }
+
+}//end of class Hazard
+//-----------------------------------------------------------------------------
+
+}//end of class HazardLinter
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
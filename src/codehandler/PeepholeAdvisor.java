@@ -0,0 +1,1589 @@
+/******************************************************************************
+* Title: Universal IDE - PeepholeAdvisor.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class looks through the source of a TMS320C54x program for short
+* sequences of instructions which the chip has a faster way of doing, and
+* proposes the rewrite of each with the cycles it saves. The sequences
+* found are:
+*
+*   a loop counted down by banz, which can be a zero overhead block repeat
+*   (rptb) with its count in BRC, or a single repeat (rpt) if it holds one
+*   instruction and is run a known number of times
+*
+*   a load into an accumulator stored straight back out, which can be one
+*   move -- mvdd between two indirect addresses, mvmm between two auxiliary
+*   registers, or stm or st of a constant -- where the accumulator is not
+*   used afterwards
+*
+*   a conditional branch around a single instruction, which can be an xc
+*   executing that instruction on the opposite condition
+*
+*   a run of mar instructions stepping the same auxiliary register, which
+*   can be one step
+*
+* Each rewrite is only proposed if it saves cycles by the instruction table
+* of the simulator, and only if the pipeline hazard check finds no hazard
+* in the rewritten lines which was not in the original ones. A loop
+* rewritten as a block repeat leaves its auxiliary register as it was
+* rather than counted down, which is only proposed if the register is not
+* read after the loop before it is loaded again. Where the loop is left by
+* a branch, call, or return which cannot be followed, the proposal says
+* that the register may be read after the loop.
+*
+* The saving is given per pass through the sequence -- per iteration for a
+* loop whose count is not known. If a profile from the simulator is given,
+* the executions of the lines are used to weigh each saving by how often
+* its path was taken, and the proposals are listed with the most cycles
+* saved over the profile first.
+*
+* Each proposal holds the lines it replaces and the lines which replace
+* them, so that it can be applied in the editor. The advisor may be run
+* without the user interface:
+*
+*   java codehandler.PeepholeAdvisor <program.asm>
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//-----------------------------------------------------------------------------
+// class PeepholeAdvisor
+//
+
+public class PeepholeAdvisor
+{
+
+    AsmSource source;
+    C54xTiming timing;
+    HazardLinter linter;
+
+    String title;
+
+    //the executions of each line of each source file, by absolute path and
+    //indexed by line number, or null if there is no profile
+    HashMap<String, long[]> lineCounts;
+
+    //the number of operands naming each label
+    HashMap<String, Integer> references;
+
+    //the rewrites proposed
+    ArrayList<Advice> advice;
+
+    //the auxiliary register counted down by a banz
+    static final Pattern COUNTER = Pattern.compile("(?i)\\*(AR[0-7])-");
+
+    //the indirect addresses allowed as either operand of mvdd
+    static final Pattern DUAL_OPERAND = Pattern.compile(
+                                            "(?i)\\*AR[2-5](\\+|-|\\+0%)?");
+
+    //the registers allowed as either operand of mvmm
+    static final Pattern MVMM_REGISTER = Pattern.compile("(?i)AR[0-7]|SP");
+
+    //a step of an auxiliary register by mar: *AR3+, *AR3-, or *+AR3(n)
+    static final Pattern MAR_STEP = Pattern.compile(
+                        "(?i)\\*(AR[0-7])([+-])|\\*\\+(AR[0-7])\\((.+)\\)");
+
+    //the names in an operand which may be labels
+    static final Pattern SYMBOL = Pattern.compile("[\\w$@.]+");
+
+    //a local label renamed to its block, such as $3@12
+    static final Pattern LOCAL_LABEL = Pattern.compile("\\$(\\d+)@(\\d+)");
+
+    //instructions which use the accumulators without naming them
+    static final Pattern IMPLICIT_ACCUMULATOR = Pattern.compile(
+                                "abdst|sqdst|firs|lms|poly|squra|squrs");
+
+    //instructions which load the accumulator named last without reading it
+    static final Pattern LOADS_ACCUMULATOR = Pattern.compile(
+                                        "ld|ldu|ldm|ldr|mpy|mpyu|squr");
+
+    //instructions which cannot be repeated by rpt
+    static final Pattern NOT_REPEATABLE = Pattern.compile(
+                                        "xc|rsbx|ssbx|nop|idle|reset|trap");
+
+    //the condition which is true when each is false, for xc
+    static final HashMap<String, String> OPPOSITES =
+                                                new HashMap<String, String>();
+    static{
+        String[] pairs = {"eq", "neq", "gt", "leq", "geq", "lt", "ov", "nov"};
+        for (int i = 0; i < pairs.length; i += 2){
+            for (String a : new String[]{"a", "b"}){
+                OPPOSITES.put(a + pairs[i], a + pairs[i + 1]);
+                OPPOSITES.put(a + pairs[i + 1], a + pairs[i]);
+            }
+        }
+        OPPOSITES.put("tc", "ntc"); OPPOSITES.put("ntc", "tc");
+        OPPOSITES.put("c", "nc"); OPPOSITES.put("nc", "c");
+        OPPOSITES.put("bio", "nbio"); OPPOSITES.put("nbio", "bio");
+    }
+
+    //how far to look for the start of a loop count and for the next use of
+    //a register, in instructions
+    static final int SCAN_LIMIT = 12;
+
+    //the lines around a rewrite checked for pipeline hazards
+    static final int HAZARD_MARGIN = 12;
+
+    static final int NO_USE = 0;
+    static final int READ = 1;
+    static final int WRITE = 2;
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::PeepholeAdvisor (constructor)
+//
+// Creates an advisor for the program in pSource titled pTitle.
+//
+
+public PeepholeAdvisor(String pTitle, AsmSource pSource)
+{
+
+    title = pTitle; source = pSource;
+
+}//end of PeepholeAdvisor::PeepholeAdvisor (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    timing = new C54xTiming(source);
+    timing.init();
+
+    linter = new HazardLinter();
+    linter.init();
+
+    references = new HashMap<String, Integer>();
+    advice = new ArrayList<Advice>();
+
+}//end of PeepholeAdvisor::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::setProfile
+//
+// Weighs the savings by the executions of the lines in pReport, which
+// should be a profile of the same source. Must be called before analyze.
+//
+
+public void setProfile(ProfileReport pReport)
+{
+
+    lineCounts = new HashMap<String, long[]>();
+
+    for (String file : pReport.getFiles()){
+        lineCounts.put(normalize(file), pReport.getLineCounts(file));
+    }
+
+}//end of PeepholeAdvisor::setProfile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::analyze
+//
+// Looks through the whole source for sequences which can be rewritten.
+//
+
+public void analyze()
+{
+
+    countReferences();
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    for (int i = 0; i < statements.size(); i++){
+
+        AsmStatement s = statements.get(i);
+        if (!s.isInstruction() || s.parallel || s.inDataSection) {continue;}
+
+        if (s.mnemonic.equals("banz")) {checkCountingLoop(s);}
+        else
+        if (s.mnemonic.matches("ld|ldm")) {checkLoadStore(s);}
+        else
+        if (s.mnemonic.equals("bc")) {checkBranchAround(s);}
+        else
+        if (s.mnemonic.equals("mar")) {i = checkSteps(s);}
+
+    }
+
+    Collections.sort(advice, new Comparator<Advice>(){
+        @Override
+        public int compare(Advice pA, Advice pB)
+        {
+            if (pA.totalSaved != pB.totalSaved){
+                return(Long.compare(pB.totalSaved, pA.totalSaved));
+            }
+            return(Integer.compare(pB.cyclesSaved, pA.cyclesSaved));
+        }
+    });
+
+}//end of PeepholeAdvisor::analyze
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::countReferences
+//
+// Counts the operands naming each label, so that a loop is only rewritten
+// if nothing else branches into it.
+//
+
+void countReferences()
+{
+
+    for (AsmStatement s : source.getStatements()){
+        for (String o : s.operands){
+            Matcher m = SYMBOL.matcher(o);
+            while (m.find()){
+                Integer n = references.get(m.group());
+                references.put(m.group(), n == null ? 1 : n + 1);
+            }
+        }
+    }
+
+}//end of PeepholeAdvisor::countReferences
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::checkCountingLoop
+//
+// Proposes a repeat in place of the loop closed by the banz pBanz, if it is
+// counted down by banz alone and nothing else enters or leaves it.
+//
+
+void checkCountingLoop(AsmStatement pBanz)
+{
+
+    if (pBanz.operands.length != 2 || hasLabel(pBanz)) {return;}
+
+    Matcher m = COUNTER.matcher(pBanz.operands[1]);
+    if (!m.matches()) {return;}
+
+    String counter = m.group(1).toUpperCase();
+    String loop = pBanz.operands[0];
+
+    int head = source.findLabel(loop);
+    if (head < 0 || head >= pBanz.index) {return;}
+
+    Integer uses = references.get(loop);
+    if (uses == null || uses != 1 || isInBlockRepeat(head, pBanz.index)){
+        return;
+    }
+
+    //the body may not be entered part way, leave the loop, or use the
+    //counter or the block repeat registers
+
+    ArrayList<AsmStatement> body = new ArrayList<AsmStatement>();
+
+    for (int i = head; i < pBanz.index; i++){
+        AsmStatement s = source.getStatement(i);
+        if (i > head && hasLabel(s)) {return;}
+        if (s.isDirective() && AsmSource.isDataDirective(s.mnemonic)){
+            return;
+        }
+        if (!s.isInstruction()) {continue;}
+        if (WcetAnalyzer.isFlow(s.mnemonic)
+                                    && !s.mnemonic.matches("rptz?")){
+            return;
+        }
+        if (names(s, counter) || names(s, "BRC") || names(s, "RSA")
+                                                    || names(s, "REA")){
+            return;
+        }
+        body.add(s);
+    }
+
+    if (body.isEmpty()) {return;}
+
+    //the block may not end with an instruction which changes the flow of
+    //the next, as the repeat is taken at the end of the block
+
+    int n = body.size();
+    AsmStatement last = body.get(n - 1);
+    if (last.mnemonic.matches("rptz?|xc") || n > 1
+                    && body.get(n - 2).mnemonic.equals("xc")){
+        return;
+    }
+
+    //the label for the end of the block goes on the line of the last
+    //instruction, not on one executed in parallel with it
+
+    while (last.parallel) {last = body.get(body.indexOf(last) - 1);}
+
+    AsmStatement init = findLoopCount(head, counter);
+    if (init == null) {return;}
+
+    int use = findCounterUse(pBanz.index, counter);
+    if (use == READ) {return;}
+
+    //the count is known if the counter is loaded with a constant
+
+    Long count = null;
+    String k = init.operands[0];
+    if (init.mnemonic.matches("stm|st")){
+        count = source.evaluate(k.startsWith("#") ? k.substring(1) : k);
+    }
+
+    C54xTiming.Timing banz = timing.getTiming(pBanz);
+
+    if (n == 1 && count != null && count >= 0 && count <= 0xffff
+            && init.mnemonic.equals("stm") && !hasLabel(init)
+            && !NOT_REPEATABLE.matcher(last.mnemonic).matches()){
+        addRepeat(init, last, pBanz, count, counter, banz, use == WRITE);
+    }
+    else{
+        addBlockRepeat(init, head, last, pBanz, count, counter, banz,
+                                                            use == WRITE);
+    }
+
+}//end of PeepholeAdvisor::checkCountingLoop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::addRepeat
+//
+// Proposes an rpt of the one instruction pBody of the loop closed by pBanz,
+// run pCount + 1 times as loaded by pInit. pCounterDead is false if the
+// counter may be read after the loop.
+//
+
+void addRepeat(AsmStatement pInit, AsmStatement pBody, AsmStatement pBanz,
+            long pCount, String pCounter, C54xTiming.Timing pBanzTiming,
+            boolean pCounterDead)
+{
+
+    String rpt = newLine("rpt", "#" + pCount, pBanz.comment);
+
+    int setup = getCycles(rpt) - timing.getTiming(pInit).cycles;
+
+    Advice a = newAdvice(pInit, "counting loop",
+        "banz loop on " + pCounter + " run " + (pCount + 1)
+        + " times can repeat its one instruction with rpt -- interrupts"
+        + " wait until the repeat is done");
+
+    addEdit(a, pInit, remove(pInit));
+    addEdit(a, pBody, rpt, pBody.text);
+    addEdit(a, pBanz, remove(pBanz));
+
+    a.cyclesSaved = (int)(pCount * pBanzTiming.cyclesTaken
+                                        + pBanzTiming.cycles - setup);
+    a.per = "pass";
+    weighLoop(a, pInit, pBanz, pBanzTiming, setup);
+
+    if (!pCounterDead){
+        a.description += " -- " + pCounter + " may be read after the loop";
+    }
+
+    addIfSafe(a, pInit.index, pBanz.index);
+
+}//end of PeepholeAdvisor::addaddRepeat
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::addBlockRepeat
+//
+// Proposes an rptb of the body from pHead to pLast of the loop closed by
+// pBanz, counted by BRC loaded by pInit in place of pCounter. pCount is the
+// count loaded, or null if it is not known. pCounterDead is false if the
+// counter may be read after the loop.
+//
+
+void addBlockRepeat(AsmStatement pInit, int pHead, AsmStatement pLast,
+                        AsmStatement pBanz, Long pCount, String pCounter,
+                        C54xTiming.Timing pBanzTiming, boolean pCounterDead)
+{
+
+    AsmStatement head = source.getStatement(pHead);
+
+    //the block ends at the last word of its last instruction, which is
+    //given a label if it has none
+
+    String end;
+    String endText = null;
+
+    if (hasLabel(pLast)){
+        end = plain(pLast.label);
+    }
+    else{
+        end = newLabel(head.label);
+        if (end == null) {return;}
+        endText = end + ":" + pLast.text;
+    }
+
+    int words = timing.getTiming(pLast).words;
+    if (words > 1) {end = end + "+" + (words - 1);}
+
+    String rptb = newLine("rptb", end, pBanz.comment);
+    int setup = getCycles(rptb);
+
+    Advice a = newAdvice(pInit, "counting loop",
+        "banz loop on " + pCounter + " can be a zero overhead block repeat"
+        + " counted by BRC -- " + pCounter + " is no longer counted down");
+
+    addEdit(a, pInit, replaceRegister(pInit, pCounter, "BRC"));
+    addEdit(a, head, rptb, head.text);
+    if (endText != null) {addEdit(a, pLast, endText);}
+    addEdit(a, pBanz, remove(pBanz));
+
+    if (pCount != null && pCount >= 0){
+        a.cyclesSaved = (int)(pCount * pBanzTiming.cyclesTaken
+                                            + pBanzTiming.cycles - setup);
+        a.per = "pass";
+    }
+    else{
+        a.cyclesSaved = pBanzTiming.cyclesTaken;
+        a.per = "iteration";
+        a.description += ", less " + setup + " cycles to start the block";
+    }
+
+    weighLoop(a, pInit, pBanz, pBanzTiming, setup);
+
+    if (!pCounterDead){
+        a.description += " -- " + pCounter + " may be read after the loop";
+    }
+
+    addIfSafe(a, pInit.index, pBanz.index);
+
+}//end of PeepholeAdvisor::addaddBlockRepeat
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::weighLoop
+//
+// Sets the executions and total saving of pAdvice for a loop entered at
+// pInit and closed by pBanz, from the profile if there is one. A repeat
+// costs pSetup cycles more than the loop on each entry and saves each banz.
+//
+
+void weighLoop(Advice pAdvice, AsmStatement pInit, AsmStatement pBanz,
+                            C54xTiming.Timing pBanzTiming, int pSetup)
+{
+
+    long entries = getCount(pInit);
+    if (entries < 0) {return;}
+
+    long iterations = Math.max(getCount(pBanz), entries);
+
+    pAdvice.executions = entries;
+    pAdvice.totalSaved = (iterations - entries) * pBanzTiming.cyclesTaken
+                        + entries * (pBanzTiming.cycles - pSetup);
+
+}//end of PeepholeAdvisor::weighLoop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::findLoopCount
+//
+// Returns the instruction loading the count pCounter of the loop starting
+// at pHead -- stm, st, stlm, or mvdm just before the loop with nothing else
+// using the counter between -- or null if there is none.
+//
+
+AsmStatement findLoopCount(int pHead, String pCounter)
+{
+
+    int n = 0;
+
+    for (int i = pHead - 1; i >= 0 && n < SCAN_LIMIT; i--){
+
+        AsmStatement s = source.getStatement(i);
+
+        if (hasLabel(s)) {return(null);}
+        if (s.isDirective() && AsmSource.isDataDirective(s.mnemonic)){
+            return(null);
+        }
+        if (!s.isInstruction()) {continue;}
+
+        n++;
+
+        if (WcetAnalyzer.isFlow(s.mnemonic) || names(s, "BRC")){
+            return(null);
+        }
+        if (!names(s, pCounter)) {continue;}
+
+        if (s.parallel || s.operands.length != 2
+                || !s.mnemonic.matches("stm|st|stlm|mvdm")
+                || !pCounter.equals(
+                        HazardLinter.getWrittenRegister(s))
+                || names(s.operands[0], pCounter)){
+            return(null);
+        }
+
+        return(s);
+
+    }
+
+    return(null);
+
+}//end of PeepholeAdvisor::findLoopCount
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::findCounterUse
+//
+// Returns WRITE if the counter pCounter of the loop closed at pBanz is
+// loaded again after the loop before anything reads it, or if execution
+// cannot run on past the loop; READ if it may be read first; or NO_USE if
+// it is not known, as the search reached the limit or a change of flow
+// which may lead to a read. An unconditional branch to a local label is
+// followed, as it goes no further than the block of the loop.
+//
+
+int findCounterUse(int pBanz, String pCounter)
+{
+
+    HashSet<Integer> followed = new HashSet<Integer>();
+
+    int n = 0;
+    int i = source.nextInstruction(pBanz + 1);
+
+    while (i >= 0 && n++ < SCAN_LIMIT){
+
+        AsmStatement s = source.getStatement(i);
+
+        if (names(s, pCounter)){
+            boolean loads = pCounter.equals(
+                                    HazardLinter.getWrittenRegister(s))
+                        && !names(s.operands[0], pCounter)
+                        && !(i + 1 < source.getStatements().size()
+                                    && source.getStatement(i + 1).parallel);
+            return(loads ? WRITE : READ);
+        }
+
+        if (s.mnemonic.equals("b") && s.operands.length == 1
+                    && LOCAL_LABEL.matcher(s.operands[0]).matches()){
+            int target = source.findLabel(s.operands[0]);
+            if (target < 0 || !followed.add(target)) {return(NO_USE);}
+            i = source.nextInstruction(target);
+            continue;
+        }
+
+        if (WcetAnalyzer.isFlow(s.mnemonic)) {return(NO_USE);}
+
+        i = source.nextInstruction(i + 1);
+
+    }
+
+    return(i < 0 ? WRITE : NO_USE);
+
+}//end of PeepholeAdvisor::findCounterUse
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::isInBlockRepeat
+//
+// Returns true if the statements from pFirst to pLast are inside the block
+// of an rptb, which cannot hold another.
+//
+
+boolean isInBlockRepeat(int pFirst, int pLast)
+{
+
+    for (int i = pFirst; i >= 0; i--){
+
+        AsmStatement s = source.getStatement(i);
+        if (source.isRoutineLabel(s)) {return(false);}
+        if (!"rptb".equals(s.mnemonic) && !"rptbd".equals(s.mnemonic)){
+            continue;
+        }
+
+        String end = s.getOperand(0).replaceAll("[+-].*$", "").trim();
+        int e = source.findLabel(end);
+        if (e < 0 || e >= pFirst) {return(true);}
+
+    }
+
+    return(false);
+
+}//end of PeepholeAdvisor::isInBlockRepeat
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::checkLoadStore
+//
+// Proposes one move in place of the load pLoad into an accumulator and the
+// store of it which follows, if the accumulator is not used afterwards.
+//
+
+void checkLoadStore(AsmStatement pLoad)
+{
+
+    if (pLoad.operands.length != 2) {return;}
+
+    String from = pLoad.operands[0];
+    String acc = pLoad.operands[1].toLowerCase();
+    if (!acc.matches("[ab]")) {return;}
+
+    AsmStatement store = getNextAlone(pLoad);
+    if (store == null || store.operands.length != 2
+            || !store.operands[0].equalsIgnoreCase(acc)){
+        return;
+    }
+
+    String to = store.operands[1];
+    String move = null;
+
+    if (pLoad.mnemonic.equals("ld") && store.mnemonic.equals("stl")){
+        if (DUAL_OPERAND.matcher(from).matches()
+                                && DUAL_OPERAND.matcher(to).matches()){
+            move = "mvdd";
+        }
+        else
+        if (from.startsWith("#")) {move = "st";}
+    }
+    else
+    if (pLoad.mnemonic.equals("ldm") && store.mnemonic.equals("stlm")){
+        if (MVMM_REGISTER.matcher(from).matches()
+                                && MVMM_REGISTER.matcher(to).matches()){
+            move = "mvmm";
+        }
+    }
+    else
+    if (pLoad.mnemonic.equals("ld") && store.mnemonic.equals("stlm")){
+        if (from.startsWith("#")) {move = "stm";}
+    }
+
+    if (move == null) {return;}
+
+    String operands = plain(from) + ", " + plain(to);
+    String text = rewrite(pLoad, move, operands);
+
+    int saved = timing.getTiming(pLoad).cycles
+                    + timing.getTiming(store).cycles - getCycles(text);
+
+    if (saved <= 0 || !isAccumulatorDead(store.index, acc)) {return;}
+
+    Advice a = newAdvice(pLoad, "load and store",
+        pLoad.mnemonic + " then " + store.mnemonic + " through "
+        + acc.toUpperCase() + " can be one " + move + " as "
+        + acc.toUpperCase() + " is loaded again before it is used");
+
+    addEdit(a, pLoad, text);
+    addEdit(a, store, remove(store));
+
+    a.cyclesSaved = saved;
+    a.per = "pass";
+    weigh(a, pLoad, saved);
+
+    addIfSafe(a, pLoad.index, store.index);
+
+}//end of PeepholeAdvisor::checkLoadStore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::isAccumulatorDead
+//
+// Returns true if the accumulator pAcc, "a" or "b", is loaded again after
+// the instruction at pIndex before anything reads it. Any change of flow
+// ends the search, as the accumulator may be used where it leads.
+//
+
+boolean isAccumulatorDead(int pIndex, String pAcc)
+{
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    int n = 0;
+    int i = source.nextInstruction(pIndex + 1);
+
+    while (i >= 0 && n++ < SCAN_LIMIT){
+
+        //the instructions executed together read before either writes
+
+        boolean writes = false;
+
+        for (int j = i; j < statements.size(); j++){
+            AsmStatement s = statements.get(j);
+            if (j > i && s.isInstruction() && !s.parallel) {break;}
+            if (!s.isInstruction()) {continue;}
+            if (WcetAnalyzer.isFlow(s.mnemonic)) {return(false);}
+            int use = getAccumulatorUse(s, pAcc);
+            if (use == READ) {return(false);}
+            if (use == WRITE) {writes = true;}
+        }
+
+        if (writes) {return(true);}
+
+        i = source.nextInstruction(i + 1);
+
+    }
+
+    return(false);
+
+}//end of PeepholeAdvisor::isAccumulatorDead
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getAccumulatorUse
+//
+// Returns READ if pStatement may read the accumulator pAcc, "a" or "b",
+// WRITE if it only loads it, or NO_USE.
+//
+
+static int getAccumulatorUse(AsmStatement pStatement, String pAcc)
+{
+
+    if (IMPLICIT_ACCUMULATOR.matcher(pStatement.mnemonic).matches()){
+        return(READ);
+    }
+
+    int named = 0;
+
+    for (String o : pStatement.operands){
+        String c = o.trim().toLowerCase();
+        if (c.equals(pAcc)) {named++;}
+        else
+        if (HazardLinter.ACCUMULATOR_CONDITION.matcher(c).matches()
+                                                && c.startsWith(pAcc)){
+            return(READ);
+        }
+    }
+
+    if (named == 0) {return(NO_USE);}
+
+    String last = pStatement.operands[pStatement.operands.length - 1];
+
+    if (named == 1 && last.trim().equalsIgnoreCase(pAcc)
+            && LOADS_ACCUMULATOR.matcher(pStatement.mnemonic).matches()){
+        return(WRITE);
+    }
+
+    return(READ);
+
+}//end of PeepholeAdvisor::getAccumulatorUse
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::checkBranchAround
+//
+// Proposes an xc in place of the bc pBranch if it only skips the single
+// instruction after it.
+//
+
+void checkBranchAround(AsmStatement pBranch)
+{
+
+    if (pBranch.operands.length != 2) {return;}
+
+    String opposite = OPPOSITES.get(pBranch.operands[1].toLowerCase());
+    if (opposite == null) {return;}
+
+    AsmStatement skipped = getNextAlone(pBranch);
+    if (skipped == null || WcetAnalyzer.isFlow(skipped.mnemonic)
+            || skipped.index + 1 < source.getStatements().size()
+                    && source.getStatement(skipped.index + 1).parallel){
+        return;
+    }
+
+    //the branch must land on the instruction after the one skipped
+
+    int target = source.findLabel(pBranch.operands[0]);
+    int next = source.nextInstruction(skipped.index + 1);
+    if (target <= skipped.index || next < 0 || target > next) {return;}
+
+    C54xTiming.Timing branch = timing.getTiming(pBranch);
+    C54xTiming.Timing instruction = timing.getTiming(skipped);
+    if (instruction.words > 2 || !isConditionSettled(pBranch)) {return;}
+
+    String text = rewrite(pBranch, "xc",
+                instruction.words + ", " + opposite.toUpperCase());
+    int xc = getCycles(text);
+
+    //taking the branch skips the instruction, which the xc always spends
+    //its time on
+
+    int savedTaken = branch.cyclesTaken - xc - instruction.cycles;
+    int savedNotTaken = branch.cycles - xc;
+    if (savedTaken <= 0 && savedNotTaken <= 0) {return;}
+
+    Advice a = newAdvice(pBranch, "branch around",
+        "bc around one instruction can be an xc -- saves " + savedTaken
+        + " cycle(s) when branching and " + savedNotTaken + " when not");
+
+    addEdit(a, pBranch, text);
+
+    a.cyclesSaved = Math.min(savedTaken, savedNotTaken);
+    a.per = "pass";
+
+    long passes = getCount(pBranch);
+    if (passes >= 0){
+        long notTaken = Math.min(getCount(skipped), passes);
+        a.executions = passes;
+        a.totalSaved = (passes - notTaken) * savedTaken
+                                            + notTaken * savedNotTaken;
+    }
+
+    if (a.totalSaved <= 0 && passes > 0) {return;}
+
+    addIfSafe(a, pBranch.index, skipped.index);
+
+}//end of PeepholeAdvisor::checkBranchAround
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::isConditionSettled
+//
+// Returns true if the condition tested by the bc pBranch is not set within
+// the two words before it, so that an xc in its place would see it. The
+// instructions before a label are not known, so the words must be found
+// without passing one.
+//
+
+boolean isConditionSettled(AsmStatement pBranch)
+{
+
+    String condition = pBranch.operands[1].toLowerCase();
+    int words = 0;
+
+    for (int i = pBranch.index; words < HazardLinter.XC_LATENCY; ){
+
+        if (hasLabel(source.getStatement(i))) {return(false);}
+
+        i--;
+        if (i < 0) {return(false);}
+
+        AsmStatement s = source.getStatement(i);
+
+        if (s.isDirective() && AsmSource.isDataDirective(s.mnemonic)){
+            return(false);
+        }
+        if (!s.isInstruction()) {continue;}
+        if (HazardLinter.setsCondition(s, condition)
+                            || WcetAnalyzer.isFlow(s.mnemonic)){
+            return(false);
+        }
+        if (!s.parallel) {words += timing.getTiming(s).words;}
+
+    }
+
+    return(true);
+
+}//end of PeepholeAdvisor::isConditionSettled
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::checkSteps
+//
+// Proposes one step in place of the run of mar instructions starting with
+// pFirst which step the same auxiliary register by known amounts. Returns
+// the index of the last statement of the run, so that it is not checked
+// again part way.
+//
+
+int checkSteps(AsmStatement pFirst)
+{
+
+    String register = getStepRegister(pFirst);
+    if (register == null) {return(pFirst.index);}
+
+    ArrayList<AsmStatement> run = new ArrayList<AsmStatement>();
+    run.add(pFirst);
+
+    long net = getStep(pFirst);
+    int cycles = timing.getTiming(pFirst).cycles;
+
+    for (AsmStatement s = getNextAlone(pFirst); s != null;
+                                                        s = getNextAlone(s)){
+        if (!s.mnemonic.equals("mar")
+                                || !register.equals(getStepRegister(s))){
+            break;
+        }
+        run.add(s);
+        net += getStep(s);
+        cycles += timing.getTiming(s).cycles;
+    }
+
+    AsmStatement last = run.get(run.size() - 1);
+    if (run.size() < 2
+                || last.index + 1 < source.getStatements().size()
+                        && source.getStatement(last.index + 1).parallel){
+        return(last.index);
+    }
+
+    String step = net == 1 ? "*" + register + "+"
+                : net == -1 ? "*" + register + "-"
+                : "*+" + register + "(" + net + ")";
+
+    String text = net == 0 ? null : rewrite(pFirst, "mar", step);
+    int saved = cycles - (text == null ? 0 : getCycles(text));
+    if (saved <= 0) {return(last.index);}
+
+    Advice a = newAdvice(pFirst, "address steps", run.size()
+            + " mar steps of " + register + " can be "
+            + (net == 0 ? "removed as they cancel" : "one step of " + net));
+
+    addEdit(a, pFirst, text == null ? remove(pFirst) : new String[]{text});
+    for (int i = 1; i < run.size(); i++){
+        addEdit(a, run.get(i), remove(run.get(i)));
+    }
+
+    a.cyclesSaved = saved;
+    a.per = "pass";
+    weigh(a, pFirst, saved);
+
+    addIfSafe(a, pFirst.index, last.index);
+
+    return(last.index);
+
+}//end of PeepholeAdvisor::checkSteps
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getStepRegister
+//
+// Returns the auxiliary register, such as "AR3", stepped by the mar
+// pStatement by a known amount, or null if it is not such a step.
+//
+
+String getStepRegister(AsmStatement pStatement)
+{
+
+    if (pStatement.operands.length != 1) {return(null);}
+
+    Matcher m = MAR_STEP.matcher(pStatement.operands[0].trim());
+    if (!m.matches()) {return(null);}
+
+    if (m.group(1) != null) {return(m.group(1).toUpperCase());}
+
+    return(source.evaluate(m.group(4)) == null ? null
+                                            : m.group(3).toUpperCase());
+
+}//end of PeepholeAdvisor::getStepRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getStep
+//
+// Returns the amount the mar pStatement steps its register, which must be
+// known -- see getStepRegister.
+//
+
+long getStep(AsmStatement pStatement)
+{
+
+    Matcher m = MAR_STEP.matcher(pStatement.operands[0].trim());
+    m.matches();
+
+    if (m.group(1) != null) {return(m.group(2).equals("+") ? 1 : -1);}
+
+    return(source.evaluate(m.group(4)));
+
+}//end of PeepholeAdvisor::getStep
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getNextAlone
+//
+// Returns the instruction after pStatement if nothing can reach it but
+// pStatement -- it has no label and neither is executed in parallel with
+// another -- or null otherwise.
+//
+
+AsmStatement getNextAlone(AsmStatement pStatement)
+{
+
+    int next = source.nextInstruction(pStatement.index + 1);
+    if (next < 0) {return(null);}
+
+    for (int i = pStatement.index + 1; i <= next; i++){
+        AsmStatement s = source.getStatement(i);
+        if (hasLabel(s) || s.parallel) {return(null);}
+    }
+
+    return(source.getStatement(next));
+
+}//end of PeepholeAdvisor::getNextAlone
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::weigh
+//
+// Sets the executions and total saving of pAdvice from the profile, if
+// there is one, as pSaved cycles for each execution of pStatement.
+//
+
+void weigh(Advice pAdvice, AsmStatement pStatement, int pSaved)
+{
+
+    long count = getCount(pStatement);
+    if (count < 0) {return;}
+
+    pAdvice.executions = count;
+    pAdvice.totalSaved = count * pSaved;
+
+}//end of PeepholeAdvisor::weigh
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getCount
+//
+// Returns the number of times the line of pStatement was executed in the
+// profile, or -1 if there is no profile.
+//
+
+long getCount(AsmStatement pStatement)
+{
+
+    if (lineCounts == null) {return(-1);}
+
+    long[] counts = lineCounts.get(normalize(pStatement.file));
+
+    if (counts == null || pStatement.line >= counts.length) {return(0);}
+
+    return(counts[pStatement.line]);
+
+}//end of PeepholeAdvisor::getCount
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::addIfSafe
+//
+// Adds pAdvice to the list unless the pipeline hazard check finds more
+// hazards in its rewritten lines than in the original ones, from the
+// statement at pFirst to the one at pLast.
+//
+
+void addIfSafe(Advice pAdvice, int pFirst, int pLast)
+{
+
+    HashMap<Integer, Edit> byLine = new HashMap<Integer, Edit>();
+    for (Edit e : pAdvice.edits) {byLine.put(e.line, e);}
+
+    StringBuilder before = new StringBuilder();
+    StringBuilder after = new StringBuilder();
+
+    int first = Math.max(0, pFirst - HAZARD_MARGIN);
+    int last = Math.min(source.getStatements().size() - 1,
+                                                    pLast + HAZARD_MARGIN);
+
+    for (int i = first; i <= last; i++){
+
+        AsmStatement s = source.getStatement(i);
+        if (!s.file.equals(pAdvice.file)) {continue;}
+
+        before.append(s.text).append('\n');
+
+        Edit e = byLine.get(s.line);
+        if (e == null) {after.append(s.text).append('\n'); continue;}
+        for (String r : e.replacement) {after.append(r).append('\n');}
+
+    }
+
+    if (countConflicts(before.toString()) <
+                                        countConflicts(after.toString())){
+        return;
+    }
+
+    advice.add(pAdvice);
+
+}//end of PeepholeAdvisor::addIfSafe
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::countConflicts
+//
+// Returns the number of pipeline hazards the linter finds in pText.
+//
+
+int countConflicts(String pText)
+{
+
+    int conflicts = 0;
+
+    for (HazardLinter.Hazard h : linter.lint(title, pText)){
+        if (h.kind == HazardLinter.Hazard.CONFLICT) {conflicts++;}
+    }
+
+    return(conflicts);
+
+}//end of PeepholeAdvisor::countConflicts
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getCycles
+//
+// Returns the cycles of the instruction written in the line pText.
+//
+
+int getCycles(String pText)
+{
+
+    AsmSource line = new AsmSource();
+    line.init();
+    line.parse(title, pText);
+
+    for (AsmStatement s : line.getStatements()){
+        if (s.isInstruction()) {return(timing.getTiming(s).cycles);}
+    }
+
+    return(0);
+
+}//end of PeepholeAdvisor::getCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::newAdvice
+//
+// Returns a new proposal of the kind pKind starting at pStatement.
+//
+
+Advice newAdvice(AsmStatement pStatement, String pKind, String pDescription)
+{
+
+    Advice a = new Advice();
+    a.file = pStatement.file;
+    a.line = pStatement.line;
+    a.kind = pKind;
+    a.description = pDescription;
+
+    return(a);
+
+}//end of PeepholeAdvisor::newAdvice
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::addEdit
+//
+// Adds to pAdvice the replacement of the line of pStatement by the lines
+// pReplacement, none to remove it.
+//
+
+void addEdit(Advice pAdvice, AsmStatement pStatement, String... pReplacement)
+{
+
+    Edit e = new Edit();
+    e.line = pStatement.line;
+    e.text = pStatement.text;
+    e.replacement = pReplacement;
+
+    pAdvice.edits.add(e);
+
+}//end of PeepholeAdvisor::addEdit
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::rewrite
+//
+// Returns the line of pStatement with its instruction replaced by
+// pMnemonic and pOperands, keeping its label and comment.
+//
+
+static String rewrite(AsmStatement pStatement, String pMnemonic,
+                                                            String pOperands)
+{
+
+    String text = pStatement.text;
+
+    String code = text.substring(0, pStatement.comment == null
+            ? text.length() : text.length() - pStatement.comment.length() - 1);
+
+    //the label, if any, and the spacing around the mnemonic are kept
+
+    int p = skip(code, 0, false);
+    int start = skip(code, p, true);
+    int end = skip(code, start, false);
+    String spacing = code.substring(end, skip(code, end, true));
+
+    String trimmed = code.replaceAll("\\s+$", "");
+    String gap = code.substring(trimmed.length());
+
+    String line = code.substring(0, start) + pMnemonic
+                        + (spacing.isEmpty() ? "\t" : spacing) + pOperands;
+
+    if (pStatement.comment == null) {return(line);}
+
+    return(line + (gap.isEmpty() ? "\t" : gap) + ";" + pStatement.comment);
+
+}//end of PeepholeAdvisor::rewrite
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::skip
+//
+// Returns the position in pText of the first character at or after pStart
+// which is not white space if pSpace is true, or which is if it is false.
+//
+
+static int skip(String pText, int pStart, boolean pSpace)
+{
+
+    int p = pStart;
+
+    while (p < pText.length()
+                    && Character.isWhitespace(pText.charAt(p)) == pSpace){
+        p++;
+    }
+
+    return(p);
+
+}//end of PeepholeAdvisor::skip
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::replaceRegister
+//
+// Returns the line of pStatement with the register pOld replaced by pNew
+// in its instruction, keeping its comment.
+//
+
+static String replaceRegister(AsmStatement pStatement, String pOld,
+                                                                String pNew)
+{
+
+    String text = pStatement.text;
+
+    int end = pStatement.comment == null ? text.length()
+                            : text.length() - pStatement.comment.length() - 1;
+
+    return(text.substring(0, end).replaceAll("(?i)\\b" + pOld + "\\b", pNew)
+                                                    + text.substring(end));
+
+}//end of PeepholeAdvisor::replaceRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::newLine
+//
+// Returns a line holding the instruction pMnemonic with pOperands and the
+// comment pComment, which may be null.
+//
+
+static String newLine(String pMnemonic, String pOperands, String pComment)
+{
+
+    String line = "\t" + pMnemonic + "\t" + pOperands;
+
+    return(pComment == null ? line : line + "\t\t\t\t\t;" + pComment);
+
+}//end of PeepholeAdvisor::newLine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::remove
+//
+// Returns the lines which replace that of pStatement to remove its
+// instruction: none, or its label alone if it has one.
+//
+
+static String[] remove(AsmStatement pStatement)
+{
+
+    if (!hasLabel(pStatement)) {return(new String[0]);}
+
+    return(new String[]{plain(pStatement.label)
+                                + (pStatement.labelHasColon ? ":" : "")});
+
+}//end of PeepholeAdvisor::remove
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::newLabel
+//
+// Returns a label not yet used for the end of a block starting at the label
+// pHead: the next free local label in its block if it is local, or null if
+// there is none.
+//
+
+String newLabel(String pHead)
+{
+
+    Matcher m = LOCAL_LABEL.matcher(pHead);
+    if (!m.matches()) {return(null);}
+
+    String block = "@" + m.group(2);
+    int highest = 0;
+
+    for (AsmStatement s : source.getStatements()){
+        if (s.label == null || !s.label.endsWith(block)) {continue;}
+        Matcher l = LOCAL_LABEL.matcher(s.label);
+        if (l.matches()){
+            highest = Math.max(highest, Integer.parseInt(l.group(1)));
+        }
+    }
+
+    return("$" + (highest + 1));
+
+}//end of PeepholeAdvisor::newLabel
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::hasLabel
+//
+// Returns true if pStatement has a label.
+//
+
+static boolean hasLabel(AsmStatement pStatement)
+{
+
+    return(pStatement.label != null && !pStatement.label.isEmpty());
+
+}//end of PeepholeAdvisor::hasLabel
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::names
+//
+// Returns true if any operand of pStatement names the register pRegister.
+//
+
+static boolean names(AsmStatement pStatement, String pRegister)
+{
+
+    for (String o : pStatement.operands){
+        if (names(o, pRegister)) {return(true);}
+    }
+
+    return(false);
+
+}//end of PeepholeAdvisor::names
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::names
+//
+// Returns true if the operand pOperand names the register pRegister.
+//
+
+static boolean names(String pOperand, String pRegister)
+{
+
+    return(Pattern.compile("(?i)(^|\\W)" + pRegister + "(\\W|$)")
+                                                    .matcher(pOperand).find());
+
+}//end of PeepholeAdvisor::names
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::plain
+//
+// Returns pText with the block numbers added to its local labels removed,
+// as it would be written in the source.
+//
+
+static String plain(String pText)
+{
+
+    return(pText.replaceAll("(\\$\\d+)@\\d+", "$1"));
+
+}//end of PeepholeAdvisor::plain
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::normalize
+//
+// Returns the absolute form of the path pPath, so that the paths of the
+// source and of the profile can be compared.
+//
+
+static String normalize(String pPath)
+{
+
+    return(new File(pPath).toPath().toAbsolutePath().normalize().toString());
+
+}//end of PeepholeAdvisor::normalize
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getAdvice
+//
+// Returns the rewrites proposed, most cycles saved first.
+//
+
+public ArrayList<Advice> getAdvice()
+{
+
+    return(advice);
+
+}//end of PeepholeAdvisor::getAdvice
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::getTitle
+//
+// Returns the title of the advice.
+//
+
+public String getTitle()
+{
+
+    return(title);
+
+}//end of PeepholeAdvisor::getTitle
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::hasProfile
+//
+// Returns true if the savings are weighed by a profile.
+//
+
+public boolean hasProfile()
+{
+
+    return(lineCounts != null);
+
+}//end of PeepholeAdvisor::hasProfile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::print
+//
+// Prints the proposals to pOut, each with the lines it replaces and the
+// lines which replace them.
+//
+
+public void print(PrintStream pOut)
+{
+
+    pOut.println("Peephole advice - " + title);
+    pOut.println();
+
+    long total = 0;
+
+    for (Advice a : advice){
+
+        pOut.println(a);
+
+        pOut.print("    saves " + a.cyclesSaved + " cycle(s) per " + a.per);
+        if (a.executions >= 0){
+            pOut.print(", executed " + a.executions + " time(s), "
+                        + a.totalSaved + " cycle(s) over the profile");
+            total += a.totalSaved;
+        }
+        pOut.println();
+
+        for (Edit e : a.edits){
+            pOut.println("    " + e.line + " - " + e.text);
+            for (String r : e.replacement){
+                pOut.println("    " + e.line + " + " + r);
+            }
+        }
+
+        pOut.println();
+
+    }
+
+    pOut.println("Rewrites proposed: " + advice.size());
+    if (hasProfile()){
+        pOut.println("Cycles saved over the profile: " + total);
+    }
+
+    for (String w : timing.getWarnings()) {pOut.println("warning: " + w);}
+
+}//end of PeepholeAdvisor::print
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// PeepholeAdvisor::main
+//
+// Looks through the source named on the command line and prints the
+// rewrites proposed.
+//
+
+public static void main(String[] args)
+{
+
+    if (args.length != 1){
+        System.err.println("usage: PeepholeAdvisor <program.asm>");
+        System.exit(2);
+    }
+
+    try{
+
+        File file = new File(args[0]);
+
+        AsmSource source = new AsmSource();
+        source.init();
+        source.load(file);
+
+        PeepholeAdvisor advisor = new PeepholeAdvisor(file.getName(), source);
+        advisor.init();
+        advisor.analyze();
+        advisor.print(System.out);
+
+    }
+    catch(IOException e){
+        System.err.println(e.getMessage());
+        System.exit(2);
+    }
+
+}//end of PeepholeAdvisor::main
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Advice
+//
+// One proposed rewrite: the edits to make, the cycles saved per pass
+// through the sequence -- or per iteration, as given by per -- and, with a
+// profile, the executions of its first line and the cycles saved over the
+// profile. Without a profile, executions and totalSaved are -1.
+//
+
+public static class Advice
+{
+
+    public String file;
+    public int line;
+    public String kind;
+    public String description;
+
+    public int cyclesSaved;
+    public String per;
+    public long executions = -1;
+    public long totalSaved = -1;
+
+    public ArrayList<Edit> edits = new ArrayList<Edit>();
+
+    @Override
+    public String toString()
+    {
+        return(new File(file).getName() + ":" + line + ": " + kind + ": "
+                                                            + description);
+    }
+
+}//end of class Advice
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Edit
+//
+// The replacement of one line, numbered from 1, whose text was text when
+// the advice was made, by the lines in replacement -- none to remove it.
+//
+
+public static class Edit
+{
+
+    public int line;
+    public String text;
+    public String[] replacement;
+
+}//end of class Edit
+//-----------------------------------------------------------------------------
+
+}//end of class PeepholeAdvisor
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,304 @@
+/******************************************************************************
+* Title: Universal IDE - ProfileReport.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class sums a profile counted by the simulator by source line and by
+* routine through a SourceMap, answering where the firmware spends its
+* cycles.
+*
+* The cycles of each line are kept per source file, indexed by line number,
+* for showing as a heat map beside the source, along with the number of
+* times each line was executed -- the most executions of any of its
+* instructions. The routines are listed with
+* the number of times each was entered -- the executions of its first
+* instruction -- the instructions and cycles run in it, and the cycles per
+* entry, which for a routine run once per shot is its time per shot. Cycles
+* at addresses with no source or before the first routine are summed under
+* NO_SOURCE and NO_ROUTINE.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import dspsimulation.Profiler;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+//-----------------------------------------------------------------------------
+// class ProfileReport
+//
+
+public class ProfileReport
+{
+
+    String title;
+    Profiler profile;
+    SourceMap sourceMap;
+
+    //the routines, most cycles first
+    ArrayList<Routine> routines;
+
+    //the cycles of each line of each source file, indexed by line number
+    LinkedHashMap<String, long[]> lineCycles;
+
+    //the executions of each line of each source file, indexed by line number
+    HashMap<String, long[]> lineCounts;
+
+    public static final String NO_SOURCE = "(no source)";
+    public static final String NO_ROUTINE = "(no routine)";
+
+//-----------------------------------------------------------------------------
+// ProfileReport::ProfileReport (constructor)
+//
+// Creates a report titled pTitle of pProfile mapped to the source through
+// pSourceMap.
+//
+
+public ProfileReport(String pTitle, Profiler pProfile, SourceMap pSourceMap)
+{
+
+    title = pTitle; profile = pProfile; sourceMap = pSourceMap;
+
+}//end of ProfileReport::ProfileReport (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+// Sums the profile by line and by routine.
+//
+
+public void init()
+{
+
+    routines = new ArrayList<Routine>();
+    lineCycles = new LinkedHashMap<String, long[]>();
+    lineCounts = new HashMap<String, long[]>();
+
+    HashMap<String, Routine> byName = new HashMap<String, Routine>();
+
+    int n = Math.min(profile.getProgramSize(), sourceMap.getProgramSize());
+
+    //the highest line of each file, to size its array
+
+    HashMap<String, Integer> lastLine = new HashMap<String, Integer>();
+
+    for (int a = 0; a < n; a++){
+        String file = sourceMap.getFile(a);
+        if (file == null) {continue;}
+        Integer last = lastLine.get(file);
+        int line = sourceMap.getLine(a);
+        if (last == null || line > last) {lastLine.put(file, line);}
+    }
+
+    for (String file : sourceMap.getFiles()){
+        if (lastLine.containsKey(file)){
+            lineCycles.put(file, new long[lastLine.get(file) + 1]);
+            lineCounts.put(file, new long[lastLine.get(file) + 1]);
+        }
+    }
+
+    for (int a = 0; a < n; a++){
+
+        long count = profile.getCount(a);
+        if (count == 0) {continue;}
+
+        long cycles = profile.getCycles(a);
+
+        String file = sourceMap.getFile(a);
+        if (file != null){
+            int line = sourceMap.getLine(a);
+            lineCycles.get(file)[line] += cycles;
+            long[] counts = lineCounts.get(file);
+            if (count > counts[line]) {counts[line] = count;}
+        }
+
+        String name = file == null ? NO_SOURCE : sourceMap.getRoutine(a);
+        if (name == null) {name = NO_ROUTINE;}
+
+        Routine r = byName.get(name);
+
+        if (r == null){
+            r = new Routine();
+            r.name = name;
+            r.address = file == null ? -1 : sourceMap.getRoutineStart(a);
+            if (r.address >= 0){
+                r.file = sourceMap.getFile(r.address);
+                r.line = sourceMap.getLine(r.address);
+            }
+            byName.put(name, r);
+            routines.add(r);
+        }
+
+        if (a == r.address) {r.entries += count;}
+        r.instructions += count;
+        r.cycles += cycles;
+
+    }
+
+    Collections.sort(routines, new Comparator<Routine>(){
+        @Override
+        public int compare(Routine pA, Routine pB)
+        {
+            return(Long.compare(pB.cycles, pA.cycles));
+        }
+    });
+
+}//end of ProfileReport::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::print
+//
+// Prints the pMax routines using the most cycles to pOut as a table.
+//
+
+public void print(PrintStream pOut, int pMax)
+{
+
+    long total = getTotalCycles();
+
+    pOut.printf("%-32s %10s %12s %14s %12s %6s%n", "Routine", "Entries",
+                 "Instructions", "Cycles", "Cycles/Entry", "%");
+
+    for (int i = 0; i < routines.size() && i < pMax; i++){
+        Routine r = routines.get(i);
+        pOut.printf("%-32s %10d %12d %14d %12.1f %6.2f%n", r.name, r.entries,
+                    r.instructions, r.cycles, r.getCyclesPerEntry(),
+                    total == 0 ? 0.0 : 100.0 * r.cycles / total);
+    }
+
+}//end of ProfileReport::print
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::getTitle
+//
+// Returns the title of the report.
+//
+
+public String getTitle()
+{
+
+    return(title);
+
+}//end of ProfileReport::getTitle
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::getRoutines
+//
+// Returns the routines, most cycles first.
+//
+
+public ArrayList<Routine> getRoutines()
+{
+
+    return(routines);
+
+}//end of ProfileReport::getRoutines
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::getFiles
+//
+// Returns the paths of the source files which hold any profiled line.
+//
+
+public ArrayList<String> getFiles()
+{
+
+    return(new ArrayList<String>(lineCycles.keySet()));
+
+}//end of ProfileReport::getFiles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::getLineCycles
+//
+// Returns the cycles of each line of the source file pFile, indexed by line
+// number, or null if the file holds no profiled line.
+//
+
+public long[] getLineCycles(String pFile)
+{
+
+    return(lineCycles.get(pFile));
+
+}//end of ProfileReport::getLineCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::getLineCounts
+//
+// Returns the number of times each line of the source file pFile was
+// executed, indexed by line number, or null if the file holds no profiled
+// line.
+//
+
+public long[] getLineCounts(String pFile)
+{
+
+    return(lineCounts.get(pFile));
+
+}//end of ProfileReport::getLineCounts
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProfileReport::getTotalCycles
+//
+// Returns the cycles of all instructions profiled.
+//
+
+public long getTotalCycles()
+{
+
+    return(profile.getTotalCycles());
+
+}//end of ProfileReport::getTotalCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Routine
+//
+// The counts for one routine. The address is that of its first
+// instruction, or -1 for the cycles not in any routine.
+//
+
+public static class Routine
+{
+
+    public String name;
+    public int address;
+    public String file;
+    public int line;
+
+    public long entries;
+    public long instructions;
+    public long cycles;
+
+    public double getCyclesPerEntry()
+    {
+        return(entries == 0 ? 0 : (double)cycles / entries);
+    }
+
+}//end of class Routine
+//-----------------------------------------------------------------------------
+
+}//end of class ProfileReport
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,601 @@
+/******************************************************************************
+* Title: Universal IDE - SourceMap.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class maps each program address to the source file and line which
+* assembled the word there, and names the routine each address is in, so
+* that what the simulator finds about an address can be shown against the
+* source code.
+*
+* The map may be filled by an assembler as it goes, or read from the listing
+* file written by the TI assembler with its -l option. Each line of the
+* listing which holds a word of object code gives the line number in its
+* first field, the address in its second and the word in its third, followed
+* by the source statement. Lines from included files are marked with a
+* letter giving the depth of nesting, and words after the first of an
+* instruction are listed on lines of their own with no line number.
+*
+* The addresses in a listing are offsets into each section rather than
+* addresses in program memory, as the sections are placed by the linker. Each
+* section is placed by finding where its object code lies in the program
+* image -- the words marked as relocated by the linker are not compared.
+* The largest sections are placed first, and no two may overlap. A listing
+* made with absolute addresses is placed where it says.
+*
+* The routines are the labels in the source ending with a colon, except for
+* the local labels beginning with '$'. An address is in the routine of the
+* closest label at or before it.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import dspsimulation.ProgramImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//-----------------------------------------------------------------------------
+// class SourceMap
+//
+
+public class SourceMap
+{
+
+    int programSize;
+
+    //for each program address, the index in files of the source file and
+    //the line number, or -1 for both if not known
+
+    int[] fileIndex;
+    int[] lineNumber;
+
+    //set for each word which is data placed among the code, such as a table
+    boolean[] data;
+
+    ArrayList<String> files;
+
+    //the names of the routines by the address at which each begins
+    TreeMap<Integer, String> routines;
+
+    //a line of a listing: the include letter, the line number, the address,
+    //a word of object code and its relocation mark, and the source -- a
+    //line number never begins with a zero while an address always does
+
+    static final Pattern LISTING_LINE = Pattern.compile(
+              "([A-Z])?\\s*([1-9]\\d*)?(?:\\s+(0[0-9A-Fa-f]{5,7})"
+              + "(?:\\s+([0-9A-Fa-f]{4})([!'\"+\\-]?))?)?(?=\\s|$)(.*)");
+
+    //the page heading of a listing, which names the source file
+    static final Pattern LISTING_HEADING =
+                                    Pattern.compile("\\s*\"(.+)\"\\s+PAGE.*");
+
+//-----------------------------------------------------------------------------
+// SourceMap::SourceMap (constructor)
+//
+// Creates a map for a program space of pProgramSize words.
+//
+
+public SourceMap(int pProgramSize)
+{
+
+    programSize = pProgramSize;
+
+}//end of SourceMap::SourceMap (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    fileIndex = new int[programSize];
+    lineNumber = new int[programSize];
+    Arrays.fill(fileIndex, -1);
+    Arrays.fill(lineNumber, -1);
+    data = new boolean[programSize];
+
+    files = new ArrayList<String>();
+    routines = new TreeMap<Integer, String>();
+
+}//end of SourceMap::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::add
+//
+// Records that the word at pAddress was assembled from line pLine of the
+// source file pFile.
+//
+
+public void add(int pAddress, String pFile, int pLine)
+{
+
+    int index = files.indexOf(pFile);
+    if (index < 0) {index = files.size(); files.add(pFile);}
+
+    fileIndex[pAddress] = index;
+    lineNumber[pAddress] = pLine;
+
+}//end of SourceMap::add
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::markData
+//
+// Records that the word at pAddress is data rather than an instruction.
+//
+
+public void markData(int pAddress)
+{
+
+    data[pAddress] = true;
+
+}//end of SourceMap::markData
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::addRoutine
+//
+// Records that the routine named pName begins at pAddress.
+//
+
+public void addRoutine(int pAddress, String pName)
+{
+
+    routines.put(pAddress, pName);
+
+}//end of SourceMap::addRoutine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::loadListing
+//
+// Adds the addresses and routines in the listing pListing, placing its
+// sections where their object code lies in pImage. If pImage is null, the
+// addresses are taken as they are. Source file names are taken relative to
+// the listing's folder. Sections which cannot be placed are left out.
+//
+// Throws an IOException if the listing cannot be read.
+//
+
+public void loadListing(File pListing, ProgramImage pImage) throws IOException
+{
+
+    File folder = pListing.getAbsoluteFile().getParentFile();
+
+    //the source file at each depth of nesting, the main file being named by
+    //the page heading or else after the listing
+
+    ArrayList<String> nesting = new ArrayList<String>();
+    String name = pListing.getName().replaceFirst("\\.[^.]*$", "") + ".asm";
+    nesting.add(new File(folder, name).getPath());
+    boolean named = false;
+
+    LinkedHashMap<String, Section> sections =
+                                          new LinkedHashMap<String, Section>();
+    Section section = new Section(".text");
+    sections.put(section.name, section);
+
+    int line = -1, depth = 0;
+    boolean data = false;
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+                                 new FileInputStream(pListing), "ISO-8859-1"));
+
+    try{
+
+        String text;
+
+        while ((text = reader.readLine()) != null){
+
+            Matcher m = LISTING_HEADING.matcher(text);
+            if (m.matches()){
+                if (!named){
+                    nesting.set(0, new File(folder, m.group(1)).getPath());
+                    named = true;
+                }
+                continue;
+            }
+
+            m = LISTING_LINE.matcher(text);
+            if (!m.matches() || (m.group(2) == null && m.group(3) == null)){
+                continue;
+            }
+
+            //a word with no line number belongs to the line before it
+
+            int offset = m.group(3) == null ? -1
+                                           : Integer.parseInt(m.group(3), 16);
+
+            //the label and directive of the statement, if any
+
+            String[] tokens = m.group(6).trim().split("\\s+", 3);
+            int t = 0;
+            String directive = "";
+
+            if (m.group(2) != null){
+
+                line = Integer.parseInt(m.group(2));
+                depth = m.group(1) == null ? 0
+                                           : m.group(1).charAt(0) - 'A' + 1;
+
+                //a comment is never a label or directive, even one which
+                //ends with a colon such as ";WARNING: Adjust these values"
+
+                if (tokens[0].startsWith(";") || tokens[0].startsWith("*")){
+                    t = tokens.length;
+                }
+                else
+                if (tokens[0].length() > 1 && tokens[0].endsWith(":")){
+                    String label =
+                            tokens[0].substring(0, tokens[0].length() - 1);
+                    if (!label.startsWith("$")){
+                        section.addLabel(offset, label);
+                    }
+                    t++;
+                }
+
+                if (t < tokens.length) {directive = tokens[t].toLowerCase();}
+
+                //words placed by a directive, such as .word, are data
+                data = directive.startsWith(".");
+
+            }
+
+            if (m.group(4) != null && depth < nesting.size()){
+                section.addWord(offset, Integer.parseInt(m.group(4), 16),
+                    !m.group(5).isEmpty(), nesting.get(depth), line, data);
+            }
+
+            if (m.group(2) == null || directive.isEmpty()) {continue;}
+
+            String operand =
+                          t + 1 < tokens.length ? unquote(tokens[t + 1]) : "";
+
+            if (directive.equals(".text") || directive.equals(".data")
+                                              || directive.equals(".sect")){
+                String key = directive.equals(".sect") ? operand : directive;
+                section = sections.get(key);
+                if (section == null){
+                    section = new Section(key);
+                    sections.put(key, section);
+                }
+            }
+            else
+            if (directive.equals(".include") || directive.equals(".copy")){
+                while (nesting.size() > depth + 1){
+                    nesting.remove(nesting.size() - 1);
+                }
+                nesting.add(new File(folder, operand).getPath());
+            }
+
+        }
+
+    }
+    finally{
+        reader.close();
+    }
+
+    placeSections(new ArrayList<Section>(sections.values()), pImage);
+
+}//end of SourceMap::loadListing
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::placeSections
+//
+// Places each of pSections where its object code lies in pImage, or where
+// its addresses say if pImage is null, and adds its words and labels.
+//
+
+private void placeSections(ArrayList<Section> pSections, ProgramImage pImage)
+{
+
+    //the program words, -1 where nothing is loaded
+
+    int[] memory = new int[programSize];
+    Arrays.fill(memory, -1);
+
+    for (int i = 0; pImage != null && i < pImage.getNumBlocks(); i++){
+        short[] words = pImage.getWords(i);
+        int address = pImage.getAddress(i);
+        for (int j = 0; j < words.length && address + j < programSize; j++){
+            memory[address + j] = words[j] & 0xffff;
+        }
+    }
+
+    boolean[] used = new boolean[programSize];
+
+    Collections.sort(pSections, new Comparator<Section>(){
+        @Override
+        public int compare(Section pA, Section pB)
+        {
+            return(pB.words.size() - pA.words.size());
+        }
+    });
+
+    for (Section s : pSections){
+
+        if (s.words.isEmpty()) {continue;}
+
+        int base = pImage == null ? 0 : findBase(s, memory, used);
+        if (base < 0) {continue;}
+
+        for (int[] w : s.words){
+            int address = base + w[0];
+            if (address >= programSize) {continue;}
+            used[address] = true;
+            add(address, s.files.get(w[3]), w[4]);
+            if (w[5] != 0) {markData(address);}
+        }
+
+        for (Map.Entry<Integer, String> e : s.labels.entrySet()){
+            if (base + e.getKey() < programSize){
+                addRoutine(base + e.getKey(), e.getValue());
+            }
+        }
+
+    }
+
+}//end of SourceMap::placeSections
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::findBase
+//
+// Returns the lowest address at which the words of pSection which are not
+// relocated match pMemory, without overlapping the addresses marked in pUsed,
+// or -1 if there is none. A section whose words are all relocated is placed
+// at its listed addresses if they are free.
+//
+
+private int findBase(Section pSection, int[] pMemory, boolean[] pUsed)
+{
+
+    int span = 0;
+    for (int[] w : pSection.words) {span = Math.max(span, w[0] + 1);}
+
+    if (fits(pSection, 0, pMemory, pUsed)) {return(0);}
+
+    if (!pSection.hasFixedWord) {return(-1);}
+
+    for (int base = 1; base + span <= programSize; base++){
+        if (fits(pSection, base, pMemory, pUsed)) {return(base);}
+    }
+
+    return(-1);
+
+}//end of SourceMap::findBase
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::fits
+//
+// Returns true if pSection may be placed at pBase: every word lies within
+// the program loaded in pMemory at an address not marked in pUsed, and every
+// word which is not relocated matches.
+//
+
+private boolean fits(Section pSection, int pBase, int[] pMemory,
+                                                              boolean[] pUsed)
+{
+
+    for (int[] w : pSection.words){
+        int address = pBase + w[0];
+        if (address >= programSize || pUsed[address]) {return(false);}
+        int word = pMemory[address];
+        if (word < 0 || (w[2] == 0 && word != w[1])) {return(false);}
+    }
+
+    return(true);
+
+}//end of SourceMap::fits
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::unquote
+//
+// Returns pText without the quotes around it, if any.
+//
+
+private static String unquote(String pText)
+{
+
+    if (pText.length() >= 2 && pText.startsWith("\"")
+                                                   && pText.endsWith("\"")){
+        return(pText.substring(1, pText.length() - 1));
+    }
+
+    return(pText);
+
+}//end of SourceMap::unquote
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::getFile
+//
+// Returns the path of the source file for pAddress, or null if not known.
+//
+
+public String getFile(int pAddress)
+{
+
+    int index = fileIndex[pAddress];
+
+    return(index < 0 ? null : files.get(index));
+
+}//end of SourceMap::getFile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::getLine
+//
+// Returns the source line number for pAddress, or -1 if not known.
+//
+
+public int getLine(int pAddress)
+{
+
+    return(lineNumber[pAddress]);
+
+}//end of SourceMap::getLine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::isData
+//
+// Returns true if the word at pAddress is data rather than an instruction.
+//
+
+public boolean isData(int pAddress)
+{
+
+    return(data[pAddress]);
+
+}//end of SourceMap::isData
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::getRoutineStart
+//
+// Returns the address at which the routine holding pAddress begins, or -1
+// if there is no routine at or before it.
+//
+
+public int getRoutineStart(int pAddress)
+{
+
+    Integer start = routines.floorKey(pAddress);
+
+    return(start == null ? -1 : start);
+
+}//end of SourceMap::getRoutineStart
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::getRoutine
+//
+// Returns the name of the routine holding pAddress, or null if there is no
+// routine at or before it.
+//
+
+public String getRoutine(int pAddress)
+{
+
+    Map.Entry<Integer, String> e = routines.floorEntry(pAddress);
+
+    return(e == null ? null : e.getValue());
+
+}//end of SourceMap::getRoutine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::getFiles
+//
+// Returns the paths of the source files in the map.
+//
+
+public ArrayList<String> getFiles()
+{
+
+    return(files);
+
+}//end of SourceMap::getFiles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// SourceMap::getProgramSize
+//
+// Returns the number of program addresses in the map.
+//
+
+public int getProgramSize()
+{
+
+    return(programSize);
+
+}//end of SourceMap::getProgramSize
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Section
+//
+// The words and labels of one section of a listing, at their offsets from
+// the start of the section.
+//
+
+static class Section
+{
+
+    String name;
+
+    //for each word: the offset, the word, 1 if relocated, the index in
+    //files of its source file, its line number, and 1 if it is data
+
+    ArrayList<int[]> words = new ArrayList<int[]>();
+    ArrayList<String> files = new ArrayList<String>();
+
+    TreeMap<Integer, String> labels = new TreeMap<Integer, String>();
+
+    //labels listed with no address, which are at the next word
+    ArrayList<String> pendingLabels = new ArrayList<String>();
+
+    //set if any word is not relocated, so that it can be searched for
+    boolean hasFixedWord;
+
+    Section(String pName)
+    {
+        name = pName;
+    }
+
+    void addWord(int pOffset, int pWord, boolean pRelocated, String pFile,
+                                                    int pLine, boolean pData)
+    {
+        int index = files.indexOf(pFile);
+        if (index < 0) {index = files.size(); files.add(pFile);}
+
+        words.add(new int[] {pOffset, pWord, pRelocated ? 1 : 0, index, pLine,
+                                                             pData ? 1 : 0});
+
+        if (!pRelocated) {hasFixedWord = true;}
+
+        for (String label : pendingLabels) {labels.put(pOffset, label);}
+        pendingLabels.clear();
+    }
+
+    void addLabel(int pOffset, String pName)
+    {
+        if (pOffset < 0) {pendingLabels.add(pName);}
+        else {labels.put(pOffset, pName);}
+    }
+
+}//end of class Section
+//-----------------------------------------------------------------------------
+
+}//end of class SourceMap
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,1316 @@
+/******************************************************************************
+* Title: Universal IDE - StackAnalyzer.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class finds the greatest depth the stack of a TMS320C54x program can
+* reach, from the source alone, so that a stack which could run into the
+* variables below it is found before the program misbehaves on the hardware.
+*
+* Each routine is walked from its label as WcetAnalyzer walks it, keeping
+* count of the words on the stack: pshm and pshd push one, popm and popd pop
+* one, "frame k" moves the stack pointer by k, a call pushes the return
+* address, and a store to SP starts a new stack. A call adds the depth of the
+* routine called; a branch to another routine's label, or code running on
+* into one, adds that routine's depth with nothing more pushed.
+*
+* A routine entered by a branch may pop words pushed before the branch, as
+* where several routines push a pointer and branch to a shared tail which
+* pops it. So a routine reached by a call, or from a vector, is checked with
+* all the routines it branches on to: it must not pop more than it pushed
+* and must return with nothing left pushed. A join of two paths with
+* different depths -- such as a push in a loop -- is noted as a problem as
+* well. A routine which calls itself, directly or not, is flagged as
+* unbounded.
+*
+* The entry points are found in the "vectors" section: the reset vector and
+* each interrupt vector which branches to a routine, the vectors being four
+* words each. An interrupt pushes its return address, one word. If there is
+* no vector table, the entry points are the routines no other routine calls.
+* As an interrupt may come at the deepest point of the main code, the worst
+* case is the deepest reset path plus the deepest interrupt.
+*
+* The size of the stack is found from the "stm endOfStack, SP" which sets it
+* up: the .bss just before the one naming endOfStack is taken as the stack.
+* It may be given instead with setStackSize.
+*
+* What each routine does to the stack depends only on its own code, so it
+* is kept from one analysis to the next along with the digest of each file
+* its code came from -- see AsmSource. When the source is analyzed again,
+* such as after an edit, only the routines whose files have changed are
+* walked again; the depths through the call graph are then found from the
+* kept results. The results may be saved to a file so they are kept between
+* sessions.
+*
+* The analyzer may be run without the user interface:
+*
+*   java codehandler.StackAnalyzer [-size n] [-cache file] <program.asm>
+*
+* The exit status is 0 if the worst case fits in the stack and is bounded
+* and 1 otherwise.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//-----------------------------------------------------------------------------
+// class StackAnalyzer
+//
+
+public class StackAnalyzer
+{
+
+    AsmSource source;
+    C54xTiming timing;
+
+    String title;
+
+    //what each routine does to the stack, by label, kept between analyses
+    HashMap<String, Summary> summaries;
+
+    //the depth of each routine analyzed, in source order, by label
+    LinkedHashMap<String, Routine> routines;
+
+    ArrayList<Entry> entries;
+
+    //the problems found, each listed once
+    LinkedHashSet<String> problems;
+
+    //the size of the stack in words and the name of its space, the size
+    //being -1 if not known; a size given by the user is kept in givenSize
+    long stackSize;
+    String stackName;
+    long givenSize = -1;
+
+    int numWalked;
+    int numKept;
+
+    static final int FILE_MAGIC = 0x53544b31;
+
+    static final int VECTOR_WORDS = 4;
+
+    //the mnemonics which push and pop one word
+    static final HashSet<String> PUSHES = new HashSet<String>();
+    static final HashSet<String> POPS = new HashSet<String>();
+    static{
+        PUSHES.add("pshm"); PUSHES.add("pshd");
+        POPS.add("popm"); POPS.add("popd");
+    }
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::StackAnalyzer (constructor)
+//
+
+public StackAnalyzer()
+{
+
+}//end of StackAnalyzer::StackAnalyzer (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    summaries = new HashMap<String, Summary>();
+
+}//end of StackAnalyzer::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::setStackSize
+//
+// Sets the size of the stack in words, or -1 to find it from the source.
+//
+
+public void setStackSize(long pSize)
+{
+
+    givenSize = pSize;
+
+}//end of StackAnalyzer::setStackSize
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::analyze
+//
+// Finds the stack depth of every routine and entry point of the program in
+// pSource, titled pTitle. Routines whose code is unchanged since the last
+// analysis are not walked again.
+//
+
+public void analyze(String pTitle, AsmSource pSource)
+{
+
+    title = pTitle; source = pSource;
+
+    timing = new C54xTiming(source);
+    timing.init();
+
+    routines = new LinkedHashMap<String, Routine>();
+    entries = new ArrayList<Entry>();
+    problems = new LinkedHashSet<String>();
+    numWalked = 0; numKept = 0;
+
+    for (AsmStatement s : source.getStatements()){
+        if (source.isRoutineLabel(s)) {getRoutine(s.label);}
+    }
+
+    //routines are found callees first, so put them back in source order
+
+    LinkedHashMap<String, Routine> found = routines;
+    routines = new LinkedHashMap<String, Routine>();
+
+    for (AsmStatement s : source.getStatements()){
+        if (s.label != null && found.containsKey(s.label)){
+            routines.put(s.label, found.get(s.label));
+        }
+    }
+
+    findEntries();
+
+    findStackSize();
+
+}//end of StackAnalyzer::analyze
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::getRoutine
+//
+// Returns the depth of the routine at the label pLabel, finding it first if
+// it has not been, or null if there is no such label. A routine whose depth
+// is being found is returned as it is, unfinished.
+//
+
+Routine getRoutine(String pLabel)
+{
+
+    Routine r = routines.get(pLabel);
+    if (r != null) {return(r);}
+
+    Summary summary = getSummary(pLabel);
+    if (summary == null) {return(null);}
+
+    r = new Routine();
+    r.name = pLabel; r.file = summary.file; r.line = summary.line;
+    r.depth = summary.maxDepth; r.bounded = summary.bounded;
+    r.lowest = summary.lowest; r.lowestWhere = summary.lowestWhere;
+    r.returnDepths.putAll(summary.returnDepths);
+    routines.put(pLabel, r);
+
+    problems.addAll(summary.problems);
+
+    r.finding = true;
+
+    for (Call c : summary.calls){
+
+        Routine callee = getRoutine(c.callee);
+
+        if (callee == null){
+            problems.add(c.where + ": " + c.callee + " not found");
+            r.bounded = false;
+            continue;
+        }
+
+        if (callee.finding){
+            problems.add(c.where + ": " + c.callee + " is called "
+                                        + "recursively -- depth unbounded");
+            r.bounded = false;
+            continue;
+        }
+
+        if (!callee.bounded) {r.bounded = false;}
+
+        if (c.isCall) {checkCallee(callee, c.where);}
+        else {addTail(r, callee, c.depth);}
+
+        if (c.depth + callee.depth > r.depth){
+            r.depth = c.depth + callee.depth;
+            r.deepest = callee;
+        }
+
+    }
+
+    r.finding = false;
+
+    return(r);
+
+}//end of StackAnalyzer::getRoutine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::addTail
+//
+// Adds the pops and returns of pCallee, entered by a branch from pRoutine
+// with pDepth words pushed, to those of pRoutine, as they act on its stack.
+//
+
+void addTail(Routine pRoutine, Routine pCallee, int pDepth)
+{
+
+    if (pDepth + pCallee.lowest < pRoutine.lowest){
+        pRoutine.lowest = pDepth + pCallee.lowest;
+        pRoutine.lowestWhere = pCallee.lowestWhere;
+    }
+
+    for (Map.Entry<Integer, String> e : pCallee.returnDepths.entrySet()){
+        int depth = pDepth + e.getKey();
+        if (!pRoutine.returnDepths.containsKey(depth)){
+            pRoutine.returnDepths.put(depth, e.getValue());
+        }
+    }
+
+}//end of StackAnalyzer::addTail
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::checkCallee
+//
+// Notes a problem if pCallee, entered by a call or from a vector at pWhere,
+// pops more than it pushed or returns with words still pushed, as it would
+// then return to the wrong place.
+//
+
+void checkCallee(Routine pCallee, String pWhere)
+{
+
+    if (pCallee.lowest < 0){
+        problems.add(pCallee.lowestWhere + ": pops more than was pushed "
+                           + "when " + pCallee.name + " is entered from "
+                           + pWhere);
+    }
+
+    for (Map.Entry<Integer, String> e : pCallee.returnDepths.entrySet()){
+        if (e.getKey() > 0){
+            problems.add(e.getValue() + ": returns with " + e.getKey()
+                         + " word(s) still pushed when " + pCallee.name
+                         + " is entered from " + pWhere);
+        }
+    }
+
+}//end of StackAnalyzer::checkCallee
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::getSummary
+//
+// Returns what the routine at the label pLabel does to the stack, walking
+// its code only if it is not kept from an earlier analysis or any file its
+// code came from has changed. Returns null if there is no such label.
+//
+
+Summary getSummary(String pLabel)
+{
+
+    int index = source.findLabel(pLabel);
+    if (index < 0) {return(null);}
+
+    Summary summary = summaries.get(pLabel);
+
+    if (summary != null && isCurrent(summary)){
+        numKept++;
+        return(summary);
+    }
+
+    summary = walk(pLabel, index);
+    summaries.put(pLabel, summary);
+    numWalked++;
+
+    return(summary);
+
+}//end of StackAnalyzer::getSummary
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::isCurrent
+//
+// Returns true if every file the code of pSummary came from is unchanged.
+//
+
+boolean isCurrent(Summary pSummary)
+{
+
+    for (Map.Entry<String, String> e : pSummary.digests.entrySet()){
+        String digest = source.getFileDigest(e.getKey());
+        if (digest == null || !digest.equals(e.getValue())) {return(false);}
+    }
+
+    return(true);
+
+}//end of StackAnalyzer::isCurrent
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::walk
+//
+// Follows the paths through the code of the routine labeled pLabel, at the
+// statement pIndex, and returns what it does to the stack.
+//
+
+Summary walk(String pLabel, int pIndex)
+{
+
+    AsmStatement label = source.getStatement(pIndex);
+
+    Summary summary = new Summary();
+    summary.name = pLabel; summary.file = label.file;
+    summary.line = label.line;
+    summary.digests.put(label.file, source.getFileDigest(label.file));
+
+    Walk w = new Walk();
+    w.summary = summary;
+
+    int first = source.nextInstruction(pIndex);
+
+    if (first < 0){
+        addProblem(summary, label, "no code at label");
+        return(summary);
+    }
+
+    w.visit(this, label, first, 0);
+
+    while (!w.queue.isEmpty()){
+        int i = w.queue.poll();
+        step(w, i, w.depths.get(i));
+    }
+
+    return(summary);
+
+}//end of StackAnalyzer::walk
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::step
+//
+// Acts on the instruction at pIndex, reached with pDepth words pushed by
+// the routine, and visits the instructions which may follow it.
+//
+
+void step(Walk pWalk, int pIndex, int pDepth)
+{
+
+    Summary summary = pWalk.summary;
+
+    AsmStatement s = source.getStatement(pIndex);
+    String m = s.mnemonic;
+
+    String digest = source.getFileDigest(s.file);
+    if (!summary.digests.containsKey(s.file)){
+        summary.digests.put(s.file, digest);
+    }
+
+    int next = source.nextInstruction(pIndex + 1);
+
+    if (m.matches("f?ret(e)?(d)?")){
+        addReturn(summary, s, pDepth);
+        return;
+    }
+
+    if (m.matches("f?rc(d)?")){
+        addReturn(summary, s, pDepth);
+        fallThrough(pWalk, s, next, pDepth);
+        return;
+    }
+
+    if (m.matches("f?b(d)?")){
+        jump(pWalk, s, pDepth);
+        return;
+    }
+
+    if (m.matches("(bc|banz)(d)?")){
+        jump(pWalk, s, pDepth);
+        fallThrough(pWalk, s, next, pDepth);
+        return;
+    }
+
+    if (m.matches("(call|cc)(d)?")){
+        addCall(summary, s, s.getOperand(0), pDepth + 1, true);
+        fallThrough(pWalk, s, next, pDepth);
+        return;
+    }
+
+    if (m.matches("fcall(d)?")){
+        addCall(summary, s, s.getOperand(0), pDepth + 2, true);
+        fallThrough(pWalk, s, next, pDepth);
+        return;
+    }
+
+    if (WcetAnalyzer.COMPUTED.contains(m) || m.equals("trap")
+                                                      || m.equals("intr")){
+        addProblem(summary, s, "computed branch or call cannot be followed");
+        summary.bounded = false;
+        if (m.startsWith("b") || m.startsWith("fb")) {return;}
+        fallThrough(pWalk, s, next, pDepth);
+        return;
+    }
+
+    int depth = pDepth;
+
+    if (PUSHES.contains(m)){
+        depth++;
+    }
+    else
+    if (POPS.contains(m)){
+        depth--;
+    }
+    else
+    if (m.equals("frame")){
+        Long k = source.evaluate(s.getOperand(0).replace("#", ""));
+        if (k == null){
+            addProblem(summary, s, "cannot evaluate " + s.getOperand(0));
+        }
+        else{
+            depth -= k;
+        }
+    }
+    else
+    if (setsStackPointer(s)){
+        depth = 0;
+    }
+
+    if (depth > summary.maxDepth) {summary.maxDepth = depth;}
+
+    if (depth < summary.lowest){
+        summary.lowest = depth;
+        summary.lowestWhere = where(s);
+    }
+
+    fallThrough(pWalk, s, next, depth);
+
+}//end of StackAnalyzer::step
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::setsStackPointer
+//
+// Returns true if pStatement writes the stack pointer, other than by a
+// push, pop, or frame.
+//
+
+static boolean setsStackPointer(AsmStatement pStatement)
+{
+
+    int n = pStatement.operands.length;
+
+    return(n > 0 && pStatement.operands[n - 1].equalsIgnoreCase("sp")
+              && pStatement.mnemonic.matches("stm|stlm|sthm|mvdm|mvmm|ldm"));
+
+}//end of StackAnalyzer::setsStackPointer
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::addReturn
+//
+// Notes that the return pStatement is reached with pDepth words pushed by
+// the routine. Unless the routine was entered by a branch with words
+// pushed, this must be zero, else the return pops one of the words rather
+// than the return address.
+//
+
+void addReturn(Summary pSummary, AsmStatement pStatement, int pDepth)
+{
+
+    if (!pSummary.returnDepths.containsKey(pDepth)){
+        pSummary.returnDepths.put(pDepth, where(pStatement));
+    }
+
+}//end of StackAnalyzer::addReturn
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::fallThrough
+//
+// Visits the instruction at pNext, the one after pStatement, with pDepth
+// words pushed. Code which runs on into the label of another routine adds
+// that routine's depth instead.
+//
+
+void fallThrough(Walk pWalk, AsmStatement pStatement, int pNext, int pDepth)
+{
+
+    if (pNext < 0){
+        addProblem(pWalk.summary, pStatement,
+                                        "execution runs off the end of code");
+        return;
+    }
+
+    for (int i = pStatement.index + 1; i <= pNext; i++){
+        AsmStatement s = source.getStatement(i);
+        if (source.isRoutineLabel(s)
+                                && !s.label.equals(pWalk.summary.name)){
+            addCall(pWalk.summary, pStatement, s.label, pDepth, false);
+            return;
+        }
+    }
+
+    pWalk.visit(this, pStatement, pNext, pDepth);
+
+}//end of StackAnalyzer::fallThrough
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::jump
+//
+// Visits the target of the branch pStatement with pDepth words pushed. A
+// branch to the label of another routine adds that routine's depth
+// instead.
+//
+
+void jump(Walk pWalk, AsmStatement pStatement, int pDepth)
+{
+
+    String target = pStatement.getOperand(0);
+
+    if (target.equals("$")){
+        pWalk.visit(this, pStatement, pStatement.index, pDepth);
+        return;
+    }
+
+    if (!target.startsWith("$") && !target.equals(pWalk.summary.name)){
+        addCall(pWalk.summary, pStatement, target, pDepth, false);
+        return;
+    }
+
+    int index = source.findLabel(target);
+    if (index >= 0) {index = source.nextInstruction(index);}
+
+    if (index < 0){
+        addProblem(pWalk.summary, pStatement,
+                                    "no code at branch target " + target);
+        return;
+    }
+
+    pWalk.visit(this, pStatement, index, pDepth);
+
+}//end of StackAnalyzer::jump
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::addCall
+//
+// Notes that pStatement enters the routine pTarget with pDepth words on the
+// stack, counting the return address if pIsCall is true.
+//
+
+void addCall(Summary pSummary, AsmStatement pStatement, String pTarget,
+                                                int pDepth, boolean pIsCall)
+{
+
+    Call c = new Call();
+    c.callee = pTarget; c.depth = pDepth; c.isCall = pIsCall;
+    c.where = where(pStatement);
+
+    pSummary.calls.add(c);
+
+}//end of StackAnalyzer::addCall
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::addProblem
+//
+// Notes pProblem at the statement pStatement in pSummary.
+//
+
+void addProblem(Summary pSummary, AsmStatement pStatement, String pProblem)
+{
+
+    String p = where(pStatement) + ": " + pProblem;
+
+    if (!pSummary.problems.contains(p)) {pSummary.problems.add(p);}
+
+}//end of StackAnalyzer::addProblem
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::where
+//
+// Returns the file name and line of pStatement for messages.
+//
+
+static String where(AsmStatement pStatement)
+{
+
+    return(new File(pStatement.file).getName() + ":" + pStatement.line);
+
+}//end of StackAnalyzer::where
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::findEntries
+//
+// Finds the entry points from the branches in the vector table, or if there
+// are none, takes each routine no other routine enters as an entry point.
+//
+
+void findEntries()
+{
+
+    int words = 0;
+
+    for (AsmStatement s : source.getStatements()){
+
+        if (s.section == null || !s.section.toLowerCase().contains("vector")
+                                || !s.isInstruction() || s.parallel){
+            continue;
+        }
+
+        int vector = words / VECTOR_WORDS;
+        words += timing.getTiming(s).words;
+
+        if (!s.mnemonic.matches("f?(b|call)(d)?")) {continue;}
+
+        addEntry(vector == 0 ? "reset" : "interrupt " + vector,
+                                        s.getOperand(0), vector == 0 ? 0 : 1);
+
+    }
+
+    if (!entries.isEmpty()) {return;}
+
+    HashSet<String> entered = new HashSet<String>();
+
+    for (Routine r : routines.values()){
+        for (Call c : summaries.get(r.name).calls) {entered.add(c.callee);}
+    }
+
+    for (Routine r : new ArrayList<Routine>(routines.values())){
+        if (!entered.contains(r.name)) {addEntry("not called", r.name, 0);}
+    }
+
+}//end of StackAnalyzer::findEntries
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::addEntry
+//
+// Adds the entry point pName which enters the routine pLabel with pPushed
+// words on the stack.
+//
+
+void addEntry(String pName, String pLabel, int pPushed)
+{
+
+    Entry e = new Entry();
+    e.name = pName; e.routine = getRoutine(pLabel);
+    e.isInterrupt = pPushed > 0;
+
+    if (e.routine == null){
+        problems.add("entry point " + pName + ": " + pLabel + " not found");
+        return;
+    }
+
+    e.depth = pPushed + e.routine.depth;
+
+    checkCallee(e.routine, "entry point " + pName);
+
+    entries.add(e);
+
+}//end of StackAnalyzer::addEntry
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::findStackSize
+//
+// Finds the size of the stack from the store to SP which sets it up, unless
+// it was given by the user.
+//
+
+void findStackSize()
+{
+
+    stackSize = givenSize; stackName = "given";
+
+    if (givenSize >= 0) {return;}
+
+    stackName = null;
+
+    ArrayList<AsmStatement> statements = source.getStatements();
+
+    for (AsmStatement s : statements){
+
+        if (!s.isInstruction() || !s.mnemonic.equals("stm")
+                                            || !setsStackPointer(s)){
+            continue;
+        }
+
+        String top = s.getOperand(0).replace("#", "");
+
+        //the space reserved just before the top of the stack
+
+        AsmStatement space = null;
+
+        for (AsmStatement b : statements){
+            if (!".bss".equals(b.mnemonic)) {continue;}
+            if (b.getOperand(0).equals(top)) {break;}
+            space = b;
+        }
+
+        if (space == null) {continue;}
+
+        Long size = source.evaluate(space.getOperand(1));
+        if (size == null) {continue;}
+
+        stackSize = size; stackName = space.getOperand(0);
+        return;
+
+    }
+
+}//end of StackAnalyzer::findStackSize
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::getWorstDepth
+//
+// Returns the greatest depth of the stack: the deepest entry point which is
+// not an interrupt plus the deepest interrupt, which may come at any time.
+//
+
+public int getWorstDepth()
+{
+
+    int main = 0, interrupt = 0;
+
+    for (Entry e : entries){
+        if (e.isInterrupt) {interrupt = Math.max(interrupt, e.depth);}
+        else {main = Math.max(main, e.depth);}
+    }
+
+    return(main + interrupt);
+
+}//end of StackAnalyzer::getWorstDepth
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::isBounded
+//
+// Returns true if the depth of every entry point is bounded.
+//
+
+public boolean isBounded()
+{
+
+    for (Entry e : entries){
+        if (!e.routine.bounded) {return(false);}
+    }
+
+    return(true);
+
+}//end of StackAnalyzer::isBounded
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::isOverflow
+//
+// Returns true if the worst case may not fit in the stack, because it is
+// too deep or unbounded.
+//
+
+public boolean isOverflow()
+{
+
+    return(!isBounded() || (stackSize >= 0 && getWorstDepth() > stackSize));
+
+}//end of StackAnalyzer::isOverflow
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::getRoutines
+//
+// Returns the depth of each routine, in source order.
+//
+
+public ArrayList<Routine> getRoutines()
+{
+
+    return(new ArrayList<Routine>(routines.values()));
+
+}//end of StackAnalyzer::getRoutines
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::getEntries
+//
+// Returns the entry points found.
+//
+
+public ArrayList<Entry> getEntries()
+{
+
+    return(entries);
+
+}//end of StackAnalyzer::getEntries
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::print
+//
+// Prints the depth of each entry point with its deepest path, the worst
+// case against the size of the stack, the depth of each routine, and the
+// problems found to pOut.
+//
+
+public void print(PrintStream pOut)
+{
+
+    pOut.println("Stack depth - " + title);
+    pOut.println();
+    pOut.printf("%-16s %-32s %6s  %s%n", "Entry Point", "Routine", "Depth",
+                                                            "Deepest Path");
+
+    for (Entry e : entries){
+        pOut.printf("%-16s %-32s %6s  %s%n", e.name, e.routine.name,
+            e.depth + (e.routine.bounded ? "" : "+"), e.routine.getPath());
+    }
+
+    pOut.println();
+    pOut.println("Worst case, with an interrupt at the deepest point: "
+                + getWorstDepth() + (isBounded() ? "" : "+") + " words");
+
+    if (stackSize < 0){
+        pOut.println("Stack size: not found");
+    }
+    else{
+        pOut.println("Stack size: " + stackSize + " words (" + stackName
+                            + ")" + (getWorstDepth() > stackSize
+                                                ? " -- MAY OVERFLOW" : ""));
+    }
+
+    if (!isBounded()){
+        pOut.println("The depth is not bounded -- see the problems below.");
+    }
+
+    pOut.println();
+    pOut.printf("%-32s %6s %6s  %s%n", "Routine", "Line", "Depth", "Status");
+
+    for (Routine r : routines.values()){
+        pOut.printf("%-32s %6d %6d  %s%n", r.name, r.line, r.depth,
+                                            r.bounded ? "" : "UNBOUNDED");
+    }
+
+    pOut.println();
+    pOut.println("Routines walked: " + numWalked + ", unchanged since the "
+                                    + "last analysis: " + numKept);
+
+    WcetAnalyzer.printList(pOut, "Problems", new ArrayList<String>(problems));
+    WcetAnalyzer.printList(pOut, "Warnings", source.getWarnings());
+
+}//end of StackAnalyzer::print
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::saveResults
+//
+// Saves what each routine does to the stack to pFile, so that it may be
+// used by a later analysis with loadResults.
+//
+// Throws an IOException if the file cannot be written.
+//
+
+public void saveResults(File pFile) throws IOException
+{
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new GZIPOutputStream(new FileOutputStream(pFile))));
+
+    try{
+
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(summaries.size());
+
+        for (Summary s : summaries.values()){
+
+            out.writeUTF(s.name); out.writeUTF(s.file);
+            out.writeInt(s.line); out.writeInt(s.maxDepth);
+            out.writeBoolean(s.bounded);
+            out.writeInt(s.lowest); out.writeUTF(s.lowestWhere);
+
+            out.writeInt(s.returnDepths.size());
+            for (Map.Entry<Integer, String> e : s.returnDepths.entrySet()){
+                out.writeInt(e.getKey()); out.writeUTF(e.getValue());
+            }
+
+            out.writeInt(s.calls.size());
+            for (Call c : s.calls){
+                out.writeUTF(c.callee); out.writeInt(c.depth);
+                out.writeBoolean(c.isCall); out.writeUTF(c.where);
+            }
+
+            out.writeInt(s.problems.size());
+            for (String p : s.problems) {out.writeUTF(p);}
+
+            out.writeInt(s.digests.size());
+            for (Map.Entry<String, String> e : s.digests.entrySet()){
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue() == null ? "" : e.getValue());
+            }
+
+        }
+
+    }
+    finally{
+        out.close();
+    }
+
+}//end of StackAnalyzer::saveResults
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::loadResults
+//
+// Loads what each routine does to the stack from pFile, saved there by
+// saveResults, replacing any results kept.
+//
+// Throws an IOException if the file cannot be read or is not a stack
+// results file.
+//
+
+public void loadResults(File pFile) throws IOException
+{
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+                          new GZIPInputStream(new FileInputStream(pFile))));
+
+    try{
+
+        if (in.readInt() != FILE_MAGIC){
+            throw new IOException(pFile + " is not a stack results file");
+        }
+
+        HashMap<String, Summary> loaded = new HashMap<String, Summary>();
+
+        int n = readCount(in, pFile);
+
+        for (int i = 0; i < n; i++){
+
+            Summary s = new Summary();
+            s.name = in.readUTF(); s.file = in.readUTF();
+            s.line = in.readInt(); s.maxDepth = in.readInt();
+            s.bounded = in.readBoolean();
+            s.lowest = in.readInt(); s.lowestWhere = in.readUTF();
+
+            int numReturns = readCount(in, pFile);
+            for (int j = 0; j < numReturns; j++){
+                int depth = in.readInt();
+                s.returnDepths.put(depth, in.readUTF());
+            }
+
+            int numCalls = readCount(in, pFile);
+            for (int j = 0; j < numCalls; j++){
+                Call c = new Call();
+                c.callee = in.readUTF(); c.depth = in.readInt();
+                c.isCall = in.readBoolean(); c.where = in.readUTF();
+                s.calls.add(c);
+            }
+
+            int numProblems = readCount(in, pFile);
+            for (int j = 0; j < numProblems; j++){
+                s.problems.add(in.readUTF());
+            }
+
+            int numDigests = readCount(in, pFile);
+            for (int j = 0; j < numDigests; j++){
+                String file = in.readUTF(), digest = in.readUTF();
+                s.digests.put(file, digest.isEmpty() ? null : digest);
+            }
+
+            loaded.put(s.name, s);
+
+        }
+
+        summaries = loaded;
+
+    }
+    finally{
+        in.close();
+    }
+
+}//end of StackAnalyzer::loadResults
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::readCount
+//
+// Reads a count from pIn, read from pFile.
+//
+// Throws an IOException if the count cannot be read or is not sensible.
+//
+
+static int readCount(DataInputStream pIn, File pFile) throws IOException
+{
+
+    int n = pIn.readInt();
+
+    if (n < 0 || n > 1 << 20) {throw new IOException(pFile + " is damaged");}
+
+    return(n);
+
+}//end of StackAnalyzer::readCount
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// StackAnalyzer::main
+//
+// Analyzes the source named on the command line and prints the results.
+// Results kept in the file given with -cache are used and then updated.
+//
+
+public static void main(String[] args)
+{
+
+    long size = -1;
+    File cache = null;
+    int i = 0;
+
+    try{
+
+        for (; i < args.length - 1 && args[i].startsWith("-"); i += 2){
+            if (args[i].equals("-size")){
+                try{
+                    size = Long.parseLong(args[i + 1]);
+                }
+                catch(NumberFormatException e){
+                    throw new IOException("bad size " + args[i + 1]);
+                }
+            }
+            else
+            if (args[i].equals("-cache")){
+                cache = new File(args[i + 1]);
+            }
+            else {throw new IOException("unknown option " + args[i]);}
+        }
+
+        if (args.length - i != 1){
+            throw new IOException("usage: StackAnalyzer [-size n] "
+                                        + "[-cache file] <program.asm>");
+        }
+
+        File file = new File(args[i]);
+
+        AsmSource source = new AsmSource();
+        source.init();
+        source.load(file);
+
+        StackAnalyzer analyzer = new StackAnalyzer();
+        analyzer.init();
+        analyzer.setStackSize(size);
+
+        if (cache != null && cache.exists()){
+            try{
+                analyzer.loadResults(cache);
+            }
+            catch(IOException e){
+                System.err.println(cache + " cannot be read -- not used");
+            }
+        }
+
+        analyzer.analyze(file.getName(), source);
+        analyzer.print(System.out);
+
+        if (cache != null) {analyzer.saveResults(cache);}
+
+        System.exit(analyzer.isOverflow() ? 1 : 0);
+
+    }
+    catch(IOException e){
+        System.err.println(e.getMessage());
+        System.exit(2);
+    }
+
+}//end of StackAnalyzer::main
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Routine
+//
+// The greatest stack depth of one routine, counting the words it and the
+// routines it calls push but not its own return address. The deepest is
+// the routine on the deepest path, or null if the routine's own pushes are
+// deepest.
+//
+
+public static class Routine
+{
+
+    public String name;
+    public String file;
+    public int line;
+
+    public int depth;
+    public boolean bounded = true;
+
+    public Routine deepest;
+
+    //the lowest depth reached, below zero if words pushed before the
+    //routine was entered are popped, and the depth at each return, with
+    //where each was reached
+    int lowest;
+    String lowestWhere = "";
+    LinkedHashMap<Integer, String> returnDepths =
+                                        new LinkedHashMap<Integer, String>();
+
+    boolean finding;
+
+    public String getPath()
+    {
+        StringBuilder path = new StringBuilder(name);
+        HashSet<Routine> seen = new HashSet<Routine>();
+        for (Routine r = deepest; r != null && seen.add(r); r = r.deepest){
+            path.append(" > ").append(r.name);
+        }
+        return(path.toString());
+    }
+
+}//end of class Routine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Entry
+//
+// An entry point of the program and the greatest depth of the stack below
+// it, counting the return address pushed by an interrupt.
+//
+
+public static class Entry
+{
+
+    public String name;
+    public Routine routine;
+    public int depth;
+    public boolean isInterrupt;
+
+}//end of class Entry
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Summary
+//
+// What the code of one routine does to the stack: the most words it pushes,
+// the fewest, the depth at each return, the routines it enters and how deep
+// the stack is when it does, and the problems found. The digest of each
+// file its code came from is kept to tell when it must be walked again.
+//
+
+static class Summary
+{
+
+    String name;
+    String file;
+    int line;
+
+    int maxDepth;
+    boolean bounded = true;
+
+    int lowest;
+    String lowestWhere = "";
+    LinkedHashMap<Integer, String> returnDepths =
+                                        new LinkedHashMap<Integer, String>();
+
+    ArrayList<Call> calls = new ArrayList<Call>();
+    ArrayList<String> problems = new ArrayList<String>();
+    LinkedHashMap<String, String> digests =
+                                        new LinkedHashMap<String, String>();
+
+}//end of class Summary
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Call
+//
+// A call of, branch to, or running on into another routine, with the words
+// on the stack when it is entered.
+//
+
+static class Call
+{
+
+    String callee;
+    int depth;
+    boolean isCall;
+    String where;
+
+}//end of class Call
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Walk
+//
+// The state of a walk through the code of one routine: the depth each
+// instruction was first reached with and those waiting to be stepped.
+// Reaching an instruction again with a different depth is a problem; if the
+// depth is greater, the instruction is stepped once more so the greater
+// depth is followed, and the routine is flagged as unbounded.
+//
+
+static class Walk
+{
+
+    Summary summary;
+    HashMap<Integer, Integer> depths = new HashMap<Integer, Integer>();
+    HashSet<Integer> raised = new HashSet<Integer>();
+    ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+    boolean differs;
+
+    void visit(StackAnalyzer pAnalyzer, AsmStatement pFrom, int pIndex,
+                                                                    int pDepth)
+    {
+        Integer depth = depths.get(pIndex);
+
+        if (depth == null){
+            depths.put(pIndex, pDepth);
+            queue.add(pIndex);
+            return;
+        }
+
+        if (depth == pDepth) {return;}
+
+        //one such problem is enough for a routine, as the greater depth
+        //usually runs on to differ at every join after
+
+        if (!differs){
+            pAnalyzer.addProblem(summary, pFrom, "stack depth differs "
+                + "between paths (" + depth + " and " + pDepth + " words)");
+            differs = true;
+        }
+
+        if (pDepth > depth && raised.add(pIndex)){
+            summary.bounded = false;
+            depths.put(pIndex, pDepth);
+            queue.add(pIndex);
+        }
+    }
+
+}//end of class Walk
+//-----------------------------------------------------------------------------
+
+}//end of class StackAnalyzer
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
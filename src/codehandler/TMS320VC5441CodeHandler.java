@@ -18,13 +18,22 @@
 
 package codehandler;
 
+import batchrunner.Scenario;
+import dspsimulation.Chip;
+import dspsimulation.Coverage;
+import dspsimulation.ProgramImage;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.JFileChooser;
 import javax.swing.JMenuBar;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 //-----------------------------------------------------------------------------
 // class TMS320VC5441CodeHandler
@@ -33,10 +42,21 @@ import javax.swing.JMenuBar;
 public class TMS320VC5441CodeHandler extends CodeHandler
 {
 
-    String assembleBatchFilename;
     String assembleResultsFilename;
     String copyHexFileBatchFilename;
     String copyHexFileResultsFilename;
+    String hexFilename;
+    String listingFilename;
+    String sourceFilename;
+    String wcetResultsFilename;
+    String stackResultsFilename;
+    String stackCacheFilename;
+
+    //kept between runs so that unchanged routines are not walked again
+    StackAnalyzer stackAnalyzer;
+
+    //the last profile shown, used to weigh the peephole advice
+    ProfileReport lastProfile;
     
 //-----------------------------------------------------------------------------
 // TMS320VC5441CodeHandler::TMS320VC5441CodeHandler (constructor)
@@ -69,11 +89,22 @@ public void init()
     //wip mks -- read these from the project file? allow user to set them?
     //the batch files should be in the project folder
     
-    assembleBatchFilename = "aa Assemble Capulin UT DSP.bat";
     assembleResultsFilename = "results.txt";
 
     copyHexFileBatchFilename = "ab Copy Hex File to Chart Program.bat";
     copyHexFileResultsFilename = "ab Copy Hex File Results.txt";
+
+    //the assembled program and its listing, for profiling and coverage
+    hexFilename = "Capulin UT DSP.hex";
+    listingFilename = "Capulin UT DSP.lst";
+
+    //the main source file, and the report of its worst case cycles
+    sourceFilename = "Capulin UT DSP.asm";
+    wcetResultsFilename = "Worst Case Cycles.txt";
+
+    //the report of its stack depth, and the results kept between sessions
+    stackResultsFilename = "Stack Depth.txt";
+    stackCacheFilename = "Stack Depth.dat";
     
 }//end of TMS320VC5441CodeHandler::init
 //-----------------------------------------------------------------------------
@@ -109,16 +140,50 @@ public void actionPerformed(ActionEvent e)
 //-----------------------------------------------------------------------------
 // TMS320VC5441CodeHandler::assembleProject
 //
-// Assembles the source code and displays the status results page.
+// Assembles the source code and displays the status results page. The hex
+// file and listing are written only if there are no errors. The listening
+// object is then told to mark the lines with problems in the editor.
 //
 
 @Override
 public void assembleProject()
 {
 
-    runBatchFileAndDisplayResults(
-                               assembleResultsFilename, assembleBatchFilename);
-    
+    File resultsFile = new File(projectPath, assembleResultsFilename);
+
+    C54xAssembler assembler = new C54xAssembler(sourceFilename);
+    assembler.init();
+
+    try{
+
+        assembler.assemble(new File(projectPath, sourceFilename));
+
+        if (assembler.getNumErrors() == 0){
+            assembler.writeIntelHex(new File(projectPath, hexFilename));
+            assembler.writeListing(new File(projectPath, listingFilename));
+        }
+
+        PrintStream out = new PrintStream(resultsFile, "UTF-8");
+        try{
+            assembler.print(out);
+        }
+        finally{
+            out.close();
+        }
+
+    }
+    catch(IOException e){
+        CodeHandler.errorMsg(e.getMessage());
+        return;
+    }
+
+    //tell the listening object to load and display the results file
+    actionListener.actionPerformed(new ActionEvent(this,
+        ActionEvent.ACTION_PERFORMED, "Load file: " + resultsFile.getPath()));
+
+    actionListener.actionPerformed(new ActionEvent(assembler,
+                    ActionEvent.ACTION_PERFORMED, "Show assembly errors"));
+
 }//end of TMS320VC5441CodeHandler::assembleProject
 //-----------------------------------------------------------------------------
 
@@ -138,6 +203,333 @@ public void copyHexFileToTargetFolder()
 }//end of TMS320VC5441CodeHandler::copyHexFileToTargetFolder
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// TMS320VC5441CodeHandler::profileScenario
+//
+// Asks the user for a test scenario, runs it on the simulator with every
+// core profiled from reset, and tells the listening object to display the
+// profile mapped to the source through the project's listing file. A
+// profile step in the scenario restarts the counts of its cores, so that
+// setup may be left out.
+//
+// The scenario is run on a thread of its own so the user interface is not
+// held up.
+//
+
+@Override
+public void profileScenario()
+{
+
+    JFileChooser chooser = new JFileChooser(projectPath);
+    chooser.setFileFilter(
+                new FileNameExtensionFilter("Test Scenarios (*.scn)", "scn"));
+
+    if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {return;}
+
+    final File scenarioFile = chooser.getSelectedFile();
+    final File hexFile = new File(projectPath, hexFilename);
+    final File listingFile = new File(projectPath, listingFilename);
+
+    Thread thread = new Thread(new Runnable(){
+        @Override
+        public void run() { runProfile(scenarioFile, hexFile, listingFile); }
+    }, "Profile Scenario");
+
+    thread.setDaemon(true);
+    thread.start();
+
+}//end of TMS320VC5441CodeHandler::profileScenario
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441CodeHandler::runProfile
+//
+// Runs the scenario in pScenarioFile on the program in pHexFile and maps the
+// profile to the source through pListingFile. The report, or the reason
+// there is none, is passed to the user interface thread. Runs on the
+// profiling thread.
+//
+
+void runProfile(File pScenarioFile, File pHexFile, File pListingFile)
+{
+
+    String error = null;
+    ProfileReport report = null;
+
+    try{
+
+        ProgramImage image = ProgramImage.loadIntelHex(pHexFile);
+        SourceMap sourceMap = loadSourceMap(pListingFile, image);
+
+        Scenario scenario = new Scenario(pScenarioFile, image);
+        scenario.init();
+        scenario.setProfiling(true);
+        scenario.invoke();
+
+        if (!scenario.failures.isEmpty()){
+            error = "The scenario failed: " + scenario.failures.get(0);
+        }
+        else
+        if (scenario.profile == null){
+            error = "The scenario ran no instructions.";
+        }
+        else{
+            report = new ProfileReport(
+                        scenario.getName(), scenario.profile, sourceMap);
+            report.init();
+        }
+
+    }
+    catch(IOException e){
+        error = e.getMessage();
+    }
+
+    final String message = error;
+    final ProfileReport result = report;
+
+    SwingUtilities.invokeLater(new Runnable(){
+        @Override
+        public void run()
+        {
+            if (message != null) {CodeHandler.errorMsg(message); return;}
+            lastProfile = result;
+            actionListener.actionPerformed(new ActionEvent(result,
+                                ActionEvent.ACTION_PERFORMED, "Show profile"));
+        }
+    });
+
+}//end of TMS320VC5441CodeHandler::runProfile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441CodeHandler::showCoverage
+//
+// Asks the user for a coverage file saved by the BatchRunner and tells the
+// listening object to display it mapped to the source through the
+// project's listing file.
+//
+
+@Override
+public void showCoverage()
+{
+
+    JFileChooser chooser = new JFileChooser(projectPath);
+    chooser.setFileFilter(
+                new FileNameExtensionFilter("Coverage (*.cov)", "cov"));
+
+    if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {return;}
+
+    File coverageFile = chooser.getSelectedFile();
+
+    CoverageReport report;
+
+    try{
+
+        ProgramImage image = ProgramImage.loadIntelHex(
+                                          new File(projectPath, hexFilename));
+        SourceMap sourceMap = loadSourceMap(
+                                new File(projectPath, listingFilename), image);
+
+        report = new CoverageReport(coverageFile.getName(),
+                                     Coverage.load(coverageFile), sourceMap);
+        report.init();
+
+    }
+    catch(IOException e){
+        CodeHandler.errorMsg(e.getMessage());
+        return;
+    }
+
+    actionListener.actionPerformed(new ActionEvent(report,
+                            ActionEvent.ACTION_PERFORMED, "Show coverage"));
+
+}//end of TMS320VC5441CodeHandler::showCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441CodeHandler::loadSourceMap
+//
+// Returns the map of the program in pImage to the source, read from the
+// listing pListingFile.
+//
+// Throws an IOException if the listing cannot be read.
+//
+
+SourceMap loadSourceMap(File pListingFile, ProgramImage pImage)
+                                                            throws IOException
+{
+
+    SourceMap sourceMap = new SourceMap(Chip.PROGRAM_SIZE);
+    sourceMap.init();
+    sourceMap.loadListing(pListingFile, pImage);
+
+    return(sourceMap);
+
+}//end of TMS320VC5441CodeHandler::loadSourceMap
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441CodeHandler::worstCaseCycles
+//
+// Asks the user for the default budget in cycles, finds the worst case
+// cycles of each routine in the project's source, and displays the report.
+// Budgets given in the source override the default -- see WcetAnalyzer.
+//
+
+@Override
+public void worstCaseCycles()
+{
+
+    String budgetText = JOptionPane.showInputDialog(null,
+            "Default budget in cycles (leave blank for none):",
+            "Worst Case Cycles", JOptionPane.QUESTION_MESSAGE);
+
+    if (budgetText == null) {return;}
+
+    long budget = -1;
+
+    if (!budgetText.trim().isEmpty()){
+        try{
+            budget = Long.parseLong(budgetText.trim());
+        }
+        catch(NumberFormatException e){
+            CodeHandler.errorMsg("The budget must be a whole number.");
+            return;
+        }
+    }
+
+    File resultsFile = new File(projectPath, wcetResultsFilename);
+
+    try{
+
+        AsmSource source = new AsmSource();
+        source.init();
+        source.load(new File(projectPath, sourceFilename));
+
+        WcetAnalyzer analyzer = new WcetAnalyzer(sourceFilename, source);
+        analyzer.init();
+        analyzer.setDefaultBudget(budget);
+        analyzer.analyze();
+
+        PrintStream out = new PrintStream(resultsFile, "UTF-8");
+        try{
+            analyzer.print(out);
+        }
+        finally{
+            out.close();
+        }
+
+    }
+    catch(IOException e){
+        CodeHandler.errorMsg(e.getMessage());
+        return;
+    }
+
+    //tell the listening object to load and display the results file
+    actionListener.actionPerformed(new ActionEvent(this,
+        ActionEvent.ACTION_PERFORMED, "Load file: " + resultsFile.getPath()));
+
+}//end of TMS320VC5441CodeHandler::worstCaseCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441CodeHandler::stackDepth
+//
+// Finds the greatest depth of the stack of the project's source and
+// displays the report. The results for each routine are kept, in memory and
+// in the project folder, so that only routines in files which have changed
+// are walked again -- see StackAnalyzer.
+//
+
+@Override
+public void stackDepth()
+{
+
+    File resultsFile = new File(projectPath, stackResultsFilename);
+    File cacheFile = new File(projectPath, stackCacheFilename);
+
+    if (stackAnalyzer == null){
+        stackAnalyzer = new StackAnalyzer();
+        stackAnalyzer.init();
+        if (cacheFile.exists()){
+            try{
+                stackAnalyzer.loadResults(cacheFile);
+            }
+            catch(IOException e){
+                //the results are only kept to save time, so begin anew
+            }
+        }
+    }
+
+    try{
+
+        AsmSource source = new AsmSource();
+        source.init();
+        source.load(new File(projectPath, sourceFilename));
+
+        stackAnalyzer.analyze(sourceFilename, source);
+
+        PrintStream out = new PrintStream(resultsFile, "UTF-8");
+        try{
+            stackAnalyzer.print(out);
+        }
+        finally{
+            out.close();
+        }
+
+        stackAnalyzer.saveResults(cacheFile);
+
+    }
+    catch(IOException e){
+        CodeHandler.errorMsg(e.getMessage());
+        return;
+    }
+
+    //tell the listening object to load and display the results file
+    actionListener.actionPerformed(new ActionEvent(this,
+        ActionEvent.ACTION_PERFORMED, "Load file: " + resultsFile.getPath()));
+
+}//end of TMS320VC5441CodeHandler::stackDepth
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441CodeHandler::peepholeAdvice
+//
+// Finds the sequences of instructions in the project's source which could
+// be rewritten to run faster and tells the listening object to display
+// them. The savings are weighed by the last profile shown, if any -- see
+// PeepholeAdvisor.
+//
+
+@Override
+public void peepholeAdvice()
+{
+
+    PeepholeAdvisor advisor;
+
+    try{
+
+        AsmSource source = new AsmSource();
+        source.init();
+        source.load(new File(projectPath, sourceFilename));
+
+        advisor = new PeepholeAdvisor(sourceFilename, source);
+        advisor.init();
+        if (lastProfile != null) {advisor.setProfile(lastProfile);}
+        advisor.analyze();
+
+    }
+    catch(IOException e){
+        CodeHandler.errorMsg(e.getMessage());
+        return;
+    }
+
+    actionListener.actionPerformed(new ActionEvent(advisor,
+                    ActionEvent.ACTION_PERFORMED, "Show peephole advice"));
+
+}//end of TMS320VC5441CodeHandler::peepholeAdvice
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // TMS320VC5441CodeHandler::runBatchFileAndDisplayResults
 //
@@ -0,0 +1,1272 @@
+/******************************************************************************
+* Title: Universal IDE - WcetAnalyzer.java
+* Author: Mike Schoonover
+* Date: 2/19/13
+*
+* Purpose:
+*
+* This class finds the worst case number of cycles each routine of a
+* TMS320C54x program can take, from the source alone, so that code which
+* could overrun its time -- such as the processing of one transducer pulse
+* before the next arrives -- is found before it is run on the hardware.
+*
+* The routines are the labels ending with a colon, except for local labels.
+* For each, the paths through its code are followed from the label: branches
+* and conditional branches, banz loops, rptb repeat blocks, rpt repeats, and
+* returns. The cycles of each instruction are those used by the simulator --
+* see C54xTiming. A conditional branch, call, or return costs its taken
+* cycles on the path where it is taken. A call adds the worst case of the
+* routine called; a branch to another routine's label is taken as a call
+* which returns in its place. Code skipped by xc still takes its cycles, so
+* xc does not change the path.
+*
+* Each loop must have a bound: the most times its body can run each time the
+* loop is entered. The bound of a repeat block is found from a "stm #k, BRC"
+* before the rptb, that of a banz loop from a "stm #k, ARx" before the loop
+* for the ARx it counts down, and that of an rpt or rptz from its constant,
+* if these can be evaluated. Other bounds are given in a comment on the line
+* of the loop's branch or repeat instruction or of its first line:
+*
+*       banz    $2, *AR4-       ; count samples -- WCET: loop 512
+*
+* A routine may be given a budget in a comment on its label line or in the
+* comment block just above it, "WCET: budget 20000", and is flagged if its
+* worst case is greater. A routine with no budget of its own is held to the
+* default budget, if one is set. A routine which cannot be analyzed, such as
+* one using a computed branch, may be given its worst case by the user with
+* "WCET: max 1500". The values may be expressions of the program's symbols.
+*
+* A loop with no bound is counted once and the routine is flagged as
+* unbounded, as is a routine which calls itself. A routine with no path to a
+* return, such as a main loop, is flagged as never returning.
+*
+* The worst case is the longest path, found by replacing each loop, from the
+* innermost out, with a single step costing its bound less one times its
+* longest pass plus the longest way out of it.
+*
+* The analyzer may be run without the user interface:
+*
+*   java codehandler.WcetAnalyzer [-budget n] <program.asm>
+*
+* The exit status is 0 if every routine held to a budget is within it and
+* 1 otherwise.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package codehandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//-----------------------------------------------------------------------------
+// class WcetAnalyzer
+//
+
+public class WcetAnalyzer
+{
+
+    AsmSource source;
+    C54xTiming timing;
+
+    String title;
+
+    //the budget of routines with no budget of their own, -1 for none
+    long defaultBudget = -1;
+
+    //the routines at the labels of the source, in source order, and all
+    //routines analyzed by label
+    ArrayList<Routine> routines;
+    HashMap<String, Routine> byLabel;
+
+    //the problems found, each listed once
+    LinkedHashSet<String> problems;
+
+    //the end of every path which returns
+    Node exitNode;
+
+    //the goal of a path which runs once around a loop
+    Node iterateGoal;
+
+    static final long NO_PATH = Long.MIN_VALUE;
+
+    static final Pattern ANNOTATION = Pattern.compile(
+                    "(?i)\\bwcet\\s*:\\s*(loop|budget|max)\\s+([^;\\s]+)");
+
+    //the auxiliary register counted down by a banz
+    static final Pattern AUX_REGISTER = Pattern.compile("(?i)AR[0-7]");
+
+    //instructions whose target is computed and so cannot be followed
+    static final HashSet<String> COMPUTED = new HashSet<String>();
+    static{
+        Collections.addAll(COMPUTED, "bacc", "baccd", "cala", "calad",
+                                    "fbacc", "fbaccd", "fcala", "fcalad");
+    }
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::WcetAnalyzer (constructor)
+//
+// Creates an analyzer for the program in pSource titled pTitle.
+//
+
+public WcetAnalyzer(String pTitle, AsmSource pSource)
+{
+
+    title = pTitle; source = pSource;
+
+}//end of WcetAnalyzer::WcetAnalyzer (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    timing = new C54xTiming(source);
+    timing.init();
+
+    routines = new ArrayList<Routine>();
+    byLabel = new HashMap<String, Routine>();
+    problems = new LinkedHashSet<String>();
+
+    exitNode = new Node(-1);
+    iterateGoal = new Node(-1);
+
+}//end of WcetAnalyzer::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::setDefaultBudget
+//
+// Sets the budget in cycles for routines with no budget of their own, or -1
+// for none. Must be called before analyze.
+//
+
+public void setDefaultBudget(long pBudget)
+{
+
+    defaultBudget = pBudget;
+
+}//end of WcetAnalyzer::setDefaultBudget
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::analyze
+//
+// Finds the worst case of every routine in the source.
+//
+
+public void analyze()
+{
+
+    for (AsmStatement s : source.getStatements()){
+        if (source.isRoutineLabel(s)) {routines.add(getRoutine(s.label));}
+    }
+
+}//end of WcetAnalyzer::analyze
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::getRoutine
+//
+// Returns the routine at the label pLabel, analyzing it first if it has not
+// been, or null if there is no such label. A routine being analyzed is
+// returned as it is, unfinished.
+//
+
+Routine getRoutine(String pLabel)
+{
+
+    Routine r = byLabel.get(pLabel);
+    if (r != null) {return(r);}
+
+    int index = source.findLabel(pLabel);
+    if (index < 0) {return(null);}
+
+    AsmStatement s = source.getStatement(index);
+
+    r = new Routine();
+    r.name = pLabel; r.file = s.file; r.line = s.line;
+    byLabel.put(pLabel, r);
+
+    r.analyzing = true;
+    analyzeRoutine(r, index);
+    r.analyzing = false;
+
+    return(r);
+
+}//end of WcetAnalyzer::getRoutine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::analyzeRoutine
+//
+// Finds the worst case of the routine pRoutine whose label is on the
+// statement at pIndex.
+//
+
+void analyzeRoutine(Routine pRoutine, int pIndex)
+{
+
+    //the budget and any worst case given by the user
+
+    pRoutine.budget = defaultBudget;
+
+    for (int i = pIndex; i >= 0; i--){
+        AsmStatement s = source.getStatement(i);
+        if (i < pIndex && (s.mnemonic != null || s.label != null)) {break;}
+        Long budget = getAnnotation(s, "budget");
+        if (budget != null) {pRoutine.budget = budget;}
+        Long max = getAnnotation(s, "max");
+        if (max != null) {pRoutine.given = true; pRoutine.worstCycles = max;}
+    }
+
+    if (pRoutine.given) {return;}
+
+    int entry = source.nextInstruction(pIndex);
+
+    if (entry < 0){
+        addProblem(source.getStatement(pIndex), "label has no code after it");
+        pRoutine.bounded = false;
+        return;
+    }
+
+    LinkedHashMap<Integer, Node> nodes = buildGraph(pRoutine, entry);
+
+    collapseLoops(pRoutine, nodes.get(entry), nodes);
+
+    long worst = longestPath(nodes.get(entry), null, null, exitNode,
+                            new HashMap<Node, Long>(), new HashSet<Node>());
+
+    pRoutine.returns = worst != NO_PATH;
+    pRoutine.worstCycles = pRoutine.returns ? worst : 0;
+
+}//end of WcetAnalyzer::analyzeRoutine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::buildGraph
+//
+// Returns the graph of the paths through the routine pRoutine from the
+// instruction at pEntry, keyed by statement index. Each edge costs the
+// cycles of the instruction it leaves, plus those of any routine called.
+//
+
+LinkedHashMap<Integer, Node> buildGraph(Routine pRoutine, int pEntry)
+{
+
+    LinkedHashMap<Integer, Node> nodes = new LinkedHashMap<Integer, Node>();
+
+    //the last instruction of each repeat block in the routine, with the
+    //back edge to the start of the block
+
+    HashMap<Integer, Edge> repeatEnds = new HashMap<Integer, Edge>();
+
+    ArrayDeque<Node> work = new ArrayDeque<Node>();
+    work.add(getNode(nodes, pEntry));
+
+    while (!work.isEmpty()){
+
+        Node n = work.poll();
+
+        addEdges(pRoutine, n, nodes, repeatEnds);
+
+        for (Edge e : n.out){
+            if (e.to != exitNode && !e.to.queued){
+                e.to.queued = true;
+                work.add(e.to);
+            }
+        }
+
+    }
+
+    return(nodes);
+
+}//end of WcetAnalyzer::buildGraph
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::addEdges
+//
+// Adds the edges leaving node pNode of the graph pNodes of routine
+// pRoutine. The ends of repeat blocks are recorded in pRepeatEnds as the
+// rptb instructions are reached.
+//
+
+void addEdges(Routine pRoutine, Node pNode, HashMap<Integer, Node> pNodes,
+                                            HashMap<Integer, Edge> pRepeatEnds)
+{
+
+    pNode.queued = true;
+
+    AsmStatement s = source.getStatement(pNode.index);
+    C54xTiming.Timing t = timing.getTiming(s);
+    String m = s.mnemonic;
+
+    int next = source.nextInstruction(s.index + 1);
+
+    if (m.equals("ret") || m.equals("rete") || m.equals("retd")
+                                                     || m.equals("reted")){
+        addEdge(pNode, exitNode, t.cycles);
+        return;
+    }
+
+    if (m.equals("rc") || m.equals("rcd")){
+        addEdge(pNode, exitNode, t.cyclesTaken);
+        fallThrough(pRoutine, pNode, next, t.cycles, pNodes, pRepeatEnds);
+        return;
+    }
+
+    if (m.equals("b") || m.equals("bd")){
+        jump(pRoutine, pNode, s, s.getOperand(0), t.cycles, pNodes);
+        return;
+    }
+
+    if (m.equals("bc") || m.equals("bcd") || m.equals("banz")
+                                                    || m.equals("banzd")){
+        jump(pRoutine, pNode, s, s.getOperand(0), t.cyclesTaken, pNodes);
+        fallThrough(pRoutine, pNode, next, t.cycles, pNodes, pRepeatEnds);
+        return;
+    }
+
+    if (m.equals("call") || m.equals("calld") || m.equals("cc")
+                                                      || m.equals("ccd")){
+        call(pRoutine, pNode, s, t, next, pNodes, pRepeatEnds);
+        return;
+    }
+
+    if (COMPUTED.contains(m)){
+        addProblem(s, "computed branch or call cannot be followed");
+        pRoutine.bounded = false;
+        if (m.startsWith("b") || m.startsWith("fb")){
+            addEdge(pNode, exitNode, t.cycles);
+            return;
+        }
+    }
+
+    int cycles = t.cycles;
+
+    if (m.equals("rpt") || m.equals("rptz")){
+        cycles += repeatCycles(pRoutine, s, next);
+    }
+    else
+    if (m.equals("rptb") || m.equals("rptbd")){
+        addRepeatBlock(pRoutine, s, next, pNodes, pRepeatEnds);
+    }
+
+    fallThrough(pRoutine, pNode, next, cycles, pNodes, pRepeatEnds);
+
+}//end of WcetAnalyzer::addEdges
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::fallThrough
+//
+// Adds an edge costing pCycles from pNode to the instruction at pNext, the
+// one after it. If pNode ends a repeat block, an edge back to the start of
+// the block is added as well.
+//
+
+void fallThrough(Routine pRoutine, Node pNode, int pNext, long pCycles,
+            HashMap<Integer, Node> pNodes, HashMap<Integer, Edge> pRepeatEnds)
+{
+
+    Edge repeat = pRepeatEnds.get(pNode.index);
+
+    if (repeat != null){
+        Edge e = addEdge(pNode, repeat.to, pCycles);
+        e.origin = repeat.origin; e.bound = repeat.bound;
+        e.annotated = repeat.annotated;
+    }
+
+    if (pNext < 0){
+        addProblem(source.getStatement(pNode.index),
+                                        "execution runs off the end of code");
+        pRoutine.bounded = false;
+        return;
+    }
+
+    addEdge(pNode, getNode(pNodes, pNext), pCycles);
+
+}//end of WcetAnalyzer::fallThrough
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::jump
+//
+// Adds an edge costing pCycles from pNode, the branch pStatement, to the
+// label pTarget. A branch to the label of another routine costs that
+// routine's worst case as well and ends the path.
+//
+
+void jump(Routine pRoutine, Node pNode, AsmStatement pStatement,
+                String pTarget, long pCycles, HashMap<Integer, Node> pNodes)
+{
+
+    int target = pTarget.equals("$") ? pStatement.index
+                                            : source.findLabel(pTarget);
+
+    if (target < 0){
+        addProblem(pStatement, "branch target " + pTarget + " not found");
+        pRoutine.bounded = false;
+        addEdge(pNode, exitNode, pCycles);
+        return;
+    }
+
+    //a branch to a routine other than this one is a call which returns in
+    //its place
+
+    if (!pTarget.startsWith("$") && !pTarget.equals(pRoutine.name)){
+        Routine callee = getCallee(pRoutine, pStatement, pTarget);
+        if (callee == null) {addEdge(pNode, exitNode, pCycles); return;}
+        if (callee.returns){
+            addEdge(pNode, exitNode, pCycles + callee.worstCycles);
+        }
+        return;
+    }
+
+    int index = source.nextInstruction(target);
+
+    if (index < 0){
+        addProblem(pStatement, "no code at branch target " + pTarget);
+        pRoutine.bounded = false;
+        addEdge(pNode, exitNode, pCycles);
+        return;
+    }
+
+    Edge e = addEdge(pNode, getNode(pNodes, index), pCycles);
+    e.origin = pStatement;
+
+    //the bound of a loop closed by this branch -- banz loops may be bounded
+    //by the count loaded into their register
+
+    Long bound = getLoopBound(pStatement, index);
+
+    if (bound != null){
+        e.bound = bound; e.annotated = true;
+    }
+    else
+    if (pStatement.mnemonic.startsWith("banz")){
+        Matcher m = AUX_REGISTER.matcher(pStatement.getOperand(1));
+        Long count = m.find() ? findCount(index, m.group()) : null;
+        if (count != null) {e.bound = count + 1;}
+    }
+
+}//end of WcetAnalyzer::jump
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::call
+//
+// Adds the edges from pNode, the call or conditional call pStatement timed
+// by pTiming, to the instruction at pNext. The worst case of the routine
+// called is added to the taken path. If the routine never returns, neither
+// does the taken path.
+//
+
+void call(Routine pRoutine, Node pNode, AsmStatement pStatement,
+        C54xTiming.Timing pTiming, int pNext, HashMap<Integer, Node> pNodes,
+                                            HashMap<Integer, Edge> pRepeatEnds)
+{
+
+    boolean conditional = pStatement.mnemonic.startsWith("cc");
+
+    if (conditional){
+        fallThrough(pRoutine, pNode, pNext, pTiming.cycles, pNodes,
+                                                                pRepeatEnds);
+    }
+
+    Routine callee = getCallee(pRoutine, pStatement, pStatement.getOperand(0));
+
+    long cycles = pTiming.cyclesTaken;
+
+    if (callee != null){
+        if (!callee.returns) {return;}
+        cycles += callee.worstCycles;
+    }
+
+    fallThrough(pRoutine, pNode, pNext, cycles, pNodes, pRepeatEnds);
+
+}//end of WcetAnalyzer::call
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::getCallee
+//
+// Returns the routine at the label pTarget called or branched to by
+// pStatement in pRoutine, or null if the label cannot be found or the
+// routine is itself being analyzed, which are noted as problems.
+//
+
+Routine getCallee(Routine pRoutine, AsmStatement pStatement, String pTarget)
+{
+
+    Routine callee = getRoutine(pTarget);
+
+    if (callee == null){
+        addProblem(pStatement, "routine " + pTarget + " not found");
+        pRoutine.bounded = false;
+        return(null);
+    }
+
+    if (callee.analyzing){
+        addProblem(pStatement, "recursive call to " + pTarget);
+        pRoutine.bounded = false;
+        return(null);
+    }
+
+    if (!callee.bounded) {pRoutine.bounded = false;}
+
+    return(callee);
+
+}//end of WcetAnalyzer::getCallee
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::repeatCycles
+//
+// Returns the cycles of the repeats of the instruction at pNext by the rpt
+// or rptz pStatement of pRoutine beyond its first execution.
+//
+
+long repeatCycles(Routine pRoutine, AsmStatement pStatement, int pNext)
+{
+
+    if (pNext < 0) {return(0);}
+
+    Long count = getLoopBound(pStatement, -1);
+
+    if (count == null){
+        String operand = pStatement.getOperand(
+                                    pStatement.mnemonic.equals("rptz") ? 1 : 0);
+        if (operand.startsWith("#")){
+            Long k = source.evaluate(operand.substring(1));
+            if (k != null) {count = k + 1;}
+        }
+    }
+
+    if (count == null){
+        addProblem(pStatement, "repeat has no bound -- add \"; WCET: loop n\"");
+        pRoutine.bounded = false;
+        count = 1L;
+    }
+
+    C54xTiming.Timing t = timing.getTiming(source.getStatement(pNext));
+
+    return((count - 1) * t.cycles);
+
+}//end of WcetAnalyzer::repeatCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::addRepeatBlock
+//
+// Records the repeat block started by the rptb pStatement, whose first
+// instruction is at pNext, in pRepeatEnds under its last instruction.
+//
+
+void addRepeatBlock(Routine pRoutine, AsmStatement pStatement, int pNext,
+            HashMap<Integer, Node> pNodes, HashMap<Integer, Edge> pRepeatEnds)
+{
+
+    int end = source.findLabel(pStatement.getOperand(0));
+    int last = end < 0 ? -1 : source.nextInstruction(end);
+
+    if (last < 0 || pNext < 0){
+        addProblem(pStatement, "end of repeat block not found");
+        pRoutine.bounded = false;
+        return;
+    }
+
+    Edge e = new Edge(getNode(pNodes, pNext), 0);
+    e.origin = pStatement;
+
+    Long bound = getLoopBound(pStatement, pNext);
+
+    if (bound != null){
+        e.bound = bound; e.annotated = true;
+    }
+    else{
+        Long count = findCount(pStatement.index, "BRC");
+        if (count != null) {e.bound = count + 1;}
+    }
+
+    pRepeatEnds.put(last, e);
+
+}//end of WcetAnalyzer::addRepeatBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::findCount
+//
+// Returns the constant loaded into the register pRegister by a "stm #k"
+// in the straight run of code before the statement at pIndex, or null if
+// there is none or it cannot be evaluated. The search stops at any label,
+// any change of flow, or any other use of the register.
+//
+
+Long findCount(int pIndex, String pRegister)
+{
+
+    if (pRegister.isEmpty()) {return(null);}
+
+    Pattern use = Pattern.compile("(?i)\\b" + Pattern.quote(pRegister)
+                                                                + "\\b");
+
+    for (int i = pIndex - 1; i >= 0 && i > pIndex - 64; i--){
+
+        AsmStatement s = source.getStatement(i);
+
+        if (s.label != null) {return(null);}
+        if (!s.isInstruction()) {continue;}
+
+        if (s.mnemonic.equals("stm")
+                        && s.getOperand(1).equalsIgnoreCase(pRegister)
+                        && s.getOperand(0).startsWith("#")){
+            return(source.evaluate(s.getOperand(0).substring(1)));
+        }
+
+        if (isFlow(s.mnemonic)) {return(null);}
+
+        for (String o : s.operands){
+            if (use.matcher(o).find()) {return(null);}
+        }
+
+    }
+
+    return(null);
+
+}//end of WcetAnalyzer::findCount
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::isFlow
+//
+// Returns true if the instruction pMnemonic may change the flow of
+// execution.
+//
+
+static boolean isFlow(String pMnemonic)
+{
+
+    return(pMnemonic.matches("(f)?(b|bc|banz|call|cc|ret|rete|rc|rpt|rptb"
+                     + "|rptz|bacc|cala|trap|intr|idle)(d)?"));
+
+}//end of WcetAnalyzer::isFlow
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::getLoopBound
+//
+// Returns the loop bound given by the user on the line of the loop
+// instruction pStatement or of the first line of the loop, the instruction
+// at pHead and any labels on the lines just before it, or null if none is
+// given. pHead may be -1 if there is no first line to check.
+//
+
+Long getLoopBound(AsmStatement pStatement, int pHead)
+{
+
+    Long bound = getAnnotation(pStatement, "loop");
+
+    for (int i = pHead; bound == null && i >= 0; i--){
+        AsmStatement s = source.getStatement(i);
+        if (i < pHead && s.mnemonic != null) {break;}
+        bound = getAnnotation(s, "loop");
+        if (i < pHead && s.label != null) {break;}
+    }
+
+    return(bound);
+
+}//end of WcetAnalyzer::getLoopBound
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::getAnnotation
+//
+// Returns the value given by the user for the key pKey -- loop, budget, or
+// max -- in the comment of pStatement, or null if there is none. A value
+// which cannot be evaluated is noted as a problem.
+//
+
+Long getAnnotation(AsmStatement pStatement, String pKey)
+{
+
+    if (pStatement.comment == null) {return(null);}
+
+    Matcher m = ANNOTATION.matcher(pStatement.comment);
+
+    while (m.find()){
+        if (!m.group(1).equalsIgnoreCase(pKey)) {continue;}
+        Long value = source.evaluate(m.group(2));
+        if (value == null){
+            addProblem(pStatement, "cannot evaluate WCET " + pKey + " "
+                                                                + m.group(2));
+        }
+        return(value);
+    }
+
+    return(null);
+
+}//end of WcetAnalyzer::getAnnotation
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::collapseLoops
+//
+// Replaces each loop in the graph pNodes of routine pRoutine, from the
+// innermost out, with its first node, whose edges become the ways out of
+// the loop costing the bound less one times the longest pass around the
+// loop plus the longest way from the first node to each way out.
+//
+
+void collapseLoops(Routine pRoutine, Node pEntry,
+                                            HashMap<Integer, Node> pNodes)
+{
+
+    //the edges closing loops, found by a depth first search, by the first
+    //node of their loop
+
+    LinkedHashMap<Node, ArrayList<Edge>> backEdges =
+                                    new LinkedHashMap<Node, ArrayList<Edge>>();
+
+    findBackEdges(pEntry, new HashSet<Node>(), new HashSet<Node>(),
+                                                                backEdges);
+
+    if (backEdges.isEmpty()) {return;}
+
+    //the nodes before each node, to find the nodes of each loop
+
+    HashMap<Node, ArrayList<Node>> before =
+                                        new HashMap<Node, ArrayList<Node>>();
+
+    for (Node n : pNodes.values()){
+        for (Edge e : n.out){
+            ArrayList<Node> list = before.get(e.to);
+            if (list == null){
+                list = new ArrayList<Node>();
+                before.put(e.to, list);
+            }
+            list.add(n);
+        }
+    }
+
+    final HashMap<Node, HashSet<Node>> loops =
+                                        new HashMap<Node, HashSet<Node>>();
+
+    for (Node head : backEdges.keySet()){
+        HashSet<Node> body = new HashSet<Node>();
+        body.add(head);
+        ArrayDeque<Node> work = new ArrayDeque<Node>();
+        for (Edge e : backEdges.get(head)) {work.add(e.from);}
+        while (!work.isEmpty()){
+            Node n = work.poll();
+            if (!body.add(n)) {continue;}
+            ArrayList<Node> list = before.get(n);
+            if (list != null) {work.addAll(list);}
+        }
+        loops.put(head, body);
+    }
+
+    ArrayList<Node> heads = new ArrayList<Node>(loops.keySet());
+
+    Collections.sort(heads, new Comparator<Node>(){
+        @Override
+        public int compare(Node pA, Node pB)
+        {
+            return(loops.get(pA).size() - loops.get(pB).size());
+        }
+    });
+
+    for (Node head : heads){
+        collapseLoop(pRoutine, head, loops.get(head), backEdges.get(head));
+    }
+
+}//end of WcetAnalyzer::collapseLoops
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::findBackEdges
+//
+// Adds each edge reachable from pNode which leads back to a node on the
+// search path, pOnPath, to pBackEdges under the node it leads to.
+//
+
+void findBackEdges(Node pNode, HashSet<Node> pVisited, HashSet<Node> pOnPath,
+                            LinkedHashMap<Node, ArrayList<Edge>> pBackEdges)
+{
+
+    pVisited.add(pNode);
+    pOnPath.add(pNode);
+
+    for (Edge e : pNode.out){
+
+        if (pOnPath.contains(e.to)){
+            ArrayList<Edge> list = pBackEdges.get(e.to);
+            if (list == null){
+                list = new ArrayList<Edge>();
+                pBackEdges.put(e.to, list);
+            }
+            list.add(e);
+        }
+        else
+        if (e.to != exitNode && !pVisited.contains(e.to)){
+            findBackEdges(e.to, pVisited, pOnPath, pBackEdges);
+        }
+
+    }
+
+    pOnPath.remove(pNode);
+
+}//end of WcetAnalyzer::findBackEdges
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::collapseLoop
+//
+// Replaces the loop of routine pRoutine made up of pBody, first node pHead,
+// closed by the edges pBackEdges, with pHead. Loops within it must have been
+// collapsed already.
+//
+
+void collapseLoop(Routine pRoutine, Node pHead, HashSet<Node> pBody,
+                                                    ArrayList<Edge> pBackEdges)
+{
+
+    //the nodes of the loop, inner loops being represented by their heads
+
+    HashSet<Node> body = new HashSet<Node>();
+    for (Node n : pBody) {body.add(n.rep());}
+
+    //the bound -- a bound given by the user is used over one found, and
+    //none is found if any edge closing the loop has none
+
+    long given = 0, found = 0;
+    boolean unknown = false;
+    AsmStatement origin = null;
+
+    for (Edge e : pBackEdges){
+        if (origin == null) {origin = e.origin;}
+        if (e.annotated) {given = Math.max(given, e.bound);}
+        else if (e.bound > 0) {found = Math.max(found, e.bound);}
+        else {unknown = true;}
+    }
+
+    long bound = given > 0 ? given : unknown ? 0 : found;
+
+    //the ways out of the loop
+
+    LinkedHashSet<Node> exits = new LinkedHashSet<Node>();
+
+    for (Node n : body){
+        for (Edge e : n.out){
+            Node to = e.to.rep();
+            if (to != pHead && !body.contains(to)) {exits.add(to);}
+        }
+    }
+
+    if (bound <= 0 && !exits.isEmpty()){
+        AsmStatement s = origin != null ? origin
+                                        : source.getStatement(pHead.index);
+        addProblem(s, "loop has no bound -- add \"; WCET: loop n\"");
+        pRoutine.bounded = false;
+    }
+
+    if (bound <= 0) {bound = 1;}
+
+    long pass = longestPath(pHead, pHead, body, iterateGoal,
+                            new HashMap<Node, Long>(), new HashSet<Node>());
+    if (pass == NO_PATH) {pass = 0;}
+
+    ArrayList<Edge> out = new ArrayList<Edge>();
+
+    for (Node exit : exits){
+        long way = longestPath(pHead, pHead, body, exit,
+                            new HashMap<Node, Long>(), new HashSet<Node>());
+        if (way == NO_PATH) {continue;}
+        Edge e = new Edge(exit, (bound - 1) * pass + way);
+        e.from = pHead;
+        out.add(e);
+    }
+
+    pHead.out = out;
+
+    for (Node n : body) {if (n != pHead) {n.represented = pHead;}}
+
+}//end of WcetAnalyzer::collapseLoop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::longestPath
+//
+// Returns the most cycles of any path from pNode to pGoal, or NO_PATH if
+// there is none.
+//
+// If pBody is not null, the path stays within the loop made up of pBody
+// whose first node is pHead: the goal is either the node outside the loop
+// where the path leaves it or, if pGoal is iterateGoal, pHead as the path
+// returns to it. Otherwise the goal is reached by an edge to it.
+//
+// The results are kept in pCosts. pOnPath holds the nodes on the path being
+// searched, to catch a cycle which has not been collapsed.
+//
+
+long longestPath(Node pNode, Node pHead, HashSet<Node> pBody, Node pGoal,
+                    HashMap<Node, Long> pCosts, HashSet<Node> pOnPath)
+{
+
+    Long known = pCosts.get(pNode);
+    if (known != null) {return(known);}
+
+    if (!pOnPath.add(pNode)){
+        addProblem(source.getStatement(pNode.index),
+                                        "loop with more than one entry");
+        return(NO_PATH);
+    }
+
+    long best = NO_PATH;
+
+    for (Edge e : pNode.out){
+
+        Node to = e.to.rep();
+        long cost;
+
+        if (to == exitNode || (pBody != null && !pBody.contains(to))){
+            cost = to == pGoal ? e.cost : NO_PATH;
+        }
+        else
+        if (to == pHead){
+            cost = pGoal == iterateGoal ? e.cost : NO_PATH;
+        }
+        else{
+            long rest = longestPath(to, pHead, pBody, pGoal, pCosts, pOnPath);
+            cost = rest == NO_PATH ? NO_PATH : e.cost + rest;
+        }
+
+        best = Math.max(best, cost);
+
+    }
+
+    pOnPath.remove(pNode);
+    pCosts.put(pNode, best);
+
+    return(best);
+
+}//end of WcetAnalyzer::longestPath
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::getNode
+//
+// Returns the node of pNodes for the instruction at pIndex, adding it if
+// there is none.
+//
+
+Node getNode(HashMap<Integer, Node> pNodes, int pIndex)
+{
+
+    Node n = pNodes.get(pIndex);
+
+    if (n == null){
+        n = new Node(pIndex);
+        pNodes.put(pIndex, n);
+    }
+
+    return(n);
+
+}//end of WcetAnalyzer::getNode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::addEdge
+//
+// Adds and returns an edge costing pCycles from pFrom to pTo.
+//
+
+Edge addEdge(Node pFrom, Node pTo, long pCycles)
+{
+
+    Edge e = new Edge(pTo, pCycles);
+    e.from = pFrom;
+    pFrom.out.add(e);
+
+    return(e);
+
+}//end of WcetAnalyzer::addEdge
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::addProblem
+//
+// Notes the problem pMessage found at pStatement.
+//
+
+void addProblem(AsmStatement pStatement, String pMessage)
+{
+
+    problems.add(new File(pStatement.file).getName() + ":" + pStatement.line
+                                                            + ": " + pMessage);
+
+}//end of WcetAnalyzer::addProblem
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::getRoutines
+//
+// Returns the routines in source order.
+//
+
+public ArrayList<Routine> getRoutines()
+{
+
+    return(routines);
+
+}//end of WcetAnalyzer::getRoutines
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::getNumFlagged
+//
+// Returns the number of routines held to a budget which are over it or
+// cannot be bounded.
+//
+
+public int getNumFlagged()
+{
+
+    int n = 0;
+
+    for (Routine r : routines){
+        if (r.budget >= 0 && (r.isOverBudget() || !r.bounded)) {n++;}
+    }
+
+    return(n);
+
+}//end of WcetAnalyzer::getNumFlagged
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::print
+//
+// Prints the worst case of each routine, the problems which limit the
+// analysis, and the warnings from reading and timing the source to pOut.
+//
+
+public void print(PrintStream pOut)
+{
+
+    pOut.println("Worst case cycles - " + title);
+    pOut.println();
+    pOut.printf("%-32s %6s %14s %10s  %s%n", "Routine", "Line",
+                                        "Worst Cycles", "Budget", "Status");
+
+    for (Routine r : routines){
+        String worst = r.returns ? r.worstCycles + (r.bounded ? "" : "+")
+                                 : "-";
+        pOut.printf("%-32s %6d %14s %10s  %s%n", r.name, r.line, worst,
+                    r.budget < 0 ? "" : Long.toString(r.budget),
+                    r.getStatus());
+    }
+
+    pOut.println();
+    pOut.println("Routines over budget or unbounded: " + getNumFlagged());
+
+    printList(pOut, "Problems", new ArrayList<String>(problems));
+
+    ArrayList<String> warnings = new ArrayList<String>(source.getWarnings());
+    warnings.addAll(timing.getWarnings());
+
+    printList(pOut, "Warnings", warnings);
+
+}//end of WcetAnalyzer::print
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::printList
+//
+// Prints pList to pOut under the heading pHeading, if it is not empty.
+//
+
+static void printList(PrintStream pOut, String pHeading,
+                                                    ArrayList<String> pList)
+{
+
+    if (pList.isEmpty()) {return;}
+
+    pOut.println();
+    pOut.println(pHeading + ":");
+
+    for (String s : pList) {pOut.println("  " + s);}
+
+}//end of WcetAnalyzer::printList
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// WcetAnalyzer::main
+//
+// Analyzes the source named on the command line and prints the results.
+//
+
+public static void main(String[] args)
+{
+
+    long budget = -1;
+    int i = 0;
+
+    try{
+
+        for (; i < args.length - 1 && args[i].startsWith("-"); i += 2){
+            if (args[i].equals("-budget")){
+                try{
+                    budget = Long.parseLong(args[i + 1]);
+                }
+                catch(NumberFormatException e){
+                    throw new IOException("bad budget " + args[i + 1]);
+                }
+            }
+            else {throw new IOException("unknown option " + args[i]);}
+        }
+
+        if (args.length - i != 1){
+            throw new IOException(
+                          "usage: WcetAnalyzer [-budget n] <program.asm>");
+        }
+
+        File file = new File(args[i]);
+
+        AsmSource source = new AsmSource();
+        source.init();
+        source.load(file);
+
+        WcetAnalyzer analyzer = new WcetAnalyzer(file.getName(), source);
+        analyzer.init();
+        analyzer.setDefaultBudget(budget);
+        analyzer.analyze();
+        analyzer.print(System.out);
+
+        System.exit(analyzer.getNumFlagged() == 0 ? 0 : 1);
+
+    }
+    catch(IOException e){
+        System.err.println(e.getMessage());
+        System.exit(2);
+    }
+
+}//end of WcetAnalyzer::main
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Routine
+//
+// The worst case of one routine. The worst case of a routine which is not
+// bounded counts each unbounded loop once. A budget of -1 means none.
+//
+
+public static class Routine
+{
+
+    public String name;
+    public String file;
+    public int line;
+
+    public long worstCycles;
+    public long budget = -1;
+
+    public boolean bounded = true;
+    public boolean returns = true;
+
+    //true if the worst case was given by the user
+    public boolean given;
+
+    boolean analyzing;
+
+    public boolean isOverBudget()
+    {
+        return(budget >= 0 && returns && worstCycles > budget);
+    }
+
+    public String getStatus()
+    {
+        if (!returns) {return("never returns");}
+        if (isOverBudget()) {return("OVER BUDGET");}
+        if (!bounded) {return("UNBOUNDED");}
+        if (given) {return("given");}
+        return(budget >= 0 ? "ok" : "");
+    }
+
+}//end of class Routine
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Node
+//
+// An instruction in the graph of a routine, or the head of a loop which has
+// been collapsed, in which case the nodes of the loop are represented by it.
+//
+
+static class Node
+{
+
+    int index;
+    ArrayList<Edge> out = new ArrayList<Edge>();
+    boolean queued;
+    Node represented;
+
+    Node(int pIndex) { index = pIndex; }
+
+    Node rep()
+    {
+        Node n = this;
+        while (n.represented != null) {n = n.represented;}
+        return(n);
+    }
+
+}//end of class Node
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Edge
+//
+// A step from one node to another costing a number of cycles. An edge which
+// closes a loop carries the loop's bound, zero if not known, and the loop
+// instruction it came from.
+//
+
+static class Edge
+{
+
+    Node from;
+    Node to;
+    long cost;
+
+    long bound;
+    boolean annotated;
+    AsmStatement origin;
+
+    Edge(Node pTo, long pCost) { to = pTo; cost = pCost; }
+
+}//end of class Edge
+//-----------------------------------------------------------------------------
+
+}//end of class WcetAnalyzer
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
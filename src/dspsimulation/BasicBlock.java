@@ -0,0 +1,214 @@
+/******************************************************************************
+* Title: Universal IDE - BasicBlock.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class holds a basic block -- a straight run of instructions which is
+* entered at the first instruction and which ends at an instruction which may
+* change the flow of execution, such as a branch, call, return, or repeat.
+*
+* Each instruction of the block is bound with its operands, its cycle count,
+* and the address of the following instruction into an Op object when the
+* block is built. Running the block calls the Ops in order without fetching,
+* looking up, or checking each instruction again.
+*
+* The blocks are stored in the DecodeCache by starting address and are
+* invalidated along with the decoded instructions when program memory is
+* written.
+*
+* A block which has been run COMPILE_THRESHOLD times is translated to Java
+* bytecode by BlockCompiler; the compiled form is then used in place of the
+* Ops whenever the whole block is to be run.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// class BasicBlock
+//
+
+public class BasicBlock
+{
+
+    //address of the first instruction and the number of words spanned by all
+    //the instructions
+    int start;
+    int numWords;
+
+    //the bound instructions in order of execution
+    Op[] ops;
+    int numOps;
+
+    //the decoded form of each instruction, kept for the BlockCompiler
+
+    Instruction[] instructions;
+    int[] operandA;
+    int[] operandB;
+    int[] numCycles;
+
+    //the address of the instruction following each instruction
+    int[] nextAddress;
+
+    //number of times the block has been run from the Ops and the compiled
+    //form once the count reaches COMPILE_THRESHOLD -- null until then or if
+    //the block could not be compiled
+
+    int executionCount;
+    CompiledBlock compiled;
+
+    //for the body of a block repeat, the address following the last
+    //instruction of the repeat -- a body with no instructions records a
+    //repeat which cannot be run as a loop
+    int loopEnd;
+
+    //cleared when any word of the block is written -- a block which modifies
+    //itself stops at the instruction which made the change
+    boolean valid = true;
+
+    //for a block which loops back to itself, the number of times in a row it
+    //was found to be doing work rather than waiting, and the number of
+    //times it is to loop back before it is checked again -- see
+    //Core.skipSpin
+    int spinFailures;
+    int spinWait;
+
+    //maximum number of instructions in a block -- longer runs are split
+    public static final int MAX_OPS = 32;
+
+    //most times in a row a waiting check may fail before the number of
+    //loops skipped between checks stops doubling
+    public static final int MAX_SPIN_BACKOFF = 16;
+
+    //maximum number of words spanned by a block
+    public static final int MAX_WORDS = MAX_OPS * DecodeCache.MAX_WORDS;
+
+    //number of runs after which a block is compiled to bytecode
+    public static final int COMPILE_THRESHOLD = 1000;
+
+//-----------------------------------------------------------------------------
+// BasicBlock::BasicBlock (constructor)
+//
+// Creates a block starting at pStart.
+//
+
+public BasicBlock(int pStart)
+{
+
+    start = pStart;
+
+}//end of BasicBlock::BasicBlock (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BasicBlock::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    ops = new Op[MAX_OPS];
+    instructions = new Instruction[MAX_OPS];
+    operandA = new int[MAX_OPS];
+    operandB = new int[MAX_OPS];
+    numCycles = new int[MAX_OPS];
+    nextAddress = new int[MAX_OPS];
+
+}//end of BasicBlock::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BasicBlock::add
+//
+// Appends instruction pInstruction, which was decoded with operands pOperandA
+// and pOperandB and occupies pNumWords words, to the block. pNext is the
+// address of the following instruction and pNumCycles is the instruction's
+// cycle count.
+//
+
+void add(final Instruction pInstruction, final int pOperandA,
+                final int pOperandB, int pNumWords, final int pNext,
+                                                          final int pNumCycles)
+{
+
+    ops[numOps] = new Op(){
+        @Override
+        public void run(Core pCore)
+        {
+            pCore.pc = pNext;
+            pCore.cycles += pNumCycles;
+            pInstruction.execute(pCore, pOperandA, pOperandB);
+        }
+    };
+
+    instructions[numOps] = pInstruction;
+    operandA[numOps] = pOperandA; operandB[numOps] = pOperandB;
+    numCycles[numOps] = pNumCycles;
+    nextAddress[numOps] = pNext;
+    numOps++;
+    numWords += pNumWords;
+
+}//end of BasicBlock::add
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BasicBlock::findNext
+//
+// Returns the index of the instruction which is followed by pAddress or -1 if
+// there is none. Used to find the last instruction of a block repeat.
+//
+
+int findNext(int pAddress)
+{
+
+    for (int i = 0; i < numOps; i++){
+        if (nextAddress[i] == pAddress) {return(i);}
+    }
+
+    return(-1);
+
+}//end of BasicBlock::findNext
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BasicBlock::covers
+//
+// Returns true if pAddress is one of the words of the block.
+//
+
+boolean covers(int pAddress)
+{
+
+    return(pAddress >= start && pAddress < start + numWords);
+
+}//end of BasicBlock::covers
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// interface Op
+//
+// An instruction bound with its operands, ready to be executed.
+//
+
+interface Op
+{
+
+    //sets the program counter to the following instruction, adds the cycle
+    //count, and executes the instruction on pCore
+    public void run(Core pCore);
+
+}//end of interface Op
+//-----------------------------------------------------------------------------
+
+}//end of class BasicBlock
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
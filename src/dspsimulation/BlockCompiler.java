@@ -0,0 +1,522 @@
+/******************************************************************************
+* Title: Universal IDE - BlockCompiler.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class translates a basic block into Java bytecode. A class file is
+* written for a sub-class of CompiledBlock whose run method contains, for
+* each instruction of the block:
+*
+*   pCore.pc = <next address>;
+*   pCore.cycles += <cycles>;
+*   instructions[<i>].execute(pCore, <operand A>, <operand B>);
+*   if (stopped(pCore)) return(<i + 1>);
+*
+* The class is loaded by its own class loader so that it can be discarded
+* when the block is invalidated. Each instruction is called from its own call
+* site, so the Java virtual machine sees a single target at each site and
+* can inline the instruction's execute method into the generated code.
+*
+* The class file uses version 49 which does not need the stack map frames
+* required by later versions, and so runs on any Java virtual machine from
+* Java 5 on.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//-----------------------------------------------------------------------------
+// class BlockCompiler
+//
+
+public class BlockCompiler
+{
+
+    //the class file being written
+    ByteArrayOutputStream constantBytes;
+    DataOutputStream constants;
+    HashMap<String, Integer> constantIndex;
+    int numConstants;
+
+    ByteArrayOutputStream codeBytes;
+    DataOutputStream code;
+
+    //used to give each generated class a unique name
+    static final AtomicInteger classCount = new AtomicInteger();
+
+    static final String BASE_CLASS = "dspsimulation/CompiledBlock";
+    static final String CORE_CLASS = "dspsimulation/Core";
+    static final String INSTRUCTION_CLASS = "dspsimulation/Instruction";
+
+    static final int CLASS_VERSION = 49;
+
+    //constant pool tags
+    static final int CONSTANT_UTF8 = 1;
+    static final int CONSTANT_INTEGER = 3;
+    static final int CONSTANT_LONG = 5;
+    static final int CONSTANT_CLASS = 7;
+    static final int CONSTANT_FIELDREF = 9;
+    static final int CONSTANT_METHODREF = 10;
+    static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    //access flags
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    //opcodes
+    static final int ALOAD_0 = 0x2a;
+    static final int ALOAD_1 = 0x2b;
+    static final int AALOAD = 0x32;
+    static final int DUP = 0x59;
+    static final int LADD = 0x61;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int IFEQ = 0x99;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::BlockCompiler (constructor)
+//
+
+public BlockCompiler()
+{
+
+}//end of BlockCompiler::BlockCompiler (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    constantBytes = new ByteArrayOutputStream();
+    constants = new DataOutputStream(constantBytes);
+    constantIndex = new HashMap<String, Integer>();
+    numConstants = 1;
+
+    codeBytes = new ByteArrayOutputStream();
+    code = new DataOutputStream(codeBytes);
+
+}//end of BlockCompiler::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::compile
+//
+// Translates pBlock into a new CompiledBlock. A BlockCompiler should only be
+// used for one block.
+//
+// Returns the compiled block or null if the class could not be created.
+//
+
+public static CompiledBlock compile(BasicBlock pBlock)
+{
+
+    BlockCompiler compiler = new BlockCompiler();
+    compiler.init();
+
+    String name = "dspsimulation/Block" + Integer.toHexString(pBlock.start)
+                                        + "_" + classCount.incrementAndGet();
+
+    try{
+
+        byte[] classFile = compiler.writeClass(name, pBlock);
+
+        Class<?> c = new BlockLoader().define(name.replace('/', '.'),
+                                                                    classFile);
+
+        CompiledBlock compiled =
+                    (CompiledBlock)c.getConstructor().newInstance();
+        compiled.init(pBlock);
+
+        return(compiled);
+
+    }
+    catch(IOException | ReflectiveOperationException | LinkageError e){
+        System.err.println("Could not compile block at "
+                          + Integer.toHexString(pBlock.start) + ": " + e);
+        return(null);
+    }
+
+}//end of BlockCompiler::compile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::writeClass
+//
+// Returns the class file for the class named pName translated from pBlock.
+//
+
+byte[] writeClass(String pName, BasicBlock pBlock) throws IOException
+{
+
+    int thisClass = classConstant(pName);
+    int superClass = classConstant(BASE_CLASS);
+
+    //the constructor only calls the base class constructor
+
+    code.writeByte(ALOAD_0);
+    code.writeByte(INVOKESPECIAL);
+    code.writeShort(memberConstant(CONSTANT_METHODREF, BASE_CLASS, "<init>",
+                                                                      "()V"));
+    code.writeByte(RETURN);
+
+    byte[] constructor = takeCode();
+
+    writeRun(pBlock);
+
+    byte[] run = takeCode();
+
+    int codeName = utf8Constant("Code");
+    int initName = utf8Constant("<init>"), initType = utf8Constant("()V");
+    int runName = utf8Constant("run");
+    int runType = utf8Constant("(L" + CORE_CLASS + ";)I");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeInt(0xcafebabe);
+    out.writeShort(0); out.writeShort(CLASS_VERSION);
+
+    out.writeShort(numConstants);
+    constants.flush();
+    constantBytes.writeTo(out);
+
+    out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+    out.writeShort(thisClass); out.writeShort(superClass);
+    out.writeShort(0);  //interfaces
+    out.writeShort(0);  //fields
+
+    out.writeShort(2);  //methods
+    writeMethod(out, initName, initType, codeName, 1, 1, constructor);
+    writeMethod(out, runName, runType, codeName, 5, 2, run);
+
+    out.writeShort(0);  //attributes
+
+    out.flush();
+
+    return(bytes.toByteArray());
+
+}//end of BlockCompiler::writeClass
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::writeRun
+//
+// Writes the code of the run method for pBlock. Local 0 is this and local 1
+// is the core.
+//
+
+void writeRun(BasicBlock pBlock) throws IOException
+{
+
+    int pcField = memberConstant(CONSTANT_FIELDREF, CORE_CLASS, "pc", "I");
+    int cyclesField =
+                memberConstant(CONSTANT_FIELDREF, CORE_CLASS, "cycles", "J");
+    int instructionsField = memberConstant(CONSTANT_FIELDREF, BASE_CLASS,
+                          "instructions", "[L" + INSTRUCTION_CLASS + ";");
+    int execute = memberConstant(CONSTANT_METHODREF, INSTRUCTION_CLASS,
+                                    "execute", "(L" + CORE_CLASS + ";II)V");
+    int stopped = memberConstant(CONSTANT_METHODREF, BASE_CLASS, "stopped",
+                                                "(L" + CORE_CLASS + ";)Z");
+
+    for (int i = 0; i < pBlock.numOps; i++){
+
+        //pCore.pc = next
+
+        code.writeByte(ALOAD_1);
+        loadInt(pBlock.nextAddress[i]);
+        code.writeByte(PUTFIELD); code.writeShort(pcField);
+
+        //pCore.cycles += cycles
+
+        code.writeByte(ALOAD_1);
+        code.writeByte(DUP);
+        code.writeByte(GETFIELD); code.writeShort(cyclesField);
+        code.writeByte(LDC2_W);
+        code.writeShort(longConstant(pBlock.numCycles[i]));
+        code.writeByte(LADD);
+        code.writeByte(PUTFIELD); code.writeShort(cyclesField);
+
+        //instructions[i].execute(pCore, operandA, operandB)
+
+        code.writeByte(ALOAD_0);
+        code.writeByte(GETFIELD); code.writeShort(instructionsField);
+        loadInt(i);
+        code.writeByte(AALOAD);
+        code.writeByte(ALOAD_1);
+        loadInt(pBlock.operandA[i]);
+        loadInt(pBlock.operandB[i]);
+        code.writeByte(INVOKEVIRTUAL); code.writeShort(execute);
+
+        //if (stopped(pCore)) return(i + 1) -- the last instruction returns
+        //the count without checking
+
+        if (i < pBlock.numOps - 1){
+            code.writeByte(ALOAD_0);
+            code.writeByte(ALOAD_1);
+            code.writeByte(INVOKEVIRTUAL); code.writeShort(stopped);
+            //skip this branch (3), the load (3), and the return (1)
+            code.writeByte(IFEQ); code.writeShort(7);
+        }
+
+        loadInt(i + 1);
+        code.writeByte(IRETURN);
+
+    }
+
+}//end of BlockCompiler::writeRun
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::writeMethod
+//
+// Writes a public method named by constant pName with descriptor constant
+// pType to pOut. pCode is the bytecode; pMaxStack and pMaxLocals are the
+// number of stack and local variable slots it uses. pCodeName is the
+// constant for the "Code" attribute name.
+//
+
+void writeMethod(DataOutputStream pOut, int pName, int pType, int pCodeName,
+                    int pMaxStack, int pMaxLocals, byte[] pCode)
+                                                            throws IOException
+{
+
+    pOut.writeShort(ACC_PUBLIC);
+    pOut.writeShort(pName); pOut.writeShort(pType);
+
+    pOut.writeShort(1); //attributes
+
+    pOut.writeShort(pCodeName);
+    pOut.writeInt(12 + pCode.length);
+    pOut.writeShort(pMaxStack); pOut.writeShort(pMaxLocals);
+    pOut.writeInt(pCode.length);
+    pOut.write(pCode);
+    pOut.writeShort(0); //exception table
+    pOut.writeShort(0); //attributes
+
+}//end of BlockCompiler::writeMethod
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::loadInt
+//
+// Writes code to push int pValue. A constant pool entry is always used so
+// that every load has the same length.
+//
+
+void loadInt(int pValue) throws IOException
+{
+
+    code.writeByte(LDC_W);
+    code.writeShort(intConstant(pValue));
+
+}//end of BlockCompiler::loadInt
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::takeCode
+//
+// Returns the code written so far and starts a new method.
+//
+
+byte[] takeCode() throws IOException
+{
+
+    code.flush();
+    byte[] bytes = codeBytes.toByteArray();
+    codeBytes.reset();
+
+    return(bytes);
+
+}//end of BlockCompiler::takeCode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::utf8Constant
+//
+// Returns the index of the constant pool entry for string pText, adding the
+// entry if it does not exist.
+//
+
+int utf8Constant(String pText) throws IOException
+{
+
+    Integer index = constantIndex.get("U" + pText);
+    if (index != null) {return(index);}
+
+    constants.writeByte(CONSTANT_UTF8);
+    constants.writeUTF(pText);
+
+    return(addConstant("U" + pText, 1));
+
+}//end of BlockCompiler::utf8Constant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::classConstant
+//
+// Returns the index of the constant pool entry for the class with internal
+// name pName, adding the entry if it does not exist.
+//
+
+int classConstant(String pName) throws IOException
+{
+
+    Integer index = constantIndex.get("C" + pName);
+    if (index != null) {return(index);}
+
+    int name = utf8Constant(pName);
+
+    constants.writeByte(CONSTANT_CLASS);
+    constants.writeShort(name);
+
+    return(addConstant("C" + pName, 1));
+
+}//end of BlockCompiler::classConstant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::memberConstant
+//
+// Returns the index of the constant pool entry for the field or method of
+// class pClass named pName with descriptor pType, adding the entry if it does
+// not exist. pTag is CONSTANT_FIELDREF or CONSTANT_METHODREF.
+//
+
+int memberConstant(int pTag, String pClass, String pName, String pType)
+                                                            throws IOException
+{
+
+    String key = "M" + pClass + "." + pName + pType;
+
+    Integer index = constantIndex.get(key);
+    if (index != null) {return(index);}
+
+    int owner = classConstant(pClass);
+    int name = utf8Constant(pName), type = utf8Constant(pType);
+
+    constants.writeByte(CONSTANT_NAME_AND_TYPE);
+    constants.writeShort(name); constants.writeShort(type);
+    int nameAndType = addConstant("N" + key, 1);
+
+    constants.writeByte(pTag);
+    constants.writeShort(owner); constants.writeShort(nameAndType);
+
+    return(addConstant(key, 1));
+
+}//end of BlockCompiler::memberConstant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::intConstant
+//
+// Returns the index of the constant pool entry for int pValue, adding the
+// entry if it does not exist.
+//
+
+int intConstant(int pValue) throws IOException
+{
+
+    Integer index = constantIndex.get("I" + pValue);
+    if (index != null) {return(index);}
+
+    constants.writeByte(CONSTANT_INTEGER);
+    constants.writeInt(pValue);
+
+    return(addConstant("I" + pValue, 1));
+
+}//end of BlockCompiler::intConstant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::longConstant
+//
+// Returns the index of the constant pool entry for long pValue, adding the
+// entry if it does not exist. Long entries take two slots in the pool.
+//
+
+int longConstant(long pValue) throws IOException
+{
+
+    Integer index = constantIndex.get("J" + pValue);
+    if (index != null) {return(index);}
+
+    constants.writeByte(CONSTANT_LONG);
+    constants.writeLong(pValue);
+
+    return(addConstant("J" + pValue, 2));
+
+}//end of BlockCompiler::longConstant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// BlockCompiler::addConstant
+//
+// Records the entry just written under pKey and reserves pSlots slots for it.
+//
+// Returns the index of the entry.
+//
+
+private int addConstant(String pKey, int pSlots)
+{
+
+    int index = numConstants;
+    numConstants += pSlots;
+
+    constantIndex.put(pKey, index);
+
+    return(index);
+
+}//end of BlockCompiler::addConstant
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class BlockLoader
+//
+// Loads a single generated class. Each class has its own loader so that the
+// class can be unloaded once its block is discarded.
+//
+
+static class BlockLoader extends ClassLoader
+{
+
+    BlockLoader()
+    {
+        super(BlockCompiler.class.getClassLoader());
+    }
+
+    Class<?> define(String pName, byte[] pClassFile)
+    {
+        return(defineClass(pName, pClassFile, 0, pClassFile.length));
+    }
+
+}//end of class BlockLoader
+//-----------------------------------------------------------------------------
+
+}//end of class BlockCompiler
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,263 @@
+/******************************************************************************
+* Title: Universal IDE - CaptureReplay.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class simulates the FPGA which stores the A/D samples of each
+* transducer pulse into a core's data memory, by replaying a capture of the
+* samples taken from a real inspection.
+*
+* The capture file is a series of frames, one per pulse, each being the
+* words the FPGA stores into the sample buffer for the pulse -- including
+* the tracking word and the ready flag in the last word which the firmware
+* checks for a new data set. The words are 16 bits with the high byte first.
+* The file is not read into the heap: it is mapped into memory with
+* FileChannel.map in chunks of whole frames, and each frame is copied
+* straight from the mapping into the pages of the data space, so captures
+* of many gigabytes can be replayed.
+*
+* A frame is stored every period cycles, beginning at the cycle the replay
+* is started for a core, by an event posted to the core's EventScheduler.
+* The replay can be started at any pulse number, and restarted at another to
+* seek. It stops at the end of the capture.
+*
+* The same replay may feed several cores, and is carried along by a
+* snapshot of a core being fed: the events hold only the cycle and pulse
+* number at which each core was started, from which the pulse due on any
+* cycle follows.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+//-----------------------------------------------------------------------------
+// class CaptureReplay
+//
+
+public class CaptureReplay
+{
+
+    File file;
+
+    //the data address at which each frame is stored, the number of words in
+    //each frame, and the number of cycles between pulses
+
+    int address;
+    int frameWords;
+    long period;
+
+    //number of whole frames in the file
+    long numPulses;
+
+    //the file mapped in chunks, each holding pulsesPerChunk frames
+    MappedByteBuffer[] chunks;
+    long pulsesPerChunk;
+
+    //largest part of the file mapped as one buffer
+    static final long MAX_CHUNK_BYTES = 1L << 30;
+
+//-----------------------------------------------------------------------------
+// CaptureReplay::CaptureReplay (constructor)
+//
+// Creates a replay of the capture in pFile, storing frames of pFrameWords
+// words at pAddress in data memory every pPeriod cycles.
+//
+
+public CaptureReplay(File pFile, int pAddress, int pFrameWords, long pPeriod)
+{
+
+    file = pFile; address = pAddress;
+    frameWords = pFrameWords; period = pPeriod;
+
+}//end of CaptureReplay::CaptureReplay (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CaptureReplay::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+// Maps the capture file into memory. Throws an IOException if the file
+// cannot be mapped or does not hold a whole frame.
+//
+
+public void init() throws IOException
+{
+
+    if (frameWords < 1 || period < 1){
+        throw new IOException("bad frame size or period for " + file);
+    }
+
+    long frameBytes = frameWords * 2L;
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try{
+
+        FileChannel channel = raf.getChannel();
+
+        numPulses = channel.size() / frameBytes;
+
+        if (numPulses == 0){
+            throw new IOException(file + " holds no whole frame");
+        }
+
+        pulsesPerChunk = Math.max(1, MAX_CHUNK_BYTES / frameBytes);
+
+        int numChunks = (int)((numPulses + pulsesPerChunk - 1)
+                                                             / pulsesPerChunk);
+
+        chunks = new MappedByteBuffer[numChunks];
+
+        //the mappings remain valid after the channel is closed
+
+        for (int i = 0; i < numChunks; i++){
+            long first = i * pulsesPerChunk;
+            long count = Math.min(pulsesPerChunk, numPulses - first);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                       first * frameBytes, count * frameBytes);
+        }
+
+    }
+    finally{
+        raf.close();
+    }
+
+}//end of CaptureReplay::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CaptureReplay::start
+//
+// Starts feeding pCore the frames from pulse pPulse onward, the first being
+// stored at once. Any replay already feeding the core from this capture is
+// stopped first, so this is also used to seek.
+//
+
+public void start(Core pCore, long pPulse)
+{
+
+    if (pPulse < 0 || pPulse >= numPulses){
+        throw new IllegalArgumentException("pulse " + pPulse
+                        + " is not in the capture of " + numPulses + " pulses");
+    }
+
+    stop(pCore);
+
+    pCore.events.schedule(pCore.cycles, new Pulse(this, pCore.cycles, pPulse));
+
+}//end of CaptureReplay::start
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CaptureReplay::stop
+//
+// Stops feeding pCore frames from this capture.
+//
+
+public void stop(Core pCore)
+{
+
+    for (ScheduledEvent e : pCore.events.getPendingEvents()){
+        if (e instanceof Pulse && ((Pulse)e).replay == this){
+            pCore.events.cancel(e);
+        }
+    }
+
+}//end of CaptureReplay::stop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CaptureReplay::store
+//
+// Stores the frame for pulse pPulse into the data memory of pCore.
+//
+
+void store(Core pCore, long pPulse)
+{
+
+    int chunk = (int)(pPulse / pulsesPerChunk);
+    int offset = (int)(pPulse % pulsesPerChunk) * frameWords * 2;
+
+    //a duplicate has a position of its own, so replays on other threads
+    //do not disturb it
+
+    ByteBuffer bytes = chunks[chunk].duplicate();
+    bytes.order(ByteOrder.BIG_ENDIAN);
+    bytes.position(offset);
+
+    ShortBuffer words = bytes.asShortBuffer();
+
+    pCore.data.load(address, words, frameWords);
+
+}//end of CaptureReplay::store
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CaptureReplay::getNumPulses
+//
+// Returns the number of pulses in the capture.
+//
+
+public long getNumPulses()
+{
+
+    return(numPulses);
+
+}//end of CaptureReplay::getNumPulses
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Pulse
+//
+// The event which stores the frame of the pulse due and posts the next. The
+// pulse is reckoned from the cycle it is due, so the event holds nothing
+// which changes.
+//
+
+static class Pulse implements ScheduledEvent
+{
+
+    final CaptureReplay replay;
+    final long startCycle;
+    final long firstPulse;
+
+    Pulse(CaptureReplay pReplay, long pStartCycle, long pFirstPulse)
+    {
+        replay = pReplay; startCycle = pStartCycle; firstPulse = pFirstPulse;
+    }
+
+    @Override
+    public void fire(Core pCore, long pCycle)
+    {
+        long pulse = firstPulse + (pCycle - startCycle) / replay.period;
+
+        replay.store(pCore, pulse);
+
+        if (pulse + 1 < replay.numPulses){
+            pCore.events.schedule(pCycle + replay.period, this);
+        }
+    }
+
+}//end of class Pulse
+//-----------------------------------------------------------------------------
+
+}//end of class CaptureReplay
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -8,8 +8,13 @@
 * This class provides base functionality for a chip to be simulated. Each type
 * of chip should be a sub-class of this base class.
 *
-* This base class provides a RegisterSet, an InstructionSet, and MemorySet
-* objects for handling a list of each type.
+* This base class provides an InstructionSet and one or more Cores, each of
+* which holds a RegisterSet and the MemorySet objects for each address space.
+* The cores of a multi-core chip are run in parallel by a CoreGroup.
+*
+* The program is executed in binary form by a Core -- a ProgramImage such as
+* one read from the hex file produced by the TI tools is loaded into the
+* core's program memory and the instructions are decoded from the words.
 *
 * Open Source Policy:
 *
@@ -29,8 +34,27 @@ public class Chip
     //the name and abbreviated name for the chip
     String name, shortName;
 
-    RegisterSet registerSet;
-    InstructionSet instructionSet;
+    protected InstructionSet instructionSet;
+
+    //the chip's cores -- core is the first of them, which is the only one
+    //for single core chips
+
+    protected Core[] cores;
+    protected Core core;
+
+    //runs the cores together, each on its own thread
+    protected CoreGroup coreGroup;
+
+    //number of cores -- sub-classes for multi-core chips should set this
+    //before calling init
+    protected int numCores = 1;
+
+    //the chip's clock in cycles per second -- sub-classes should set this
+    //before calling init
+    protected long clockRate = Pacer.DEFAULT_CLOCK_RATE;
+
+    //size of the program space in words
+    public static final int PROGRAM_SIZE = 0x10000;
 
 //-----------------------------------------------------------------------------
 // Chip::Chip (constructor)
@@ -53,31 +77,453 @@ public Chip(String pName, String pShortName)
 //
 // The base class should override this method to provide extended setup -- it
 // should call the init method here in the base class before peforming its own
-// setup.
+// setup. After adding its instructions, the sub-class should call
+// instructionSet.compile to build the dispatch tables.
 //
 
 public void init()
 {
 
-    registerSet = new RegisterSet();
     instructionSet = new InstructionSet();
+    instructionSet.init();
+
+    cores = new Core[numCores];
+
+    for (int i = 0; i < numCores; i++){
+        cores[i] = createCore(i);
+        cores[i].init();
+    }
+
+    core = cores[0];
+
+    coreGroup = new CoreGroup(cores);
+    coreGroup.init();
+    coreGroup.getPacer().setClockRate(clockRate);
 
 }//end of Chip::init
 //-----------------------------------------------------------------------------
 
 //-----------------------------------------------------------------------------
-// Chip::execute
+// Chip::getInstructionSet
+//
+// Returns the chip's instruction set.
+//
+
+public InstructionSet getInstructionSet()
+{
+
+    return(instructionSet);
+
+}//end of Chip::getInstructionSet
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::createCore
+//
+// Returns a new core for the chip -- pIndex is the core's position in the
+// chip. Sub-classes with a specialized core should override this method. The
+// instruction set is shared by all cores, so its dispatch tables will be in
+// place when the sub-class calls compile.
+//
+
+protected Core createCore(int pIndex)
+{
+
+    return(new Core(shortName, instructionSet, PROGRAM_SIZE));
+
+}//end of Chip::createCore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getCore
+//
+// Returns the chip's first core.
+//
+
+public Core getCore()
+{
+
+    return(core);
+
+}//end of Chip::getCore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getCore
+//
+// Returns core pIndex.
+//
+
+public Core getCore(int pIndex)
+{
+
+    return(cores[pIndex]);
+
+}//end of Chip::getCore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getNumCores
+//
+// Returns the number of cores in the chip.
+//
+
+public int getNumCores()
+{
+
+    return(numCores);
+
+}//end of Chip::getNumCores
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getCoreGroup
+//
+// Returns the object which runs the cores together, used to set the
+// synchronization options.
+//
+
+public CoreGroup getCoreGroup()
+{
+
+    return(coreGroup);
+
+}//end of Chip::getCoreGroup
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getRegisterSet
+//
+// Returns the register file of the chip's core with any lazily computed bits
+// brought up to date.
+//
+
+public RegisterSet getRegisterSet()
+{
+
+    core.syncRegisters();
+
+    return(core.registers);
+
+}//end of Chip::getRegisterSet
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::loadProgram
+//
+// Loads pImage into the program memory of every core and resets the chip.
+//
+
+public void loadProgram(ProgramImage pImage)
+{
+
+    reset();
+    for (Core c : cores) {c.loadProgram(pImage);}
+
+}//end of Chip::loadProgram
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::reset
+//
+// Resets the chip so that execution begins at the reset vector.
+//
+
+public void reset()
+{
+
+    for (Core c : cores) {c.reset();}
+
+}//end of Chip::reset
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::step
+//
+// Executes a single instruction on each core which is not halted.
+//
+
+public void step()
+{
+
+    for (Core c : cores){
+        if (!c.halted) {c.step();}
+    }
+
+}//end of Chip::step
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::setInterpretOnly
+//
+// If pInterpretOnly is true, every core steps each instruction individually
+// rather than running basic blocks or compiled code. Used when debugging the
+// simulator.
+//
+
+public void setInterpretOnly(boolean pInterpretOnly)
+{
+
+    for (Core c : cores) {c.interpretOnly = pInterpretOnly;}
+
+}//end of Chip::setInterpretOnly
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::setFastForward
+//
+// If pFastForward is true, every core skips ahead while it is waiting in a
+// loop for an event, such as at an idle. If false, each pass of such a loop
+// is run. The results are the same either way.
+//
+
+public void setFastForward(boolean pFastForward)
+{
+
+    for (Core c : cores) {c.fastForward = pFastForward;}
+
+}//end of Chip::setFastForward
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::setSpeed
+//
+// Sets the simulated time run per second of real time by run -- 1 for real
+// time at the chip's clock rate, N for N times real time, 0 for as fast as
+// possible. See Pacer.
+//
+
+public void setSpeed(double pSpeed)
+{
+
+    coreGroup.getPacer().setSpeed(pSpeed);
+
+}//end of Chip::setSpeed
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getClockRate
+//
+// Returns the chip's clock in cycles per second.
+//
+
+public long getClockRate()
+{
+
+    return(clockRate);
+
+}//end of Chip::getClockRate
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::setTracing
+//
+// If pTracing is true, every core starts recording the instructions it
+// executes so that it can be run in reverse. If false, the traces are
+// discarded.
+//
+
+public void setTracing(boolean pTracing)
+{
+
+    for (Core c : cores){
+        if (pTracing) {c.startTrace(TraceRecorder.DEFAULT_CAPACITY);}
+        else {c.stopTrace();}
+    }
+
+}//end of Chip::setTracing
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::setProfiling
+//
+// If pProfiling is true, every core starts counting the cycles used at each
+// program address, from zero. If false, the cores stop counting.
+//
+
+public void setProfiling(boolean pProfiling)
+{
+
+    for (Core c : cores){
+        if (pProfiling) {c.startProfile();}
+        else {c.stopProfile();}
+    }
+
+}//end of Chip::setProfiling
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getProfile
+//
+// Returns the sum of the profiles of all cores which have been profiled, or
+// null if none has.
+//
+
+public Profiler getProfile()
+{
+
+    Profiler sum = null;
+
+    for (Core c : cores){
+
+        Profiler p = c.getProfiler();
+        if (p == null) {continue;}
+
+        if (sum == null){
+            sum = new Profiler(p.getProgramSize());
+            sum.init();
+        }
+
+        sum.add(p);
+
+    }
+
+    return(sum);
+
+}//end of Chip::getProfile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::getCoverage
+//
+// Returns copies of the records of the program words executed by each core,
+// in core order.
+//
+
+public Coverage[] getCoverage()
+{
+
+    Coverage[] coverage = new Coverage[cores.length];
+
+    for (int i = 0; i < cores.length; i++){
+        coverage[i] = cores[i].getCoverage().copy();
+    }
+
+    return(coverage);
+
+}//end of Chip::getCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::snapshot
+//
+// Returns a snapshot of the state of every core. The memory pages are shared
+// with the snapshot until written rather than copied. Should not be called
+// while the chip is running.
+//
+
+public Snapshot snapshot()
+{
+
+    Snapshot s = new Snapshot(cores.length);
+    s.init();
+
+    for (int i = 0; i < cores.length; i++) {cores[i].saveState(s.cores[i]);}
+
+    return(s);
+
+}//end of Chip::snapshot
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::restore
 //
-// This method performs the functions expected of the instruction and operands
-// in pFullInstruction.
+// Returns every core to its state in pSnapshot. The snapshot is not changed
+// and can be restored any number of times. Should not be called while the
+// chip is running.
 //
-// Each sub-class should override this method to provide unique functionality.
+
+public void restore(Snapshot pSnapshot)
+{
+
+    for (int i = 0; i < cores.length; i++){
+        cores[i].restoreState(pSnapshot.cores[i]);
+    }
+
+}//end of Chip::restore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::createInstance
+//
+// Returns a new, initialized chip of the same type. Sub-classes should
+// override this method to create their own type.
 //
 
-public void execute(String pFullInstruction)
+public Chip createInstance()
 {
 
-}//end of Chip::execute
+    Chip chip = new Chip(name, shortName);
+    chip.numCores = numCores;
+    chip.clockRate = clockRate;
+    chip.init();
+
+    return(chip);
+
+}//end of Chip::createInstance
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::shareDecodeCaches
+//
+// Gives each core the decode cache of the same core of pSource, so that the
+// instructions decoded and the blocks built and compiled by either chip are
+// used by both. The chips must run the same program, which must not be
+// modified -- any change to the code is recorded by the caches.
+//
+
+void shareDecodeCaches(Chip pSource)
+{
+
+    for (int i = 0; i < cores.length; i++){
+
+        DecodeCache old = cores[i].decodeCache;
+        DecodeCache shared = pSource.cores[i].decodeCache;
+
+        shared.shared = true;
+
+        //the spaces of the other cores may also hold code for this core
+
+        for (Core c : cores){
+            c.program.replaceCodeCache(old, shared);
+            c.data.replaceCodeCache(old, shared);
+            c.io.replaceCodeCache(old, shared);
+        }
+
+        cores[i].decodeCache = shared;
+
+    }
+
+}//end of Chip::shareDecodeCaches
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::reverseStep
+//
+// Undoes the last instruction executed by each core which is being traced.
+//
+
+public void reverseStep()
+{
+
+    for (Core c : cores) {c.reverseStep();}
+
+}//end of Chip::reverseStep
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Chip::run
+//
+// Runs all cores for pNumCycles cycles. The cores of a multi-core chip are
+// run in parallel on separate threads.
+//
+
+public void run(long pNumCycles)
+{
+
+    coreGroup.run(pNumCycles);
+
+}//end of Chip::run
 //-----------------------------------------------------------------------------
 
 }//end of class Chip
@@ -0,0 +1,97 @@
+/******************************************************************************
+* Title: Universal IDE - CompiledBlock.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class is the base for the classes generated by BlockCompiler from hot
+* basic blocks. The run method of a generated class executes the block's
+* instructions as straight-line code with every operand, cycle count, and
+* address written into the method as a constant, so that the Java virtual
+* machine's own compiler can optimize the simulated code directly.
+*
+* After each instruction, the generated code calls stopped to check that the
+* block is still valid and has not been ended by the instruction -- when
+* program memory is written, the block is invalidated and the generated code
+* is abandoned at the next instruction.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// class CompiledBlock
+//
+
+public abstract class CompiledBlock
+{
+
+    //the block's instructions in order of execution -- the generated code
+    //calls each through its own call site
+    protected Instruction[] instructions;
+
+    //the block from which the code was generated
+    protected BasicBlock block;
+
+//-----------------------------------------------------------------------------
+// CompiledBlock::CompiledBlock (constructor)
+//
+
+public CompiledBlock()
+{
+
+}//end of CompiledBlock::CompiledBlock (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CompiledBlock::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+// pBlock is the block from which the code was generated.
+//
+
+void init(BasicBlock pBlock)
+{
+
+    block = pBlock;
+    instructions = pBlock.instructions;
+
+}//end of CompiledBlock::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CompiledBlock::run
+//
+// Executes the instructions of the block on pCore, stopping early if stopped
+// returns true after any instruction.
+//
+// Returns the number of instructions executed.
+//
+
+public abstract int run(Core pCore);
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CompiledBlock::stopped
+//
+// Returns true if the block has been invalidated or if the last instruction
+// called Core.endBlock.
+//
+
+protected final boolean stopped(Core pCore)
+{
+
+    return(!block.valid || pCore.exitBlock);
+
+}//end of CompiledBlock::stopped
+//-----------------------------------------------------------------------------
+
+}//end of class CompiledBlock
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,1458 @@
+/******************************************************************************
+* Title: Universal IDE - Core.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class provides the execution context for one simulated DSP core: the
+* program counter, the cycle and instruction counts, the register file, the
+* program, data, and I/O spaces, and the decode cache.
+*
+* The core also handles zero overhead looping -- repeating a single
+* instruction or a block of instructions a set number of times -- as most
+* DSPs have some form of it. Sub-classes map their loop registers onto the
+* loop fields here.
+*
+* Execution is done in two stages. The first time an address is executed, the
+* instruction words are decoded into a compact record in the decode cache.
+* After that, the instruction is executed directly from the cached record
+* without looking at the program words again. Any write to program memory
+* invalidates the affected records.
+*
+* When running freely, the decoded instructions are further grouped into
+* basic blocks which are run as a unit -- see BasicBlock. Blocks which are
+* run often are compiled to Java bytecode. Single stepping and the
+* instructions of a repeat which need special handling use the decoded
+* records directly.
+*
+* Repeats are also run directly when running freely: a single instruction
+* repeat calls the instruction's repeat method, which may perform the whole
+* repeat as one operation, and a block repeat runs the Ops of its body in a
+* loop. The cycles for a single instruction repeat are added as one sum.
+* Repeats containing a breakpoint or watchpoint are stepped instead.
+*
+* Setting interpretOnly makes the core step every instruction, which is
+* useful when debugging the simulator itself.
+*
+* Breakpoints are kept in a bitset over the program addresses. Basic blocks
+* are split so that each breakpoint begins a block, so the bitset only needs
+* to be checked when a block is entered, and only when any breakpoints are
+* set. Watchpoints are checked by the MemorySets on the pages they cover.
+* Either stops runUntil and records the reason in stopReason.
+*
+* While a TraceRecorder is attached, every instruction is stepped and its
+* changes are recorded, so that reverseStep and reverseContinue can run the
+* core backwards.
+*
+* While a Profiler is attached, every instruction is likewise stepped so that
+* its cycles can be counted against its address.
+*
+* The words executed are always recorded in a Coverage. A basic block marks
+* its words only when it runs further than it has before, so the cost is one
+* comparison per block.
+*
+* The core's peripherals post the things they do at future cycles to an
+* EventScheduler, and the core checks for a due event after each basic
+* block or stepped instruction rather than polling the peripherals. Reverse
+* stepping undoes any memory an event wrote, but not the event itself.
+*
+* When a basic block loops back to its own start, such as an idle waiting
+* for an interrupt or a loop polling a flag, the core checks whether one
+* more pass changes anything but the cycle count. If it does not, every
+* pass up to the next event or the end of the run would be the same, so
+* they are skipped by adding their cycles at once -- see skipSpin. The
+* result is exactly as if each pass had been run.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.util.Arrays;
+
+//-----------------------------------------------------------------------------
+// class Core
+//
+
+public class Core
+{
+
+    //the name of the core, such as "Core A"
+    String name;
+
+    InstructionSet instructionSet;
+
+    //the register file
+    public RegisterSet registers;
+
+    //the address spaces
+    public MemorySet program;
+    public MemorySet data;
+    public MemorySet io;
+
+    //the pre-decoded instructions for the program space
+    DecodeCache decodeCache;
+
+    int programSize;
+    int programMask;
+
+    //address of the next instruction to be executed
+    public int pc;
+
+    //address at which execution begins after a reset
+    public int resetVector;
+
+    //number of cycles and instructions executed since reset
+    public long cycles;
+    public long instructionCount;
+
+    //single instruction repeat -- the instruction at repeatAddress is
+    //executed repeatCount more times before execution moves on
+
+    public int repeatCount;
+    public int repeatAddress;
+
+    //block repeat -- while active, execution returns to blockStart after the
+    //instruction at blockEnd until blockCount is exhausted; the block is
+    //executed blockCount + 1 times
+
+    public boolean blockRepeatActive;
+    public int blockStart;
+    public int blockEnd;
+    public int blockCount;
+
+    //set when the core executes an invalid instruction -- the core will not
+    //run again until reset
+    public boolean halted;
+
+    //the address of the instruction which halted the core
+    public int haltAddress;
+
+    //set by endBlock to stop the basic block being run after the current
+    //instruction
+    boolean exitBlock;
+
+    //if true, instructions are always stepped individually -- basic blocks
+    //are neither built nor compiled
+    public boolean interpretOnly;
+
+    //if false, basic blocks are not compiled to bytecode
+    public boolean compileBlocks = true;
+
+    //if false, repeats are run an instruction at a time
+    public boolean fastRepeats = true;
+
+    //if false, loops waiting for an event are run a pass at a time
+    public boolean fastForward = true;
+
+    //a bit for each program address which has a breakpoint
+    long[] breakpoints;
+    int numBreakpoints;
+
+    //the address of the breakpoint the core last stopped at -- it is passed
+    //over when the run is resumed
+    int resumeAddress = -1;
+
+    //why runUntil last stopped before reaching its cycle count, and the
+    //watchpoint which stopped it for STOP_WATCHPOINT
+
+    public int stopReason;
+    public Watchpoint stopWatchpoint;
+
+    public static final int STOP_NONE = 0;
+    public static final int STOP_BREAKPOINT = 1;
+    public static final int STOP_WATCHPOINT = 2;
+    public static final int STOP_TRACE_START = 3;
+
+    //records each instruction executed so that it can be undone -- null
+    //when the core is not being traced
+    TraceRecorder tracer;
+
+    //counts the cycles used at each address -- null when the core is not
+    //being profiled -- and the profile counted before profiling was last
+    //stopped
+
+    Profiler profiler;
+    Profiler lastProfile;
+
+    //the program words which have been executed
+    Coverage coverage;
+
+    //the events posted by the core's peripherals
+    public EventScheduler events;
+
+//-----------------------------------------------------------------------------
+// Core::Core (constructor)
+//
+// Creates a core named pName which executes the instructions in
+// pInstructionSet. Each of the address spaces has pProgramSize words. The
+// size must be a power of two.
+//
+
+public Core(String pName, InstructionSet pInstructionSet, int pProgramSize)
+{
+
+    name = pName; instructionSet = pInstructionSet;
+    programSize = pProgramSize; programMask = pProgramSize - 1;
+
+}//end of Core::Core (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    registers = new RegisterSet();
+    registers.init();
+
+    program = new MemorySet("Program", programSize);
+    program.init();
+
+    data = new MemorySet("Data", programSize);
+    data.init();
+
+    io = new MemorySet("I/O", programSize);
+    io.init();
+
+    decodeCache = new DecodeCache(programSize);
+    decodeCache.init();
+
+    breakpoints = new long[(programSize + 63) / 64];
+
+    coverage = new Coverage(programSize);
+    coverage.init();
+
+    events = new EventScheduler(this);
+    events.init();
+
+    //every program page holds code which must be decoded again if written
+    program.setCodeCache(0, programSize, decodeCache);
+
+}//end of Core::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::reset
+//
+// Resets the core so that execution will begin at the reset vector.
+//
+
+public void reset()
+{
+
+    pc = resetVector;
+    cycles = 0; instructionCount = 0;
+    halted = false;
+
+    repeatCount = 0; blockRepeatActive = false;
+
+    events.clear();
+
+    //instructions run before the reset cannot be undone from the new state
+    if (tracer != null) {tracer.clear();}
+
+}//end of Core::reset
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::loadProgram
+//
+// Copies the words of pImage into program memory and clears the decode cache.
+// If the image specifies an entry point, the program counter is set to it.
+//
+
+public void loadProgram(ProgramImage pImage)
+{
+
+    for (int i = 0; i < pImage.getNumBlocks(); i++){
+        program.load(pImage.getAddress(i), pImage.getWords(i));
+    }
+
+    decodeCache.invalidateAll();
+
+    if (pImage.entryPoint >= 0) {pc = pImage.entryPoint;}
+
+}//end of Core::loadProgram
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::readProgram
+//
+// Returns the word at pAddress in program memory.
+//
+
+public int readProgram(int pAddress)
+{
+
+    return(program.read16(pAddress));
+
+}//end of Core::readProgram
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::writeProgram
+//
+// Writes pValue to pAddress in program memory. Any decoded instruction which
+// includes that word is invalidated by the program space.
+//
+
+public void writeProgram(int pAddress, int pValue)
+{
+
+    program.write16(pAddress, pValue);
+
+}//end of Core::writeProgram
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::step
+//
+// Executes the instruction at the program counter. The instruction is taken
+// from the decode cache; it is decoded first if it has not been executed
+// before or if its words have been modified.
+//
+// The program counter is advanced before the instruction is executed, so
+// that branches can overwrite it. While a repeat is active, it is instead
+// held on the repeated instruction or moved back to the start of the block.
+//
+
+public void step()
+{
+
+    if (tracer != null) {tracer.beginStep();}
+
+    int address = pc;
+    DecodeCache dc = decodeCache;
+
+    Instruction inst = dc.instruction[address];
+    if (inst == null) {inst = decode(address);}
+
+    int next = (address + dc.numWords[address]) & programMask;
+
+    if (repeatCount > 0 && address == repeatAddress){
+        repeatCount--;
+        next = address;
+    }
+    else
+    if (blockRepeatActive && next == ((blockEnd + 1) & programMask)){
+        if (blockCount > 0) {blockCount--; next = blockStart;}
+        else {blockRepeatActive = false;}
+    }
+
+    pc = next;
+    long start = cycles;
+    cycles += dc.numCycles[address];
+    instructionCount++;
+
+    inst.execute(this, dc.operandA[address], dc.operandB[address]);
+
+    coverage.mark(address, dc.numWords[address]);
+
+    if (profiler != null) {profiler.record(address, cycles - start);}
+
+    if (cycles >= events.nextCycle) {events.runDue(cycles);}
+
+    if (tracer != null) {tracer.endStep();}
+
+}//end of Core::step
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::run
+//
+// Executes up to pNumInstructions instructions. Stops early if the core is
+// halted.
+//
+// Returns the number of instructions executed.
+//
+
+public long run(long pNumInstructions)
+{
+
+    long start = instructionCount;
+
+    while (!halted && instructionCount - start < pNumInstructions){
+        step();
+    }
+
+    return(instructionCount - start);
+
+}//end of Core::run
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::runUntil
+//
+// Executes instructions until the cycle count reaches pCycles. Stops early if
+// the core is halted or a breakpoint or watchpoint is hit. The instructions
+// are run a basic block at a time unless interpretOnly is set, so the count
+// may go past pCycles by the length of a block.
+//
+// When resumed after stopping at a breakpoint, the breakpoint is passed over
+// once.
+//
+
+public void runUntil(long pCycles)
+{
+
+    stopReason = STOP_NONE;
+
+    while (!halted && cycles < pCycles){
+
+        if (numBreakpoints > 0 && isBreakpoint(pc) && pc != resumeAddress){
+            stopReason = STOP_BREAKPOINT;
+            resumeAddress = pc;
+            return;
+        }
+
+        resumeAddress = -1;
+
+        runNext(pCycles);
+
+        if (stopReason != STOP_NONE) {return;}
+
+    }
+
+}//end of Core::runUntil
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::runNext
+//
+// Executes the next unit of work toward pCycles cycles: a block repeat run
+// as a loop, a basic block, or, if instructions are being stepped, a single
+// instruction. Then carries out any events which have fallen due.
+// Breakpoints are not checked.
+//
+
+void runNext(long pCycles)
+{
+
+    //a loop or repeat is run no further than the next event
+    long limit = Math.min(pCycles, events.nextCycle);
+
+    int start = pc;
+
+    if (interpretOnly || tracer != null || profiler != null) {step();}
+    else
+    if (!(blockRepeatActive && pc == blockStart && runLoop(limit))){
+        runBlock(limit);
+        if (pc == start && fastForward) {skipSpin(start, limit);}
+    }
+
+    if (cycles >= events.nextCycle) {events.runDue(cycles);}
+
+}//end of Core::runNext
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::runBlock
+//
+// Executes the basic block starting at the program counter, building it
+// first if it has not been run before.
+//
+// A single instruction repeat is run by runRepeat, no further than the
+// cycle count pLimit, or stepped if it cannot be. If a block repeat ends
+// inside the block, the instructions up to the end of the repeat are run
+// from the block and the last is stepped so that it loops back. The block
+// is abandoned after an instruction which modifies it or which calls
+// endBlock.
+//
+// The compiled form of the block is used if it has been compiled and the
+// whole block is to be run. Otherwise, the block is run from its Ops and is
+// compiled once it has been run BasicBlock.COMPILE_THRESHOLD times.
+//
+
+public void runBlock(long pLimit)
+{
+
+    if (repeatCount > 0) {
+        if (!runRepeat(pLimit)) {step();}
+        return;
+    }
+
+    BasicBlock block = decodeCache.blocks[pc];
+    if (block == null) {block = buildBlock(pc);}
+
+    int n = block.numOps;
+
+    if (blockRepeatActive){
+        int last = block.findNext((blockEnd + 1) & programMask);
+        if (last >= 0) {n = last;}
+    }
+
+    exitBlock = false;
+
+    if (block.compiled != null && n == block.numOps){
+        int done = block.compiled.run(this);
+        instructionCount += done;
+        if (done > 0){
+            coverage.markRun(block.start, block.nextAddress[done - 1]);
+        }
+        return;
+    }
+
+    if (++block.executionCount == BasicBlock.COMPILE_THRESHOLD
+                                                          && compileBlocks){
+        block.compiled = BlockCompiler.compile(block);
+    }
+
+    BasicBlock.Op[] ops = block.ops;
+
+    int i = 0;
+
+    while (i < n){
+        ops[i++].run(this);
+        if (!block.valid || exitBlock) {break;}
+    }
+
+    instructionCount += i;
+
+    if (i > 0) {coverage.markRun(block.start, block.nextAddress[i - 1]);}
+
+    if (i == n && n < block.numOps && !halted && !exitBlock) {step();}
+
+}//end of Core::runBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::skipSpin
+//
+// Called after the basic block at pStart has looped back to itself. Runs
+// the block once more to see whether a pass changes anything other than the
+// cycle and instruction counts -- the registers, the memory, the state kept
+// by the sub-class, and the pending events. If not, the core is waiting
+// for something outside itself, and every pass until the cycle count
+// reaches pLimit would be the same, so those passes are counted without
+// being run. An idle with no interrupts to wake it is such a loop, as is a
+// loop polling a flag which only an event or another core will change.
+//
+// The core stops at the end of the pass during which it reaches pLimit,
+// just as it would have by running each pass, so the cycle count and any
+// events carried out are exactly the same.
+//
+// The check costs more than a pass, so a block which is found to be doing
+// work is not checked again until it has looped back a number of times,
+// which doubles each time the check fails.
+//
+
+void skipSpin(int pStart, long pLimit)
+{
+
+    BasicBlock block = decodeCache.blocks[pStart];
+
+    if (block == null || halted || cycles >= pLimit
+            || repeatCount > 0 || blockRepeatActive
+            || stopReason != STOP_NONE || isWatched(pStart, 1)){
+        return;
+    }
+
+    if (block.spinWait > 0) {block.spinWait--; return;}
+
+    long startCycles = cycles;
+    long startCount = instructionCount;
+
+    if (!runSpinPass(pStart)){
+        block.spinFailures = Math.min(block.spinFailures + 1,
+                                                BasicBlock.MAX_SPIN_BACKOFF);
+        block.spinWait = 1 << block.spinFailures;
+        return;
+    }
+
+    block.spinFailures = 0;
+
+    long period = cycles - startCycles;
+
+    if (period <= 0 || cycles >= pLimit) {return;}
+
+    long passes = (pLimit - cycles + period - 1) / period;
+
+    instructionCount += passes * (instructionCount - startCount);
+    cycles += passes * period;
+
+}//end of Core::skipSpin
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::runSpinPass
+//
+// Runs the basic block at pStart once, which must be at the program
+// counter, and returns true if the pass ended back at pStart having changed
+// nothing but the cycle and instruction counts. A word written with the
+// value it already held is no change.
+//
+
+private boolean runSpinPass(int pStart)
+{
+
+    syncRegisters();
+
+    long[] registerValues = registers.value.clone();
+    Object extra = saveExtraState();
+    long posted = events.sequence;
+
+    program.startWriteCheck(); data.startWriteCheck(); io.startWriteCheck();
+
+    boolean written;
+
+    try{
+        runBlock(events.nextCycle);
+    }
+    finally{
+        written = program.endWriteCheck() | data.endWriteCheck()
+                                                     | io.endWriteCheck();
+    }
+
+    syncRegisters();
+
+    return(!written && pc == pStart && !halted && stopReason == STOP_NONE
+        && repeatCount == 0 && !blockRepeatActive
+        && events.sequence == posted
+        && Arrays.equals(registerValues, registers.value)
+        && sameExtraState(extra));
+
+}//end of Core::runSpinPass
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::runRepeat
+//
+// Runs all but the last execution of the single instruction repeat at the
+// program counter through the instruction's repeat method, leaving the last
+// to be executed normally so that it moves on to the following instruction.
+//
+// The executions are stopped at the first which reaches the cycle count
+// pLimit, usually that of the next event, as they would be if each were
+// stepped, and the rest are left in repeatCount. Events then fall due at
+// the same cycle whether or not repeats are run this way.
+//
+// Returns false if the repeat cannot be run this way, such as when the
+// instruction may branch or is being watched by the debugger.
+//
+
+boolean runRepeat(long pLimit)
+{
+
+    int address = pc;
+
+    if (!fastRepeats || address != repeatAddress) {return(false);}
+
+    DecodeCache dc = decodeCache;
+
+    Instruction inst = dc.instruction[address];
+    if (inst == null) {inst = decode(address);}
+
+    if (inst.endsBlock || inst == INVALID
+                                || isWatched(address, dc.numWords[address])){
+        return(false);
+    }
+
+    int count = repeatCount;
+    int each = dc.numCycles[address];
+
+    if (each > 0 && pLimit - cycles < (long)count * each){
+        count = (int)Math.max(1, (pLimit - cycles + each - 1) / each);
+    }
+
+    repeatCount -= count;
+
+    cycles += (long)count * each;
+    instructionCount += count;
+
+    coverage.mark(address, dc.numWords[address]);
+
+    inst.repeat(this, dc.operandA[address], dc.operandB[address], count);
+
+    return(true);
+
+}//end of Core::runRepeat
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::runLoop
+//
+// Runs the block repeat starting at the program counter from the Ops of its
+// body until the cycle count reaches pCycles or only the last pass remains.
+// The last pass is left to be run normally so that it moves on to the
+// following instruction.
+//
+// A body of a single instruction is run through the instruction's repeat
+// method. A longer body is run an Op at a time, leaving the loop as soon as an
+// instruction branches, starts a single instruction repeat, modifies the
+// body, or calls endBlock.
+//
+// Returns false if no instruction was executed, such as when the loop cannot
+// be run this way or is being watched by the debugger.
+//
+
+boolean runLoop(long pCycles)
+{
+
+    if (!fastRepeats || blockCount == 0) {return(false);}
+
+    int loopEnd = (blockEnd + 1) & programMask;
+
+    BasicBlock body = decodeCache.loops[pc];
+    if (body == null || body.loopEnd != loopEnd) {body = buildLoop(pc);}
+
+    int n = body.numOps;
+
+    if (n == 0 || isWatched(body.start, body.numWords)) {return(false);}
+
+    if (n == 1){
+        int count = blockCount;
+        blockCount = 0;
+        cycles += (long)count * body.numCycles[0];
+        instructionCount += count;
+        coverage.markRun(body.start, body.nextAddress[0]);
+        body.instructions[0].repeat(this, body.operandA[0], body.operandB[0],
+                                                                       count);
+        return(true);
+    }
+
+    BasicBlock.Op[] ops = body.ops;
+    int[] next = body.nextAddress;
+    exitBlock = false;
+
+    while (blockCount > 0 && cycles < pCycles){
+
+        for (int i = 0; i < n; i++){
+
+            ops[i].run(this);
+            instructionCount++;
+
+            //the loop returns to the start after the last instruction
+
+            if (i == n - 1 && pc == loopEnd) {blockCount--; pc = blockStart;}
+            else
+            if (pc != next[i]){
+                coverage.markRun(body.start, next[i]);
+                return(true);
+            }
+
+            if (exitBlock || repeatCount > 0 || !body.valid){
+                coverage.markRun(body.start, next[i]);
+                return(true);
+            }
+
+        }
+
+        coverage.markRun(body.start, next[n - 1]);
+
+    }
+
+    return(true);
+
+}//end of Core::runLoop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::buildLoop
+//
+// Decodes the instructions from pAddress through the end of the current
+// block repeat, binds them into a BasicBlock, and stores it in the decode
+// cache as the body of the repeat. Unlike an ordinary basic block, the body
+// may contain branches. If the body cannot be run as a loop because it is too
+// long, its last instruction may branch, or no instruction ends at the end of
+// the repeat, the body is stored with no instructions.
+//
+// Returns the new body.
+//
+
+BasicBlock buildLoop(int pAddress)
+{
+
+    DecodeCache dc = decodeCache;
+
+    BasicBlock body = new BasicBlock(pAddress);
+    body.init();
+    body.loopEnd = (blockEnd + 1) & programMask;
+
+    int address = pAddress;
+    boolean complete = false;
+
+    while (body.numOps < BasicBlock.MAX_OPS){
+
+        Instruction inst = dc.instruction[address];
+        if (inst == null) {inst = decode(address);}
+
+        int next = address + dc.numWords[address];
+
+        body.add(inst, dc.operandA[address], dc.operandB[address],
+                    dc.numWords[address], next & programMask,
+                                                     dc.numCycles[address]);
+
+        if (next == body.loopEnd){
+            complete = !inst.endsBlock && inst != INVALID;
+            break;
+        }
+
+        if (next > body.loopEnd || next >= programSize) {break;}
+
+        address = next;
+
+    }
+
+    if (!complete) {body.numOps = 0;}
+
+    dc.storeLoop(body);
+
+    return(body);
+
+}//end of Core::buildLoop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::isWatched
+//
+// Returns true if the debugger needs to see each instruction executed in the
+// pLength words from pAddress, so that a repeat there must be stepped rather
+// than run directly. This is true if there is a breakpoint in the words or a
+// watchpoint anywhere, as a repeat may access any address.
+//
+
+boolean isWatched(int pAddress, int pLength)
+{
+
+    if (data.hasWatchpoints() || io.hasWatchpoints()
+                                             || program.hasWatchpoints()){
+        return(true);
+    }
+
+    if (numBreakpoints == 0) {return(false);}
+
+    for (int i = 0; i < pLength; i++){
+        if (isBreakpoint((pAddress + i) & programMask)) {return(true);}
+    }
+
+    return(false);
+
+}//end of Core::isWatched
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::setBreakpoint
+//
+// Sets a breakpoint at program address pAddress if pSet is true or clears it
+// if false. Any basic block containing the address is discarded so that it
+// will be rebuilt with the breakpoint at the start of a block.
+//
+
+public void setBreakpoint(int pAddress, boolean pSet)
+{
+
+    pAddress &= programMask;
+
+    if (isBreakpoint(pAddress) == pSet) {return;}
+
+    breakpoints[pAddress >>> 6] ^= 1L << pAddress;
+    numBreakpoints += pSet ? 1 : -1;
+
+    decodeCache.invalidate(pAddress);
+
+}//end of Core::setBreakpoint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::isBreakpoint
+//
+// Returns true if there is a breakpoint at program address pAddress.
+//
+
+public boolean isBreakpoint(int pAddress)
+{
+
+    return((breakpoints[pAddress >>> 6] >>> pAddress & 1) != 0);
+
+}//end of Core::isBreakpoint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::clearBreakpoints
+//
+// Removes all breakpoints.
+//
+
+public void clearBreakpoints()
+{
+
+    for (int i = 0; i < breakpoints.length; i++){
+        long bits = breakpoints[i];
+        while (bits != 0){
+            setBreakpoint(i * 64 + Long.numberOfTrailingZeros(bits), false);
+            bits &= bits - 1;
+        }
+    }
+
+}//end of Core::clearBreakpoints
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::getNumBreakpoints
+//
+// Returns the number of breakpoints set.
+//
+
+public int getNumBreakpoints()
+{
+
+    return(numBreakpoints);
+
+}//end of Core::getNumBreakpoints
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::addWatchpoint
+//
+// Adds pWatch to address space pSpace of this core. The core will stop after
+// the instruction which triggers it.
+//
+
+public void addWatchpoint(MemorySet pSpace, Watchpoint pWatch)
+{
+
+    pWatch.core = this;
+    pSpace.addWatchpoint(pWatch);
+
+}//end of Core::addWatchpoint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::removeWatchpoint
+//
+// Removes pWatch from address space pSpace.
+//
+
+public void removeWatchpoint(MemorySet pSpace, Watchpoint pWatch)
+{
+
+    pSpace.removeWatchpoint(pWatch);
+
+}//end of Core::removeWatchpoint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::watchpointHit
+//
+// Called when pWatch is triggered by the instruction being executed. The
+// core stops after the instruction.
+//
+
+void watchpointHit(Watchpoint pWatch)
+{
+
+    stopReason = STOP_WATCHPOINT;
+    stopWatchpoint = pWatch;
+
+    endBlock();
+
+}//end of Core::watchpointHit
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::startTrace
+//
+// Starts recording each instruction executed in a ring buffer of pCapacity
+// bytes so that the core can be run in reverse. Any earlier trace is
+// discarded.
+//
+
+public void startTrace(int pCapacity)
+{
+
+    stopTrace();
+
+    tracer = new TraceRecorder(this, pCapacity);
+    tracer.init();
+
+    program.setTracer(tracer); data.setTracer(tracer); io.setTracer(tracer);
+
+}//end of Core::startTrace
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::stopTrace
+//
+// Stops recording and discards the trace.
+//
+
+public void stopTrace()
+{
+
+    if (tracer == null) {return;}
+
+    program.setTracer(null); data.setTracer(null); io.setTracer(null);
+
+    tracer = null;
+
+}//end of Core::stopTrace
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::getTraceRecorder
+//
+// Returns the trace recorder, or null if the core is not being traced.
+//
+
+public TraceRecorder getTraceRecorder()
+{
+
+    return(tracer);
+
+}//end of Core::getTraceRecorder
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::startProfile
+//
+// Starts counting the cycles used at each program address, from zero.
+//
+
+public void startProfile()
+{
+
+    profiler = new Profiler(programSize);
+    profiler.init();
+
+}//end of Core::startProfile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::stopProfile
+//
+// Stops counting cycles. The profile may still be had from getProfiler
+// until the next call to startProfile.
+//
+
+public void stopProfile()
+{
+
+    if (profiler != null) {lastProfile = profiler;}
+
+    profiler = null;
+
+}//end of Core::stopProfile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::getProfiler
+//
+// Returns the profile being counted or, if profiling has been stopped, the
+// last one counted. Returns null if the core has never been profiled.
+//
+
+public Profiler getProfiler()
+{
+
+    return(profiler != null ? profiler : lastProfile);
+
+}//end of Core::getProfiler
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::getCoverage
+//
+// Returns the record of the program words executed.
+//
+
+public Coverage getCoverage()
+{
+
+    return(coverage);
+
+}//end of Core::getCoverage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::reverseStep
+//
+// Undoes the last instruction executed while traced. Returns false if there
+// is nothing left to undo.
+//
+
+public boolean reverseStep()
+{
+
+    if (tracer == null) {return(false);}
+
+    return(tracer.undo(null));
+
+}//end of Core::reverseStep
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::reverseContinue
+//
+// Undoes instructions until the program counter reaches a breakpoint, an
+// instruction which wrote a watched address is undone, or the start of the
+// trace is reached. The reason is recorded in stopReason.
+//
+// A run resumed from a breakpoint reached this way passes over it.
+//
+
+public void reverseContinue()
+{
+
+    stopReason = STOP_NONE;
+
+    Watchpoint[] watched = new Watchpoint[1];
+
+    while (stopReason == STOP_NONE){
+
+        if (tracer == null || !tracer.undo(watched)){
+            stopReason = STOP_TRACE_START;
+        }
+        else
+        if (watched[0] != null){
+            stopReason = STOP_WATCHPOINT;
+            stopWatchpoint = watched[0];
+        }
+        else
+        if (numBreakpoints > 0 && isBreakpoint(pc)){
+            stopReason = STOP_BREAKPOINT;
+            resumeAddress = pc;
+        }
+
+    }
+
+}//end of Core::reverseContinue
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::saveState
+//
+// Stores the state of the core in pState. The pages of the address spaces
+// are shared with the snapshot until written.
+//
+
+void saveState(Snapshot.CoreState pState)
+{
+
+    syncRegisters();
+
+    pState.registers = registers.value.clone();
+
+    pState.pc = pc; pState.cycles = cycles;
+    pState.instructionCount = instructionCount;
+    pState.halted = halted; pState.haltAddress = haltAddress;
+
+    pState.repeatCount = repeatCount; pState.repeatAddress = repeatAddress;
+    pState.blockRepeatActive = blockRepeatActive;
+    pState.blockStart = blockStart; pState.blockEnd = blockEnd;
+    pState.blockCount = blockCount;
+
+    pState.extra = saveExtraState();
+    pState.events = events.copyPending(this);
+
+    pState.program = program.snapshotPages();
+    pState.data = data.snapshotPages();
+    pState.io = io.snapshotPages();
+
+}//end of Core::saveState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::restoreState
+//
+// Returns the core to the state stored in pState by saveState. Decoded
+// instructions are kept for the pages which have not been written since.
+//
+
+void restoreState(Snapshot.CoreState pState)
+{
+
+    //the sub-class state may change how pages are shared, so it is
+    //restored before the pages
+    restoreExtraState(pState.extra);
+
+    program.restorePages(pState.program);
+    data.restorePages(pState.data);
+    io.restorePages(pState.io);
+
+    System.arraycopy(pState.registers, 0, registers.value, 0,
+                                                      pState.registers.length);
+
+    pc = pState.pc; cycles = pState.cycles;
+    instructionCount = pState.instructionCount;
+    halted = pState.halted; haltAddress = pState.haltAddress;
+
+    repeatCount = pState.repeatCount; repeatAddress = pState.repeatAddress;
+    blockRepeatActive = pState.blockRepeatActive;
+    blockStart = pState.blockStart; blockEnd = pState.blockEnd;
+    blockCount = pState.blockCount;
+
+    events.restorePending(pState.events);
+
+    stopReason = STOP_NONE; resumeAddress = -1;
+
+    if (tracer != null) {tracer.clear();}
+
+}//end of Core::restoreState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::saveExtraState
+//
+// Returns any state kept by a sub-class outside the register file and the
+// address spaces, for a snapshot. This base method returns null.
+//
+
+public Object saveExtraState()
+{
+
+    return(null);
+
+}//end of Core::saveExtraState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::sameExtraState
+//
+// Returns true if the state kept by a sub-class outside the register file
+// and the address spaces is the same as pState, as returned by
+// saveExtraState. This base method returns true.
+//
+
+public boolean sameExtraState(Object pState)
+{
+
+    return(true);
+
+}//end of Core::sameExtraState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::restoreExtraState
+//
+// Restores the state returned by saveExtraState. This base method does
+// nothing.
+//
+
+public void restoreExtraState(Object pState)
+{
+
+}//end of Core::restoreExtraState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::buildBlock
+//
+// Decodes the instructions from pAddress up to and including the first which
+// ends a basic block, binds them into a BasicBlock, and stores the block in
+// the decode cache. The block is also ended before it wraps around the end of
+// program memory or grows past BasicBlock.MAX_OPS instructions.
+//
+// Returns the new block.
+//
+
+BasicBlock buildBlock(int pAddress)
+{
+
+    DecodeCache dc = decodeCache;
+
+    BasicBlock block = new BasicBlock(pAddress);
+    block.init();
+
+    int address = pAddress;
+
+    while (block.numOps < BasicBlock.MAX_OPS){
+
+        Instruction inst = dc.instruction[address];
+        if (inst == null) {inst = decode(address);}
+
+        int next = address + dc.numWords[address];
+
+        block.add(inst, dc.operandA[address], dc.operandB[address],
+                    dc.numWords[address], next & programMask,
+                                                     dc.numCycles[address]);
+
+        if (inst.endsBlock || inst == INVALID || next >= programSize) {break;}
+
+        //a breakpoint must begin a block so that it is seen on entry
+        if (numBreakpoints > 0 && isBreakpoint(next)) {break;}
+
+        address = next;
+
+    }
+
+    dc.storeBlock(block);
+
+    return(block);
+
+}//end of Core::buildBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::endBlock
+//
+// Stops the basic block being run after the current instruction. Called when
+// an instruction changes state which the block depends on, such as the block
+// repeat registers, in a way which cannot be seen when the block is built.
+//
+
+public void endBlock()
+{
+
+    exitBlock = true;
+
+}//end of Core::endBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::decode
+//
+// Decodes the instruction at pAddress and stores it in the decode cache.
+// An invalid instruction word is stored as an instruction which halts the
+// core.
+//
+// Returns the decoded instruction.
+//
+
+Instruction decode(int pAddress)
+{
+
+    int word = readProgram(pAddress);
+
+    Instruction inst =
+                instructionSet.decode(word, readProgram(pAddress + 1));
+
+    if (inst == null) {inst = INVALID;}
+
+    inst.decode(this, pAddress, word, decodeCache);
+
+    return(decodeCache.instruction[pAddress]);
+
+}//end of Core::decode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::halt
+//
+// Stops the core at the instruction at pAddress.
+//
+
+public void halt(int pAddress)
+{
+
+    halted = true;
+    haltAddress = pAddress;
+    pc = pAddress;
+
+}//end of Core::halt
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::repeatNext
+//
+// Causes the instruction at the program counter to be executed pCount more
+// times after its first execution. Called by repeat instructions, which have
+// already advanced the program counter to the instruction to be repeated.
+//
+
+public void repeatNext(int pCount)
+{
+
+    repeatAddress = pc; repeatCount = pCount;
+
+}//end of Core::repeatNext
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::repeatBlock
+//
+// Starts a block repeat of the instructions from the program counter through
+// the instruction containing pEndAddress. The block will be executed
+// blockCount + 1 times -- the count is expected to have already been set.
+//
+
+public void repeatBlock(int pEndAddress)
+{
+
+    blockStart = pc; blockEnd = pEndAddress & programMask;
+    blockRepeatActive = true;
+
+}//end of Core::repeatBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::syncRegisters
+//
+// Brings any register bits which the core computes lazily up to date so that
+// the register file can be read directly, such as for display. This base
+// method does nothing.
+//
+
+public void syncRegisters()
+{
+
+}//end of Core::syncRegisters
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::registersChanged
+//
+// Called after the register file has been written directly, such as when an
+// instruction is undone, so that the core can update any state it derives
+// from the registers. This base method does nothing.
+//
+
+public void registersChanged()
+{
+
+}//end of Core::registersChanged
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::getDecodeCache
+//
+// Returns the decode cache for the program space. A chip which maps data
+// pages into program space should mark those pages in the data space with
+// this cache so that data writes to them invalidate decoded instructions.
+//
+
+public DecodeCache getDecodeCache()
+{
+
+    return(decodeCache);
+
+}//end of Core::getDecodeCache
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Core::getName
+//
+// Returns the name of the core.
+//
+
+public String getName()
+{
+
+    return(name);
+
+}//end of Core::getName
+//-----------------------------------------------------------------------------
+
+    //placeholder stored in the decode cache for invalid instruction words --
+    //executing it halts the core at the instruction's address
+
+    static final Instruction INVALID = new Instruction("(invalid)"){
+        @Override
+        public void execute(Core pCore, int pOperandA, int pOperandB)
+        {
+            pCore.halt((pCore.pc - 1) & pCore.programMask);
+        }
+    };
+
+}//end of class Core
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
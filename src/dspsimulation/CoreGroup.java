@@ -0,0 +1,562 @@
+/******************************************************************************
+* Title: Universal IDE - CoreGroup.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class runs the cores of a multi-core chip together, each on its own
+* thread so that simulating the whole chip uses as many host processors as
+* there are cores.
+*
+* The cores are run in quanta of a set number of cycles. At the end of each
+* quantum, every core waits for the others before starting the next, so the
+* cores never drift apart by more than one quantum. A smaller quantum keeps
+* the cores closer in time at the cost of more waiting.
+*
+* In SYNC_SHARED_ACCESS mode, the cores are also synchronized whenever one
+* accesses memory shared with other cores -- the core waits until every
+* other core has reached at least the same cycle count, so that it sees all
+* writes which would have been made to the shared memory before that time on
+* the real chip. Memory which is not shared is accessed with no waiting.
+*
+* With a single core, or if threading is turned off with setThreaded, the
+* cores are run in turn on the calling thread. This is used when many chips
+* are simulated in parallel, where the chips already use every host
+* processor. SYNC_SHARED_ACCESS then has no effect.
+*
+* The group's Pacer can hold the cores back to real time or a multiple of
+* it. The cores are then run a quantum at a time even when there is only
+* one, and the pacer waits after each quantum until the host's clock has
+* caught up with the time simulated.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.util.ArrayList;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//-----------------------------------------------------------------------------
+// class CoreGroup
+//
+
+public class CoreGroup
+{
+
+    Core[] cores;
+
+    //number of cycles each core runs between synchronizations
+    long quantum = DEFAULT_QUANTUM;
+
+    int syncMode = SYNC_QUANTUM;
+
+    //the cycle count each core has reached as last seen by the other cores
+    AtomicLongArray publishedCycles;
+
+    //the memory regions shared between cores -- hooked in shared access mode
+    ArrayList<SharedRegion> sharedRegions;
+
+    //the worker threads and the barrier used to start and end each quantum --
+    //the calling thread is also a party to the barrier
+
+    Thread[] threads;
+    CyclicBarrier barrier;
+
+    //the cycle count each core is to reach in the current quantum
+    volatile long quantumEnd;
+
+    volatile boolean shutDown;
+
+    //set while the cores are being run on the worker threads
+    volatile boolean running;
+
+    //if false, the cores are run in turn on the calling thread
+    boolean threaded = true;
+
+    //holds the cores back to the set speed relative to real time
+    Pacer pacer;
+
+    public static final long DEFAULT_QUANTUM = 1000;
+
+    //synchronization modes
+
+    public static final int SYNC_QUANTUM = 0;
+    public static final int SYNC_SHARED_ACCESS = 1;
+
+//-----------------------------------------------------------------------------
+// CoreGroup::CoreGroup (constructor)
+//
+// Creates a group to run pCores.
+//
+
+public CoreGroup(Core[] pCores)
+{
+
+    cores = pCores;
+
+}//end of CoreGroup::CoreGroup (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    publishedCycles = new AtomicLongArray(cores.length);
+    sharedRegions = new ArrayList<SharedRegion>();
+
+    pacer = new Pacer();
+    pacer.init();
+
+}//end of CoreGroup::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::run
+//
+// Runs every core for pNumCycles cycles from the current cycle count of the
+// first core. Returns when all cores have reached that count or halted, or
+// at the end of the quantum in which any core hits a breakpoint or
+// watchpoint.
+//
+
+public void run(long pNumCycles)
+{
+
+    long end = cores[0].cycles + pNumCycles;
+
+    if (cores.length == 1 && !pacer.isPacing()){
+        cores[0].runUntil(end);
+        return;
+    }
+
+    if (!threaded || cores.length == 1) {runInTurn(end); return;}
+
+    if (threads == null) {startThreads();}
+
+    for (int i = 0; i < cores.length; i++){
+        cores[i].stopReason = Core.STOP_NONE;
+    }
+
+    running = true;
+
+    while (!allDone(end) && !anyStopped()){
+
+        quantumEnd = Math.min(minCycles() + quantum, end);
+
+        //the cores are all waiting, so their counts can be set safely
+        for (int i = 0; i < cores.length; i++) {publish(i);}
+
+        await();    //start the quantum
+        await();    //wait for the quantum to end
+
+        pace();
+
+    }
+
+    running = false;
+
+}//end of CoreGroup::run
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::runInTurn
+//
+// Runs every core on the calling thread until all have reached pEnd cycles
+// or halted, one quantum of each core in turn.
+//
+
+private void runInTurn(long pEnd)
+{
+
+    for (Core core : cores) {core.stopReason = Core.STOP_NONE;}
+
+    while (!allDone(pEnd) && !anyStopped()){
+
+        long qEnd = Math.min(minCycles() + quantum, pEnd);
+
+        for (Core core : cores){
+            if (!core.halted) {core.runUntil(qEnd);}
+        }
+
+        pace();
+
+    }
+
+}//end of CoreGroup::runInTurn
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::pace
+//
+// Waits, if the cores are paced, until the host's clock has caught up with
+// the slowest core which has not halted.
+//
+
+private void pace()
+{
+
+    long cycles = minCycles();
+
+    if (cycles != Long.MAX_VALUE) {pacer.pace(cycles);}
+
+}//end of CoreGroup::pace
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::runCore
+//
+// Runs core pIndex on its own thread. The core runs to the end of each
+// quantum and then waits for the other cores. Once it has finished the
+// quantum, even if it stopped early at a breakpoint or watchpoint, it will
+// not run again until the next one, so it no longer holds up the others.
+//
+
+void runCore(int pIndex)
+{
+
+    Core core = cores[pIndex];
+
+    while (true){
+
+        await();    //wait for the quantum to start
+        if (shutDown) {return;}
+
+        core.runUntil(quantumEnd);
+
+        publishedCycles.set(pIndex, Long.MAX_VALUE);
+
+        await();    //signal the end of the quantum
+
+    }
+
+}//end of CoreGroup::runCore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::syncSharedAccess
+//
+// Called before core pIndex accesses shared memory in SYNC_SHARED_ACCESS
+// mode. Waits until every other core has reached the cycle count of core
+// pIndex, has finished the quantum, or has halted.
+//
+// The core with the lowest count never waits, so the cores cannot deadlock.
+// When the cores are not being run by the group, such as when a single core
+// is stepped, there is nothing to wait for.
+//
+
+void syncSharedAccess(int pIndex)
+{
+
+    if (!running) {return;}
+
+    long cycles = cores[pIndex].cycles;
+
+    publishedCycles.set(pIndex, cycles);
+
+    for (int i = 0; i < cores.length; i++){
+
+        if (i == pIndex) {continue;}
+
+        while (publishedCycles.get(i) < cycles && !shutDown){
+            Thread.yield();
+        }
+
+    }
+
+}//end of CoreGroup::syncSharedAccess
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::publish
+//
+// Makes the cycle count of core pIndex visible to the other cores. A halted
+// core will not advance, so it is published as being infinitely far ahead.
+// Called for every core before each quantum starts.
+//
+
+void publish(int pIndex)
+{
+
+    Core core = cores[pIndex];
+
+    publishedCycles.set(pIndex, core.halted ? Long.MAX_VALUE : core.cycles);
+
+}//end of CoreGroup::publish
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::addSharedRegion
+//
+// Records that pLength words starting at pAddress in pSpace of core pIndex
+// are shared with other cores. Each core sharing the memory should add the
+// region for its own space.
+//
+
+public void addSharedRegion(int pIndex, MemorySet pSpace, int pAddress,
+                                                                   int pLength)
+{
+
+    SharedRegion region = new SharedRegion(pIndex, pSpace, pAddress, pLength);
+
+    sharedRegions.add(region);
+
+    if (syncMode == SYNC_SHARED_ACCESS) {region.hook(true);}
+
+}//end of CoreGroup::addSharedRegion
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::setSyncMode
+//
+// Sets the synchronization mode to SYNC_QUANTUM or SYNC_SHARED_ACCESS.
+// Should not be called while the group is running.
+//
+
+public void setSyncMode(int pSyncMode)
+{
+
+    syncMode = pSyncMode;
+
+    for (SharedRegion region : sharedRegions){
+        region.hook(syncMode == SYNC_SHARED_ACCESS);
+    }
+
+}//end of CoreGroup::setSyncMode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::setThreaded
+//
+// If pThreaded is false, the cores are run in turn on the calling thread
+// rather than each on its own thread. Should not be called while the group
+// is running.
+//
+
+public void setThreaded(boolean pThreaded)
+{
+
+    if (!pThreaded) {shutDown();}
+
+    threaded = pThreaded;
+
+}//end of CoreGroup::setThreaded
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::setQuantum
+//
+// Sets the number of cycles each core runs between synchronizations.
+//
+
+public void setQuantum(long pQuantum)
+{
+
+    quantum = Math.max(1, pQuantum);
+
+}//end of CoreGroup::setQuantum
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::getPacer
+//
+// Returns the pacer which sets the speed of the cores relative to real time.
+//
+
+public Pacer getPacer()
+{
+
+    return(pacer);
+
+}//end of CoreGroup::getPacer
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::shutDown
+//
+// Stops the worker threads. The group will start new threads if run again.
+//
+
+public void shutDown()
+{
+
+    if (threads == null) {return;}
+
+    shutDown = true;
+    await();
+
+    for (Thread t : threads){
+        try { t.join(); } catch (InterruptedException e) { return; }
+    }
+
+    threads = null; shutDown = false;
+
+}//end of CoreGroup::shutDown
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::startThreads
+//
+// Creates a daemon thread for each core.
+//
+
+private void startThreads()
+{
+
+    barrier = new CyclicBarrier(cores.length + 1);
+    threads = new Thread[cores.length];
+
+    for (int i = 0; i < cores.length; i++){
+
+        final int index = i;
+
+        threads[i] = new Thread(new Runnable(){
+            @Override
+            public void run() { runCore(index); }
+        }, cores[i].getName());
+
+        threads[i].setDaemon(true);
+        threads[i].start();
+
+    }
+
+}//end of CoreGroup::startThreads
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::await
+//
+// Waits at the barrier until all cores and the controlling thread arrive.
+//
+
+private void await()
+{
+
+    try{
+        barrier.await();
+    }
+    catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+    }
+    catch(BrokenBarrierException e){
+        shutDown = true;
+    }
+
+}//end of CoreGroup::await
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::allDone
+//
+// Returns true if every core has reached pEnd cycles or has halted.
+//
+
+private boolean allDone(long pEnd)
+{
+
+    for (Core core : cores){
+        if (!core.halted && core.cycles < pEnd) {return(false);}
+    }
+
+    return(true);
+
+}//end of CoreGroup::allDone
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::anyStopped
+//
+// Returns true if any core stopped at a breakpoint or watchpoint during the
+// last quantum.
+//
+
+private boolean anyStopped()
+{
+
+    for (Core core : cores){
+        if (core.stopReason != Core.STOP_NONE) {return(true);}
+    }
+
+    return(false);
+
+}//end of CoreGroup::anyStopped
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// CoreGroup::minCycles
+//
+// Returns the lowest cycle count of the cores which have not halted.
+//
+
+private long minCycles()
+{
+
+    long min = Long.MAX_VALUE;
+
+    for (Core core : cores){
+        if (!core.halted) {min = Math.min(min, core.cycles);}
+    }
+
+    return(min);
+
+}//end of CoreGroup::minCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class SharedRegion
+//
+// A region of memory shared between cores. In SYNC_SHARED_ACCESS mode, the
+// region's pages are hooked so that each access first synchronizes the core
+// with the others.
+//
+
+class SharedRegion implements MemoryHook
+{
+
+    int coreIndex;
+    MemorySet space;
+    int address, length;
+
+    SharedRegion(int pCoreIndex, MemorySet pSpace, int pAddress, int pLength)
+    {
+        coreIndex = pCoreIndex; space = pSpace;
+        address = pAddress; length = pLength;
+    }
+
+    void hook(boolean pOn)
+    {
+        space.setHook(address, length, pOn ? this : null);
+    }
+
+    @Override
+    public int read(MemorySet pMemory, int pAddress)
+    {
+        syncSharedAccess(coreIndex);
+        return(pMemory.peek(pAddress));
+    }
+
+    @Override
+    public void write(MemorySet pMemory, int pAddress, int pValue)
+    {
+        syncSharedAccess(coreIndex);
+        pMemory.poke(pAddress, pValue);
+    }
+
+}//end of class SharedRegion
+//-----------------------------------------------------------------------------
+
+}//end of class CoreGroup
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,333 @@
+/******************************************************************************
+* Title: Universal IDE - Coverage.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class records which program words a core has executed, one bit per
+* word, so that the code never reached by a set of test runs can be found.
+*
+* Every core keeps a Coverage at all times. To keep the cost near nothing,
+* the words of a basic block are marked only the first time the block runs
+* further from its start than before: the furthest reach of a run from each
+* starting address is kept, and a block which does not pass it marks
+* nothing. The reach is kept here rather than in the block because blocks
+* may be shared by the cores of several chips -- see Sweep.
+*
+* The coverage of several cores, or of many runs, may be merged, and a set
+* of them -- one per core -- may be saved to a file and loaded again. The
+* file holds a header followed by the bits of each core, compressed, so a
+* program which touches a small part of memory makes a small file.
+*
+* The coverage is not undone by reverse stepping or by restoring a snapshot,
+* and is kept when the core is reset.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//-----------------------------------------------------------------------------
+// class Coverage
+//
+
+public class Coverage
+{
+
+    int programSize;
+    int programMask;
+
+    //one bit per program word, set once the word has been executed
+    long[] bits;
+
+    //the number of words run through from each address in one straight run
+    byte[] reach;
+
+    //identifies a coverage file and the version of its layout
+    static final int FILE_MAGIC = 0x434f5631;
+
+//-----------------------------------------------------------------------------
+// Coverage::Coverage (constructor)
+//
+// Creates a record for a program space of pProgramSize words, which must be
+// a power of two.
+//
+
+public Coverage(int pProgramSize)
+{
+
+    programSize = pProgramSize; programMask = pProgramSize - 1;
+
+}//end of Coverage::Coverage (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    bits = new long[(programSize + 63) / 64];
+    reach = new byte[programSize];
+
+}//end of Coverage::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::mark
+//
+// Marks the pNumWords words of an instruction at pAddress as executed.
+//
+
+public void mark(int pAddress, int pNumWords)
+{
+
+    for (int i = 0; i < pNumWords; i++){
+        int a = (pAddress + i) & programMask;
+        bits[a >>> 6] |= 1L << a;
+    }
+
+}//end of Coverage::mark
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::markRun
+//
+// Marks the words of a straight run of instructions from pStart up to but
+// not including pEnd as executed. Does nothing if a run from pStart has
+// already reached as far.
+//
+
+public void markRun(int pStart, int pEnd)
+{
+
+    int words = (pEnd - pStart) & programMask;
+
+    if (words <= reach[pStart]) {return;}
+
+    mark(pStart + reach[pStart], words - reach[pStart]);
+
+    reach[pStart] = (byte)Math.min(words, Byte.MAX_VALUE);
+
+}//end of Coverage::markRun
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::isCovered
+//
+// Returns true if the word at pAddress has been executed.
+//
+
+public boolean isCovered(int pAddress)
+{
+
+    return((bits[pAddress >>> 6] & (1L << pAddress)) != 0);
+
+}//end of Coverage::isCovered
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::getNumCovered
+//
+// Returns the number of words which have been executed.
+//
+
+public int getNumCovered()
+{
+
+    int n = 0;
+
+    for (long b : bits) {n += Long.bitCount(b);}
+
+    return(n);
+
+}//end of Coverage::getNumCovered
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::merge
+//
+// Adds the words executed in pCoverage to this record.
+//
+
+public void merge(Coverage pCoverage)
+{
+
+    int n = Math.min(bits.length, pCoverage.bits.length);
+
+    for (int i = 0; i < n; i++) {bits[i] |= pCoverage.bits[i];}
+
+}//end of Coverage::merge
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::copy
+//
+// Returns a new record holding the words executed in this one.
+//
+
+public Coverage copy()
+{
+
+    Coverage c = new Coverage(programSize);
+    c.init();
+    c.merge(this);
+
+    return(c);
+
+}//end of Coverage::copy
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::clear
+//
+// Marks every word as not executed.
+//
+
+public void clear()
+{
+
+    Arrays.fill(bits, 0);
+    Arrays.fill(reach, (byte)0);
+
+}//end of Coverage::clear
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::getProgramSize
+//
+// Returns the number of program words recorded.
+//
+
+public int getProgramSize()
+{
+
+    return(programSize);
+
+}//end of Coverage::getProgramSize
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::save
+//
+// Saves the records in pCoverage, one per core, to pFile.
+//
+// Throws an IOException if the file cannot be written.
+//
+
+public static void save(File pFile, Coverage[] pCoverage) throws IOException
+{
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new GZIPOutputStream(new FileOutputStream(pFile))));
+
+    try{
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(pCoverage.length);
+        for (Coverage c : pCoverage){
+            out.writeInt(c.programSize);
+            for (long b : c.bits) {out.writeLong(b);}
+        }
+    }
+    finally{
+        out.close();
+    }
+
+}//end of Coverage::save
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::load
+//
+// Loads the records saved in pFile by save, one per core.
+//
+// Throws an IOException if the file cannot be read or is not a coverage
+// file.
+//
+
+public static Coverage[] load(File pFile) throws IOException
+{
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+                          new GZIPInputStream(new FileInputStream(pFile))));
+
+    try{
+
+        if (in.readInt() != FILE_MAGIC){
+            throw new IOException(pFile + " is not a coverage file");
+        }
+
+        int numCores = in.readInt();
+
+        if (numCores < 0 || numCores > 64){
+            throw new IOException(pFile + " is damaged");
+        }
+
+        Coverage[] coverage = new Coverage[numCores];
+
+        for (int i = 0; i < numCores; i++){
+
+            int size = in.readInt();
+
+            if (size <= 0 || (size & (size - 1)) != 0 || size > 1 << 24){
+                throw new IOException(pFile + " is damaged");
+            }
+
+            coverage[i] = new Coverage(size);
+            coverage[i].init();
+            for (int j = 0; j < coverage[i].bits.length; j++){
+                coverage[i].bits[j] = in.readLong();
+            }
+
+        }
+
+        return(coverage);
+
+    }
+    finally{
+        in.close();
+    }
+
+}//end of Coverage::load
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Coverage::mergeAll
+//
+// Merges each record of pFrom into the record for the same core in pInto,
+// which must hold at least as many.
+//
+
+public static void mergeAll(Coverage[] pInto, Coverage[] pFrom)
+{
+
+    for (int i = 0; i < pFrom.length && i < pInto.length; i++){
+        pInto[i].merge(pFrom[i]);
+    }
+
+}//end of Coverage::mergeAll
+//-----------------------------------------------------------------------------
+
+}//end of class Coverage
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
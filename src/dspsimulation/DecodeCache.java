@@ -0,0 +1,257 @@
+/******************************************************************************
+* Title: Universal IDE - DecodeCache.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class holds the pre-decoded form of each instruction in program memory
+* so that an instruction is decoded only the first time it is executed.
+*
+* The records are stored in parallel arrays indexed by program address rather
+* than as an object per instruction: the instruction, two operand values
+* extracted from the instruction words, the number of words, and the number
+* of cycles. A null instruction entry means the address has not been decoded.
+*
+* When program memory is written, the entries which include the written word
+* must be invalidated so they will be decoded again -- this handles code which
+* patches itself at run time.
+*
+* The cache also holds the BasicBlocks built from the decoded instructions,
+* indexed by their starting address. Each word covered by any block is
+* marked so that a write to a word which is not part of a block does not
+* need to search for blocks.
+*
+* A cache may be shared by the cores of several simulated chips running the
+* same program -- see Sweep. The code must then not change, as the records
+* could no longer be right for every chip, so any invalidation of a shared
+* cache is recorded in codeChanged for the Sweep to check.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.util.Arrays;
+
+//-----------------------------------------------------------------------------
+// class DecodeCache
+//
+
+public class DecodeCache
+{
+
+    int size;
+
+    public Instruction[] instruction;
+    public int[] operandA;
+    public int[] operandB;
+    public byte[] numWords;
+    public byte[] numCycles;
+
+    //the basic block starting at each address -- null if none has been built
+    BasicBlock[] blocks;
+
+    //the body of the block repeat starting at each address
+    BasicBlock[] loops;
+
+    //true for each word which is or has been part of a basic block
+    boolean[] inBlock;
+
+    //set while the cache is shared by several chips, and set by any
+    //invalidation while it is shared
+
+    boolean shared;
+    boolean codeChanged;
+
+    //maximum number of words in any instruction -- a write to a word can
+    //affect an instruction starting up to this many words minus one earlier
+    public static final int MAX_WORDS = 3;
+
+//-----------------------------------------------------------------------------
+// DecodeCache::DecodeCache (constructor)
+//
+// Creates a cache for a program space of pSize words.
+//
+
+public DecodeCache(int pSize)
+{
+
+    size = pSize;
+
+}//end of DecodeCache::DecodeCache (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// DecodeCache::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    instruction = new Instruction[size];
+    operandA = new int[size];
+    operandB = new int[size];
+    numWords = new byte[size];
+    numCycles = new byte[size];
+
+    blocks = new BasicBlock[size];
+    loops = new BasicBlock[size];
+    inBlock = new boolean[size];
+
+}//end of DecodeCache::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// DecodeCache::store
+//
+// Stores the decoded record for the instruction at pAddress.
+//
+
+public void store(int pAddress, Instruction pInstruction, int pOperandA,
+                               int pOperandB, int pNumWords, int pNumCycles)
+{
+
+    operandA[pAddress] = pOperandA;
+    operandB[pAddress] = pOperandB;
+    numWords[pAddress] = (byte)pNumWords;
+    numCycles[pAddress] = (byte)pNumCycles;
+
+    //store the instruction last as a non-null entry marks the record valid
+    instruction[pAddress] = pInstruction;
+
+}//end of DecodeCache::store
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// DecodeCache::invalidate
+//
+// Invalidates any record or basic block which includes the word at pAddress.
+//
+
+public void invalidate(int pAddress)
+{
+
+    for (int i = 0; i < MAX_WORDS; i++){
+
+        int a = pAddress - i;
+        if (a < 0) {break;}
+
+        if (instruction[a] != null && a + numWords[a] > pAddress){
+            instruction[a] = null;
+            codeChanged |= shared;
+        }
+
+    }
+
+    if (inBlock[pAddress]) {invalidateBlocks(pAddress);}
+
+}//end of DecodeCache::invalidate
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// DecodeCache::invalidateBlocks
+//
+// Invalidates every basic block and block repeat body which includes the word
+// at pAddress.
+//
+
+private void invalidateBlocks(int pAddress)
+{
+
+    for (int i = 0; i < BasicBlock.MAX_WORDS; i++){
+
+        int a = pAddress - i;
+        if (a < 0) {break;}
+
+        BasicBlock block = blocks[a];
+
+        if (block != null && block.covers(pAddress)){
+            block.valid = false;
+            blocks[a] = null;
+            codeChanged |= shared;
+        }
+
+        block = loops[a];
+
+        if (block != null && block.covers(pAddress)){
+            block.valid = false;
+            loops[a] = null;
+            codeChanged |= shared;
+        }
+
+    }
+
+}//end of DecodeCache::invalidateBlocks
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// DecodeCache::invalidateAll
+//
+// Invalidates every record and basic block, such as when a new program is
+// loaded.
+//
+
+public void invalidateAll()
+{
+
+    Arrays.fill(instruction, null);
+
+    codeChanged |= shared;
+
+    for (int i = 0; i < size; i++){
+        if (blocks[i] != null) {blocks[i].valid = false; blocks[i] = null;}
+        if (loops[i] != null) {loops[i].valid = false; loops[i] = null;}
+    }
+
+    Arrays.fill(inBlock, false);
+
+}//end of DecodeCache::invalidateAll
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// DecodeCache::storeBlock
+//
+// Stores pBlock by its starting address and marks the words it covers.
+//
+
+void storeBlock(BasicBlock pBlock)
+{
+
+    for (int i = 0; i < pBlock.numWords; i++){
+        inBlock[pBlock.start + i] = true;
+    }
+
+    blocks[pBlock.start] = pBlock;
+
+}//end of DecodeCache::storeBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// DecodeCache::storeLoop
+//
+// Stores block repeat body pBlock by its starting address and marks the words
+// it covers.
+//
+
+void storeLoop(BasicBlock pBlock)
+{
+
+    for (int i = 0; i < pBlock.numWords; i++){
+        inBlock[pBlock.start + i] = true;
+    }
+
+    loops[pBlock.start] = pBlock;
+
+}//end of DecodeCache::storeLoop
+//-----------------------------------------------------------------------------
+
+}//end of class DecodeCache
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,503 @@
+/******************************************************************************
+* Title: Universal IDE - EventScheduler.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class holds the events posted by a core's peripherals to be carried
+* out at future cycles, so that the peripherals need not be polled as each
+* instruction is executed. The core runs without interruption until the
+* cycle of the earliest event, nextCycle, and then calls runDue -- one
+* comparison per basic block is all the peripherals cost while no event is
+* due.
+*
+* The events are kept in a timing wheel: a ring of WHEEL_SIZE slots, one for
+* each of the cycles from base onward, each holding a list of the events due
+* on that cycle. Posting an event within the wheel's span is a matter of
+* adding it to the list of its slot, and a bit for each slot holding events
+* lets the next one be found with a few word tests. Events further ahead are
+* kept in a priority queue and moved into the wheel as it turns to reach
+* them. The wheel is turned only when events are carried out, so after a
+* long quiet spell the first event posted may go to the queue, and those
+* after it to the wheel once it has been carried out. Events due on the same
+* cycle are carried out in the order posted.
+*
+* The events are carried out at the end of the basic block or repeat during
+* which they fall due, so they may be a few cycles late. Each is passed the
+* cycle at which it was due so that periodic events can be posted relative
+* to that cycle without drifting.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+//-----------------------------------------------------------------------------
+// class EventScheduler
+//
+
+public class EventScheduler
+{
+
+    //the core whose peripherals post the events
+    Core core;
+
+    //the cycle at which the earliest pending event is due -- Long.MAX_VALUE
+    //if there are none
+    long nextCycle = Long.MAX_VALUE;
+
+    //the first and last pending event in each slot of the wheel, a bit for
+    //each slot which holds any, and the number held in all slots
+
+    Entry[] heads;
+    Entry[] tails;
+    long[] occupied;
+    int numInWheel;
+
+    //the cycle of the first slot -- the wheel holds the events due from base
+    //through base + WHEEL_SIZE - 1
+    long base;
+
+    //the events due after the wheel's span, earliest first
+    PriorityQueue<Entry> overflow;
+
+    //the number of events ever posted -- orders events due on the same cycle
+    long sequence;
+
+    //entries no longer in use, for reuse
+    Entry free;
+
+    static final int WHEEL_BITS = 10;
+    static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    static final int WHEEL_WORDS = WHEEL_SIZE / 64;
+
+//-----------------------------------------------------------------------------
+// EventScheduler::EventScheduler (constructor)
+//
+// Creates a scheduler for the peripherals of pCore.
+//
+
+public EventScheduler(Core pCore)
+{
+
+    core = pCore;
+
+}//end of EventScheduler::EventScheduler (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    heads = new Entry[WHEEL_SIZE];
+    tails = new Entry[WHEEL_SIZE];
+    occupied = new long[WHEEL_WORDS];
+
+    overflow = new PriorityQueue<Entry>(16, new Comparator<Entry>(){
+        @Override
+        public int compare(Entry pA, Entry pB)
+        {
+            if (pA.cycle != pB.cycle) {return(pA.cycle < pB.cycle ? -1 : 1);}
+            return(pA.sequence < pB.sequence ? -1 : 1);
+        }
+    });
+
+}//end of EventScheduler::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::schedule
+//
+// Posts pEvent to be carried out at cycle pCycle. An event posted for a
+// cycle which has already passed is carried out as soon as possible.
+//
+
+public void schedule(long pCycle, ScheduledEvent pEvent)
+{
+
+    Entry e = obtainEntry();
+    e.cycle = Math.max(pCycle, base);
+    e.event = pEvent;
+    e.sequence = sequence++;
+
+    if (e.cycle - base < WHEEL_SIZE) {addToWheel(e);}
+    else {overflow.add(e);}
+
+    if (e.cycle < nextCycle) {nextCycle = e.cycle;}
+
+}//end of EventScheduler::schedule
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::runDue
+//
+// Carries out every event due on or before cycle pNow in order, including
+// any posted by those events which are also due by then.
+//
+
+public void runDue(long pNow)
+{
+
+    while (nextCycle <= pNow){
+
+        long cycle = nextCycle;
+
+        turnTo(cycle);
+
+        int slot = (int)cycle & WHEEL_MASK;
+
+        Entry e;
+
+        while ((e = heads[slot]) != null){
+
+            heads[slot] = e.next;
+
+            if (e.next == null){
+                tails[slot] = null;
+                occupied[slot >>> 6] &= ~(1L << slot);
+            }
+
+            numInWheel--;
+
+            ScheduledEvent event = e.event;
+            releaseEntry(e);
+
+            event.fire(core, cycle);
+
+        }
+
+        nextCycle = findNext();
+
+    }
+
+    //everything still pending is due after pNow
+    if (pNow > base) {turnTo(pNow);}
+
+}//end of EventScheduler::runDue
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::cancel
+//
+// Removes every pending posting of pEvent.
+//
+
+public void cancel(ScheduledEvent pEvent)
+{
+
+    for (int slot = 0; slot < WHEEL_SIZE; slot++){
+
+        if ((occupied[slot >>> 6] & (1L << slot)) == 0) {continue;}
+
+        Entry prev = null;
+
+        for (Entry e = heads[slot]; e != null; e = e.next){
+
+            if (e.event != pEvent) {prev = e; continue;}
+
+            if (prev == null) {heads[slot] = e.next;} else {prev.next = e.next;}
+            if (tails[slot] == e) {tails[slot] = prev;}
+
+            numInWheel--;
+
+        }
+
+        if (heads[slot] == null) {occupied[slot >>> 6] &= ~(1L << slot);}
+
+    }
+
+    ArrayList<Entry> removed = new ArrayList<Entry>();
+    for (Entry e : overflow) {if (e.event == pEvent) {removed.add(e);}}
+    overflow.removeAll(removed);
+
+    nextCycle = findNext();
+
+}//end of EventScheduler::cancel
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::clear
+//
+// Removes every pending event.
+//
+
+public void clear()
+{
+
+    for (int slot = 0; slot < WHEEL_SIZE; slot++){
+        heads[slot] = null; tails[slot] = null;
+    }
+
+    for (int i = 0; i < WHEEL_WORDS; i++) {occupied[i] = 0;}
+
+    numInWheel = 0;
+    overflow.clear();
+
+    nextCycle = Long.MAX_VALUE;
+
+}//end of EventScheduler::clear
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::copyPending
+//
+// Returns a new scheduler for pCore holding the events pending here, for a
+// snapshot.
+//
+
+EventScheduler copyPending(Core pCore)
+{
+
+    EventScheduler copy = new EventScheduler(pCore);
+    copy.init();
+
+    copy.base = base;
+
+    for (Entry e : getPending()) {copy.schedule(e.cycle, e.event);}
+
+    return(copy);
+
+}//end of EventScheduler::copyPending
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::restorePending
+//
+// Replaces the pending events with those of pSource, as returned by
+// copyPending.
+//
+
+void restorePending(EventScheduler pSource)
+{
+
+    clear();
+
+    base = pSource.base;
+
+    for (Entry e : pSource.getPending()) {schedule(e.cycle, e.event);}
+
+}//end of EventScheduler::restorePending
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::getPendingEvents
+//
+// Returns the pending events in the order they will be carried out, such as
+// to find those posted by a peripheral so that they can be cancelled.
+//
+
+public ArrayList<ScheduledEvent> getPendingEvents()
+{
+
+    ArrayList<ScheduledEvent> list = new ArrayList<ScheduledEvent>();
+
+    for (Entry e : getPending()) {list.add(e.event);}
+
+    return(list);
+
+}//end of EventScheduler::getPendingEvents
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::getPending
+//
+// Returns the pending events in the order they will be carried out.
+//
+
+private ArrayList<Entry> getPending()
+{
+
+    ArrayList<Entry> list = new ArrayList<Entry>();
+
+    for (int i = 0; i < WHEEL_SIZE; i++){
+        int slot = (int)(base + i) & WHEEL_MASK;
+        for (Entry e = heads[slot]; e != null; e = e.next) {list.add(e);}
+    }
+
+    Entry[] later = overflow.toArray(new Entry[overflow.size()]);
+    Arrays.sort(later, overflow.comparator());
+
+    for (Entry e : later) {list.add(e);}
+
+    return(list);
+
+}//end of EventScheduler::getPending
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::turnTo
+//
+// Turns the wheel so that its first slot is for pCycle and moves the events
+// from the overflow which now fall within its span into the wheel. Every
+// event in the wheel must be due on or after pCycle.
+//
+
+private void turnTo(long pCycle)
+{
+
+    base = pCycle;
+
+    while (!overflow.isEmpty() && overflow.peek().cycle - base < WHEEL_SIZE){
+        addToWheel(overflow.poll());
+    }
+
+}//end of EventScheduler::turnTo
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::addToWheel
+//
+// Appends pEntry to the list of the slot for its cycle.
+//
+
+private void addToWheel(Entry pEntry)
+{
+
+    int slot = (int)pEntry.cycle & WHEEL_MASK;
+
+    pEntry.next = null;
+
+    if (tails[slot] == null){
+        heads[slot] = pEntry;
+        occupied[slot >>> 6] |= 1L << slot;
+    }
+    else{
+        tails[slot].next = pEntry;
+    }
+
+    tails[slot] = pEntry;
+    numInWheel++;
+
+}//end of EventScheduler::addToWheel
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::findNext
+//
+// Returns the cycle of the earliest pending event, or Long.MAX_VALUE if there
+// are none. The slots are searched from the first a word of bits at a time.
+//
+
+private long findNext()
+{
+
+    if (numInWheel == 0){
+        return(overflow.isEmpty() ? Long.MAX_VALUE : overflow.peek().cycle);
+    }
+
+    int start = (int)base & WHEEL_MASK;
+    int word = start >>> 6;
+
+    //the first word is searched from the first slot, and again at the end
+    //for the slots before it once the search has wrapped around
+
+    for (int i = 0; i <= WHEEL_WORDS; i++){
+
+        int w = (word + i) & (WHEEL_WORDS - 1);
+        long bits = occupied[w];
+
+        if (i == 0) {bits &= -1L << start;}
+        else
+        if (i == WHEEL_WORDS) {bits &= ~(-1L << start);}
+
+        if (bits != 0){
+            int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+            return(base + ((slot - start) & WHEEL_MASK));
+        }
+
+    }
+
+    return(Long.MAX_VALUE);
+
+}//end of EventScheduler::findNext
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::obtainEntry
+//
+// Returns an unused entry, reusing a released one if there is any.
+//
+
+private Entry obtainEntry()
+{
+
+    Entry e = free;
+
+    if (e == null) {return(new Entry());}
+
+    free = e.next;
+
+    return(e);
+
+}//end of EventScheduler::obtainEntry
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::releaseEntry
+//
+// Returns pEntry to the unused entries.
+//
+
+private void releaseEntry(Entry pEntry)
+{
+
+    pEntry.event = null;
+    pEntry.next = free;
+    free = pEntry;
+
+}//end of EventScheduler::releaseEntry
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// EventScheduler::getNextCycle
+//
+// Returns the cycle at which the earliest pending event is due, or
+// Long.MAX_VALUE if there are none.
+//
+
+public long getNextCycle()
+{
+
+    return(nextCycle);
+
+}//end of EventScheduler::getNextCycle
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Entry
+//
+// An event posted for a cycle.
+//
+
+static class Entry
+{
+
+    long cycle;
+    long sequence;
+    ScheduledEvent event;
+
+    //the next entry in the same slot or in the unused list
+    Entry next;
+
+}//end of class Entry
+//-----------------------------------------------------------------------------
+
+}//end of class EventScheduler
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -8,6 +8,11 @@
 * This class provides base functionality for a DSP instruction. Each type of
 * instruction should be a sub-class of this base class.
 *
+* Each instruction describes its binary encoding with an opcode and an opcode
+* mask -- the mask has a 1 in every bit of the first instruction word which
+* is fixed for the instruction; the zeroed bits hold operand fields. The
+* InstructionSet uses these to build its dispatch tables.
+*
 * Open Source Policy:
 *
 * This source code is Public Domain and free to any interested party.  Any
@@ -21,21 +26,81 @@ package dspsimulation;
 // class Instruction
 //
 
-class Instruction
+public class Instruction
 {
 
     //the actual assembler mnemonic for the instruction
-    String mnemonic;
+    public String mnemonic;
+
+    //the fixed bits of the instruction word and a mask with a 1 in each of
+    //those bit positions -- bits cleared in the mask are operand fields
+
+    public int opcode;
+    public int opcodeMask;
+
+    //if the instruction is identified by its second word, these are the
+    //opcode and mask of the first word which acts as a prefix -- prefixMask
+    //is zero for instructions which are identified by the first word alone
+
+    public int prefixOpcode;
+    public int prefixMask;
+
+    //number of words in the basic form of the instruction -- some operand
+    //forms may add extension words
+
+    public int numWords;
+
+    //number of cycles required to execute the instruction; for conditional
+    //instructions numCyclesTaken is the count when the condition is met
+
+    public int numCycles;
+    public int numCyclesTaken;
+
+    //true if the instruction may change the flow of execution, such as a
+    //branch, call, return, or repeat -- such an instruction ends a basic block
+    public boolean endsBlock;
+
+    //dense index assigned by the InstructionSet when the instruction is added
+    public int id;
+
+    //the next instruction with the same mnemonic -- most mnemonics have
+    //several forms with different operand types
+    public Instruction nextForm;
+
+    //for prefix words only -- the dispatch table for the second word
+    Instruction[] prefixTable;
 
 //-----------------------------------------------------------------------------
 // Instruction::Instruction (constructor)
 //
 // Creates a basic instruction which has the assembler mnemonic pMnemonic.
 
-Instruction(String pMnemonic)
+public Instruction(String pMnemonic)
+{
+
+    this(pMnemonic, 0, 0, 1, 1, 1);
+
+}//end of Instruction::Instruction (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Instruction::Instruction (constructor)
+//
+// Creates an instruction which has the assembler mnemonic pMnemonic and which
+// is encoded as pOpcode in the bits selected by pOpcodeMask. The instruction
+// occupies pNumWords words of program memory and takes pNumCycles to execute
+// or pNumCyclesTaken if it is a conditional instruction and the condition is
+// met.
+//
+
+public Instruction(String pMnemonic, int pOpcode, int pOpcodeMask,
+                         int pNumWords, int pNumCycles, int pNumCyclesTaken)
 {
 
     mnemonic = pMnemonic;
+    opcode = pOpcode & 0xffff; opcodeMask = pOpcodeMask & 0xffff;
+    numWords = pNumWords;
+    numCycles = pNumCycles; numCyclesTaken = pNumCyclesTaken;
 
 }//end of Instruction::Instruction (constructor)
 //-----------------------------------------------------------------------------
@@ -53,6 +118,22 @@ public void init()
 }//end of Instruction::init
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// Instruction::setPrefix
+//
+// Marks the instruction as being identified by its second word -- the first
+// word matches pPrefixOpcode in the bits selected by pPrefixMask and the
+// instruction's own opcode and mask are applied to the second word.
+//
+
+public void setPrefix(int pPrefixOpcode, int pPrefixMask)
+{
+
+    prefixOpcode = pPrefixOpcode & 0xffff; prefixMask = pPrefixMask & 0xffff;
+
+}//end of Instruction::setPrefix
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // Instruction::parse
 //
@@ -64,26 +145,114 @@ public void init()
 public boolean parse(String pMnemonic)
 {
 
-    return(mnemonic.equalsIgnoreCase(pMnemonic));
+    return(matchesMnemonic(pMnemonic, 0, pMnemonic.length()));
 
 }//end of Instruction::parse
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// Instruction::matchesMnemonic
+//
+// Determines if the characters from pStart up to but not including pEnd in
+// pText match the mnemonic for the instruction, ignoring case. No objects are
+// created, so this can be used to scan source lines in place.
+//
+// Returns true if they match, false otherwise.
+//
+
+public boolean matchesMnemonic(CharSequence pText, int pStart, int pEnd)
+{
+
+    if (mnemonic == null || pEnd - pStart != mnemonic.length()) {
+        return(false);
+    }
+
+    for (int i = pStart, j = 0; i < pEnd; i++, j++){
+        if (Character.toLowerCase(pText.charAt(i))
+                               != Character.toLowerCase(mnemonic.charAt(j))){
+            return(false);
+        }
+    }
+
+    return(true);
+
+}//end of Instruction::matchesMnemonic
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Instruction::getNumFixedBits
+//
+// Returns the number of fixed opcode bits. When the opcode ranges of two
+// instructions overlap, the one with more fixed bits is the more specific
+// and takes precedence.
+//
+
+public int getNumFixedBits()
+{
+
+    return(Integer.bitCount(opcodeMask));
+
+}//end of Instruction::getNumFixedBits
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Instruction::decode
+//
+// Extracts the operands of the instruction at pAddress in the program memory
+// of pCore and stores the decoded record in pCache. pWord is the first word
+// of the instruction.
+//
+// This base method stores a record with no operands. Sub-classes with operand
+// fields should override this method.
+//
+
+public void decode(Core pCore, int pAddress, int pWord, DecodeCache pCache)
+{
+
+    pCache.store(pAddress, this, 0, 0, numWords, numCycles);
+
+}//end of Instruction::decode
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // Instruction::execute
 //
-// This method performs the instruction's function(s).
+// This method performs the instruction's function(s) on pCore using the
+// operand values pOperandA and pOperandB extracted when the instruction was
+// decoded. When this is called, the core's program counter already points
+// to the following instruction.
 //
 // Each instruction sub-class should override this method to provide unique
 // functionality.
 //
 
-public void execute()
+public void execute(Core pCore, int pOperandA, int pOperandB)
 {
 
 }//end of Instruction::execute
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// Instruction::repeat
+//
+// Executes the instruction pCount times in succession on pCore as done by a
+// single instruction repeat. The core's program counter and cycle count have
+// already been set by the caller.
+//
+// This base method simply calls execute in a loop. Sub-classes can override
+// it to perform common repeated operations, such as a block copy, directly
+// on the memory arrays -- the result must be the same as calling execute
+// pCount times.
+//
+
+public void repeat(Core pCore, int pOperandA, int pOperandB, int pCount)
+{
+
+    for (int i = 0; i < pCount; i++) {execute(pCore, pOperandA, pOperandB);}
+
+}//end of Instruction::repeat
+//-----------------------------------------------------------------------------
+
 }//end of class Instruction
 //-----------------------------------------------------------------------------
 //-----------------------------------------------------------------------------
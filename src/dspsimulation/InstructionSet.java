@@ -6,8 +6,21 @@
 * Purpose:
 *
 * This class manages a collection of instructions for a simulated DSP.
-* The instructions are added to a list in this class which will then scan them
-* to find which matches the mnemonic being parsed.
+*
+* The instructions are added to a list in this class. After all have been
+* added, compile should be called to build the dispatch tables:
+*
+*  The opcode table has an entry for every possible 16 bit instruction word,
+*  so a word fetched from program memory is resolved to its instruction with
+*  a single array access. Instructions identified by their second word (the
+*  first word being a shared prefix) are resolved through a second table
+*  attached to the prefix entry.
+*
+*  The mnemonic table is a perfect hash -- a hash seed is searched for which
+*  places every mnemonic in a unique slot, so a lookup is a single hash and
+*  compare. Lookups work directly on the characters of a source line so no
+*  Strings are created. All forms of a mnemonic are linked through
+*  Instruction.nextForm.
 *
 * Open Source Policy:
 *
@@ -24,16 +37,33 @@ import java.util.ArrayList;
 // class InstructionSet
 //
 
-class InstructionSet
+public class InstructionSet
 {
 
-    ArrayList list;
+    ArrayList<Instruction> list;
+
+    //dispatch table with an entry for every possible instruction word
+    Instruction[] opcodeTable;
+
+    //perfect hash table of mnemonics -- each entry is the first form of the
+    //mnemonic; the size is always a power of two
+    Instruction[] mnemonicTable;
+    int mnemonicSeed;
+    int mnemonicMask;
+
+    //all instructions indexed by their id
+    Instruction[] byId;
+
+    static final int NUM_OPCODES = 0x10000;
+
+    //number of seeds tried for each table size before the size is doubled
+    static final int MAX_SEED_TRIES = 1000;
 
 //-----------------------------------------------------------------------------
 // InstructionSet::InstructionSet (constructor)
 //
 
-InstructionSet()
+public InstructionSet()
 {
 
 }//end of InstructionSet::InstructionSet (constructor)
@@ -49,7 +79,7 @@ public void init()
 {
 
     //create the list to hold the instructions
-    list = new ArrayList();
+    list = new ArrayList<Instruction>();
 
 }//end of InstructionSet::init
 //-----------------------------------------------------------------------------
@@ -57,17 +87,322 @@ public void init()
 //-----------------------------------------------------------------------------
 // InstructionSet::addInstruction
 //
-// Adds instruction pNew to the collection.
+// Adds instruction pNew to the collection and assigns its id.
+//
+// The dispatch tables are not updated -- compile must be called after all
+// instructions have been added.
 //
 
 public void addInstruction(Instruction pNew)
 {
 
+    pNew.id = list.size();
     list.add(pNew);
 
 }//end of InstructionSet::addInstruction
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// InstructionSet::compile
+//
+// Builds the opcode dispatch table, the mnemonic hash table, and the id table
+// from the list of instructions. Should be called after all instructions have
+// been added.
+//
+
+public void compile()
+{
+
+    byId = list.toArray(new Instruction[list.size()]);
+
+    buildOpcodeTable();
+
+    buildMnemonicTable();
+
+}//end of InstructionSet::compile
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::buildOpcodeTable
+//
+// Fills the opcode table with the instruction matching each possible word.
+// Instructions identified by a second word are placed in a table attached to
+// a prefix entry in the main table.
+//
+
+private void buildOpcodeTable()
+{
+
+    opcodeTable = new Instruction[NUM_OPCODES];
+
+    for (Instruction inst : list){
+
+        if (inst.prefixMask == 0){
+            placeOpcode(opcodeTable, inst);
+        }
+        else {
+            placeOpcode(getPrefix(inst).prefixTable, inst);
+        }
+
+    }
+
+}//end of InstructionSet::buildOpcodeTable
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::getPrefix
+//
+// Returns the prefix entry in the opcode table shared by instructions which
+// are identified by their second word and have the same prefix as pInst.
+// The entry is created if it does not yet exist.
+//
+
+private Instruction getPrefix(Instruction pInst)
+{
+
+    Instruction prefix = opcodeTable[pInst.prefixOpcode];
+
+    if (prefix != null && prefix.prefixTable != null) {return(prefix);}
+
+    prefix = new Instruction(null, pInst.prefixOpcode, pInst.prefixMask,
+                                                             2, 1, 1);
+    prefix.id = -1;
+    prefix.prefixTable = new Instruction[NUM_OPCODES];
+
+    placeOpcode(opcodeTable, prefix);
+
+    return(prefix);
+
+}//end of InstructionSet::getPrefix
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::placeOpcode
+//
+// Places pInst in every entry of pTable which matches its opcode. Only the
+// operand bits (the bits cleared in the opcode mask) are stepped through, so
+// this takes one pass per possible operand value rather than a pass over the
+// entire table.
+//
+// Where the ranges of two instructions overlap, the instruction with more
+// fixed bits takes precedence. Overlaps between instructions with the same
+// number of fixed bits are errors in the instruction definitions and are
+// reported.
+//
+
+private void placeOpcode(Instruction[] pTable, Instruction pInst)
+{
+
+    int free = ~pInst.opcodeMask & 0xffff;
+    int operand = 0;
+    boolean conflict = false;
+
+    do{
+
+        int word = pInst.opcode | operand;
+        Instruction existing = pTable[word];
+
+        if (existing == null
+                   || existing.getNumFixedBits() < pInst.getNumFixedBits()){
+            pTable[word] = pInst;
+        }
+        else
+        if (existing.getNumFixedBits() == pInst.getNumFixedBits()){
+            conflict = true;
+        }
+
+        //step to the next combination of the free bits
+        operand = (operand - free) & free;
+
+    }while(operand != 0);
+
+    if (conflict){
+        System.err.println("Opcode for instruction " + pInst.mnemonic
+                      + " overlaps another instruction with the same mask.");
+    }
+
+}//end of InstructionSet::placeOpcode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::buildMnemonicTable
+//
+// Links all forms of each mnemonic through Instruction.nextForm and places
+// the first form of each in a perfect hash table. The smallest table size is
+// tried first with a series of seeds; the size is doubled if no seed places
+// every mnemonic in a unique slot.
+//
+
+private void buildMnemonicTable()
+{
+
+    ArrayList<Instruction> firstForms = new ArrayList<Instruction>();
+
+    for (Instruction inst : list){
+
+        if (inst.mnemonic == null) {continue;}
+
+        inst.nextForm = null;
+
+        Instruction first = null;
+        for (Instruction f : firstForms){
+            if (f.parse(inst.mnemonic)) {first = f; break;}
+        }
+
+        if (first == null) {firstForms.add(inst); continue;}
+
+        //append to the end of the chain so forms stay in order of addition
+        while (first.nextForm != null) {first = first.nextForm;}
+        first.nextForm = inst;
+
+    }
+
+    int size = Integer.highestOneBit(Math.max(firstForms.size(), 1)) * 2;
+
+    while(true){
+
+        for (int seed = 1; seed <= MAX_SEED_TRIES; seed++){
+
+            Instruction[] table = new Instruction[size];
+            boolean collision = false;
+
+            for (Instruction inst : firstForms){
+                int slot = hash(seed, inst.mnemonic, 0,
+                                       inst.mnemonic.length()) & (size - 1);
+                if (table[slot] != null) {collision = true; break;}
+                table[slot] = inst;
+            }
+
+            if (!collision){
+                mnemonicTable = table;
+                mnemonicSeed = seed;
+                mnemonicMask = size - 1;
+                return;
+            }
+
+        }
+
+        size *= 2;
+
+    }
+
+}//end of InstructionSet::buildMnemonicTable
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::hash
+//
+// Returns a case insensitive hash of the characters from pStart up to but not
+// including pEnd in pText, mixed with pSeed.
+//
+
+static int hash(int pSeed, CharSequence pText, int pStart, int pEnd)
+{
+
+    int h = pSeed * 0x9e3779b9;
+
+    for (int i = pStart; i < pEnd; i++){
+        h = (h ^ Character.toLowerCase(pText.charAt(i))) * 0x01000193;
+    }
+
+    return(h ^ (h >>> 15));
+
+}//end of InstructionSet::hash
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::decode
+//
+// Returns the instruction encoded by instruction word pWord. If the word is a
+// prefix, the instruction is identified by pNextWord, the word following it
+// in program memory.
+//
+// Returns null if the word is not a valid instruction.
+//
+
+public Instruction decode(int pWord, int pNextWord)
+{
+
+    Instruction inst = opcodeTable[pWord & 0xffff];
+
+    if (inst != null && inst.prefixTable != null){
+        inst = inst.prefixTable[pNextWord & 0xffff];
+    }
+
+    return(inst);
+
+}//end of InstructionSet::decode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::findMnemonic
+//
+// Returns the first form of the instruction whose mnemonic matches the
+// characters from pStart up to but not including pEnd in pText, ignoring case.
+// The other forms can be reached through Instruction.nextForm.
+//
+// Returns null if there is no match.
+//
+
+public Instruction findMnemonic(CharSequence pText, int pStart, int pEnd)
+{
+
+    int slot = hash(mnemonicSeed, pText, pStart, pEnd) & mnemonicMask;
+
+    Instruction inst = mnemonicTable[slot];
+
+    if (inst == null || !inst.matchesMnemonic(pText, pStart, pEnd)){
+        return(null);
+    }
+
+    return(inst);
+
+}//end of InstructionSet::findMnemonic
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::findMnemonic
+//
+// Returns the first form of the instruction with mnemonic pMnemonic.
+//
+// Returns null if there is no match.
+//
+
+public Instruction findMnemonic(String pMnemonic)
+{
+
+    return(findMnemonic(pMnemonic, 0, pMnemonic.length()));
+
+}//end of InstructionSet::findMnemonic
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::getInstruction
+//
+// Returns the instruction with id pId.
+//
+
+public Instruction getInstruction(int pId)
+{
+
+    return(byId[pId]);
+
+}//end of InstructionSet::getInstruction
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// InstructionSet::getNumInstructions
+//
+// Returns the number of instructions in the set.
+//
+
+public int getNumInstructions()
+{
+
+    return(list.size());
+
+}//end of InstructionSet::getNumInstructions
+//-----------------------------------------------------------------------------
 
 }//end of class InstructionSet
 //-----------------------------------------------------------------------------
@@ -0,0 +1,40 @@
+/******************************************************************************
+* Title: Universal IDE - MemoryHook.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This interface is implemented by objects which handle reads and writes to
+* a page of a MemorySet which does not behave as plain memory, such as a page
+* holding memory-mapped registers or peripheral registers.
+*
+* The hook is called for every access to the page. For addresses it does not
+* handle specially, the hook can use MemorySet.peek and MemorySet.poke to
+* access the underlying storage.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// interface MemoryHook
+//
+
+public interface MemoryHook
+{
+
+    //returns the 16 bit value at pAddress in pMemory
+    public int read(MemorySet pMemory, int pAddress);
+
+    //writes the 16 bit value pValue to pAddress in pMemory
+    public void write(MemorySet pMemory, int pAddress, int pValue);
+
+}//end of interface MemoryHook
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
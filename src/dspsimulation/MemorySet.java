@@ -0,0 +1,968 @@
+/******************************************************************************
+* Title: Universal IDE - MemorySet.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class provides one address space of a simulated chip -- such as the
+* program, data, or I/O space -- as an array of 16 bit words.
+*
+* The space is divided into pages of PAGE_SIZE words, each a plain short
+* array. Most pages are ordinary memory and are read and written directly.
+* Pages which hold memory-mapped registers or peripherals have a MemoryHook
+* which handles every access to the page. Pages which hold code have a decode
+* cache which is invalidated when they are written so that self-modifying
+* code is decoded again.
+*
+* Pages containing a watched address are flagged so that their accesses are
+* checked against the watchpoints; the check costs nothing on other pages.
+*
+* A page can be shared with another MemorySet so that the same storage is
+* seen in both spaces, such as the C54x DARAM which is mapped into both the
+* program and data spaces when the OVLY bit is set.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+//-----------------------------------------------------------------------------
+// class MemorySet
+//
+
+public class MemorySet
+{
+
+    //the name of the space, such as "Program" or "Data"
+    String name;
+
+    int size;
+    int addressMask;
+    int numPages;
+
+    //the storage for each page -- pages may be shared with other spaces
+    short[][] pages;
+
+    //the other spaces sharing the storage of each page -- null for pages
+    //which are not shared
+    MemorySet[][] sharers;
+
+    //handlers for pages which are not plain memory -- null for plain pages
+    MemoryHook[] hooks;
+
+    //decode caches to be invalidated when code pages are written -- null for
+    //pages which do not hold code; a page shared by the program spaces of
+    //several cores lists the cache of each core
+    DecodeCache[][] codeCaches;
+
+    //the watchpoints for pages containing watched addresses -- null for
+    //pages which are not watched
+    Watchpoint[][] watchpoints;
+    int numWatchpoints;
+
+    //records the old value of each word written while the core is traced
+    TraceRecorder tracer;
+
+    //non-zero for pages which must take the slow path on a read or write
+    byte[] flags;
+
+    //while the writes to the space are checked, flags is replaced by
+    //checkFlags, which has CHECKED added for every page, and wordChanged is
+    //set by any write which changes a word -- see startWriteCheck
+
+    byte[] checkFlags;
+    byte[] normalFlags;
+    boolean wordChanged;
+
+    public static final int PAGE_BITS = 7;
+    public static final int PAGE_SIZE = 1 << PAGE_BITS;
+    public static final int PAGE_OFFSET_MASK = PAGE_SIZE - 1;
+
+    //page flag bits
+    static final byte HOOKED = 1;
+    static final byte CODE = 2;
+    static final byte WATCHED = 4;
+    static final byte TRACED = 8;
+    static final byte COPY_ON_WRITE = 16;
+    static final byte CHECKED = 32;
+
+//-----------------------------------------------------------------------------
+// MemorySet::MemorySet (constructor)
+//
+// Creates a space named pName of pSize words. The size must be a power of two
+// and a multiple of PAGE_SIZE.
+//
+
+public MemorySet(String pName, int pSize)
+{
+
+    name = pName; size = pSize;
+
+}//end of MemorySet::MemorySet (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    addressMask = size - 1;
+    numPages = size >> PAGE_BITS;
+
+    pages = new short[numPages][];
+    for (int i = 0; i < numPages; i++) {pages[i] = new short[PAGE_SIZE];}
+
+    sharers = new MemorySet[numPages][];
+    hooks = new MemoryHook[numPages];
+    codeCaches = new DecodeCache[numPages][];
+    watchpoints = new Watchpoint[numPages][];
+    flags = new byte[numPages];
+
+}//end of MemorySet::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::read16
+//
+// Returns the word at pAddress as an unsigned value. Plain pages are read
+// directly from the page array; hooked and watched pages take the slow path.
+//
+
+public int read16(int pAddress)
+{
+
+    pAddress &= addressMask;
+    int page = pAddress >>> PAGE_BITS;
+
+    if ((flags[page] & (HOOKED | WATCHED)) != 0){
+        return(readSlow(page, pAddress));
+    }
+
+    return(pages[page][pAddress & PAGE_OFFSET_MASK] & 0xffff);
+
+}//end of MemorySet::read16
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::readSlow
+//
+// Returns the word at pAddress in page pPage, read through the page's hook if
+// it has one, and checks the page's watchpoints if it is watched.
+//
+
+private int readSlow(int pPage, int pAddress)
+{
+
+    int value;
+
+    if ((flags[pPage] & HOOKED) != 0){
+        value = hooks[pPage].read(this, pAddress) & 0xffff;
+    }
+    else{
+        value = pages[pPage][pAddress & PAGE_OFFSET_MASK] & 0xffff;
+    }
+
+    if ((flags[pPage] & WATCHED) != 0){
+        checkWatchpoints(pPage, pAddress, value, Watchpoint.READ);
+    }
+
+    return(value);
+
+}//end of MemorySet::readSlow
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::write16
+//
+// Writes the low 16 bits of pValue to pAddress. Plain pages are written
+// directly to the page array; hooked and code pages take the slow path.
+//
+
+public void write16(int pAddress, int pValue)
+{
+
+    pAddress &= addressMask;
+    int page = pAddress >>> PAGE_BITS;
+
+    if (flags[page] != 0) {writeSlow(page, pAddress, pValue); return;}
+
+    pages[page][pAddress & PAGE_OFFSET_MASK] = (short)pValue;
+
+}//end of MemorySet::write16
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::writeSlow
+//
+// Writes pValue to pAddress in page pPage through the page's hook if it has
+// one, invalidates any decoded instruction at that address if the page holds
+// code, and checks the page's watchpoints if it is watched.
+//
+// While the space is traced, the old value of the word is first given to the
+// tracer. A hook stores through poke, which gives the tracer the old values
+// of the words the hook actually changes.
+//
+
+private void writeSlow(int pPage, int pAddress, int pValue)
+{
+
+    if ((flags[pPage] & COPY_ON_WRITE) != 0) {copyPage(pPage);}
+
+    if ((flags[pPage] & HOOKED) != 0){
+        hooks[pPage].write(this, pAddress, pValue & 0xffff);
+    }
+    else{
+        if ((flags[pPage] & TRACED) != 0){
+            tracer.recordWrite(this, pAddress,
+                            pages[pPage][pAddress & PAGE_OFFSET_MASK] & 0xffff);
+        }
+        if ((flags[pPage] & CHECKED) != 0){
+            checkWrite(pPage, pAddress, pValue);
+        }
+        pages[pPage][pAddress & PAGE_OFFSET_MASK] = (short)pValue;
+    }
+
+    if ((flags[pPage] & CODE) != 0) {invalidateCode(pPage, pAddress);}
+
+    if ((flags[pPage] & WATCHED) != 0){
+        checkWatchpoints(pPage, pAddress, pValue & 0xffff, Watchpoint.WRITE);
+    }
+
+}//end of MemorySet::writeSlow
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::checkWatchpoints
+//
+// Checks an access of kind pAccess of pValue at pAddress against each
+// watchpoint for page pPage.
+//
+
+private void checkWatchpoints(int pPage, int pAddress, int pValue,
+                                                                  int pAccess)
+{
+
+    Watchpoint[] list = watchpoints[pPage];
+
+    for (int i = 0; i < list.length; i++){
+        list[i].check(pAddress, pValue, pAccess);
+    }
+
+}//end of MemorySet::checkWatchpoints
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::peek
+//
+// Returns the word stored at pAddress without calling any hook. Used by hooks
+// and by the debugger to access the underlying storage.
+//
+
+public int peek(int pAddress)
+{
+
+    pAddress &= addressMask;
+
+    return(pages[pAddress >>> PAGE_BITS][pAddress & PAGE_OFFSET_MASK] & 0xffff);
+
+}//end of MemorySet::peek
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::poke
+//
+// Stores pValue at pAddress without calling any hook. Any decoded instruction
+// at that address is still invalidated, and the write is still traced.
+//
+
+public void poke(int pAddress, int pValue)
+{
+
+    pAddress &= addressMask;
+    int page = pAddress >>> PAGE_BITS;
+
+    if ((flags[page] & COPY_ON_WRITE) != 0) {copyPage(page);}
+
+    if ((flags[page] & TRACED) != 0){
+        tracer.recordWrite(this, pAddress,
+                             pages[page][pAddress & PAGE_OFFSET_MASK] & 0xffff);
+    }
+
+    if ((flags[page] & CHECKED) != 0) {checkWrite(page, pAddress, pValue);}
+
+    pages[page][pAddress & PAGE_OFFSET_MASK] = (short)pValue;
+
+    if ((flags[page] & CODE) != 0) {invalidateCode(page, pAddress);}
+
+}//end of MemorySet::poke
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::checkWrite
+//
+// Records whether a write of pValue to pAddress in page pPage, made while
+// the writes are checked, changes the word stored there.
+//
+
+private void checkWrite(int pPage, int pAddress, int pValue)
+{
+
+    if (pages[pPage][pAddress & PAGE_OFFSET_MASK] != (short)pValue){
+        wordChanged = true;
+    }
+
+}//end of MemorySet::checkWrite
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::startWriteCheck
+//
+// Starts checking whether any write changes a word of the space, such as to
+// find whether a pass of a loop changes anything. Every write takes the
+// slow path until endWriteCheck is called. A write through a hook is checked
+// only as far as the hook stores words through poke.
+//
+// The flags of every page are swapped for a copy with CHECKED added, which
+// costs far less than looking at each page as it is written. The space must
+// not be accessed by another thread during the check.
+//
+
+public void startWriteCheck()
+{
+
+    if (checkFlags == null) {checkFlags = new byte[numPages];}
+
+    for (int p = 0; p < numPages; p++){
+        checkFlags[p] = (byte)(flags[p] | CHECKED);
+    }
+
+    normalFlags = flags;
+    flags = checkFlags;
+
+    wordChanged = false;
+
+}//end of MemorySet::startWriteCheck
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::endWriteCheck
+//
+// Ends the check started by startWriteCheck, keeping any change made to the
+// page flags meanwhile. Returns true if any write changed a word.
+//
+
+public boolean endWriteCheck()
+{
+
+    for (int p = 0; p < numPages; p++){
+        normalFlags[p] = (byte)(checkFlags[p] & ~CHECKED);
+    }
+
+    flags = normalFlags;
+
+    return(wordChanged);
+
+}//end of MemorySet::endWriteCheck
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::invalidateCode
+//
+// Invalidates any decoded instruction which includes the word at pAddress in
+// each decode cache for page pPage.
+//
+
+private void invalidateCode(int pPage, int pAddress)
+{
+
+    DecodeCache[] caches = codeCaches[pPage];
+
+    for (int i = 0; i < caches.length; i++) {caches[i].invalidate(pAddress);}
+
+}//end of MemorySet::invalidateCode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::load
+//
+// Copies pWords into the space starting at pAddress, bypassing any hooks.
+// Decoded instructions in code pages are invalidated.
+//
+
+public void load(int pAddress, short[] pWords)
+{
+
+    for (int i = 0; i < pWords.length; i++) {poke(pAddress + i, pWords[i]);}
+
+}//end of MemorySet::load
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::load
+//
+// Copies pLength words from pWords, starting at its position, into the space
+// starting at pAddress as load does for an array. Pages of plain memory are
+// filled straight from the buffer with a bulk get, so the words of a buffer
+// mapped from a file are copied only once, into the page storage. Other
+// pages are stored a word at a time through poke.
+//
+
+public void load(int pAddress, ShortBuffer pWords, int pLength)
+{
+
+    int address = pAddress & addressMask;
+    int left = pLength;
+
+    while (left > 0){
+
+        int page = address >>> PAGE_BITS;
+        int offset = address & PAGE_OFFSET_MASK;
+        int n = Math.min(left, PAGE_SIZE - offset);
+
+        if ((flags[page] & ~COPY_ON_WRITE) == 0){
+            if (flags[page] != 0) {copyPage(page);}
+            pWords.get(pages[page], offset, n);
+        }
+        else{
+            for (int i = 0; i < n; i++) {poke(address + i, pWords.get());}
+        }
+
+        address = (address + n) & addressMask;
+        left -= n;
+
+    }
+
+}//end of MemorySet::load
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::getPage
+//
+// Returns the storage array for the page containing pAddress. The array can
+// be accessed directly by code which handles large buffers, such as a DMA
+// transfer, but writes made this way do not call hooks or invalidate code.
+// A page held by a snapshot is first given its own storage so that it can
+// be written.
+//
+
+public short[] getPage(int pAddress)
+{
+
+    int page = (pAddress & addressMask) >>> PAGE_BITS;
+
+    if ((flags[page] & COPY_ON_WRITE) != 0) {copyPage(page);}
+
+    return(pages[page]);
+
+}//end of MemorySet::getPage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::setHook
+//
+// Installs pHook to handle all accesses to the pages from pAddress through
+// pAddress + pLength - 1. A null pHook returns the pages to plain memory.
+//
+
+public void setHook(int pAddress, int pLength, MemoryHook pHook)
+{
+
+    for (int p = firstPage(pAddress); p <= lastPage(pAddress, pLength); p++){
+
+        hooks[p] = pHook;
+
+        if (pHook != null) {flags[p] |= HOOKED;}
+        else {flags[p] &= ~HOOKED;}
+
+    }
+
+}//end of MemorySet::setHook
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::addWatchpoint
+//
+// Adds pWatch to the watchpoints of each page it covers and flags the pages
+// as watched. Core.addWatchpoint should normally be used instead so that the
+// core is stopped when the watchpoint is triggered.
+//
+
+public void addWatchpoint(Watchpoint pWatch)
+{
+
+    for (int p = firstPage(pWatch.start); p <= lastPage(pWatch.start,
+                                                  pWatch.getLength()); p++){
+
+        Watchpoint[] list = watchpoints[p];
+
+        if (list == null) {list = new Watchpoint[0];}
+
+        list = Arrays.copyOf(list, list.length + 1);
+        list[list.length - 1] = pWatch;
+
+        watchpoints[p] = list;
+        flags[p] |= WATCHED;
+
+    }
+
+    numWatchpoints++;
+
+}//end of MemorySet::addWatchpoint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::removeWatchpoint
+//
+// Removes pWatch from the pages it covers. Pages left with no watchpoints
+// return to the fast path.
+//
+
+public void removeWatchpoint(Watchpoint pWatch)
+{
+
+    boolean found = false;
+
+    for (int p = firstPage(pWatch.start); p <= lastPage(pWatch.start,
+                                                  pWatch.getLength()); p++){
+
+        Watchpoint[] list = watchpoints[p];
+        if (list == null) {continue;}
+
+        int n = 0;
+        for (Watchpoint w : list) {if (w != pWatch) {list[n++] = w;}}
+
+        if (n == list.length) {continue;}
+
+        found = true;
+
+        if (n == 0){
+            watchpoints[p] = null;
+            flags[p] &= ~WATCHED;
+        }
+        else{
+            watchpoints[p] = Arrays.copyOf(list, n);
+        }
+
+    }
+
+    if (found) {numWatchpoints--;}
+
+}//end of MemorySet::removeWatchpoint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::findWatchpoint
+//
+// Returns the first watchpoint which would be triggered by an access of kind
+// pAccess of pValue at pAddress, or null if there is none. Used when running
+// in reverse, where the watchpoints are not triggered by the accesses.
+//
+
+public Watchpoint findWatchpoint(int pAddress, int pValue, int pAccess)
+{
+
+    Watchpoint[] list = watchpoints[(pAddress & addressMask) >>> PAGE_BITS];
+
+    if (list == null) {return(null);}
+
+    for (Watchpoint w : list){
+        if (w.covers(pAddress, pAccess) && w.isMet(pAddress, pValue)){
+            return(w);
+        }
+    }
+
+    return(null);
+
+}//end of MemorySet::findWatchpoint
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::setTracer
+//
+// Sets pTracer to be given the old value of every word written, or stops
+// tracing if pTracer is null. All pages take the slow path on writes while
+// traced; reads are not affected.
+//
+
+public void setTracer(TraceRecorder pTracer)
+{
+
+    tracer = pTracer;
+
+    for (int p = 0; p < numPages; p++){
+        if (pTracer != null) {flags[p] |= TRACED;}
+        else {flags[p] &= ~TRACED;}
+    }
+
+}//end of MemorySet::setTracer
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::hasWatchpoints
+//
+// Returns true if any address in the space is watched.
+//
+
+public boolean hasWatchpoints()
+{
+
+    return(numWatchpoints > 0);
+
+}//end of MemorySet::hasWatchpoints
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::setCodeCache
+//
+// Marks the pages from pAddress through pAddress + pLength - 1 as holding code
+// decoded into pCache -- writes to those pages will invalidate the decoded
+// instructions. Any caches previously set for the pages are replaced. A null
+// pCache unmarks the pages.
+//
+// The decode cache is indexed by program address, so this should only be
+// applied to pages whose address in this space is the same as their address
+// in program space.
+//
+
+public void setCodeCache(int pAddress, int pLength, DecodeCache pCache)
+{
+
+    for (int p = firstPage(pAddress); p <= lastPage(pAddress, pLength); p++){
+
+        if (pCache != null){
+            codeCaches[p] = new DecodeCache[] {pCache};
+            flags[p] |= CODE;
+        }
+        else{
+            codeCaches[p] = null;
+            flags[p] &= ~CODE;
+        }
+
+    }
+
+}//end of MemorySet::setCodeCache
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::addCodeCache
+//
+// Adds pCache to the decode caches to be invalidated when the pages from
+// pAddress through pAddress + pLength - 1 are written. Used when program
+// pages are shared by several cores, each with its own decode cache.
+//
+
+public void addCodeCache(int pAddress, int pLength, DecodeCache pCache)
+{
+
+    for (int p = firstPage(pAddress); p <= lastPage(pAddress, pLength); p++){
+
+        DecodeCache[] caches = codeCaches[p];
+
+        if (caches == null) {caches = new DecodeCache[0];}
+
+        caches = Arrays.copyOf(caches, caches.length + 1);
+        caches[caches.length - 1] = pCache;
+
+        codeCaches[p] = caches;
+        flags[p] |= CODE;
+
+    }
+
+}//end of MemorySet::addCodeCache
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::replaceCodeCache
+//
+// Replaces pOld with pNew in the decode caches of every page. Used when a
+// core gives up its own decode cache for one shared with other chips.
+//
+
+public void replaceCodeCache(DecodeCache pOld, DecodeCache pNew)
+{
+
+    for (int p = 0; p < numPages; p++){
+
+        DecodeCache[] caches = codeCaches[p];
+        if (caches == null) {continue;}
+
+        for (int i = 0; i < caches.length; i++){
+            if (caches[i] == pOld) {caches[i] = pNew;}
+        }
+
+    }
+
+}//end of MemorySet::replaceCodeCache
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::sharePages
+//
+// Maps the storage of the pages of pSource from pAddress through
+// pAddress + pLength - 1 into the same addresses of this space. Afterwards,
+// a write in either space is seen in both.
+//
+
+public void sharePages(MemorySet pSource, int pAddress, int pLength)
+{
+
+    for (int p = firstPage(pAddress); p <= lastPage(pAddress, pLength); p++){
+
+        leaveSharers(p);
+
+        pages[p] = pSource.pages[p];
+
+        //the storage may be held by a snapshot
+        flags[p] = (byte)(flags[p] & ~COPY_ON_WRITE
+                                      | pSource.flags[p] & COPY_ON_WRITE);
+
+        //join every space already sharing the source's storage
+
+        MemorySet[] group = pSource.sharers[p];
+        group = group == null ? new MemorySet[1]
+                                : Arrays.copyOf(group, group.length + 1);
+        group[group.length - 1] = pSource;
+
+        for (MemorySet m : group) {m.sharers[p] = addSharer(m.sharers[p]);}
+
+        sharers[p] = group;
+
+    }
+
+}//end of MemorySet::sharePages
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::unsharePages
+//
+// Gives the pages from pAddress through pAddress + pLength - 1 their own
+// storage, initialized with a copy of the words currently seen there.
+//
+
+public void unsharePages(int pAddress, int pLength)
+{
+
+    for (int p = firstPage(pAddress); p <= lastPage(pAddress, pLength); p++){
+        leaveSharers(p);
+        pages[p] = pages[p].clone();
+        flags[p] &= ~COPY_ON_WRITE;
+    }
+
+}//end of MemorySet::unsharePages
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::addSharer
+//
+// Returns a copy of pSharers, which may be null, with this space added.
+//
+
+private MemorySet[] addSharer(MemorySet[] pSharers)
+{
+
+    MemorySet[] list = pSharers == null ? new MemorySet[1]
+                                : Arrays.copyOf(pSharers, pSharers.length + 1);
+
+    list[list.length - 1] = this;
+
+    return(list);
+
+}//end of MemorySet::addSharer
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::leaveSharers
+//
+// Removes this space from the spaces sharing the storage of page pPage.
+//
+
+private void leaveSharers(int pPage)
+{
+
+    if (sharers[pPage] == null) {return;}
+
+    for (MemorySet m : sharers[pPage]){
+
+        MemorySet[] list = m.sharers[pPage];
+
+        int n = 0;
+        for (MemorySet s : list) {if (s != this) {list[n++] = s;}}
+
+        m.sharers[pPage] = n == 0 ? null : Arrays.copyOf(list, n);
+
+    }
+
+    sharers[pPage] = null;
+
+}//end of MemorySet::leaveSharers
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::snapshotPages
+//
+// Returns the storage of every page for a snapshot. The storage is then
+// shared with the snapshot until each page is next written, when the page is
+// given a copy of its own.
+//
+// Every space sharing storage with this one must be included in the same
+// snapshot so that none of them can write the snapshot's pages.
+//
+
+public short[][] snapshotPages()
+{
+
+    for (int p = 0; p < numPages; p++) {flags[p] |= COPY_ON_WRITE;}
+
+    return(pages.clone());
+
+}//end of MemorySet::snapshotPages
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::restorePages
+//
+// Returns the space to the contents of pPages, as returned by snapshotPages.
+// The storage is shared with the snapshot until written. Pages which have
+// not been written since the snapshot still hold the same storage and are
+// left alone; the decoded instructions of the others are invalidated.
+//
+// The pages must be shared between the spaces as they were when the
+// snapshot was taken.
+//
+
+public void restorePages(short[][] pPages)
+{
+
+    for (int p = 0; p < numPages; p++){
+
+        if (pages[p] != pPages[p]){
+
+            pages[p] = pPages[p];
+
+            if ((flags[p] & CODE) != 0){
+                int address = p << PAGE_BITS;
+                for (int i = 0; i < PAGE_SIZE; i++){
+                    invalidateCode(p, address + i);
+                }
+            }
+
+        }
+
+        flags[p] |= COPY_ON_WRITE;
+
+    }
+
+}//end of MemorySet::restorePages
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::copyPage
+//
+// Gives page pPage, which is held by a snapshot, a copy of its storage so
+// that it can be written. Every space sharing the storage is given the same
+// copy. The copy is made while holding the old storage so that two cores
+// sharing the page cannot both copy it.
+//
+
+private void copyPage(int pPage)
+{
+
+    short[] old = pages[pPage];
+
+    synchronized(old){
+
+        //another space sharing the page may have copied it already
+        if ((flags[pPage] & COPY_ON_WRITE) == 0) {return;}
+
+        short[] copy = old.clone();
+
+        if (sharers[pPage] != null){
+            for (MemorySet m : sharers[pPage]){
+                if (m.pages[pPage] == old){
+                    m.pages[pPage] = copy;
+                    m.flags[pPage] &= ~COPY_ON_WRITE;
+                }
+            }
+        }
+
+        pages[pPage] = copy;
+        flags[pPage] &= ~COPY_ON_WRITE;
+
+    }
+
+}//end of MemorySet::copyPage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::firstPage
+//
+// Returns the index of the page containing pAddress.
+//
+
+private int firstPage(int pAddress)
+{
+
+    return((pAddress & addressMask) >>> PAGE_BITS);
+
+}//end of MemorySet::firstPage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::lastPage
+//
+// Returns the index of the page containing the last word of the pLength words
+// starting at pAddress.
+//
+
+private int lastPage(int pAddress, int pLength)
+{
+
+    return(Math.min(((pAddress & addressMask) + pLength - 1) >>> PAGE_BITS,
+                                                               numPages - 1));
+
+}//end of MemorySet::lastPage
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::getName
+//
+// Returns the name of the space.
+//
+
+public String getName()
+{
+
+    return(name);
+
+}//end of MemorySet::getName
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// MemorySet::getSize
+//
+// Returns the number of words in the space.
+//
+
+public int getSize()
+{
+
+    return(size);
+
+}//end of MemorySet::getSize
+//-----------------------------------------------------------------------------
+
+}//end of class MemorySet
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
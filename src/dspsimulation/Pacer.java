@@ -0,0 +1,187 @@
+/******************************************************************************
+* Title: Universal IDE - Pacer.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class holds the simulation back to a set speed relative to the
+* simulated chip's clock, so that the behaviour of the firmware can be
+* watched at the speed of the real chip or a multiple of it. A speed of 1 is
+* real time, 2 is twice real time, 0.5 is half, and 0 -- the default -- is as
+* fast as the host can go.
+*
+* Whatever runs the cores calls pace with the cycle count reached after each
+* quantum, and pace sleeps until the host's clock has caught up with the
+* time simulated. The time due is reckoned from the cycle count and time at
+* which pacing started rather than from the last call, so the error of each
+* sleep does not add up. If the host falls well behind, such as when it
+* cannot simulate the chip that fast or the run was stopped for a while,
+* pacing starts afresh from there rather than racing to catch up.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.util.concurrent.locks.LockSupport;
+
+//-----------------------------------------------------------------------------
+// class Pacer
+//
+
+public class Pacer
+{
+
+    //the simulated chip's clock in cycles per second
+    long clockRate = DEFAULT_CLOCK_RATE;
+
+    //simulated time per second of real time -- 0 for as fast as possible
+    double speed;
+
+    //the host's clock in nanoseconds and the cycle count when pacing
+    //started -- startNanos is 0 until the first call to pace
+    long startNanos;
+    long startCycles;
+
+    public static final long DEFAULT_CLOCK_RATE = 100000000;
+
+    //how far the host may fall behind before pacing starts afresh
+    static final long MAX_LAG_NANOS = 100000000;
+
+//-----------------------------------------------------------------------------
+// Pacer::Pacer (constructor)
+//
+
+public Pacer()
+{
+
+}//end of Pacer::Pacer (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Pacer::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+}//end of Pacer::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Pacer::pace
+//
+// Waits until the real time since pacing started is that simulated by the
+// cycles run since then, pCycles being the cycle count now reached. Returns
+// at once if running as fast as possible.
+//
+
+public void pace(long pCycles)
+{
+
+    if (speed <= 0) {return;}
+
+    long now = System.nanoTime();
+
+    if (startNanos == 0 || pCycles < startCycles){
+        startNanos = now; startCycles = pCycles;
+        return;
+    }
+
+    long due = startNanos
+        + (long)((pCycles - startCycles) * (1e9 / (clockRate * speed)));
+
+    long ahead = due - now;
+
+    if (ahead > 0) {LockSupport.parkNanos(ahead);}
+    else
+    if (-ahead > MAX_LAG_NANOS) {startNanos = now; startCycles = pCycles;}
+
+}//end of Pacer::pace
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Pacer::setSpeed
+//
+// Sets the simulated time run per second of real time -- 1 for real time, N
+// for N times real time, 0 for as fast as possible. Pacing starts afresh
+// from the next call to pace.
+//
+
+public void setSpeed(double pSpeed)
+{
+
+    speed = Math.max(0, pSpeed);
+    startNanos = 0;
+
+}//end of Pacer::setSpeed
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Pacer::getSpeed
+//
+// Returns the simulated time run per second of real time, or 0 if running
+// as fast as possible.
+//
+
+public double getSpeed()
+{
+
+    return(speed);
+
+}//end of Pacer::getSpeed
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Pacer::isPacing
+//
+// Returns true if the speed is held back to a multiple of real time.
+//
+
+public boolean isPacing()
+{
+
+    return(speed > 0);
+
+}//end of Pacer::isPacing
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Pacer::setClockRate
+//
+// Sets the simulated chip's clock to pRate cycles per second.
+//
+
+public void setClockRate(long pRate)
+{
+
+    clockRate = Math.max(1, pRate);
+    startNanos = 0;
+
+}//end of Pacer::setClockRate
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Pacer::getClockRate
+//
+// Returns the simulated chip's clock in cycles per second.
+//
+
+public long getClockRate()
+{
+
+    return(clockRate);
+
+}//end of Pacer::getClockRate
+//-----------------------------------------------------------------------------
+
+}//end of class Pacer
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
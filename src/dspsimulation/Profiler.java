@@ -0,0 +1,188 @@
+/******************************************************************************
+* Title: Universal IDE - Profiler.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class counts the executions and the cycles of the instruction at each
+* program address while a core is being profiled, so that the time spent in
+* each part of the firmware can be found.
+*
+* The counts are kept in arrays indexed by address, so recording an
+* instruction creates nothing. The cycles of an instruction are those it
+* used itself, including the extra cycles of a conditional instruction whose
+* condition was met. Each pass of a repeated instruction is counted as an
+* execution.
+*
+* The profiles of several cores, or of the same core over several runs, may
+* be added together.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.util.Arrays;
+
+//-----------------------------------------------------------------------------
+// class Profiler
+//
+
+public class Profiler
+{
+
+    int programSize;
+
+    //the number of executions and the cycles used at each program address
+    long[] counts;
+    long[] cycles;
+
+    long totalCycles;
+
+//-----------------------------------------------------------------------------
+// Profiler::Profiler (constructor)
+//
+// Creates a profiler for a program space of pProgramSize words.
+//
+
+public Profiler(int pProgramSize)
+{
+
+    programSize = pProgramSize;
+
+}//end of Profiler::Profiler (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    counts = new long[programSize];
+    cycles = new long[programSize];
+
+}//end of Profiler::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::record
+//
+// Counts an execution of the instruction at pAddress which used pCycles
+// cycles.
+//
+
+public void record(int pAddress, long pCycles)
+{
+
+    counts[pAddress]++;
+    cycles[pAddress] += pCycles;
+    totalCycles += pCycles;
+
+}//end of Profiler::record
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::add
+//
+// Adds the counts of pProfiler to this profile.
+//
+
+public void add(Profiler pProfiler)
+{
+
+    int n = Math.min(programSize, pProfiler.programSize);
+
+    for (int i = 0; i < n; i++){
+        counts[i] += pProfiler.counts[i];
+        cycles[i] += pProfiler.cycles[i];
+    }
+
+    totalCycles += pProfiler.totalCycles;
+
+}//end of Profiler::add
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::clear
+//
+// Sets all counts to zero.
+//
+
+public void clear()
+{
+
+    Arrays.fill(counts, 0);
+    Arrays.fill(cycles, 0);
+    totalCycles = 0;
+
+}//end of Profiler::clear
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::getCount
+//
+// Returns the number of times the instruction at pAddress was executed.
+//
+
+public long getCount(int pAddress)
+{
+
+    return(counts[pAddress]);
+
+}//end of Profiler::getCount
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::getCycles
+//
+// Returns the cycles used by the instruction at pAddress.
+//
+
+public long getCycles(int pAddress)
+{
+
+    return(cycles[pAddress]);
+
+}//end of Profiler::getCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::getTotalCycles
+//
+// Returns the cycles used by all instructions profiled.
+//
+
+public long getTotalCycles()
+{
+
+    return(totalCycles);
+
+}//end of Profiler::getTotalCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Profiler::getProgramSize
+//
+// Returns the number of program addresses profiled.
+//
+
+public int getProgramSize()
+{
+
+    return(programSize);
+
+}//end of Profiler::getProgramSize
+//-----------------------------------------------------------------------------
+
+}//end of class Profiler
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
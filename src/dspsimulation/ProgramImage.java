@@ -0,0 +1,256 @@
+/******************************************************************************
+* Title: Universal IDE - ProgramImage.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class holds an assembled program ready to be loaded into the program
+* memory of a simulated chip. The program is stored as blocks of words, each
+* with the address of its first word.
+*
+* A program image can be read from an Intel format hex file such as those
+* created by the TI hex conversion utility when run with the -i option and a
+* memory and ROM width of 16 bits. The words are stored high byte first and
+* the record addresses are byte addresses, so they are halved to get the word
+* addresses.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+//-----------------------------------------------------------------------------
+// class ProgramImage
+//
+
+public class ProgramImage
+{
+
+    ArrayList<Integer> addresses;
+    ArrayList<short[]> blocks;
+
+    //address at which execution begins -- -1 uses the chip's reset vector
+    public int entryPoint = -1;
+
+//-----------------------------------------------------------------------------
+// ProgramImage::ProgramImage (constructor)
+//
+
+public ProgramImage()
+{
+
+}//end of ProgramImage::ProgramImage (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    addresses = new ArrayList<Integer>();
+    blocks = new ArrayList<short[]>();
+
+}//end of ProgramImage::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::addBlock
+//
+// Adds the block of words pWords which is to be loaded starting at pAddress.
+//
+
+public void addBlock(int pAddress, short[] pWords)
+{
+
+    addresses.add(pAddress);
+    blocks.add(pWords);
+
+}//end of ProgramImage::addBlock
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::getNumBlocks
+//
+// Returns the number of blocks in the image.
+//
+
+public int getNumBlocks()
+{
+
+    return(blocks.size());
+
+}//end of ProgramImage::getNumBlocks
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::getAddress
+//
+// Returns the address of the first word of block pIndex.
+//
+
+public int getAddress(int pIndex)
+{
+
+    return(addresses.get(pIndex));
+
+}//end of ProgramImage::getAddress
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::getWords
+//
+// Returns the words of block pIndex.
+//
+
+public short[] getWords(int pIndex)
+{
+
+    return(blocks.get(pIndex));
+
+}//end of ProgramImage::getWords
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::loadIntelHex
+//
+// Reads an Intel format hex file pFile and returns the program image.
+// Consecutive data records are merged into a single block.
+//
+// Throws an IOException if the file cannot be read or is not valid.
+//
+
+public static ProgramImage loadIntelHex(File pFile) throws IOException
+{
+
+    ProgramImage image = new ProgramImage();
+    image.init();
+
+    ArrayList<Short> block = new ArrayList<Short>();
+    int blockAddress = 0, nextAddress = -1, base = 0, lineNum = 0;
+
+    BufferedReader reader = new BufferedReader(
+                   new InputStreamReader(new FileInputStream(pFile), "UTF-8"));
+
+    try {
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+
+            lineNum++;
+            line = line.trim();
+            if (line.isEmpty()) {continue;}
+
+            if (line.charAt(0) != ':' || line.length() < 11){
+                throw new IOException(
+                        pFile.getName() + " line " + lineNum + ": bad record");
+            }
+
+            int count = parseHex(line, 1, 2);
+            int offset = parseHex(line, 3, 4);
+            int type = parseHex(line, 7, 2);
+
+            if (line.length() < 11 + count * 2){
+                throw new IOException(
+                    pFile.getName() + " line " + lineNum + ": record too short");
+            }
+
+            if (type == 1) {break;}   //end of file record
+
+            if (type == 2) {base = parseHex(line, 9, 4) << 4; continue;}
+            if (type == 4) {base = parseHex(line, 9, 4) << 16; continue;}
+            if (type != 0) {continue;}
+
+            int address = (base + offset) / 2;
+
+            //start a new block if this record does not follow the last one
+            if (address != nextAddress){
+                image.addBlock(blockAddress, toArray(block));
+                block.clear();
+                blockAddress = address;
+            }
+
+            for (int i = 0; i + 1 < count; i += 2){
+                block.add((short)parseHex(line, 9 + i * 2, 4));
+            }
+
+            nextAddress = address + count / 2;
+
+        }
+
+        image.addBlock(blockAddress, toArray(block));
+
+    }
+    finally {
+        reader.close();
+    }
+
+    //remove the empty block added when the first record was read
+    for (int i = image.blocks.size() - 1; i >= 0; i--){
+        if (image.blocks.get(i).length == 0){
+            image.blocks.remove(i);
+            image.addresses.remove(i);
+        }
+    }
+
+    return(image);
+
+}//end of ProgramImage::loadIntelHex
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::parseHex
+//
+// Returns the value of the pLength hex digits starting at pStart in pLine.
+//
+
+private static int parseHex(String pLine, int pStart, int pLength)
+                                                            throws IOException
+{
+
+    try {
+        return(Integer.parseInt(pLine.substring(pStart, pStart+pLength), 16));
+    }
+    catch(NumberFormatException e){
+        throw new IOException("Invalid hex digits in record: " + pLine);
+    }
+
+}//end of ProgramImage::parseHex
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// ProgramImage::toArray
+//
+// Returns the words in pList as an array.
+//
+
+private static short[] toArray(ArrayList<Short> pList)
+{
+
+    short[] words = new short[pList.size()];
+
+    for (int i = 0; i < words.length; i++) {words[i] = pList.get(i);}
+
+    return(words);
+
+}//end of ProgramImage::toArray
+//-----------------------------------------------------------------------------
+
+}//end of class ProgramImage
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
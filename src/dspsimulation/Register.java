@@ -5,8 +5,9 @@
 *
 * Purpose:
 *
-* This class provides base functionality for a DSP data register.  Each type of
-* register should be a sub-class of this base class.
+* This class provides a view of one register in a RegisterSet for use by the
+* user interface. The value itself is held in the register file -- the
+* simulation reads and writes the file directly by register id.
 *
 * Open Source Policy:
 *
@@ -21,18 +22,17 @@ package dspsimulation;
 // class Register
 //
 
-class Register
+public class Register
 {
 
-    //the register's text name and a suitable abbreviation
+    //the register file holding the register and the register's id in it
 
-    String name, shortName;
+    RegisterSet registerSet;
+    int id;
 
-    //this value holds the register data -- it is generally has more bits than
-    //the actual register, so a mask is used to strip off any extra upper bits
-    //which might be set by calculation overflow
+    //the register's text name and a suitable abbreviation
 
-    long value;
+    String name, shortName;
 
     //width of the data bus used to read and write to the register
     //all values will be truncated to this width when read from or written to
@@ -47,35 +47,20 @@ class Register
 
     int numBits;
 
-    //mask used to strip off upper bits of value used to contain a register
-    //the value usually has more bits that the register actually holds, so
-    //the value is masked to remove any overflow bits
-
-    long bitMask;
-
-    //mask used to strip off upper bits of value to fit the specified bus
-    //width -- the value is truncated when it is read or written to remove
-    //any extra overflow bits
-
-    long busMask;
-
-    static int DECIMAL = 0;
-    static int HEX = 1;
-    static int BINARY = 2;
+    public static final int DECIMAL = 0;
+    public static final int HEX = 1;
+    public static final int BINARY = 2;
 
 //-----------------------------------------------------------------------------
 // Register::Register (constructor)
 //
-// Sets up a new register with name pName, name abbreviation pShortName, and
-// which contains pNumBits number of bits and is accessed via a bus with bit
-// width pBusWidth.
+// Sets up a view of register pId in register file pRegisterSet.
 //
 
-Register(String pName, String pShortName, int pNumBits, int pBusWidth)
+Register(RegisterSet pRegisterSet, int pId)
 {
 
-    name = pName; shortName = pShortName;
-    numBits = pNumBits; busWidth = pBusWidth;
+    registerSet = pRegisterSet; id = pId;
 
 }//end of Register::Register (constructor)
 //-----------------------------------------------------------------------------
@@ -89,52 +74,46 @@ Register(String pName, String pShortName, int pNumBits, int pBusWidth)
 public void init()
 {
 
-    //create a bit mask with a 1 in every valid bit position for use in masking
-    //off overflow bits
-
-    bitMask = 0;
-    for (int i=0; i<numBits; i++){
+    name = registerSet.names[id]; shortName = registerSet.shortNames[id];
+    numBits = registerSet.numBits[id]; busWidth = registerSet.busWidths[id];
 
-        bitMask = bitMask << 1;
-        bitMask += 1;
-
-    }
-
-    //create a bit mask with a 1 in every valid bit position of the bus -- used
-    //to truncate register value to fit the bus by stripping off any upper
-    //overflow bits
+}//end of Register::init
+//-----------------------------------------------------------------------------
 
-    busMask = 0;
-    for (int i=0; i<numBits; i++){
+//-----------------------------------------------------------------------------
+// Register::getValue
+//
+// Returns the entire value of the register including any guard bits.
+//
 
-        busMask = busMask << 1;
-        busMask += 1;
+public long getValue()
+{
 
-    }
+    return(registerSet.value[id]);
 
-}//end of Register::init
+}//end of Register::getValue
 //-----------------------------------------------------------------------------
 
 //-----------------------------------------------------------------------------
 // Register::write
 //
-// Writes a data value to the register. Any bits above the width of the data
-// bus are zeroed as would be true in the actual DSP.
+// Writes data value pValue to the register. Any bits above the width of the
+// data bus are zeroed as would be true in the actual DSP.
 //
 // The value is shifted left for positive pShift or right for negative pShift
 // before being stored.
 //
 
-public void write(int pShift)
+public void write(long pValue, int pShift)
 {
 
     //mask value first and then shift it for writing
 
-    long lValue = value & busMask;
+    long lValue = pValue & registerSet.busMask[id];
 
     lValue = shift(lValue, pShift);
 
-    value = lValue;
+    registerSet.set(id, lValue);
 
 }//end of Register::write
 //-----------------------------------------------------------------------------
@@ -156,9 +135,9 @@ public long read(int pShift)
 
     //shift value first and then mask it for reading
 
-    long lValue = shift(value, pShift);
+    long lValue = shift(registerSet.value[id], pShift);
 
-    lValue = lValue & busMask;
+    lValue = lValue & registerSet.busMask[id];
 
     return(lValue);
 
@@ -177,21 +156,44 @@ public long read(int pShift)
 public long shift(long pValue, int pShift)
 {
 
-    //shift left for positive pShift
-    if (pShift > 0){
-        pValue = pValue << pShift;
-    }
+    //one of the two shift counts is always zero -- negative is all ones for
+    //a negative pShift, so no branch is needed to pick the direction
 
-    //shift right for negative pShift
-    if (pShift < 0){
-        pValue = pValue >> Math.abs(pShift);
-    }
+    int negative = pShift >> 31;
 
-    return(pValue);
+    return((pValue << (pShift & ~negative)) >> (-pShift & negative));
 
 }//end of Register::shift
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// Register::getName
+//
+// Returns the register's name.
+//
+
+public String getName()
+{
+
+    return(name);
+
+}//end of Register::getName
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Register::getShortName
+//
+// Returns the register's abbreviated name.
+//
+
+public String getShortName()
+{
+
+    return(shortName);
+
+}//end of Register::getShortName
+//-----------------------------------------------------------------------------
+
 //-----------------------------------------------------------------------------
 // Register::toString
 //
@@ -212,17 +214,17 @@ public String toString(int pBase)
     String s = null;
 
     if(pBase == Register.DECIMAL){
-        s = Long.toString(value, 10) + "d";
+        s = Long.toString(getValue(), 10) + "d";
     }
     else
     if(pBase == Register.HEX){
-        s = Long.toString(value, 16);
+        s = Long.toString(getValue(), 16);
         if (s.length() % 2 != 0) {s = " " + s;}
         s = s + "h";
     }
     else
     if(pBase == Register.BINARY){
-        s = Long.toString(value, 2) + "b";
+        s = Long.toString(getValue(), 2) + "b";
     }
 
     return(s);
@@ -6,7 +6,14 @@
 * Purpose:
 *
 * This class manages a collection of registers for a simulated DSP.
-* The instructions are added to a list in this class.
+*
+* The registers are stored as a register file: the value of each register is
+* an element of a long array indexed by the register's id, and the masks
+* used to trim values to the register and bus widths are held in parallel
+* arrays. The instructions read and write the values by id without going
+* through any objects.
+*
+* Register objects are only views of the file for use by the user interface.
 *
 * Open Source Policy:
 *
@@ -17,23 +24,41 @@
 
 package dspsimulation;
 
-//-----------------------------------------------------------------------------
-
-import java.util.ArrayList;
+import java.util.Arrays;
 
+//-----------------------------------------------------------------------------
 // class RegisterSet
 //
 
-class RegisterSet
+public class RegisterSet
 {
 
-    ArrayList list;
+    //number of registers added to the file
+    int numRegisters;
+
+    //the register values indexed by register id -- each value is kept within
+    //the register's bitMask
+    public long[] value;
+
+    //mask with a 1 in every bit of each register, including any guard bits
+    public long[] bitMask;
+
+    //mask with a 1 in every bit of the bus used to read and write each
+    //register
+    public long[] busMask;
+
+    String[] names;
+    String[] shortNames;
+    int[] numBits;
+    int[] busWidths;
+
+    static final int INITIAL_CAPACITY = 32;
 
 //-----------------------------------------------------------------------------
 // RegisterSet::RegisterSet (constructor)
 //
 
-RegisterSet()
+public RegisterSet()
 {
 
 }//end of RegisterSet::RegisterSet (constructor)
@@ -48,8 +73,8 @@ RegisterSet()
 public void init()
 {
 
-    //create the list to hold the registers
-    list = new ArrayList();
+    numRegisters = 0;
+    setCapacity(INITIAL_CAPACITY);
 
 }//end of RegisterSet::init
 //-----------------------------------------------------------------------------
@@ -57,17 +82,184 @@ public void init()
 //-----------------------------------------------------------------------------
 // RegisterSet::addRegister
 //
-// Adds register pNew to the collection.
+// Adds a register with name pName, name abbreviation pShortName, which
+// contains pNumBits number of bits and is accessed via a bus with bit width
+// pBusWidth.
+//
+// The arrays are replaced as they grow, so all registers should be added
+// before any references to the value array are kept.
+//
+// Returns the id of the new register.
 //
 
-public void addRegister(Register pNew)
+public int addRegister(String pName, String pShortName, int pNumBits,
+                                                                int pBusWidth)
 {
 
-    list.add(pNew);
+    if (numRegisters == value.length) {setCapacity(value.length * 2);}
+
+    int id = numRegisters++;
+
+    names[id] = pName; shortNames[id] = pShortName;
+    numBits[id] = pNumBits; busWidths[id] = pBusWidth;
+
+    bitMask[id] = makeMask(pNumBits);
+    busMask[id] = makeMask(pBusWidth);
+
+    return(id);
 
 }//end of RegisterSet::addRegister
 //-----------------------------------------------------------------------------
 
+//-----------------------------------------------------------------------------
+// RegisterSet::get
+//
+// Returns the value of register pId including any guard bits.
+//
+
+public long get(int pId)
+{
+
+    return(value[pId]);
+
+}//end of RegisterSet::get
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::set
+//
+// Sets register pId to pValue. Any bits above the width of the register are
+// zeroed.
+//
+
+public void set(int pId, long pValue)
+{
+
+    value[pId] = pValue & bitMask[pId];
+
+}//end of RegisterSet::set
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::read
+//
+// Returns the value of register pId as read over the data bus. Any bits above
+// the width of the bus are zeroed as would be true in the actual DSP.
+//
+
+public long read(int pId)
+{
+
+    return(value[pId] & busMask[pId]);
+
+}//end of RegisterSet::read
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::reset
+//
+// Clears all registers.
+//
+
+public void reset()
+{
+
+    Arrays.fill(value, 0);
+
+}//end of RegisterSet::reset
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::getRegister
+//
+// Returns a view of register pId for display and editing by the user.
+//
+
+public Register getRegister(int pId)
+{
+
+    Register r = new Register(this, pId);
+    r.init();
+
+    return(r);
+
+}//end of RegisterSet::getRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::findRegister
+//
+// Returns the id of the register whose abbreviated name is pShortName,
+// ignoring case, or -1 if there is none.
+//
+
+public int findRegister(String pShortName)
+{
+
+    for (int i = 0; i < numRegisters; i++){
+        if (shortNames[i].equalsIgnoreCase(pShortName)) {return(i);}
+    }
+
+    return(-1);
+
+}//end of RegisterSet::findRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::getNumRegisters
+//
+// Returns the number of registers in the file.
+//
+
+public int getNumRegisters()
+{
+
+    return(numRegisters);
+
+}//end of RegisterSet::getNumRegisters
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::setCapacity
+//
+// Resizes the arrays to hold pCapacity registers.
+//
+
+private void setCapacity(int pCapacity)
+{
+
+    if (value == null){
+        value = new long[pCapacity]; bitMask = new long[pCapacity];
+        busMask = new long[pCapacity];
+        names = new String[pCapacity]; shortNames = new String[pCapacity];
+        numBits = new int[pCapacity]; busWidths = new int[pCapacity];
+        return;
+    }
+
+    value = Arrays.copyOf(value, pCapacity);
+    bitMask = Arrays.copyOf(bitMask, pCapacity);
+    busMask = Arrays.copyOf(busMask, pCapacity);
+    names = Arrays.copyOf(names, pCapacity);
+    shortNames = Arrays.copyOf(shortNames, pCapacity);
+    numBits = Arrays.copyOf(numBits, pCapacity);
+    busWidths = Arrays.copyOf(busWidths, pCapacity);
+
+}//end of RegisterSet::setCapacity
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// RegisterSet::makeMask
+//
+// Returns a mask with a 1 in each of the lowest pNumBits bit positions.
+//
+
+static long makeMask(int pNumBits)
+{
+
+    return(pNumBits >= 64 ? -1L : (1L << pNumBits) - 1);
+
+}//end of RegisterSet::makeMask
+//-----------------------------------------------------------------------------
 
 }//end of class RegisterSet
 //-----------------------------------------------------------------------------
@@ -0,0 +1,39 @@
+/******************************************************************************
+* Title: Universal IDE - ScheduledEvent.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This interface is implemented by objects which carry out something a
+* peripheral does at a set cycle, such as a serial port receiving a word or
+* a timer expiring. The events are posted to the core's EventScheduler.
+*
+* An event should keep no state of its own -- the state of the peripheral
+* belongs in the core it is passed, as with an Instruction. The same event
+* can then be pending in several cores at once, and the pending events of a
+* core can be copied to another core by a snapshot.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// interface ScheduledEvent
+//
+
+public interface ScheduledEvent
+{
+
+    //carries out the event for pCore -- pCycle is the cycle at which it was
+    //due, which may be slightly earlier than the core's cycle count
+    public void fire(Core pCore, long pCycle);
+
+}//end of interface ScheduledEvent
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,37 @@
+/******************************************************************************
+* Title: Universal IDE - SerialListener.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This interface is implemented by objects which receive the words a core's
+* serial port sends, such as a simulated host reading the replies of the
+* firmware.
+*
+* The words are passed on the thread running the core, in the middle of its
+* run, so the listener should do no more than store them.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// interface SerialListener
+//
+
+public interface SerialListener
+{
+
+    //receives word pValue sent by pCore -- pLast is true if the word ends a
+    //block, with nothing more queued to be sent after it
+    public void wordSent(Core pCore, int pValue, boolean pLast);
+
+}//end of interface SerialListener
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
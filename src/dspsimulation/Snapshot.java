@@ -0,0 +1,114 @@
+/******************************************************************************
+* Title: Universal IDE - Snapshot.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class holds the state of every core of a chip at one moment so that
+* the chip can be returned to that moment, such as to start each run of a
+* regression from the state after the program has booted rather than
+* rerunning the boot code.
+*
+* The memory pages are not copied. The snapshot keeps the storage arrays
+* themselves and the spaces copy a page only when it is next written -- see
+* MemorySet.snapshotPages. Taking or restoring a snapshot therefore costs
+* little more than copying the page tables, and any number of snapshots and
+* runs forked from them share every page none of them has written. The
+* register files are small enough to be copied outright.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// class Snapshot
+//
+
+public class Snapshot
+{
+
+    CoreState[] cores;
+
+//-----------------------------------------------------------------------------
+// Snapshot::Snapshot (constructor)
+//
+// Creates a snapshot to hold pNumCores cores.
+//
+
+public Snapshot(int pNumCores)
+{
+
+    cores = new CoreState[pNumCores];
+
+}//end of Snapshot::Snapshot (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Snapshot::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    for (int i = 0; i < cores.length; i++) {cores[i] = new CoreState();}
+
+}//end of Snapshot::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Snapshot::getCycles
+//
+// Returns the cycle count of core pIndex when the snapshot was taken.
+//
+
+public long getCycles(int pIndex)
+{
+
+    return(cores[pIndex].cycles);
+
+}//end of Snapshot::getCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class CoreState
+//
+// The state of one core.
+//
+
+static class CoreState
+{
+
+    long[] registers;
+
+    int pc;
+    long cycles, instructionCount;
+    boolean halted;
+    int haltAddress;
+
+    int repeatCount, repeatAddress;
+    boolean blockRepeatActive;
+    int blockStart, blockEnd, blockCount;
+
+    //the page storage of the program, data, and I/O spaces
+    short[][] program, data, io;
+
+    //state kept by a sub-class of Core -- see Core.saveExtraState
+    Object extra;
+
+    //the events pending for the core's peripherals
+    EventScheduler events;
+
+}//end of class CoreState
+//-----------------------------------------------------------------------------
+
+}//end of class Snapshot
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
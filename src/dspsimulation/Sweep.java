@@ -0,0 +1,349 @@
+/******************************************************************************
+* Title: Universal IDE - Sweep.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class runs many instances of a chip through the same program
+* together, such as to try a program with hundreds of settings of its gate
+* thresholds on the same captured input.
+*
+* The instances are made by forking a running chip: each copy starts from a
+* snapshot of the chip, so the boot code is run only once, and the copies
+* share every memory page until they write it -- see Snapshot. Only the
+* words an instance has written take memory of its own. The instances also
+* share a decode cache for each core, so each instruction is decoded and each
+* basic block is built and compiled to bytecode once for all instances
+* rather than once per instance.
+*
+* The instances are run in lockstep a quantum at a time. The cores at each
+* position are held in an array across the instances, and each is run to
+* the end of the quantum in turn, as CoreGroup does for the cores of one
+* chip. While the instances follow the same path through the program, each
+* runs the same compiled blocks as the one before it, which are already hot
+* in the host's caches. Interleaving the instances a block at a time was
+* tried and was slower: each instance's own registers and pages are then
+* cold on every block.
+*
+* The program must not modify its own code, as the shared decoded
+* instructions could then be wrong for some of the instances. Any change is
+* detected after each quantum and stops the run with an exception.
+*
+* The sweep may be paced to real time or a multiple of it as a chip is, the
+* time being that simulated by the first instance.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// class Sweep
+//
+
+public class Sweep
+{
+
+    Chip[] instances;
+
+    //the cores of every instance by position in the chip -- cores[i][k] is
+    //core i of instance k
+    Core[][] cores;
+
+    //number of cycles each core runs between synchronizations
+    long quantum = CoreGroup.DEFAULT_QUANTUM;
+
+    //holds the instances back to the set speed relative to real time
+    Pacer pacer;
+
+//-----------------------------------------------------------------------------
+// Sweep::Sweep (constructor)
+//
+// Creates a sweep whose only instance is pChip.
+//
+
+public Sweep(Chip pChip)
+{
+
+    instances = new Chip[] {pChip};
+
+}//end of Sweep::Sweep (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    arrangeCores();
+
+    pacer = new Pacer();
+    pacer.init();
+    pacer.setClockRate(instances[0].getClockRate());
+
+}//end of Sweep::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::fork
+//
+// Replaces each instance with pCopies instances in its present state -- the
+// instance itself followed by pCopies - 1 new copies. The copies of instance
+// k are therefore instances k * pCopies through k * pCopies + pCopies - 1.
+// Should not be called while the sweep is running.
+//
+
+public void fork(int pCopies)
+{
+
+    if (pCopies < 1){
+        throw new IllegalArgumentException("bad number of copies " + pCopies);
+    }
+
+    Chip[] forked = new Chip[instances.length * pCopies];
+
+    int n = 0;
+
+    for (Chip chip : instances){
+
+        Snapshot snapshot = chip.snapshot();
+
+        forked[n++] = chip;
+
+        for (int i = 1; i < pCopies; i++){
+            Chip copy = chip.createInstance();
+            copy.restore(snapshot);
+            copy.shareDecodeCaches(instances[0]);
+            forked[n++] = copy;
+        }
+
+    }
+
+    instances = forked;
+
+    arrangeCores();
+
+}//end of Sweep::fork
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::run
+//
+// Runs every instance for pNumCycles cycles from the current cycle count of
+// its first core, as Chip.run does for one chip. Breakpoints and watchpoints
+// are not checked.
+//
+
+public void run(long pNumCycles)
+{
+
+    int n = instances.length;
+
+    long[] end = new long[n];
+    long[] limit = new long[n];
+
+    for (int k = 0; k < n; k++) {end[k] = cores[0][k].cycles + pNumCycles;}
+
+    while (true){
+
+        boolean running = false;
+
+        for (int k = 0; k < n; k++){
+            if (!allDone(k, end[k])){
+                limit[k] = Math.min(minCycles(k) + quantum, end[k]);
+                running = true;
+            }
+            else{
+                limit[k] = 0;
+            }
+        }
+
+        if (!running) {break;}
+
+        for (Core[] position : cores) {runLockstep(position, limit);}
+
+        checkCode();
+
+        long reached = minCycles(0);
+        if (reached != Long.MAX_VALUE) {pacer.pace(reached);}
+
+    }
+
+}//end of Sweep::run
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::runLockstep
+//
+// Runs each core in pCores in turn until it has reached its cycle limit in
+// pLimits or has halted.
+//
+
+private void runLockstep(Core[] pCores, long[] pLimits)
+{
+
+    for (int k = 0; k < pCores.length; k++){
+
+        Core core = pCores[k];
+        long limit = pLimits[k];
+
+        while (!core.halted && core.cycles < limit) {core.runNext(limit);}
+
+    }
+
+}//end of Sweep::runLockstep
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::checkCode
+//
+// Throws an exception if the program has modified its code since the decode
+// caches were shared.
+//
+
+private void checkCode()
+{
+
+    for (Core[] position : cores){
+        if (position[0].decodeCache.codeChanged){
+            throw new IllegalStateException(
+                       "the program modified its code, which cannot be swept");
+        }
+    }
+
+}//end of Sweep::checkCode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::arrangeCores
+//
+// Fills the core arrays from the instances.
+//
+
+private void arrangeCores()
+{
+
+    int numCores = instances[0].getNumCores();
+
+    cores = new Core[numCores][instances.length];
+
+    for (int i = 0; i < numCores; i++){
+        for (int k = 0; k < instances.length; k++){
+            cores[i][k] = instances[k].getCore(i);
+        }
+    }
+
+}//end of Sweep::arrangeCores
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::allDone
+//
+// Returns true if every core of instance pIndex has reached pEnd cycles or
+// has halted.
+//
+
+private boolean allDone(int pIndex, long pEnd)
+{
+
+    for (Core[] position : cores){
+        Core core = position[pIndex];
+        if (!core.halted && core.cycles < pEnd) {return(false);}
+    }
+
+    return(true);
+
+}//end of Sweep::allDone
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::minCycles
+//
+// Returns the lowest cycle count of the cores of instance pIndex which have
+// not halted.
+//
+
+private long minCycles(int pIndex)
+{
+
+    long min = Long.MAX_VALUE;
+
+    for (Core[] position : cores){
+        Core core = position[pIndex];
+        if (!core.halted) {min = Math.min(min, core.cycles);}
+    }
+
+    return(min);
+
+}//end of Sweep::minCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::setQuantum
+//
+// Sets the number of cycles each core runs between synchronizations.
+//
+
+public void setQuantum(long pQuantum)
+{
+
+    quantum = Math.max(1, pQuantum);
+
+}//end of Sweep::setQuantum
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::setSpeed
+//
+// Sets the simulated time run per second of real time -- 1 for real time,
+// N for N times real time, 0 for as fast as possible. See Pacer.
+//
+
+public void setSpeed(double pSpeed)
+{
+
+    pacer.setSpeed(pSpeed);
+
+}//end of Sweep::setSpeed
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::getNumInstances
+//
+// Returns the number of instances.
+//
+
+public int getNumInstances()
+{
+
+    return(instances.length);
+
+}//end of Sweep::getNumInstances
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Sweep::getInstance
+//
+// Returns instance pIndex.
+//
+
+public Chip getInstance(int pIndex)
+{
+
+    return(instances[pIndex]);
+
+}//end of Sweep::getInstance
+//-----------------------------------------------------------------------------
+
+}//end of class Sweep
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,591 @@
+/******************************************************************************
+* Title: Universal IDE - TraceRecorder.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class records the execution of a core so that it can be run in
+* reverse, such as to step back from a bad result to the instruction which
+* produced it rather than rerunning from reset.
+*
+* A record is made for each instruction executed, holding only what the
+* instruction changed: the distance from the new program counter back to the
+* instruction, the cycles it took, the registers which changed, and the old
+* value of each word written to memory. Registers are stored as the exclusive
+* or of the old and new values and all numbers as variable length integers,
+* so most records take a handful of bytes.
+*
+* The records are kept in a ring buffer allocated outside the Java heap. Each
+* is framed by its length at both ends so the buffer can be read backwards
+* from the newest record and forwards from the oldest. When the buffer is
+* full, the oldest records are dropped.
+*
+* A record is undone by restoring the old values, newest first. State kept
+* outside the register file and the address spaces, such as the sub-addressed
+* peripheral register banks, is not recorded.
+*
+* A traced core steps every instruction so that each can be recorded.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+//-----------------------------------------------------------------------------
+// class TraceRecorder
+//
+
+public class TraceRecorder
+{
+
+    Core core;
+
+    //the ring buffer -- head and tail are the total number of bytes written
+    //to and dropped from the buffer; the data lies between them
+
+    ByteBuffer buffer;
+    int capacity;
+    int mask;
+    long head, tail;
+
+    int numRecords;
+
+    //the state of the core before the instruction being recorded
+
+    long[] before;
+    int pc;
+    long cycles;
+    boolean halted;
+    int repeatCount, repeatAddress;
+    boolean blockRepeatActive;
+    int blockStart, blockEnd, blockCount;
+
+    //the memory words written by the instruction being recorded
+
+    MemorySet[] writeSpace;
+    int[] writeAddress;
+    int[] writeValue;
+    int numWrites;
+
+    //set while a record is being undone so that the words restored are not
+    //recorded as writes
+    boolean undoing;
+
+    //the record being built or read
+    byte[] record;
+    int length;
+    int position;
+
+    //the address spaces in the order of the space numbers in the records
+    MemorySet[] spaces;
+
+    //default size of the ring buffer in bytes
+    public static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+    //bytes used by the length at each end of a record
+    static final int FRAME_SIZE = 2;
+    static final int MAX_LENGTH = 0xffff;
+
+    //record flag bits -- set for the parts of the core state which changed
+    static final int HALT_CHANGED = 1;
+    static final int REPEAT_COUNT = 2;
+    static final int REPEAT_ADDRESS = 4;
+    static final int BLOCK_ACTIVE = 8;
+    static final int BLOCK_START = 16;
+    static final int BLOCK_END = 32;
+    static final int BLOCK_COUNT = 64;
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::TraceRecorder (constructor)
+//
+// Creates a recorder for pCore with a ring buffer of pCapacity bytes, which
+// is rounded up to a power of two.
+//
+
+public TraceRecorder(Core pCore, int pCapacity)
+{
+
+    core = pCore;
+    capacity = Integer.highestOneBit(Math.max(pCapacity, 1024) - 1) << 1;
+
+}//end of TraceRecorder::TraceRecorder (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    buffer = ByteBuffer.allocateDirect(capacity);
+    mask = capacity - 1;
+
+    before = new long[core.registers.value.length];
+
+    writeSpace = new MemorySet[8];
+    writeAddress = new int[8];
+    writeValue = new int[8];
+
+    record = new byte[256];
+
+    spaces = new MemorySet[] {core.program, core.data, core.io};
+
+}//end of TraceRecorder::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::clear
+//
+// Discards all records.
+//
+
+public void clear()
+{
+
+    head = 0; tail = 0; numRecords = 0;
+
+}//end of TraceRecorder::clear
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::beginStep
+//
+// Saves the state of the core before it executes an instruction.
+//
+
+void beginStep()
+{
+
+    Core c = core;
+
+    c.syncRegisters();
+
+    System.arraycopy(c.registers.value, 0, before, 0,
+                                                  c.registers.numRegisters);
+
+    pc = c.pc; cycles = c.cycles; halted = c.halted;
+    repeatCount = c.repeatCount; repeatAddress = c.repeatAddress;
+    blockRepeatActive = c.blockRepeatActive;
+    blockStart = c.blockStart; blockEnd = c.blockEnd;
+    blockCount = c.blockCount;
+
+    numWrites = 0;
+
+}//end of TraceRecorder::beginStep
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::recordWrite
+//
+// Called by pSpace before pAddress is written, with the word it held in
+// pOldValue.
+//
+
+void recordWrite(MemorySet pSpace, int pAddress, int pOldValue)
+{
+
+    if (undoing) {return;}
+
+    if (numWrites == writeAddress.length){
+        int n = numWrites * 2;
+        writeSpace = Arrays.copyOf(writeSpace, n);
+        writeAddress = Arrays.copyOf(writeAddress, n);
+        writeValue = Arrays.copyOf(writeValue, n);
+    }
+
+    writeSpace[numWrites] = pSpace;
+    writeAddress[numWrites] = pAddress;
+    writeValue[numWrites++] = pOldValue;
+
+}//end of TraceRecorder::recordWrite
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::endStep
+//
+// Records the changes made by the instruction executed since beginStep.
+//
+
+void endStep()
+{
+
+    Core c = core;
+
+    c.syncRegisters();
+
+    long[] value = c.registers.value;
+    int n = c.registers.numRegisters;
+
+    //make room for the largest possible record so that the puts need not
+    //check -- each number takes at most 10 bytes
+
+    int maxSize = 2 * FRAME_SIZE + 10 * (10 + 2 * n + 1 + 3 * numWrites);
+    if (record.length < maxSize) {record = new byte[maxSize];}
+
+    //the record is built after space for its leading length
+    length = FRAME_SIZE;
+
+    putInt(zigZag(pc - c.pc));
+    putLong(c.cycles - cycles);
+
+    //a flag bit is set for each of the loop fields which changed, followed
+    //by the old values of those fields
+
+    int flags = (halted != c.halted ? HALT_CHANGED : 0)
+            | (repeatCount != c.repeatCount ? REPEAT_COUNT : 0)
+            | (repeatAddress != c.repeatAddress ? REPEAT_ADDRESS : 0)
+            | (blockRepeatActive != c.blockRepeatActive ? BLOCK_ACTIVE : 0)
+            | (blockStart != c.blockStart ? BLOCK_START : 0)
+            | (blockEnd != c.blockEnd ? BLOCK_END : 0)
+            | (blockCount != c.blockCount ? BLOCK_COUNT : 0);
+
+    putInt(flags);
+
+    if ((flags & REPEAT_COUNT) != 0) {putInt(repeatCount);}
+    if ((flags & REPEAT_ADDRESS) != 0) {putInt(repeatAddress);}
+    if ((flags & BLOCK_START) != 0) {putInt(blockStart);}
+    if ((flags & BLOCK_END) != 0) {putInt(blockEnd);}
+    if ((flags & BLOCK_COUNT) != 0) {putInt(blockCount);}
+
+    //each changed register is stored as its id plus one, ending with a zero
+
+    for (int i = 0; i < n; i++){
+        long x = value[i] ^ before[i];
+        if (x != 0) {putInt(i + 1); putLong(x);}
+    }
+
+    putInt(0);
+
+    putInt(numWrites);
+
+    for (int i = 0; i < numWrites; i++){
+        putInt(spaceNumber(writeSpace[i]));
+        putInt(writeAddress[i]); putInt(writeValue[i]);
+    }
+
+    store();
+
+}//end of TraceRecorder::endStep
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::undo
+//
+// Undoes the newest record, returning the core to its state before the
+// instruction was executed, and drops the record.
+//
+// If pWatched is not null, each word restored is checked against it and the
+// first watchpoint found for a write of the word is put in pWatched[0].
+//
+// Returns false if there are no records.
+//
+
+boolean undo(Watchpoint[] pWatched)
+{
+
+    if (numRecords == 0) {return(false);}
+
+    length = getFrame(head - FRAME_SIZE);
+    long start = head - FRAME_SIZE - length;
+
+    if (record.length < length) {record = new byte[length];}
+    for (int i = 0; i < length; i++) {record[i] = get(start + i);}
+
+    head = start - FRAME_SIZE; numRecords--;
+
+    Core c = core;
+
+    position = 0;
+
+    int oldPc = c.pc + unZigZag(getInt());
+    long cycleCount = getLong();
+    int flags = getInt();
+
+    if ((flags & REPEAT_COUNT) != 0) {c.repeatCount = getInt();}
+    if ((flags & REPEAT_ADDRESS) != 0) {c.repeatAddress = getInt();}
+    if ((flags & BLOCK_START) != 0) {c.blockStart = getInt();}
+    if ((flags & BLOCK_END) != 0) {c.blockEnd = getInt();}
+    if ((flags & BLOCK_COUNT) != 0) {c.blockCount = getInt();}
+
+    if ((flags & HALT_CHANGED) != 0) {c.halted = !c.halted;}
+    if ((flags & BLOCK_ACTIVE) != 0){
+        c.blockRepeatActive = !c.blockRepeatActive;
+    }
+
+    long[] value = c.registers.value;
+
+    for (int id = getInt(); id != 0; id = getInt()){
+        value[id - 1] ^= getLong();
+    }
+
+    int n = getInt();
+
+    //the writes are restored newest first in case a word was written twice
+
+    int[] order = new int[n * 3];
+    for (int i = 0; i < order.length; i++) {order[i] = getInt();}
+
+    undoing = true;
+
+    for (int i = n - 1; i >= 0; i--){
+
+        MemorySet space = spaces[order[i * 3]];
+        int address = order[i * 3 + 1];
+
+        if (pWatched != null && pWatched[0] == null){
+            pWatched[0] = space.findWatchpoint(address, space.peek(address),
+                                                            Watchpoint.WRITE);
+        }
+
+        space.poke(address, order[i * 3 + 2]);
+
+    }
+
+    undoing = false;
+
+    c.pc = oldPc;
+    c.cycles -= cycleCount;
+    c.instructionCount--;
+
+    c.registersChanged();
+
+    return(true);
+
+}//end of TraceRecorder::undo
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::getNumRecords
+//
+// Returns the number of instructions which can be undone.
+//
+
+public int getNumRecords()
+{
+
+    return(numRecords);
+
+}//end of TraceRecorder::getNumRecords
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::getNumBytes
+//
+// Returns the number of bytes of the ring buffer in use.
+//
+
+public long getNumBytes()
+{
+
+    return(head - tail);
+
+}//end of TraceRecorder::getNumBytes
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::store
+//
+// Frames the record built by endStep with its length and copies it into the
+// ring buffer, dropping the oldest records to make room. A record too large
+// to frame clears the trace as the instructions before it can no longer be
+// undone.
+//
+
+private void store()
+{
+
+    int payload = length - FRAME_SIZE;
+    int size = length + FRAME_SIZE;
+
+    if (payload > MAX_LENGTH || size > capacity) {clear(); return;}
+
+    record[0] = record[length] = (byte)payload;
+    record[1] = record[length + 1] = (byte)(payload >> 8);
+
+    while (capacity - (head - tail) < size){
+        tail += getFrame(tail) + 2 * FRAME_SIZE;
+        numRecords--;
+    }
+
+    //the bytes are stored singly as bulk copies of such short records into a
+    //direct buffer are slower
+
+    int index = (int)head;
+
+    for (int i = 0; i < size; i++){
+        buffer.put(index++ & mask, record[i]);
+    }
+
+    head += size;
+    numRecords++;
+
+}//end of TraceRecorder::store
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::spaceNumber
+//
+// Returns the number stored in the records for pSpace.
+//
+
+private int spaceNumber(MemorySet pSpace)
+{
+
+    for (int i = 0; i < spaces.length; i++){
+        if (spaces[i] == pSpace) {return(i);}
+    }
+
+    return(0);
+
+}//end of TraceRecorder::spaceNumber
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::putInt
+//
+// Appends pValue to the record being built as an unsigned variable length
+// integer -- seven bits per byte with the top bit set on all but the last.
+//
+
+private void putInt(int pValue)
+{
+
+    putLong(pValue & 0xffffffffL);
+
+}//end of TraceRecorder::putInt
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::putLong
+//
+// Appends pValue to the record being built as an unsigned variable length
+// integer. The caller must have made room for it.
+//
+
+private void putLong(long pValue)
+{
+
+    byte[] r = record;
+    int n = length;
+
+    while ((pValue & ~0x7fL) != 0){
+        r[n++] = (byte)(pValue | 0x80);
+        pValue >>>= 7;
+    }
+
+    r[n++] = (byte)pValue;
+
+    length = n;
+
+}//end of TraceRecorder::putLong
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::getInt
+//
+// Returns the next variable length integer of the record being read.
+//
+
+private int getInt()
+{
+
+    return((int)getLong());
+
+}//end of TraceRecorder::getInt
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::getLong
+//
+// Returns the next variable length integer of the record being read.
+//
+
+private long getLong()
+{
+
+    long value = 0;
+    int shift = 0;
+    byte b;
+
+    do{
+        b = record[position++];
+        value |= (long)(b & 0x7f) << shift;
+        shift += 7;
+    }while (b < 0);
+
+    return(value);
+
+}//end of TraceRecorder::getLong
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::zigZag
+//
+// Returns pValue with the sign moved to the lowest bit so that small
+// negative numbers also encode in few bytes.
+//
+
+static int zigZag(int pValue)
+{
+
+    return((pValue << 1) ^ (pValue >> 31));
+
+}//end of TraceRecorder::zigZag
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::unZigZag
+//
+// Reverses zigZag.
+//
+
+static int unZigZag(int pValue)
+{
+
+    return((pValue >>> 1) ^ -(pValue & 1));
+
+}//end of TraceRecorder::unZigZag
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::getFrame
+//
+// Returns the record length stored at ring position pPosition.
+//
+
+private int getFrame(long pPosition)
+{
+
+    return((get(pPosition) & 0xff) | (get(pPosition + 1) & 0xff) << 8);
+
+}//end of TraceRecorder::getFrame
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TraceRecorder::get
+//
+// Returns the byte at ring position pPosition.
+//
+
+private byte get(long pPosition)
+{
+
+    return(buffer.get((int)pPosition & mask));
+
+}//end of TraceRecorder::get
+//-----------------------------------------------------------------------------
+
+}//end of class TraceRecorder
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,151 @@
+/******************************************************************************
+* Title: Universal IDE - Watchpoint.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class describes a data watchpoint: a range of addresses in one of a
+* core's address spaces which stops the core when read and/or written.
+*
+* The MemorySet flags each page containing a watched address so that only
+* accesses to those pages are checked -- all other pages keep the fast path.
+*
+* A conditional watchpoint is made by overriding isMet, such as to stop only
+* when a particular value is written into a buffer.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package dspsimulation;
+
+//-----------------------------------------------------------------------------
+// class Watchpoint
+//
+
+public class Watchpoint
+{
+
+    //the first and last addresses watched
+    int start, end;
+
+    //the kinds of access which trigger the watchpoint -- READ and/or WRITE
+    int access;
+
+    //the core to be stopped -- set when the watchpoint is added to the core
+    Core core;
+
+    //number of times the watchpoint has been triggered and the details of
+    //the last access which triggered it
+
+    public long hitCount;
+    public int hitAddress;
+    public int hitValue;
+    public boolean hitWasWrite;
+
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+
+//-----------------------------------------------------------------------------
+// Watchpoint::Watchpoint (constructor)
+//
+// Creates a watchpoint for the pLength words starting at pStart which is
+// triggered by the kinds of access in pAccess.
+//
+
+public Watchpoint(int pStart, int pLength, int pAccess)
+{
+
+    start = pStart; end = pStart + pLength - 1;
+    access = pAccess;
+
+}//end of Watchpoint::Watchpoint (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Watchpoint::isMet
+//
+// Returns true if an access of pValue at pAddress should stop the core. This
+// base method always returns true -- sub-classes can override it to watch
+// for particular values.
+//
+
+public boolean isMet(int pAddress, int pValue)
+{
+
+    return(true);
+
+}//end of Watchpoint::isMet
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Watchpoint::check
+//
+// Called by the MemorySet for each access to a page containing the
+// watchpoint. If pAddress is watched for the kind of access in pAccess and
+// the condition is met, the hit is recorded and the core is told to stop.
+//
+
+void check(int pAddress, int pValue, int pAccess)
+{
+
+    if (!covers(pAddress, pAccess) || !isMet(pAddress, pValue)) {return;}
+
+    hitCount++;
+    hitAddress = pAddress; hitValue = pValue; hitWasWrite = pAccess == WRITE;
+
+    if (core != null) {core.watchpointHit(this);}
+
+}//end of Watchpoint::check
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Watchpoint::covers
+//
+// Returns true if the watchpoint watches pAddress for the kind of access in
+// pAccess.
+//
+
+boolean covers(int pAddress, int pAccess)
+{
+
+    return(pAddress >= start && pAddress <= end && (access & pAccess) != 0);
+
+}//end of Watchpoint::covers
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Watchpoint::getStart
+//
+// Returns the first address watched.
+//
+
+public int getStart()
+{
+
+    return(start);
+
+}//end of Watchpoint::getStart
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// Watchpoint::getLength
+//
+// Returns the number of words watched.
+//
+
+public int getLength()
+{
+
+    return(end - start + 1);
+
+}//end of Watchpoint::getLength
+//-----------------------------------------------------------------------------
+
+}//end of class Watchpoint
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
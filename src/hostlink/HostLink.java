@@ -0,0 +1,763 @@
+/******************************************************************************
+* Title: Universal IDE - HostLink.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class is the host's end of the serial link to a simulated
+* TMS320VC5441, so that a host program can talk to the firmware as it would
+* to the real DSP board -- in the same packets of bytes read by the
+* firmware's readSerialPort function and sent back by its sendPacket
+* function -- without any hardware.
+*
+* The chip is run on a thread of the link's own in slices of sliceCycles
+* cycles. Between slices, commands queued by send are fed to McBSP1 of every
+* core, as the serial port is shared and each core ignores the packets
+* addressed to the others, and the replies sent back by the cores are matched
+* to the commands awaiting them.
+*
+* Commands are pipelined: up to window commands may await their replies at
+* once, across all cores, so the host need not wait for each reply before
+* sending the next command. The window keeps the packets in transit within
+* the firmware's 256 byte receive buffer. Each command is answered by a
+* CompletableFuture which is completed with the reply packet. The firmware
+* answers the commands to each core in order, so a reply is matched to the
+* oldest command to that core awaiting a reply with its message ID -- the
+* command's own ID for the get commands and ACKNOWLEDGE for the others. Any
+* older commands passed over were dropped by the firmware, such as after a
+* checksum error, and are completed exceptionally, as is a command with no
+* reply after timeoutCycles. A command which the firmware does not answer,
+* such as NULL_MSG, is completed with an empty reply as soon as it is sent.
+*
+* A reply packet is passed on from its 0xaa 0x55 header, which is followed
+* by the core ID, the message ID, and the data. The filler bytes sent ahead
+* of the header are dropped. As the packet holds no length, its end is taken
+* to be the end of the block sent by the transmit DMA channel.
+*
+* Raw bytes may also be sent with sendBytes, such as from a host program
+* connected through a LoopbackServer. The replies to those are not matched
+* to anything, but every reply is passed to the PacketListeners.
+*
+* When running as fast as possible, the chip is only run while a command is
+* queued or awaited and for timeoutCycles after anything was sent, so that a
+* host which is sitting idle does not keep a processor busy. When paced with
+* setSpeed, the chip is run all the time as the real one would be.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package hostlink;
+
+import dspsimulation.Chip;
+import dspsimulation.Core;
+import dspsimulation.SerialListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import specificchips.C54xCore;
+
+//-----------------------------------------------------------------------------
+// class HostLink
+//
+
+public class HostLink implements SerialListener
+{
+
+    Chip chip;
+    C54xCore[] cores;
+
+    Thread thread;
+    volatile boolean running;
+
+    //the commands not yet sent, and for each core the commands sent whose
+    //replies are awaited, oldest first -- guarded by the link's monitor
+
+    ArrayDeque<Command> queued;
+    ArrayList<ArrayDeque<Command>> awaiting;
+    int numAwaiting;
+
+    //raw bytes not yet sent
+    ArrayDeque<byte[]> rawQueued;
+
+    //for each core, the bytes of the block being sent -- used only by the
+    //thread running the core
+
+    ByteArrayOutputStream[] blocks;
+
+    //the reply packets received, for the link's thread to match
+    ConcurrentLinkedQueue<Reply> received;
+
+    CopyOnWriteArrayList<PacketListener> listeners;
+
+    //the message ID of the reply to each command, or NO_REPLY
+    int[] replyIds;
+
+    int window = DEFAULT_WINDOW;
+    long sliceCycles = DEFAULT_SLICE_CYCLES;
+    long timeoutCycles = DEFAULT_TIMEOUT_CYCLES;
+
+    //simulated time per second of real time, 0 for as fast as possible
+    double speed;
+
+    //the cycle count up to which the chip is run though nothing is awaited
+    long quietUntil;
+
+    public static final int DEFAULT_WINDOW = 8;
+    public static final long DEFAULT_SLICE_CYCLES = 100000;
+    public static final long DEFAULT_TIMEOUT_CYCLES = 10000000;
+
+    //how long to wait before trying again when the chip is halted
+    static final long HALTED_WAIT_NANOS = 10000000;
+
+    //the packet format read by the firmware: the header, the core ID
+    //(1-4), the message ID, the number of data bytes, PACKET_DATA_SIZE data
+    //bytes, and a checksum which makes the sum of the bytes from the core ID
+    //on zero
+
+    public static final int[] PACKET_HEADER = {0xaa, 0x55, 0xbb, 0x66};
+    public static final int PACKET_DATA_SIZE = 9;
+    public static final int PACKET_SIZE =
+                              PACKET_HEADER.length + 3 + PACKET_DATA_SIZE + 1;
+
+    //the header of the packets sent by the firmware and the positions of
+    //the core ID, message ID, and the first data byte in them
+
+    public static final int[] REPLY_HEADER = {0xaa, 0x55};
+    public static final int REPLY_CORE = 2;
+    public static final int REPLY_MESSAGE_ID = 3;
+    public static final int REPLY_DATA = 4;
+
+    //message IDs -- these must match those in the firmware
+
+    public static final int NULL_MSG = 0;
+    public static final int GET_STATUS = 1;
+    public static final int SET_GAIN = 2;
+    public static final int GET_ASCAN_BLOCK = 3;
+    public static final int GET_ASCAN_NEXT_BLOCK = 4;
+    public static final int SET_AD_SAMPLE_SIZE = 5;
+    public static final int SET_DELAYS = 6;
+    public static final int SET_ASCAN_RANGE = 7;
+    public static final int SET_GATE = 8;
+    public static final int SET_GATE_FLAGS = 9;
+    public static final int SET_DAC = 10;
+    public static final int SET_DAC_FLAGS = 11;
+    public static final int SET_HIT_MISS_COUNTS = 12;
+    public static final int GET_PEAK_DATA = 13;
+    public static final int SET_RECTIFICATION = 14;
+    public static final int SET_FLAGS1 = 15;
+    public static final int CLEAR_FLAGS1 = 16;
+    public static final int SET_GATE_SIG_PROC_THRESHOLD = 17;
+    public static final int ACKNOWLEDGE = 127;
+
+    public static final int NUM_MESSAGE_IDS = 256;
+
+    //the reply ID of a command which is not answered
+    public static final int NO_REPLY = -1;
+
+//-----------------------------------------------------------------------------
+// HostLink::HostLink (constructor)
+//
+// Creates a link to pChip, which should have its program loaded and be reset.
+//
+
+public HostLink(Chip pChip)
+{
+
+    chip = pChip;
+
+}//end of HostLink::HostLink (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    cores = new C54xCore[chip.getNumCores()];
+
+    queued = new ArrayDeque<Command>();
+    awaiting = new ArrayList<ArrayDeque<Command>>();
+    rawQueued = new ArrayDeque<byte[]>();
+    blocks = new ByteArrayOutputStream[cores.length];
+    received = new ConcurrentLinkedQueue<Reply>();
+    listeners = new CopyOnWriteArrayList<PacketListener>();
+
+    for (int i = 0; i < cores.length; i++){
+        cores[i] = (C54xCore)chip.getCore(i);
+        cores[i].setHostListener(this);
+        awaiting.add(new ArrayDeque<Command>());
+        blocks[i] = new ByteArrayOutputStream();
+    }
+
+    //the get commands are answered with their own ID, the others which the
+    //firmware handles with an ACKNOWLEDGE
+
+    replyIds = new int[NUM_MESSAGE_IDS];
+    Arrays.fill(replyIds, NO_REPLY);
+
+    for (int id = SET_GAIN; id <= CLEAR_FLAGS1; id++){
+        replyIds[id] = ACKNOWLEDGE;
+    }
+
+    replyIds[GET_STATUS] = GET_STATUS;
+    replyIds[GET_ASCAN_BLOCK] = GET_ASCAN_BLOCK;
+    replyIds[GET_ASCAN_NEXT_BLOCK] = GET_ASCAN_NEXT_BLOCK;
+    replyIds[GET_PEAK_DATA] = GET_PEAK_DATA;
+
+}//end of HostLink::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::start
+//
+// Starts running the chip on the link's thread. The chip is first run for
+// timeoutCycles so that the firmware can set itself up.
+//
+
+public synchronized void start()
+{
+
+    if (running) {return;}
+
+    running = true;
+    quietUntil = getCycles() + timeoutCycles;
+
+    thread = new Thread(new Runnable(){
+        @Override
+        public void run() { runLink(); }
+    }, "Host Link");
+
+    thread.setDaemon(true);
+    thread.start();
+
+}//end of HostLink::start
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::stop
+//
+// Stops running the chip, waiting for the slice being run to end. The
+// commands not yet answered are cancelled.
+//
+
+public void stop()
+{
+
+    Thread t;
+
+    synchronized(this){
+        if (!running) {return;}
+        running = false;
+        notifyAll();
+        t = thread;
+    }
+
+    try{
+        t.join();
+    }
+    catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+    }
+
+    synchronized(this){
+
+        for (Command c : queued) {c.reply.cancel(false);}
+        queued.clear();
+
+        for (ArrayDeque<Command> q : awaiting){
+            for (Command c : q) {c.reply.cancel(false);}
+            q.clear();
+        }
+
+        numAwaiting = 0;
+        rawQueued.clear();
+
+    }
+
+}//end of HostLink::stop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::send
+//
+// Queues a command with message ID pMessageId and data bytes pData for core
+// pCore, 0 being core A. Returns a future which is completed with the reply
+// packet, starting with its header, or with an empty array if the command
+// is not answered.
+//
+// Throws an IllegalArgumentException if the core or message ID are out of
+// range or there are more than PACKET_DATA_SIZE data bytes.
+//
+
+public CompletableFuture<byte[]> send(int pCore, int pMessageId, int... pData)
+{
+
+    if (pCore < 0 || pCore >= cores.length){
+        throw new IllegalArgumentException("no core " + pCore);
+    }
+
+    Command c = new Command(pCore, pMessageId,
+                                        buildPacket(pCore, pMessageId, pData));
+
+    synchronized(this){
+        c.replyId = replyIds[pMessageId];
+        queued.add(c);
+        notifyAll();
+    }
+
+    return(c.reply);
+
+}//end of HostLink::send
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::sendBytes
+//
+// Queues pLength bytes of pBytes starting at pOffset to be sent as they
+// are, such as packets built by a host program.
+//
+
+public synchronized void sendBytes(byte[] pBytes, int pOffset, int pLength)
+{
+
+    rawQueued.add(Arrays.copyOfRange(pBytes, pOffset, pOffset + pLength));
+    notifyAll();
+
+}//end of HostLink::sendBytes
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::buildPacket
+//
+// Returns the packet for command pMessageId with data bytes pData to core
+// pCore, 0 being core A, in the format read by the firmware.
+//
+// Throws an IllegalArgumentException if the message ID is out of range or
+// there are more than PACKET_DATA_SIZE data bytes.
+//
+
+public static byte[] buildPacket(int pCore, int pMessageId, int... pData)
+{
+
+    if (pMessageId < 0 || pMessageId >= NUM_MESSAGE_IDS){
+        throw new IllegalArgumentException("bad message ID " + pMessageId);
+    }
+
+    if (pData.length > PACKET_DATA_SIZE){
+        throw new IllegalArgumentException("a packet holds at most "
+                                        + PACKET_DATA_SIZE + " data bytes");
+    }
+
+    byte[] packet = new byte[PACKET_SIZE];
+
+    int n = 0;
+    for (int b : PACKET_HEADER) {packet[n++] = (byte)b;}
+
+    packet[n++] = (byte)(pCore + 1);
+    packet[n++] = (byte)pMessageId;
+    packet[n++] = (byte)pData.length;
+
+    for (int i = 0; i < PACKET_DATA_SIZE; i++){
+        packet[n++] = (byte)(i < pData.length ? pData[i] : 0);
+    }
+
+    //the checksum makes the sum of the bytes from the core id on zero
+
+    int sum = 0;
+    for (int i = PACKET_HEADER.length; i < n; i++) {sum += packet[i];}
+
+    packet[n] = (byte)-sum;
+
+    return(packet);
+
+}//end of HostLink::buildPacket
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::wordSent
+//
+// Collects the words sent by McBSP1 of pCore into blocks and queues each
+// block which holds a reply packet. Called on the thread running the core.
+//
+
+@Override
+public void wordSent(Core pCore, int pValue, boolean pLast)
+{
+
+    int index = 0;
+    while (cores[index] != pCore) {index++;}
+
+    ByteArrayOutputStream block = blocks[index];
+    block.write(pValue);
+
+    if (!pLast) {return;}
+
+    byte[] bytes = block.toByteArray();
+    block.reset();
+
+    for (int i = 0; i + REPLY_DATA <= bytes.length; i++){
+        if ((bytes[i] & 0xff) == REPLY_HEADER[0]
+                                && (bytes[i + 1] & 0xff) == REPLY_HEADER[1]){
+            received.add(new Reply(index,
+                                Arrays.copyOfRange(bytes, i, bytes.length)));
+            return;
+        }
+    }
+
+}//end of HostLink::wordSent
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::runLink
+//
+// Runs the chip, feeding it the commands queued and matching the replies,
+// until the link is stopped. Runs on the link's thread.
+//
+
+void runLink()
+{
+
+    while (running){
+
+        synchronized(this){
+
+            if (speed != chip.getCoreGroup().getPacer().getSpeed()){
+                chip.setSpeed(speed);
+            }
+
+            feedCommands();
+
+            if (speed <= 0 && numAwaiting == 0 && getCycles() >= quietUntil){
+                try{
+                    wait();
+                }
+                catch(InterruptedException e){
+                    running = false;
+                }
+                continue;
+            }
+
+        }
+
+        long before = getCycles();
+
+        chip.run(sliceCycles);
+
+        //stopped at a breakpoint or halted
+        if (getCycles() == before) {LockSupport.parkNanos(HALTED_WAIT_NANOS);}
+
+        ArrayList<Reply> replies = new ArrayList<Reply>();
+
+        synchronized(this){
+            matchReplies(replies);
+            expireCommands();
+        }
+
+        //the listeners are called outside the lock so that one which blocks,
+        //such as on a socket, cannot hold up the callers of send
+
+        for (Reply r : replies){
+            for (PacketListener l : listeners){
+                l.packetReceived(r.core, r.packet);
+            }
+        }
+
+    }
+
+}//end of HostLink::runLink
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::feedCommands
+//
+// Sends the raw bytes queued and as many of the commands queued as the
+// window allows to every core.
+//
+
+private void feedCommands()
+{
+
+    long now = getCycles();
+
+    while (!rawQueued.isEmpty()){
+        transmit(rawQueued.poll());
+        quietUntil = now + timeoutCycles;
+    }
+
+    while (!queued.isEmpty() && numAwaiting < window){
+
+        Command c = queued.poll();
+
+        transmit(c.packet);
+        quietUntil = now + timeoutCycles;
+
+        if (c.replyId == NO_REPLY) {c.reply.complete(new byte[0]); continue;}
+
+        c.sentCycle = now;
+        awaiting.get(c.core).add(c);
+        numAwaiting++;
+
+    }
+
+}//end of HostLink::feedCommands
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::transmit
+//
+// Sends pBytes to McBSP1 of every core.
+//
+
+private void transmit(byte[] pBytes)
+{
+
+    for (C54xCore core : cores){
+        for (byte b : pBytes) {core.hostReceive(b & 0xff);}
+    }
+
+}//end of HostLink::transmit
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::matchReplies
+//
+// Completes the commands answered by the replies received and adds the
+// replies to pReplies to be passed to the listeners.
+//
+
+private void matchReplies(ArrayList<Reply> pReplies)
+{
+
+    Reply r;
+
+    while ((r = received.poll()) != null){
+
+        int id = r.packet[REPLY_MESSAGE_ID] & 0xff;
+        ArrayDeque<Command> q = awaiting.get(r.core);
+
+        boolean found = false;
+        for (Command c : q) {if (c.replyId == id) {found = true; break;}}
+
+        //commands passed over were dropped by the firmware
+
+        while (found){
+            Command c = q.poll();
+            numAwaiting--;
+            if (c.replyId == id) {c.reply.complete(r.packet); break;}
+            c.reply.completeExceptionally(new IOException("message "
+                       + c.messageId + " to core " + c.core + " not answered"));
+        }
+
+        pReplies.add(r);
+
+    }
+
+}//end of HostLink::matchReplies
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::expireCommands
+//
+// Completes exceptionally the commands whose replies have been awaited for
+// more than timeoutCycles.
+//
+
+private void expireCommands()
+{
+
+    long now = getCycles();
+
+    for (ArrayDeque<Command> q : awaiting){
+        while (!q.isEmpty() && now - q.peek().sentCycle > timeoutCycles){
+            Command c = q.poll();
+            numAwaiting--;
+            c.reply.completeExceptionally(new TimeoutException("message "
+                          + c.messageId + " to core " + c.core + " timed out"));
+        }
+    }
+
+}//end of HostLink::expireCommands
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::getCycles
+//
+// Returns the number of cycles run by the first core.
+//
+
+private long getCycles()
+{
+
+    return(cores[0].cycles);
+
+}//end of HostLink::getCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::addPacketListener
+//
+// Adds pListener to receive every reply packet.
+//
+
+public void addPacketListener(PacketListener pListener)
+{
+
+    listeners.add(pListener);
+
+}//end of HostLink::addPacketListener
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::removePacketListener
+//
+// Removes pListener from those receiving reply packets.
+//
+
+public void removePacketListener(PacketListener pListener)
+{
+
+    listeners.remove(pListener);
+
+}//end of HostLink::removePacketListener
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::setReplyId
+//
+// Sets the message ID of the reply to command pMessageId to pReplyId, or
+// NO_REPLY if it is not answered, for firmware which differs from the
+// defaults.
+//
+
+public synchronized void setReplyId(int pMessageId, int pReplyId)
+{
+
+    replyIds[pMessageId] = pReplyId;
+
+}//end of HostLink::setReplyId
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::setWindow
+//
+// Sets the number of commands which may await their replies at once.
+//
+
+public synchronized void setWindow(int pWindow)
+{
+
+    window = Math.max(1, pWindow);
+    notifyAll();
+
+}//end of HostLink::setWindow
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::setTimeoutCycles
+//
+// Sets the number of cycles a reply is awaited before its command fails.
+//
+
+public synchronized void setTimeoutCycles(long pCycles)
+{
+
+    timeoutCycles = Math.max(1, pCycles);
+
+}//end of HostLink::setTimeoutCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::setSpeed
+//
+// Sets the simulated time run per second of real time -- 1 for real time, N
+// for N times real time, 0 for as fast as possible. See Pacer.
+//
+
+public synchronized void setSpeed(double pSpeed)
+{
+
+    speed = Math.max(0, pSpeed);
+    notifyAll();
+
+}//end of HostLink::setSpeed
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// HostLink::getChip
+//
+// Returns the chip at the other end of the link. It should not be used
+// while the link is running.
+//
+
+public Chip getChip()
+{
+
+    return(chip);
+
+}//end of HostLink::getChip
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Command
+//
+// A command queued or sent, and the future completed with its reply.
+//
+
+static class Command
+{
+
+    final int core;
+    final int messageId;
+    final byte[] packet;
+    final CompletableFuture<byte[]> reply = new CompletableFuture<byte[]>();
+
+    int replyId;
+    long sentCycle;
+
+    Command(int pCore, int pMessageId, byte[] pPacket)
+    {
+        core = pCore; messageId = pMessageId; packet = pPacket;
+    }
+
+}//end of class Command
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class Reply
+//
+// A reply packet received from a core.
+//
+
+static class Reply
+{
+
+    final int core;
+    final byte[] packet;
+
+    Reply(int pCore, byte[] pPacket)
+    {
+        core = pCore; packet = pPacket;
+    }
+
+}//end of class Reply
+//-----------------------------------------------------------------------------
+
+}//end of class HostLink
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,374 @@
+/******************************************************************************
+* Title: Universal IDE - LoopbackServer.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class lets a host program on the same computer talk to a simulated
+* TMS320VC5441 through a socket, as it would to the DSP board, so that the
+* host program can be tested against the firmware without the hardware.
+*
+* The server listens on the loopback address only and serves one client at
+* a time. The bytes read from the client are passed to the HostLink as they
+* are, and every packet the firmware sends back is written to the client
+* from its header on. The client must keep within the firmware's receive
+* buffer itself, as the HostLink window applies only to its send method.
+*
+* The packets are queued by the link's thread and written to the client by
+* a thread of the server's own, so a client which stops reading cannot hold
+* up the simulation. A client which falls MAX_QUEUED_PACKETS packets behind
+* is dropped.
+*
+* It may also be run as a program, loading the firmware and serving clients
+* until killed:
+*
+*   java hostlink.LoopbackServer [-port n] [-speed x] <program.hex>
+*
+* The program is an Intel hex file as created by the TI hex conversion
+* utility. The port is DEFAULT_PORT unless given, and the chip is run as fast
+* as possible unless given a speed -- 1 for real time.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package hostlink;
+
+import dspsimulation.ProgramImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingQueue;
+import specificchips.TMS320VC5441;
+
+//-----------------------------------------------------------------------------
+// class LoopbackServer
+//
+
+public class LoopbackServer implements PacketListener
+{
+
+    HostLink link;
+    int port;
+
+    ServerSocket serverSocket;
+    Thread thread;
+    Thread writerThread;
+    volatile boolean running;
+
+    //the packets waiting to be written to the client
+    LinkedBlockingQueue<byte[]> outgoing;
+
+    //the client being served and the stream to it -- guarded by the
+    //server's monitor
+
+    Socket client;
+    OutputStream out;
+
+    public static final int DEFAULT_PORT = 4000;
+
+    static final int READ_BUFFER_SIZE = 1024;
+    static final int MAX_QUEUED_PACKETS = 4096;
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::LoopbackServer (constructor)
+//
+// Creates a server for pLink on port pPort, or any free port if 0.
+//
+
+public LoopbackServer(HostLink pLink, int pPort)
+{
+
+    link = pLink; port = pPort;
+
+}//end of LoopbackServer::LoopbackServer (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+public void init()
+{
+
+    outgoing = new LinkedBlockingQueue<byte[]>(MAX_QUEUED_PACKETS);
+
+}//end of LoopbackServer::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::start
+//
+// Opens the server socket and starts serving clients on a thread of the
+// server's own. The link should be started as well.
+//
+// Throws an IOException if the socket cannot be opened.
+//
+
+public void start() throws IOException
+{
+
+    serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+
+    running = true;
+    link.addPacketListener(this);
+
+    thread = new Thread(new Runnable(){
+        @Override
+        public void run() { serve(); }
+    }, "Loopback Server");
+
+    thread.setDaemon(true);
+    thread.start();
+
+    writerThread = new Thread(new Runnable(){
+        @Override
+        public void run() { writePackets(); }
+    }, "Loopback Server Writer");
+
+    writerThread.setDaemon(true);
+    writerThread.start();
+
+}//end of LoopbackServer::start
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::stop
+//
+// Closes the server socket and the client's socket, if any.
+//
+
+public void stop()
+{
+
+    running = false;
+    link.removePacketListener(this);
+
+    try{
+        serverSocket.close();
+    }
+    catch(IOException e){
+        //closed anyway
+    }
+
+    writerThread.interrupt();
+
+    closeClient();
+
+}//end of LoopbackServer::stop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::serve
+//
+// Accepts clients one at a time and passes the bytes read from each to the
+// link until it disconnects. Runs on the server's thread.
+//
+
+void serve()
+{
+
+    byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+    while (running){
+
+        try{
+
+            Socket s = serverSocket.accept();
+            s.setTcpNoDelay(true);
+
+            synchronized(this) {client = s; out = s.getOutputStream();}
+
+            InputStream in = s.getInputStream();
+
+            int n;
+            while ((n = in.read(buffer)) > 0) {link.sendBytes(buffer, 0, n);}
+
+        }
+        catch(IOException e){
+            //the client disconnected or the server was stopped
+        }
+
+        closeClient();
+
+    }
+
+}//end of LoopbackServer::serve
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::closeClient
+//
+// Closes the client's socket, if any, and drops the packets waiting to be
+// written to it.
+//
+
+synchronized void closeClient()
+{
+
+    outgoing.clear();
+
+    if (client == null) {return;}
+
+    try{
+        client.close();
+    }
+    catch(IOException e){
+        //closed anyway
+    }
+
+    client = null; out = null;
+
+}//end of LoopbackServer::closeClient
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::packetReceived
+//
+// Queues pPacket to be written to the client, if any. The client is dropped
+// if it has fallen too far behind. Called on the link's thread, so it never
+// waits on the socket.
+//
+
+@Override
+public void packetReceived(int pCore, byte[] pPacket)
+{
+
+    synchronized(this) {if (out == null) {return;}}
+
+    if (!outgoing.offer(pPacket)) {closeClient();}
+
+}//end of LoopbackServer::packetReceived
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::writePackets
+//
+// Writes the packets queued by packetReceived to the client until the server
+// is stopped. The client is dropped if it cannot be written to. Runs on the
+// server's writer thread.
+//
+
+void writePackets()
+{
+
+    while (running){
+
+        byte[] packet;
+
+        try{
+            packet = outgoing.take();
+        }
+        catch(InterruptedException e){
+            return;
+        }
+
+        OutputStream o;
+        synchronized(this) {o = out;}
+
+        if (o == null) {continue;}
+
+        try{
+            o.write(packet);
+            o.flush();
+        }
+        catch(IOException e){
+            closeClient();
+        }
+
+    }
+
+}//end of LoopbackServer::writePackets
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::getPort
+//
+// Returns the port the server is listening on.
+//
+
+public int getPort()
+{
+
+    return(serverSocket.getLocalPort());
+
+}//end of LoopbackServer::getPort
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// LoopbackServer::main
+//
+// Loads the program named in the command line arguments pArgs and serves
+// clients until killed.
+//
+
+public static void main(String[] pArgs)
+{
+
+    int port = DEFAULT_PORT;
+    double speed = 0;
+    int i = 0;
+
+    try{
+
+        for (; i < pArgs.length - 1 && pArgs[i].startsWith("-"); i += 2){
+            if (pArgs[i].equals("-port")){
+                port = Integer.parseInt(pArgs[i + 1]);
+            }
+            else
+            if (pArgs[i].equals("-speed")){
+                speed = Double.parseDouble(pArgs[i + 1]);
+            }
+            else {throw new IOException("unknown option " + pArgs[i]);}
+        }
+
+        if (i != pArgs.length - 1){
+            throw new IOException("usage: LoopbackServer [-port n] "
+                                            + "[-speed x] <program.hex>");
+        }
+
+        TMS320VC5441 chip = new TMS320VC5441();
+        chip.init();
+        chip.loadProgram(ProgramImage.loadIntelHex(new File(pArgs[i])));
+        chip.reset();
+
+        HostLink link = new HostLink(chip);
+        link.init();
+        link.setSpeed(speed);
+
+        LoopbackServer server = new LoopbackServer(link, port);
+        server.init();
+        server.start();
+
+        link.start();
+
+        System.out.println("listening on port " + server.getPort());
+
+        //the server and link threads are daemons
+        Thread.currentThread().join();
+
+    }
+    catch(IOException | NumberFormatException e){
+        System.err.println(e.getMessage());
+        System.exit(2);
+    }
+    catch(InterruptedException e){
+        //exit
+    }
+
+}//end of LoopbackServer::main
+//-----------------------------------------------------------------------------
+
+}//end of class LoopbackServer
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
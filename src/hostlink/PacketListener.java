@@ -0,0 +1,40 @@
+/******************************************************************************
+* Title: Universal IDE - PacketListener.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This interface is implemented by objects which receive the packets sent
+* by the firmware through a HostLink, whether or not they answer a command
+* sent with the link's send method.
+*
+* The packets are passed on the link's thread between slices of the run, so
+* the chip waits while a listener works. The link's lock is not held, so a
+* listener which blocks does not hold up the callers of the link's methods,
+* but one which may block for long should pass the packets to a thread of
+* its own, as LoopbackServer does.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package hostlink;
+
+//-----------------------------------------------------------------------------
+// interface PacketListener
+//
+
+public interface PacketListener
+{
+
+    //receives pPacket sent by core pCore, 0 being core A -- the packet
+    //starts with its header
+    public void packetReceived(int pCore, byte[] pPacket);
+
+}//end of interface PacketListener
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
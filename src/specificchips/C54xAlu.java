@@ -0,0 +1,206 @@
+/******************************************************************************
+* Title: Universal IDE - C54xAlu.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class provides the arithmetic functions of the TMS320C54x ALU on 40
+* bit accumulator values held in a long.
+*
+* These functions are used by every arithmetic instruction, so they are
+* written without branches: conditions such as a negative value, an
+* overflow, or a mode bit are turned into masks of all zeros or all ones
+* which select between the possible results. Mode bits are passed as 0 or 1.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package specificchips;
+
+//-----------------------------------------------------------------------------
+// class C54xAlu
+//
+
+public class C54xAlu
+{
+
+    public static final long MASK_32 = 0xffffffffL;
+    public static final long MASK_40 = 0xffffffffffL;
+
+    //the bit of the carry words from which the carry is read
+    public static final int ADD_CARRY_BIT = 32;
+    public static final int SUB_CARRY_BIT = 63;
+
+//-----------------------------------------------------------------------------
+// C54xAlu::C54xAlu (constructor)
+//
+// All functions are static -- no objects are created.
+//
+
+private C54xAlu()
+{
+
+}//end of C54xAlu::C54xAlu (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::signExtend40
+//
+// Returns 40 bit value pValue sign extended to 64 bits.
+//
+
+public static long signExtend40(long pValue)
+{
+
+    return((pValue << 24) >> 24);
+
+}//end of C54xAlu::signExtend40
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::extend16
+//
+// Returns 16 bit data word pValue sign extended if pSXM is 1 or zero extended
+// if it is 0.
+//
+
+public static long extend16(int pValue, long pSXM)
+{
+
+    long signMask = -pSXM;
+
+    return(((short)pValue & signMask) | (pValue & 0xffff & ~signMask));
+
+}//end of C54xAlu::extend16
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::shift
+//
+// Returns pValue shifted left for positive pShift or arithmetically right for
+// negative pShift.
+//
+
+public static long shift(long pValue, int pShift)
+{
+
+    int negative = pShift >> 31;
+
+    return((pValue << (pShift & ~negative)) >> (-pShift & negative));
+
+}//end of C54xAlu::shift
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::shiftLogical32
+//
+// Returns the low 32 bits of pValue shifted left for positive pShift or right
+// for negative pShift with zeros shifted in from either end.
+//
+
+public static long shiftLogical32(long pValue, int pShift)
+{
+
+    int negative = pShift >> 31;
+
+    return(((pValue & MASK_32) << (pShift & ~negative)
+                                      >>> (-pShift & negative)) & MASK_32);
+
+}//end of C54xAlu::shiftLogical32
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::shiftOutBit
+//
+// Returns the position of the last bit shifted out when a value of pWidth
+// bits is shifted by pShift, or 63 for a shift of zero. The value the bit is
+// read from should have bit 63 cleared so that a shift of zero gives no
+// carry.
+//
+
+public static int shiftOutBit(int pShift, int pWidth)
+{
+
+    int negative = pShift >> 31;
+    int zero = ((pShift | -pShift) >> 31) + 1;
+
+    return(((-pShift - 1) & negative | (pWidth - pShift) & ~negative)
+                                                          | -zero & 63);
+
+}//end of C54xAlu::shiftOutBit
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::overflow32
+//
+// Returns 1 if pValue does not fit in 32 signed bits, 0 if it does.
+//
+
+public static long overflow32(long pValue)
+{
+
+    long difference = pValue ^ ((pValue << 32) >> 32);
+
+    return((difference | -difference) >>> 63);
+
+}//end of C54xAlu::overflow32
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::saturate32
+//
+// Returns pValue saturated to the largest positive or negative 32 bit value
+// if pSaturate is 1 or pValue unchanged if it is 0. pSaturate is normally the
+// overflow result ANDed with the OVM bit.
+//
+
+public static long saturate32(long pValue, long pSaturate)
+{
+
+    long limit = (pValue >> 63) ^ Integer.MAX_VALUE;
+    long select = -pSaturate;
+
+    return((pValue & ~select) | (limit & select));
+
+}//end of C54xAlu::saturate32
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::addCarryWord
+//
+// Returns a word from which the carry out of bit 31 for pX + pY can be read
+// later as bit ADD_CARRY_BIT.
+//
+
+public static long addCarryWord(long pX, long pY)
+{
+
+    return((pX & MASK_32) + (pY & MASK_32));
+
+}//end of C54xAlu::addCarryWord
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xAlu::subCarryWord
+//
+// Returns a word from which the carry for pX - pY can be read later as bit
+// SUB_CARRY_BIT. The C54x carry is set when the subtraction does not borrow
+// into bit 31.
+//
+
+public static long subCarryWord(long pX, long pY)
+{
+
+    return(~((pX & MASK_32) - (pY & MASK_32)));
+
+}//end of C54xAlu::subCarryWord
+//-----------------------------------------------------------------------------
+
+}//end of class C54xAlu
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,1458 @@
+/******************************************************************************
+* Title: Universal IDE - C54xCore.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class provides the execution context for a Texas Instruments
+* TMS320C54x DSP core. It defines the core's registers in the register file
+* and provides the operand addressing, accumulator, and status bit functions
+* used by the C54x instructions.
+*
+* The accumulators are 40 bits and are stored in the register file masked to
+* that width; they are sign extended when read through acc. All other
+* registers are 16 bits. The arithmetic is done by C54xAlu.
+*
+* The carry bit is computed lazily: an ALU operation only records the word
+* and bit position from which the carry can be read, and the bit is put into
+* ST0 by syncFlags when something reads it -- a conditional instruction, a
+* read of ST0, or the debugger. Most carries are overwritten by the next
+* operation without ever being read.
+*
+* The memory-mapped registers in the first page of data space are handled by
+* a hook which maps the CPU registers to the register file and the block
+* repeat registers to the loop fields of the base Core. The peripheral
+* registers are stored as plain memory except for the sub-addressed DMA and
+* McBSP register banks which are accessed through an address register and a
+* data register.
+*
+* Of the peripherals, only the path from the host to the serial port buffer
+* is simulated: words sent by the host are received by McBSP1 one every
+* SERIAL_WORD_CYCLES cycles and stored by DMA channel 1 as they arrive. Each
+* word's arrival is an event posted to the core's EventScheduler.
+*
+* The path back is simulated as well: a word written to DXR11 while the
+* transmitter is enabled is sent SERIAL_WORD_CYCLES later, after which DMA
+* channel 2, if enabled, moves the next word of its block into DXR11 until
+* its element count runs out. Each word sent is passed to the hostListener,
+* if one is set, along with whether it ends the block.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package specificchips;
+
+import dspsimulation.Core;
+import dspsimulation.InstructionSet;
+import dspsimulation.MemoryHook;
+import dspsimulation.MemorySet;
+import dspsimulation.ScheduledEvent;
+import dspsimulation.SerialListener;
+import java.util.Arrays;
+
+//-----------------------------------------------------------------------------
+// class C54xCore
+//
+
+public class C54xCore extends Core
+{
+
+    //the register file values -- indexed by the register ids below
+    public long[] reg;
+
+    //set while the DARAM is mapped into both program and data space
+    boolean overlay;
+
+    //state of the BIO input pin -- the BIO condition is true when it is low
+    public boolean bioLow;
+
+    //the sub-addressed DMA and McBSP register banks
+
+    short[] dmaBank;
+    short[][] serialBanks;
+
+    //the words sent by the host which McBSP1 has yet to receive -- a ring
+    //of hostCount words starting at hostHead
+
+    int[] hostWords;
+    int hostHead, hostCount;
+
+    //set while McBSP1 is sending a word to the host
+    boolean transmitBusy;
+
+    //receives the words McBSP1 sends to the host
+    SerialListener hostListener;
+
+    //register ids
+
+    public static final int A = 0;
+    public static final int B = 1;
+    public static final int T = 2;
+    public static final int TRN = 3;
+    public static final int AR0 = 4;
+    public static final int AR7 = AR0 + 7;
+    public static final int SP = 12;
+    public static final int BK = 13;
+    public static final int ST0 = 14;
+    public static final int ST1 = 15;
+    public static final int PMST = 16;
+    public static final int IMR = 17;
+    public static final int IFR = 18;
+    public static final int XPC = 19;
+
+    //status register 0 fields
+
+    public static final int ARP_SHIFT = 13;
+    public static final long TC = 1 << 12;
+    public static final long C = 1 << 11;
+    public static final long OVA = 1 << 10;
+    public static final long OVB = 1 << 9;
+    public static final long DP_MASK = 0x1ff;
+
+    //status register 1 fields
+
+    public static final long BRAF = 1 << 15;
+    public static final long CPL = 1 << 14;
+    public static final long XF = 1 << 13;
+    public static final long HM = 1 << 12;
+    public static final long INTM = 1 << 11;
+    public static final long OVM = 1 << 9;
+    public static final long SXM = 1 << 8;
+    public static final long C16 = 1 << 7;
+    public static final long FRCT = 1 << 6;
+    public static final long CMPT = 1 << 5;
+    public static final long ASM_MASK = 0x1f;
+
+    //processor mode status register fields
+
+    public static final long OVLY = 1 << 5;
+
+    //register values after reset
+
+    static final long ST0_RESET = 0x1800;
+    static final long ST1_RESET = 0x2900;
+    static final long PMST_RESET = 0xffc0;
+
+    public static final long MASK_40 = 0xffffffffffL;
+
+    //memory-mapped register addresses which do not map directly to a
+    //register id
+
+    public static final int MMR_ST1 = 0x07;
+    public static final int MMR_AL = 0x08;
+    public static final int MMR_AH = 0x09;
+    public static final int MMR_AG = 0x0a;
+    public static final int MMR_BL = 0x0b;
+    public static final int MMR_BH = 0x0c;
+    public static final int MMR_BG = 0x0d;
+    public static final int MMR_BRC = 0x1a;
+    public static final int MMR_RSA = 0x1b;
+    public static final int MMR_REA = 0x1c;
+    public static final int MMR_PMST = 0x1d;
+
+    //address and data registers for the sub-addressed peripheral register
+    //banks -- DMSDI increments DMSA after each access, DMSDN does not
+
+    public static final int MMR_SPSA2 = 0x34;
+    public static final int MMR_SPSD2 = 0x35;
+    public static final int MMR_SPSA0 = 0x38;
+    public static final int MMR_SPSD0 = 0x39;
+    public static final int MMR_SPSA1 = 0x48;
+    public static final int MMR_SPSD1 = 0x49;
+    public static final int MMR_DMSA = 0x55;
+    public static final int MMR_DMSDI = 0x56;
+    public static final int MMR_DMSDN = 0x57;
+
+    //McBSP1 transmit data register and the DMA channel enable register
+
+    public static final int MMR_DXR11 = 0x43;
+    public static final int MMR_DMPREC = 0x54;
+
+    //sub-address of McBSP serial port control register 2 and its transmitter
+    //enable bit
+
+    static final int SPCR2 = 0x01;
+    static final int XRST = 0x01;
+
+    static final int SUB_BANK_SIZE = 0x40;
+
+    //sub-addresses in the DMA bank of the destination address and element
+    //count registers of channel 0 -- each channel has DMA_CHANNEL_SIZE
+    //registers starting at DMSRC
+
+    static final int DMSRC0 = 0x00;
+    static final int DMDST0 = 0x01;
+    static final int DMCTR0 = 0x02;
+    static final int DMA_CHANNEL_SIZE = 5;
+
+    //the DMA channel which stores the words received by McBSP1
+    public static final int MCBSP1_DMA_CHANNEL = 1;
+
+    //the DMA channel which feeds McBSP1 the words to send
+    public static final int MCBSP1_TX_DMA_CHANNEL = 2;
+
+    //cycles for McBSP1 to receive a word -- 8 bit words on the external
+    //60 ns serial clock with frames back to back, at the 10 ns CPU clock
+    public static final int SERIAL_WORD_CYCLES = 48;
+
+    //the arrival of a word at McBSP1
+    static final ScheduledEvent HOST_WORD_RECEIVED = new ScheduledEvent(){
+        @Override
+        public void fire(Core pCore, long pCycle)
+        {
+            ((C54xCore)pCore).receiveHostWord(pCycle);
+        }
+    };
+
+    //the end of sending a word from McBSP1
+    static final ScheduledEvent HOST_WORD_SENT = new ScheduledEvent(){
+        @Override
+        public void fire(Core pCore, long pCycle)
+        {
+            ((C54xCore)pCore).transmitHostWord(pCycle);
+        }
+    };
+
+    //read-only register holding the number of the core within the chip
+    public static final int MMR_CSIDR = 0x3e;
+
+    //the number of the core within the chip as read from CSIDR
+    int coreId;
+
+    //the pending carry -- while carryPending is true, the carry bit is bit
+    //carryBit of carryWord rather than the C bit of ST0
+
+    long carryWord;
+    int carryBit;
+    boolean carryPending;
+
+    //bit positions of the status bits used by the ALU
+
+    static final int C_BIT = 11;
+    static final int OVB_BIT = 9;
+    static final int OVM_BIT = 9;
+    static final int SXM_BIT = 8;
+    static final int FRCT_BIT = 6;
+
+    //the register id for each CPU memory-mapped register address; -1 for
+    //addresses which are reserved or are handled specially
+
+    static final int[] MMR_REGISTER = {
+        IMR, IFR, -1, -1, -1, -1, ST0, -1,
+        -1, -1, -1, -1, -1, -1, T, TRN,
+        AR0, AR0 + 1, AR0 + 2, AR0 + 3, AR0 + 4, AR0 + 5, AR0 + 6, AR7,
+        SP, BK, -1, -1, -1, PMST, XPC, -1 };
+
+    //the on-chip DARAM which is mapped into both the program and data spaces
+    //when OVLY is set -- the first page of data space holds the memory-mapped
+    //registers and is not mapped into program space
+
+    public static final int OVERLAY_START = 0x0080;
+    public static final int OVERLAY_LENGTH = 0x8000 - OVERLAY_START;
+
+//-----------------------------------------------------------------------------
+// C54xCore::C54xCore (constructor)
+//
+// Creates a C54x core named pName which is core number pCoreId within its
+// chip. See Core for the other parameters.
+//
+
+public C54xCore(String pName, InstructionSet pInstructionSet, int pProgramSize,
+                                                                  int pCoreId)
+{
+
+    super(pName, pInstructionSet, pProgramSize);
+
+    coreId = pCoreId;
+
+}//end of C54xCore::C54xCore (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::init
+//
+// Initializes new objects. Should be called immediately after instantiation.
+//
+
+@Override
+public void init()
+{
+
+    super.init();
+
+    //the order must match the register id constants
+
+    registers.addRegister("Accumulator A", "A", 40, 16);
+    registers.addRegister("Accumulator B", "B", 40, 16);
+    registers.addRegister("Temporary Register", "T", 16, 16);
+    registers.addRegister("Transition Register", "TRN", 16, 16);
+    for (int i = 0; i < 8; i++){
+        registers.addRegister("Auxiliary Register " + i, "AR" + i, 16, 16);
+    }
+    registers.addRegister("Stack Pointer", "SP", 16, 16);
+    registers.addRegister("Circular Buffer Size", "BK", 16, 16);
+    registers.addRegister("Status Register 0", "ST0", 16, 16);
+    registers.addRegister("Status Register 1", "ST1", 16, 16);
+    registers.addRegister("Processor Mode Status", "PMST", 16, 16);
+    registers.addRegister("Interrupt Mask Register", "IMR", 16, 16);
+    registers.addRegister("Interrupt Flag Register", "IFR", 16, 16);
+    registers.addRegister("Program Counter Extension", "XPC", 16, 16);
+
+    reg = registers.value;
+
+    dmaBank = new short[SUB_BANK_SIZE];
+    serialBanks = new short[3][SUB_BANK_SIZE];
+
+    hostWords = new int[64];
+
+    data.setHook(0, MemorySet.PAGE_SIZE, new MemoryHook(){
+        @Override
+        public int read(MemorySet pMemory, int pAddress)
+        {
+            return(readMMR(pAddress));
+        }
+        @Override
+        public void write(MemorySet pMemory, int pAddress, int pValue)
+        {
+            writeMMR(pAddress, pValue);
+        }
+    });
+
+}//end of C54xCore::init
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::reset
+//
+// Resets the core and sets the registers to their values after a reset.
+//
+
+@Override
+public void reset()
+{
+
+    super.reset();
+
+    registers.reset();
+
+    reg[ST0] = ST0_RESET; reg[ST1] = ST1_RESET; reg[PMST] = PMST_RESET;
+    carryPending = false;
+
+    setOverlay(false);
+
+    //the events for the words in transit were cleared by the base reset
+    hostCount = 0; transmitBusy = false;
+
+}//end of C54xCore::reset
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::readMMR
+//
+// Returns the value of the memory-mapped register at pAddress in the first
+// page of data space.
+//
+
+int readMMR(int pAddress)
+{
+
+    if (pAddress < MMR_REGISTER.length){
+
+        int id = MMR_REGISTER[pAddress];
+        if (id == ST0) {syncFlags();}
+        if (id >= 0) {return((int)reg[id]);}
+
+        switch(pAddress){
+            case MMR_ST1:
+                return((int)reg[ST1] | (blockRepeatActive ? (int)BRAF : 0));
+            case MMR_AL: return((int)reg[A]);
+            case MMR_AH: return((int)(reg[A] >> 16));
+            case MMR_AG: return((int)((reg[A] << 24) >> 56));
+            case MMR_BL: return((int)reg[B]);
+            case MMR_BH: return((int)(reg[B] >> 16));
+            case MMR_BG: return((int)((reg[B] << 24) >> 56));
+            case MMR_BRC: return(blockCount);
+            case MMR_RSA: return(blockStart);
+            case MMR_REA: return(blockEnd);
+            default: return(0);
+        }
+
+    }
+
+    if (pAddress == MMR_CSIDR) {return(coreId);}
+
+    short[] bank = getSubBank(pAddress);
+
+    if (bank != null) {return(bank[nextSubAddress(pAddress)]);}
+
+    return(data.peek(pAddress));
+
+}//end of C54xCore::readMMR
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::writeMMR
+//
+// Writes pValue to the memory-mapped register at pAddress in the first page
+// of data space.
+//
+
+void writeMMR(int pAddress, int pValue)
+{
+
+    if (pAddress < MMR_REGISTER.length){
+
+        int id = MMR_REGISTER[pAddress];
+
+        if (id == PMST){
+            reg[PMST] = pValue;
+            setOverlay((pValue & OVLY) != 0);
+            return;
+        }
+
+        if (id == ST0) {carryPending = false;}
+        if (id >= 0) {reg[id] = pValue; return;}
+
+        switch(pAddress){
+            case MMR_ST1:
+                reg[ST1] = pValue & ~BRAF;
+                blockRepeatActive = (pValue & BRAF) != 0;
+                endBlock();
+                break;
+            case MMR_AL: writeAccPart(A, 0, 0xffffL, pValue); break;
+            case MMR_AH: writeAccPart(A, 16, 0xffffL, pValue); break;
+            case MMR_AG: writeAccPart(A, 32, 0xffL, pValue); break;
+            case MMR_BL: writeAccPart(B, 0, 0xffffL, pValue); break;
+            case MMR_BH: writeAccPart(B, 16, 0xffffL, pValue); break;
+            case MMR_BG: writeAccPart(B, 32, 0xffL, pValue); break;
+            case MMR_BRC: blockCount = pValue; break;
+            case MMR_RSA: blockStart = pValue; endBlock(); break;
+            case MMR_REA: blockEnd = pValue; endBlock(); break;
+            default: break;
+        }
+
+        return;
+
+    }
+
+    if (pAddress == MMR_CSIDR) {return;}
+
+    short[] bank = getSubBank(pAddress);
+
+    if (bank != null) {bank[nextSubAddress(pAddress)] = (short)pValue; return;}
+
+    data.poke(pAddress, pValue);
+
+    if (pAddress == MMR_DXR11) {startTransmit();}
+
+}//end of C54xCore::writeMMR
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::writeAccPart
+//
+// Replaces the bits of accumulator pAcc selected by pMask shifted left by
+// pShift with pValue, as done by a write to AL, AH, or AG.
+//
+
+void writeAccPart(int pAcc, int pShift, long pMask, int pValue)
+{
+
+    reg[pAcc] = reg[pAcc] & ~(pMask << pShift) | (pValue & pMask) << pShift;
+
+}//end of C54xCore::writeAccPart
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::getSubBank
+//
+// Returns the sub-addressed register bank accessed through the data register
+// at pAddress or null if pAddress is not such a data register.
+//
+
+short[] getSubBank(int pAddress)
+{
+
+    switch(pAddress){
+        case MMR_DMSDI: case MMR_DMSDN: return(dmaBank);
+        case MMR_SPSD0: return(serialBanks[0]);
+        case MMR_SPSD1: return(serialBanks[1]);
+        case MMR_SPSD2: return(serialBanks[2]);
+        default: return(null);
+    }
+
+}//end of C54xCore::getSubBank
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::nextSubAddress
+//
+// Returns the sub-address held in the address register for the data register
+// at pAddress. The DMA address register is incremented when accessed through
+// DMSDI. The McBSP address registers are the word before the data register.
+//
+
+int nextSubAddress(int pAddress)
+{
+
+    if (pAddress == MMR_DMSDI || pAddress == MMR_DMSDN){
+        int sub = data.peek(MMR_DMSA) % SUB_BANK_SIZE;
+        if (pAddress == MMR_DMSDI) {data.poke(MMR_DMSA, sub + 1);}
+        return(sub);
+    }
+
+    return(data.peek(pAddress - 1) % SUB_BANK_SIZE);
+
+}//end of C54xCore::nextSubAddress
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::setOverlay
+//
+// Maps the DARAM into both the program and data spaces if pOverlay is true
+// or gives the program space its own storage if false, as done by the OVLY
+// bit of PMST.
+//
+// While the spaces are overlaid, the shared data pages are marked as code so
+// that data writes to them invalidate the decoded instructions.
+//
+
+public void setOverlay(boolean pOverlay)
+{
+
+    if (pOverlay == overlay) {return;}
+
+    overlay = pOverlay;
+
+    if (pOverlay){
+        program.sharePages(data, OVERLAY_START, OVERLAY_LENGTH);
+        data.setCodeCache(OVERLAY_START, OVERLAY_LENGTH, getDecodeCache());
+    }
+    else{
+        program.unsharePages(OVERLAY_START, OVERLAY_LENGTH);
+        data.setCodeCache(OVERLAY_START, OVERLAY_LENGTH, null);
+    }
+
+    getDecodeCache().invalidateAll();
+
+}//end of C54xCore::setOverlay
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::address
+//
+// Returns the data address for Smem operand pSmem -- the 8 bit address field
+// of the instruction with any long offset word in the upper bits. For
+// indirect addressing, the auxiliary register is modified as specified.
+//
+
+public int address(int pSmem)
+{
+
+    //direct addressing -- relative to the data page or the stack pointer
+
+    if ((pSmem & 0x80) == 0){
+        if ((reg[ST1] & CPL) == 0){
+            return((int)(reg[ST0] & DP_MASK) << 7 | (pSmem & 0x7f));
+        }
+        return((int)(reg[SP] + (pSmem & 0x7f)) & 0xffff);
+    }
+
+    //indirect addressing -- through the auxiliary register in the low 3 bits
+    //with the modification in the next 4 bits
+
+    int ar = AR0 + (pSmem & 0x7);
+    int x = (int)reg[ar];
+    int address = x;
+    int lk = (pSmem >>> 8) & 0xffff;
+
+    switch((pSmem >> 3) & 0xf){
+
+        case 0: break;                                      // *ARx
+        case 1: x--; break;                                 // *ARx-
+        case 2: x++; break;                                 // *ARx+
+        case 3: x++; address = x; break;                    // *+ARx
+        case 4: x = reverseCarry(x, -(int)reg[AR0]); break; // *ARx-0B
+        case 5: x -= (int)reg[AR0]; break;                  // *ARx-0
+        case 6: x += (int)reg[AR0]; break;                  // *ARx+0
+        case 7: x = reverseCarry(x, (int)reg[AR0]); break;  // *ARx+0B
+        case 8: x = circular(x, -1); break;                 // *ARx-%
+        case 9: x = circular(x, -(int)reg[AR0]); break;     // *ARx-0%
+        case 10: x = circular(x, 1); break;                 // *ARx+%
+        case 11: x = circular(x, (int)reg[AR0]); break;     // *ARx+0%
+        case 12: address = x + lk; break;                   // *ARx(lk)
+        case 13: x += lk; address = x; break;               // *+ARx(lk)
+        case 14: x = circular(x, (short)lk); address = x; break; // *+ARx(lk)%
+        default: address = lk; break;                       // *(lk)
+
+    }
+
+    reg[ar] = x & 0xffff;
+
+    return(address & 0xffff);
+
+}//end of C54xCore::address
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::mmrAddress
+//
+// Returns the address of the memory-mapped register specified by MMR operand
+// pSmem. The address is always in the first data page regardless of the data
+// page pointer or the upper bits of the auxiliary register.
+//
+
+public int mmrAddress(int pSmem)
+{
+
+    if ((pSmem & 0x80) == 0) {return(pSmem & 0x7f);}
+
+    return(address(pSmem) & 0x7f);
+
+}//end of C54xCore::mmrAddress
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::dualAddress
+//
+// Returns the data address for the 4 bit Xmem or Ymem operand pField of a
+// dual operand instruction. These can only use AR2-AR5.
+//
+
+public int dualAddress(int pField)
+{
+
+    int ar = AR0 + 2 + (pField & 0x3);
+    int x = (int)reg[ar];
+    int address = x;
+
+    switch((pField >> 2) & 0x3){
+        case 0: break;                                      // *ARx
+        case 1: x--; break;                                 // *ARx-
+        case 2: x++; break;                                 // *ARx+
+        default: x = circular(x, (int)reg[AR0]); break;     // *ARx+0%
+    }
+
+    reg[ar] = x & 0xffff;
+
+    return(address);
+
+}//end of C54xCore::dualAddress
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::circular
+//
+// Returns auxiliary register value pAR moved by pStep within the circular
+// buffer of size BK. The buffer starts on the boundary of the smallest power
+// of two greater than BK. A BK of zero disables circular addressing.
+//
+
+int circular(int pAR, int pStep)
+{
+
+    int size = (int)reg[BK];
+
+    if (size == 0) {return(pAR + pStep);}
+
+    int mask = (Integer.highestOneBit(size) << 1) - 1;
+    int index = (pAR & mask) + pStep;
+
+    if (index >= size) {index -= size;}
+    else
+    if (index < 0) {index += size;}
+
+    return((pAR & ~mask) + index);
+
+}//end of C54xCore::circular
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::reverseCarry
+//
+// Returns pAR plus pStep with the carry propagated from the most significant
+// bit to the least as used for bit-reversed addressing in FFTs.
+//
+
+static int reverseCarry(int pAR, int pStep)
+{
+
+    int sum = (Integer.reverse(pAR) >>> 16) + (Integer.reverse(pStep) >>> 16);
+
+    return(Integer.reverse(sum) >>> 16);
+
+}//end of C54xCore::reverseCarry
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::read
+//
+// Returns the unsigned word at Smem operand pSmem.
+//
+
+public int read(int pSmem)
+{
+
+    return(data.read16(address(pSmem)));
+
+}//end of C54xCore::read
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::write
+//
+// Writes pValue to Smem operand pSmem.
+//
+
+public void write(int pSmem, int pValue)
+{
+
+    data.write16(address(pSmem), pValue);
+
+}//end of C54xCore::write
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::extend
+//
+// Returns data word pValue sign extended if SXM is set or zero extended if
+// it is not, as done when a data word is loaded into the ALU.
+//
+
+public long extend(int pValue)
+{
+
+    return(C54xAlu.extend16(pValue, reg[ST1] >> SXM_BIT & 1));
+
+}//end of C54xCore::extend
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::acc
+//
+// Returns accumulator pAcc (A = 0, B = 1) sign extended from 40 bits.
+//
+
+public long acc(int pAcc)
+{
+
+    return(C54xAlu.signExtend40(reg[pAcc]));
+
+}//end of C54xCore::acc
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::setAcc
+//
+// Stores pValue in accumulator pAcc without affecting the status bits, as
+// done by loads.
+//
+
+public void setAcc(int pAcc, long pValue)
+{
+
+    reg[pAcc] = pValue & MASK_40;
+
+}//end of C54xCore::setAcc
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::setAccResult
+//
+// Stores ALU result pValue in accumulator pAcc. If the result does not fit in
+// 32 bits, the accumulator's overflow flag is set and, if OVM is set, the
+// result is saturated to the largest positive or negative 32 bit value.
+//
+
+public void setAccResult(int pAcc, long pValue)
+{
+
+    long overflow = C54xAlu.overflow32(pValue);
+
+    //OVA is the bit above OVB; A is 0 and B is 1
+    reg[ST0] |= overflow << (OVB_BIT + 1 - pAcc);
+
+    pValue = C54xAlu.saturate32(pValue, overflow & reg[ST1] >> OVM_BIT);
+
+    reg[pAcc] = pValue & MASK_40;
+
+}//end of C54xCore::setAccResult
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::add
+//
+// Stores pX + pY in accumulator pAcc, setting the carry bit if the addition
+// carries out of bit 31.
+//
+
+public void add(int pAcc, long pX, long pY)
+{
+
+    setCarryLater(C54xAlu.addCarryWord(pX, pY), C54xAlu.ADD_CARRY_BIT);
+
+    setAccResult(pAcc, pX + pY);
+
+}//end of C54xCore::add
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::sub
+//
+// Stores pX - pY in accumulator pAcc, clearing the carry bit if the
+// subtraction borrows into bit 31.
+//
+
+public void sub(int pAcc, long pX, long pY)
+{
+
+    setCarryLater(C54xAlu.subCarryWord(pX, pY), C54xAlu.SUB_CARRY_BIT);
+
+    setAccResult(pAcc, pX - pY);
+
+}//end of C54xCore::sub
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::accHigh
+//
+// Returns bits 32-16 of accumulator pAcc as a signed 17 bit value, as used as
+// a multiplier operand.
+//
+
+public long accHigh(int pAcc)
+{
+
+    return((reg[pAcc] << 31) >> 47);
+
+}//end of C54xCore::accHigh
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::product
+//
+// Returns multiplier result pProduct shifted left by one if FRCT is set for
+// fractional mode.
+//
+
+public long product(long pProduct)
+{
+
+    return(pProduct << (reg[ST1] >> FRCT_BIT & 1));
+
+}//end of C54xCore::product
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::shiftArithmetic
+//
+// Stores accumulator pSrc shifted by pShift in accumulator pDst. The value is
+// sign extended when shifted right if SXM is set. The carry bit receives the
+// last bit shifted out.
+//
+
+public void shiftArithmetic(int pSrc, int pDst, int pShift)
+{
+
+    //the value is sign extended for a left shift or when SXM is set
+
+    long extendMask = -(reg[ST1] >> SXM_BIT & 1 | (-pShift >>> 31));
+    long v = acc(pSrc) & extendMask | reg[pSrc] & ~extendMask;
+
+    setCarryLater(v & Long.MAX_VALUE, C54xAlu.shiftOutBit(pShift, 40));
+
+    setAccResult(pDst, C54xAlu.shift(v, pShift));
+
+}//end of C54xCore::shiftArithmetic
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::shiftLogical
+//
+// Stores bits 31-0 of accumulator pSrc shifted by pShift in accumulator pDst
+// with the guard bits cleared. Zeros are shifted in from either end. The
+// carry bit receives the last bit shifted out.
+//
+
+public void shiftLogical(int pSrc, int pDst, int pShift)
+{
+
+    long v = reg[pSrc] & C54xAlu.MASK_32;
+
+    setCarryLater(v, C54xAlu.shiftOutBit(pShift, 32));
+
+    reg[pDst] = C54xAlu.shiftLogical32(v, pShift);
+
+}//end of C54xCore::shiftLogical
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::shift
+//
+// Returns pValue shifted left for positive pShift or right (arithmetically)
+// for negative pShift.
+//
+
+public static long shift(long pValue, int pShift)
+{
+
+    return(C54xAlu.shift(pValue, pShift));
+
+}//end of C54xCore::shift
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::setCarry
+//
+// Sets the carry bit if pCarry is true, clears it otherwise. Any pending
+// carry is discarded.
+//
+
+public void setCarry(boolean pCarry)
+{
+
+    carryPending = false;
+
+    if (pCarry) {reg[ST0] |= C;} else {reg[ST0] &= ~C;}
+
+}//end of C54xCore::setCarry
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::setCarryLater
+//
+// Records that the carry is bit pBit of pWord without computing it. The bit
+// is put into ST0 by syncFlags when the carry is read.
+//
+
+public void setCarryLater(long pWord, int pBit)
+{
+
+    carryWord = pWord; carryBit = pBit; carryPending = true;
+
+}//end of C54xCore::setCarryLater
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::syncFlags
+//
+// Puts any pending carry into the C bit of ST0. Must be called before the
+// status bits in ST0 are read.
+//
+
+public void syncFlags()
+{
+
+    if (!carryPending) {return;}
+
+    reg[ST0] = reg[ST0] & ~C | (carryWord >>> carryBit & 1) << C_BIT;
+    carryPending = false;
+
+}//end of C54xCore::syncFlags
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::syncRegisters
+//
+// Brings the lazily computed status bits up to date for the debugger.
+//
+
+@Override
+public void syncRegisters()
+{
+
+    syncFlags();
+
+}//end of C54xCore::syncRegisters
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::registersChanged
+//
+// Maps the DARAM as selected by the OVLY bit of PMST, which may have been
+// changed along with the register file.
+//
+
+@Override
+public void registersChanged()
+{
+
+    setOverlay((reg[PMST] & OVLY) != 0);
+
+}//end of C54xCore::registersChanged
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::dmaReceive
+//
+// Stores pValue as DMA channel pChannel would when its sync event occurs,
+// such as when a McBSP receives a word. The DMA controller itself is not
+// simulated -- the word is written to the channel's destination address,
+// which is then advanced within the circular buffer of DMCTR words in which
+// it lies, as done in ABU mode. The buffer is aligned on a power of two at
+// least as large as its size.
+//
+
+public void dmaReceive(int pChannel, int pValue)
+{
+
+    int dst = dmaBank[pChannel * DMA_CHANNEL_SIZE + DMDST0] & 0xffff;
+    int size = dmaBank[pChannel * DMA_CHANNEL_SIZE + DMCTR0] & 0xffff;
+
+    data.write16(dst, pValue);
+
+    int start = size == 0 ? dst : dst & -Integer.highestOneBit(2 * size - 1);
+    int next = size == 0 ? dst + 1 : start + (dst + 1 - start) % size;
+
+    dmaBank[pChannel * DMA_CHANNEL_SIZE + DMDST0] = (short)next;
+
+}//end of C54xCore::dmaReceive
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::hostReceive
+//
+// Sends pValue from the host to McBSP1. The word is received, and stored by
+// DMA channel 1, SERIAL_WORD_CYCLES after the word sent before it or after
+// the present cycle, whichever is later.
+//
+
+public void hostReceive(int pValue)
+{
+
+    if (hostCount == hostWords.length){
+        int[] words = new int[hostWords.length * 2];
+        for (int i = 0; i < hostCount; i++){
+            words[i] = hostWords[(hostHead + i) % hostWords.length];
+        }
+        hostWords = words; hostHead = 0;
+    }
+
+    hostWords[(hostHead + hostCount) % hostWords.length] = pValue;
+
+    //the receiver is idle, so this word starts arriving now
+    if (hostCount++ == 0){
+        events.schedule(cycles + SERIAL_WORD_CYCLES, HOST_WORD_RECEIVED);
+    }
+
+}//end of C54xCore::hostReceive
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::receiveHostWord
+//
+// Completes the reception of the next word from the host at cycle pCycle
+// and starts the reception of the one after it, if any.
+//
+
+void receiveHostWord(long pCycle)
+{
+
+    if (hostCount == 0) {return;}
+
+    int value = hostWords[hostHead];
+    hostHead = (hostHead + 1) % hostWords.length;
+    hostCount--;
+
+    dmaReceive(MCBSP1_DMA_CHANNEL, value);
+
+    if (hostCount > 0){
+        events.schedule(pCycle + SERIAL_WORD_CYCLES, HOST_WORD_RECEIVED);
+    }
+
+}//end of C54xCore::receiveHostWord
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::setHostListener
+//
+// Sets pListener to receive the words McBSP1 sends to the host, or none if
+// null.
+//
+
+public void setHostListener(SerialListener pListener)
+{
+
+    hostListener = pListener;
+
+}//end of C54xCore::setHostListener
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::startTransmit
+//
+// Starts sending the word in DXR11 to the host if the McBSP1 transmitter is
+// enabled and idle. If it is busy, the word will be sent after the one being
+// sent, as the transmit shift register is only loaded from DXR11 when free.
+//
+
+void startTransmit()
+{
+
+    if (transmitBusy || (serialBanks[1][SPCR2] & XRST) == 0) {return;}
+
+    transmitBusy = true;
+    events.schedule(cycles + SERIAL_WORD_CYCLES, HOST_WORD_SENT);
+
+}//end of C54xCore::startTransmit
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::transmitHostWord
+//
+// Completes sending the word in DXR11 to the host at cycle pCycle. If DMA
+// channel 2 is enabled, the next word of its block is moved into DXR11 and
+// sent in turn, and the channel is disabled when its element count has run
+// out, as done with AutoInit off. The source address is incremented after
+// each element. The word is then passed to the hostListener.
+//
+
+void transmitHostWord(long pCycle)
+{
+
+    int value = data.peek(MMR_DXR11) & 0xff;
+
+    int channel = MCBSP1_TX_DMA_CHANNEL * DMA_CHANNEL_SIZE;
+    int enable = 1 << MCBSP1_TX_DMA_CHANNEL;
+    int dmprec = data.peek(MMR_DMPREC);
+
+    boolean more = (dmprec & enable) != 0;
+
+    if (more){
+
+        int src = dmaBank[channel + DMSRC0] & 0xffff;
+        int count = dmaBank[channel + DMCTR0] & 0xffff;
+
+        data.poke(MMR_DXR11, data.read16(src));
+        dmaBank[channel + DMSRC0] = (short)(src + 1);
+
+        if (count == 0) {data.poke(MMR_DMPREC, dmprec & ~enable);}
+        else {dmaBank[channel + DMCTR0] = (short)(count - 1);}
+
+        events.schedule(pCycle + SERIAL_WORD_CYCLES, HOST_WORD_SENT);
+
+    }
+    else {transmitBusy = false;}
+
+    if (hostListener != null) {hostListener.wordSent(this, value, !more);}
+
+}//end of C54xCore::transmitHostWord
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::saveExtraState
+//
+// Returns the DARAM mapping, the BIO pin, and copies of the sub-addressed
+// register banks and the words in transit from the host for a snapshot. The
+// pending carry has already been put into ST0 by syncRegisters.
+//
+
+@Override
+public Object saveExtraState()
+{
+
+    SavedState state = new SavedState();
+
+    state.overlay = overlay; state.bioLow = bioLow;
+    state.transmitBusy = transmitBusy;
+    state.dmaBank = dmaBank.clone();
+    state.serialBanks = new short[serialBanks.length][];
+
+    for (int i = 0; i < serialBanks.length; i++){
+        state.serialBanks[i] = serialBanks[i].clone();
+    }
+
+    state.hostWords = new int[hostCount];
+    for (int i = 0; i < hostCount; i++){
+        state.hostWords[i] = hostWords[(hostHead + i) % hostWords.length];
+    }
+
+    return(state);
+
+}//end of C54xCore::saveExtraState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::sameExtraState
+//
+// Returns true if the state returned by saveExtraState as pState is the same
+// as the present state.
+//
+
+@Override
+public boolean sameExtraState(Object pState)
+{
+
+    SavedState state = (SavedState)pState;
+
+    if (state.overlay != overlay || state.bioLow != bioLow
+                                    || state.transmitBusy != transmitBusy
+                                    || state.hostWords.length != hostCount
+                                    || !Arrays.equals(state.dmaBank, dmaBank)){
+        return(false);
+    }
+
+    for (int i = 0; i < serialBanks.length; i++){
+        if (!Arrays.equals(state.serialBanks[i], serialBanks[i])){
+            return(false);
+        }
+    }
+
+    return(true);
+
+}//end of C54xCore::sameExtraState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::restoreExtraState
+//
+// Restores the state returned by saveExtraState.
+//
+
+@Override
+public void restoreExtraState(Object pState)
+{
+
+    SavedState state = (SavedState)pState;
+
+    setOverlay(state.overlay);
+    bioLow = state.bioLow;
+    transmitBusy = state.transmitBusy;
+
+    System.arraycopy(state.dmaBank, 0, dmaBank, 0, dmaBank.length);
+
+    for (int i = 0; i < serialBanks.length; i++){
+        System.arraycopy(state.serialBanks[i], 0, serialBanks[i], 0,
+                                                      serialBanks[i].length);
+    }
+
+    //the event for the word arriving is restored with the base state
+
+    hostHead = 0; hostCount = state.hostWords.length;
+    if (hostWords.length < hostCount) {hostWords = new int[hostCount];}
+    System.arraycopy(state.hostWords, 0, hostWords, 0, hostCount);
+
+    carryPending = false;
+
+}//end of C54xCore::restoreExtraState
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::setTC
+//
+// Sets the test/control flag if pTC is true, clears it otherwise.
+//
+
+public void setTC(boolean pTC)
+{
+
+    if (pTC) {reg[ST0] |= TC;} else {reg[ST0] &= ~TC;}
+
+}//end of C54xCore::setTC
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::getASM
+//
+// Returns the accumulator shift mode field of ST1 sign extended.
+//
+
+public int getASM()
+{
+
+    return(((int)reg[ST1] << 27) >> 27);
+
+}//end of C54xCore::getASM
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::condition
+//
+// Returns true if condition code pCond is met. Any pending carry is computed
+// first.
+//
+// For accumulator conditions (bit 6 set), bit 3 selects the accumulator,
+// bits 2-0 select the comparison with zero, and bits 5-4 select an overflow
+// test. Testing the overflow flag clears it. For the other conditions, bits
+// 5-4 test TC, bits 3-2 test the carry, and bits 1-0 test the BIO pin. Each
+// test is enabled by the upper bit of its field and the lower bit selects
+// the state tested for. All enabled tests must be met.
+//
+
+public boolean condition(int pCond)
+{
+
+    syncFlags();
+
+    boolean met = true;
+
+    if ((pCond & 0x40) != 0){
+
+        int acc = (pCond >> 3) & 1;
+        long v = acc(acc);
+
+        switch(pCond & 0x7){
+            case 2: met = v >= 0; break;
+            case 3: met = v < 0; break;
+            case 4: met = v != 0; break;
+            case 5: met = v == 0; break;
+            case 6: met = v > 0; break;
+            case 7: met = v <= 0; break;
+            default: break;
+        }
+
+        if ((pCond & 0x20) != 0){
+            long flag = acc == A ? OVA : OVB;
+            met &= ((reg[ST0] & flag) != 0) == ((pCond & 0x10) != 0);
+            reg[ST0] &= ~flag;
+        }
+
+        return(met);
+
+    }
+
+    if ((pCond & 0x20) != 0){
+        met &= ((reg[ST0] & TC) != 0) == ((pCond & 0x10) != 0);
+    }
+
+    if ((pCond & 0x08) != 0){
+        met &= ((reg[ST0] & C) != 0) == ((pCond & 0x04) != 0);
+    }
+
+    if ((pCond & 0x02) != 0){
+        met &= bioLow == ((pCond & 0x01) != 0);
+    }
+
+    return(met);
+
+}//end of C54xCore::condition
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::push
+//
+// Pushes pValue onto the stack -- the stack pointer is decremented first.
+//
+
+public void push(int pValue)
+{
+
+    reg[SP] = (reg[SP] - 1) & 0xffff;
+
+    data.write16((int)reg[SP], pValue);
+
+}//end of C54xCore::push
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::pop
+//
+// Returns the value popped from the stack.
+//
+
+public int pop()
+{
+
+    int value = data.read16((int)reg[SP]);
+
+    reg[SP] = (reg[SP] + 1) & 0xffff;
+
+    return(value);
+
+}//end of C54xCore::pop
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::incrementedAR
+//
+// Returns the register id of the auxiliary register if Smem operand pSmem is
+// *ARx+ or -1 if it is any other form. Used to recognize repeated operations
+// which step through a buffer.
+//
+
+static int incrementedAR(int pSmem)
+{
+
+    if ((pSmem & 0x80) == 0 || (pSmem >> 3 & 0xf) != 2) {return(-1);}
+
+    return(AR0 + (pSmem & 0x7));
+
+}//end of C54xCore::incrementedAR
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::incrementedDualAR
+//
+// Returns the register id of the auxiliary register if Xmem or Ymem operand
+// pField is *ARx+ or -1 if it is any other form.
+//
+
+static int incrementedDualAR(int pField)
+{
+
+    if ((pField >> 2 & 0x3) != 2) {return(-1);}
+
+    return(AR0 + 2 + (pField & 0x3));
+
+}//end of C54xCore::incrementedDualAR
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::isPlainBuffer
+//
+// Returns true if the pLength words of data space from pAddress lie above the
+// memory-mapped registers and do not wrap around the end of the space. An
+// access to such a buffer cannot change any register.
+//
+
+static boolean isPlainBuffer(int pAddress, int pLength)
+{
+
+    return(pAddress >= MemorySet.PAGE_SIZE && pAddress + pLength <= 0x10000);
+
+}//end of C54xCore::isPlainBuffer
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xCore::mvmmRegister
+//
+// Returns the register id for MMRx/MMRy code pCode of the MVMM instruction --
+// 0-7 select AR0-AR7 and 8 selects SP.
+//
+
+public static int mvmmRegister(int pCode)
+{
+
+    return(pCode < 8 ? AR0 + pCode : SP);
+
+}//end of C54xCore::mvmmRegister
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// class SavedState
+//
+// The state of the core kept outside the register file and the address
+// spaces, for a snapshot.
+//
+
+static class SavedState
+{
+
+    boolean overlay;
+    boolean bioLow;
+    boolean transmitBusy;
+    short[] dmaBank;
+    short[][] serialBanks;
+    int[] hostWords;
+
+}//end of class SavedState
+//-----------------------------------------------------------------------------
+
+}//end of class C54xCore
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
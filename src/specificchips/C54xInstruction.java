@@ -0,0 +1,337 @@
+/******************************************************************************
+* Title: Universal IDE - C54xInstruction.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class provides base functionality for an instruction of the Texas
+* Instruments TMS320C54x DSP family. It adds the operand format to the base
+* Instruction -- the format describes where the operand fields lie in the
+* instruction words and the order in which the operands are written in the
+* assembler source.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package specificchips;
+
+import dspsimulation.Core;
+import dspsimulation.DecodeCache;
+import dspsimulation.Instruction;
+
+//-----------------------------------------------------------------------------
+// class C54xInstruction
+//
+
+public class C54xInstruction extends Instruction
+{
+
+    //operand format -- one of the format constants below
+    public int format;
+
+    //Operand formats
+    //
+    // Smem is a single data memory operand (direct or indirect addressing),
+    // MMR is a memory-mapped register, acc/src/dst are accumulator A or B,
+    // lk is a 16 bit long constant in an extension word, K/k are short
+    // constants in the opcode word, pmad is a program memory address in an
+    // extension word, cond is a condition code, SHIFT is a signed 5 bit shift
+    // and SHFT is an unsigned 4 bit shift.
+
+    public static final int NONE = 0;           // nop
+    public static final int SMEM = 1;           // mar Smem
+    public static final int MMR = 2;            // pshm MMR
+    public static final int SMEM_ACC = 3;       // ld Smem, dst
+    public static final int SMEM_16_ACC = 4;    // ld Smem, 16, dst
+    public static final int SMEM_SHIFT_ACC = 5; // ld Smem, SHIFT, dst
+    public static final int MMR_ACC = 6;        // ldm MMR, dst
+    public static final int ACC_SMEM = 7;       // stl src, Smem
+    public static final int ACC_SHIFT_SMEM = 8; // stl src, SHIFT, Smem
+    public static final int ACC_MMR = 9;        // stlm src, MMR
+    public static final int SMEM_LK = 10;       // bitf Smem, #lk
+    public static final int LK_SMEM = 11;       // orm #lk, Smem
+    public static final int LK_MMR = 12;        // stm #lk, MMR
+    public static final int K8_ACC = 13;        // ld #K, dst
+    public static final int K9_DP = 14;         // ld #k9, DP
+    public static final int K5_ASM = 15;        // ld #k5, ASM
+    public static final int K3_ARP = 16;        // ld #k3, ARP
+    public static final int K8 = 17;            // rpt #K
+    public static final int LK = 18;            // rpt #lk
+    public static final int ACC_LK = 19;        // rptz dst, #lk
+    public static final int LK_SHFT_SD = 20;    // add #lk, SHFT, src, dst
+    public static final int LK_16_SD = 21;      // add #lk, 16, src, dst
+    public static final int SRC_SHIFT_DST = 22; // add src, SHIFT, dst
+    public static final int SRC_DST = 23;       // neg src, dst
+    public static final int ACC = 24;           // max dst
+    public static final int PMAD = 25;          // b pmad
+    public static final int COND_PMAD = 26;     // bc pmad, cond
+    public static final int COND = 27;          // rc cond
+    public static final int N_COND = 28;        // xc n, cond
+    public static final int SMEM_PMAD = 29;     // banz pmad, Sind
+    public static final int XMEM_YMEM = 30;     // mvdd Xmem, Ymem
+    public static final int MMRX_MMRY = 31;     // mvmm MMRx, MMRy
+    public static final int ST_LD = 32;         // st src, Ymem || ld Xmem, dst
+    public static final int SBIT = 33;          // ssbx N, SBIT
+    public static final int IDLE = 34;          // idle K
+
+    //Decoded operand values
+    //
+    // Smem operands are stored in operand A as the 8 bit address field of the
+    // opcode with any long offset word shifted into the upper bits. A single
+    // accumulator is stored in operand B as 0 for A or 1 for B. For formats
+    // with a shift and/or both a source and destination accumulator, operand
+    // B holds the shift in its low byte (signed) with the source and
+    // destination at SRC_BIT and DST_BIT. Long constants and program
+    // addresses from extension words are stored in operand B if the Smem
+    // field is in operand A, otherwise in operand A.
+
+    public static final int SRC_BIT = 8;
+    public static final int DST_BIT = 9;
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::C54xInstruction (constructor)
+//
+// Creates an instruction with mnemonic pMnemonic which is encoded as pOpcode
+// in the bits selected by pOpcodeMask and which has operand format pFormat.
+// See Instruction for the other parameters.
+//
+
+public C54xInstruction(String pMnemonic, int pOpcode, int pOpcodeMask,
+                int pFormat, int pNumWords, int pNumCycles, int pNumCyclesTaken)
+{
+
+    super(pMnemonic, pOpcode, pOpcodeMask, pNumWords, pNumCycles,
+                                                            pNumCyclesTaken);
+
+    format = pFormat;
+
+}//end of C54xInstruction::C54xInstruction (constructor)
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::decode
+//
+// Extracts the operand fields from the instruction at pAddress according to
+// the instruction's format and stores the decoded record in pCache. See the
+// notes at the top of the class for the meaning of the operand values.
+//
+// Smem operands which use a long offset (indirect modes *ARx(lk), *+ARx(lk),
+// *+ARx(lk)%, and *(lk)) add a word and a cycle to the instruction. The
+// offset word follows the opcode word(s) and precedes any other extension
+// word.
+//
+
+@Override
+public void decode(Core pCore, int pAddress, int pWord, DecodeCache pCache)
+{
+
+    int a = 0, b = 0, words = numWords, cycles = numCycles;
+
+    //the first word after the opcode word(s)
+    int ext = pAddress + (prefixMask != 0 ? 2 : 1);
+
+    //the word holding the opcode fields -- the second word for prefixed
+    //instructions
+    int op = prefixMask != 0 ? pCore.readProgram(pAddress + 1) : pWord;
+
+    switch(format){
+
+        case SMEM: case MMR:
+        case SMEM_ACC: case SMEM_16_ACC: case MMR_ACC:
+        case ACC_SMEM: case ACC_MMR:
+        case SMEM_LK: case LK_SMEM: case LK_MMR:
+        case SMEM_PMAD:
+        case SMEM_SHIFT_ACC: case ACC_SHIFT_SMEM:
+
+            a = pWord & 0xff;
+
+            if (hasLongOffset(a)){
+                a |= pCore.readProgram(ext) << 8;
+                ext++; words++; cycles++;
+            }
+
+            if (format == SMEM_LK || format == LK_SMEM || format == LK_MMR
+                                                    || format == SMEM_PMAD){
+                b = pCore.readProgram(ext);
+            }
+            else
+            if (format == SMEM_SHIFT_ACC){
+                b = ((op >> 8) & 1) << DST_BIT | (signExtend5(op) & 0xff);
+            }
+            else
+            if (format == ACC_SHIFT_SMEM){
+                b = ((op >> 8) & 1) << SRC_BIT | (signExtend5(op) & 0xff);
+            }
+            else {
+                b = (op >> 8) & 1;
+            }
+
+            break;
+
+        case K8_ACC: a = pWord & 0xff; b = (pWord >> 8) & 1; break;
+
+        case K9_DP: a = pWord & 0x1ff; break;
+
+        case K5_ASM: a = signExtend5(pWord); break;
+
+        case K3_ARP: a = pWord & 0x7; break;
+
+        case K8: a = pWord & 0xff; break;
+
+        case LK: case PMAD: a = pCore.readProgram(ext); break;
+
+        case ACC_LK:
+            a = pCore.readProgram(ext); b = (pWord >> 8) & 1; break;
+
+        case LK_SHFT_SD:
+            a = pCore.readProgram(ext); b = srcDst(pWord) | (pWord & 0xf);
+            break;
+
+        case LK_16_SD:
+            a = pCore.readProgram(ext); b = srcDst(pWord) | 16; break;
+
+        case SRC_SHIFT_DST:
+            b = srcDst(pWord) | (signExtend5(pWord) & 0xff); break;
+
+        case SRC_DST: b = srcDst(pWord); break;
+
+        case ACC: b = (pWord >> 8) & 1; break;
+
+        case COND_PMAD:
+            a = pCore.readProgram(ext); b = pWord & 0xff; break;
+
+        case COND: b = pWord & 0xff; break;
+
+        case N_COND: a = ((pWord >> 9) & 1) + 1; b = pWord & 0xff; break;
+
+        case XMEM_YMEM: case MMRX_MMRY:
+            a = (pWord >> 4) & 0xf; b = pWord & 0xf; break;
+
+        case ST_LD:
+            a = (pWord >> 4) & 0xf | (pWord & 0xf) << 4;
+            b = srcDst(pWord);
+            break;
+
+        case SBIT: a = (pWord >> 11) & 1; b = pWord & 0xf; break;
+
+        case IDLE: a = ((pWord >> 8) & 3) + 1; break;
+
+        default: break;
+
+    }
+
+    pCache.store(pAddress, this, a, b, words, cycles);
+
+}//end of C54xInstruction::decode
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::hasLongOffset
+//
+// Returns true if the Smem address field pSmem uses indirect addressing with
+// a long offset word.
+//
+
+public static boolean hasLongOffset(int pSmem)
+{
+
+    return((pSmem & 0x80) != 0 && (pSmem & 0x78) >= 0x60);
+
+}//end of C54xInstruction::hasLongOffset
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::addTakenCycles
+//
+// Adds the extra cycles used by a conditional instruction when its condition
+// is met to the cycle count of pCore.
+//
+
+protected void addTakenCycles(Core pCore)
+{
+
+    pCore.cycles += numCyclesTaken - numCycles;
+
+}//end of C54xInstruction::addTakenCycles
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::srcAcc
+//
+// Returns the source accumulator from decoded operand value pB.
+//
+
+static int srcAcc(int pB)
+{
+
+    return((pB >> SRC_BIT) & 1);
+
+}//end of C54xInstruction::srcAcc
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::dstAcc
+//
+// Returns the destination accumulator from decoded operand value pB.
+//
+
+static int dstAcc(int pB)
+{
+
+    return((pB >> DST_BIT) & 1);
+
+}//end of C54xInstruction::dstAcc
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::shiftCount
+//
+// Returns the signed shift count from decoded operand value pB.
+//
+
+static int shiftCount(int pB)
+{
+
+    return((byte)pB);
+
+}//end of C54xInstruction::shiftCount
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::srcDst
+//
+// Returns the source and destination accumulator bits of opcode word pWord
+// (bits 9 and 8) moved to SRC_BIT and DST_BIT.
+//
+
+static int srcDst(int pWord)
+{
+
+    return(((pWord >> 9) & 1) << SRC_BIT | ((pWord >> 8) & 1) << DST_BIT);
+
+}//end of C54xInstruction::srcDst
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstruction::signExtend5
+//
+// Returns the low 5 bits of pWord sign extended -- used for the SHIFT and k5
+// fields which range from -16 to 15.
+//
+
+static int signExtend5(int pWord)
+{
+
+    return((pWord << 27) >> 27);
+
+}//end of C54xInstruction::signExtend5
+//-----------------------------------------------------------------------------
+
+}//end of class C54xInstruction
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -0,0 +1,929 @@
+/******************************************************************************
+* Title: Universal IDE - C54xInstructions.java
+* Author: Mike Schoonover
+* Date: 2/3/13
+*
+* Purpose:
+*
+* This class creates the instructions of the Texas Instruments TMS320C54x DSP
+* family and adds them to an InstructionSet.
+*
+* Each entry gives the mnemonic, the opcode and opcode mask of the first
+* instruction word, the operand format, the number of words, and the number
+* of cycles (when not taken / when taken for conditional instructions). The
+* encodings are from the opcode summary in the TMS320C54x DSP Reference Set,
+* Volume 2: Mnemonic Instruction Set. Where operand ranges of two entries
+* overlap, the entry with the more specific mask takes precedence as it does
+* in the chip's decoder.
+*
+* Each entry with behaviour is an anonymous sub-class whose execute method
+* performs the instruction on a C54xCore using the operand values extracted
+* by C54xInstruction.decode.
+*
+* Only the instructions used by our DSP code are listed so far -- add more as
+* they are needed.
+*
+* Open Source Policy:
+*
+* This source code is Public Domain and free to any interested party.  Any
+* person, company, or organization may do with it as they please.
+*
+*/
+
+package specificchips;
+
+import dspsimulation.Core;
+import dspsimulation.InstructionSet;
+import static specificchips.C54xCore.*;
+import static specificchips.C54xInstruction.*;
+
+//-----------------------------------------------------------------------------
+// class C54xInstructions
+//
+
+public class C54xInstructions
+{
+
+    //first word of the two word instructions which take a 5 bit shift --
+    //the instruction is identified by the second word
+
+    static final int SHIFT_PREFIX = 0x6f00;
+    static final int SHIFT_PREFIX_MASK = 0xff00;
+
+//-----------------------------------------------------------------------------
+// C54xInstructions::addInstructions
+//
+// Adds all C54x instructions to pSet.
+//
+
+public static void addInstructions(InstructionSet pSet)
+{
+
+    addLoadStoreInstructions(pSet);
+    addArithmeticInstructions(pSet);
+    addControlInstructions(pSet);
+
+}//end of C54xInstructions::addInstructions
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstructions::addLoadStoreInstructions
+//
+// Adds the load, store, and data move instructions to pSet.
+//
+
+static void addLoadStoreInstructions(InstructionSet pSet)
+{
+
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0x1000, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(pB, c.extend(c.read(pA)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0x4400, 0xfe00, SMEM_16_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(pB, c.extend(c.read(pA)) << 16);
+        }
+    });
+    pSet.addInstruction(prefixed(
+          new C54xInstruction("ld", 0x0c40, 0xfee0, SMEM_SHIFT_ACC, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB),
+                        shift(c.extend(c.read(pA)), shiftCount(pB)));
+        }
+    }));
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0xe800, 0xfe00, K8_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(pB, pA);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0xf020, 0xfef0, LK_SHFT_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB), shift(c.extend(pA), shiftCount(pB)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0xf062, 0xfeff, LK_16_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB), c.extend(pA) << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0xea00, 0xfe00, K9_DP, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.reg[ST0] = c.reg[ST0] & ~DP_MASK | pA;
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0xed00, 0xffe0, K5_ASM, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.reg[ST1] = c.reg[ST1] & ~ASM_MASK | (pA & ASM_MASK);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0xf4a0, 0xfff8, K3_ARP, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.reg[ST0] = c.reg[ST0] & ~(7L << ARP_SHIFT)
+                                                    | (long)pA << ARP_SHIFT;
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ld", 0xf440, 0xfce0, SRC_SHIFT_DST, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.shiftArithmetic(srcAcc(pB), dstAcc(pB), shiftCount(pB));
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("ldu", 0x1200, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(pB, c.read(pA));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("ldm", 0x4800, 0xfe00, MMR_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(pB, c.data.read16(c.mmrAddress(pA)));
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("stl", 0x8000, 0xfe00, ACC_SMEM, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.write(pA, (int)c.reg[pB]);
+        }
+        @Override
+        public void repeat(Core pCore, int pA, int pB, int pCount)
+        {
+            //fill a buffer, as done by rptz / stl A, *ARx+
+            C54xCore c = (C54xCore)pCore;
+            int ar = incrementedAR(pA);
+            int start = ar < 0 ? 0 : (int)c.reg[ar];
+            if (ar < 0 || !isPlainBuffer(start, pCount)){
+                super.repeat(pCore, pA, pB, pCount); return;
+            }
+            int value = (int)c.reg[pB];
+            for (int i = 0; i < pCount; i++) {c.data.write16(start + i, value);}
+            c.reg[ar] = (start + pCount) & 0xffff;
+        }
+    });
+    pSet.addInstruction(prefixed(
+          new C54xInstruction("stl", 0x0c80, 0xfee0, ACC_SHIFT_SMEM, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.write(pA, (int)shift(c.acc(srcAcc(pB)), shiftCount(pB)));
+        }
+    }));
+    pSet.addInstruction(
+            new C54xInstruction("sth", 0x8200, 0xfe00, ACC_SMEM, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.write(pA, (int)(c.reg[pB] >> 16));
+        }
+    });
+    pSet.addInstruction(prefixed(
+          new C54xInstruction("sth", 0x0c60, 0xfee0, ACC_SHIFT_SMEM, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.write(pA,
+                (int)(shift(c.acc(srcAcc(pB)), shiftCount(pB)) >> 16));
+        }
+    }));
+    pSet.addInstruction(
+            new C54xInstruction("stlm", 0x8800, 0xfe00, ACC_MMR, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.data.write16(c.mmrAddress(pA), (int)c.reg[pB]);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("stm", 0x7700, 0xff00, LK_MMR, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.data.write16(c.mmrAddress(pA), pB);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("st", 0x7600, 0xff00, LK_SMEM, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.write(pA, pB);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("st", 0xc800, 0xfc00, ST_LD, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            //the load reads Xmem before the store writes Ymem
+            int x = c.data.read16(c.dualAddress(pA & 0xf));
+            c.data.write16(c.dualAddress(pA >> 4),
+                        (int)(shift(c.acc(srcAcc(pB)), c.getASM() - 16)));
+            c.setAcc(dstAcc(pB), c.extend(x) << 16);
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("mvdd", 0xe500, 0xff00, XMEM_YMEM, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            int x = c.data.read16(c.dualAddress(pA));
+            c.data.write16(c.dualAddress(pB), x);
+        }
+        @Override
+        public void repeat(Core pCore, int pA, int pB, int pCount)
+        {
+            //block copy, as done by rpt / mvdd *ARx+, *ARy+
+            C54xCore c = (C54xCore)pCore;
+            int arX = incrementedDualAR(pA), arY = incrementedDualAR(pB);
+            int x = arX < 0 ? 0 : (int)c.reg[arX];
+            int y = arY < 0 ? 0 : (int)c.reg[arY];
+            if (arX < 0 || arY < 0 || arX == arY
+                || !isPlainBuffer(x, pCount) || !isPlainBuffer(y, pCount)){
+                super.repeat(pCore, pA, pB, pCount); return;
+            }
+            for (int i = 0; i < pCount; i++){
+                c.data.write16(y + i, c.data.read16(x + i));
+            }
+            c.reg[arX] = (x + pCount) & 0xffff;
+            c.reg[arY] = (y + pCount) & 0xffff;
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("mvmm", 0xe700, 0xff00, MMRX_MMRY, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.reg[mvmmRegister(pB)] = c.reg[mvmmRegister(pA)];
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("pshm", 0x4a00, 0xff00, MMR, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.push(c.data.read16(c.mmrAddress(pA)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("popm", 0x8a00, 0xff00, MMR, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.data.write16(c.mmrAddress(pA), c.pop());
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("pshd", 0x4b00, 0xff00, SMEM, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.push(c.read(pA));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("popd", 0x8b00, 0xff00, SMEM, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.write(pA, c.pop());
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("mar", 0x6d00, 0xff00, SMEM, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.address(pA);
+        }
+    });
+
+}//end of C54xInstructions::addLoadStoreInstructions
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstructions::addArithmeticInstructions
+//
+// Adds the arithmetic, logical, and shift instructions to pSet.
+//
+
+static void addArithmeticInstructions(InstructionSet pSet)
+{
+
+    pSet.addInstruction(
+            new C54xInstruction("add", 0x0000, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.add(pB, c.acc(pB), c.extend(c.read(pA)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("add", 0x3c00, 0xfe00, SMEM_16_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.add(pB, c.acc(pB), c.extend(c.read(pA)) << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("add", 0xf000, 0xfcf0, LK_SHFT_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.add(dstAcc(pB), c.acc(srcAcc(pB)),
+                        shift(c.extend(pA), shiftCount(pB)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("add", 0xf060, 0xfcff, LK_16_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.add(dstAcc(pB), c.acc(srcAcc(pB)), c.extend(pA) << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("add", 0xf400, 0xfce0, SRC_SHIFT_DST, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.add(dstAcc(pB), c.acc(dstAcc(pB)),
+                                    shift(c.acc(srcAcc(pB)), shiftCount(pB)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("adds", 0x0200, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.add(pB, c.acc(pB), c.read(pA));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("addm", 0x6b00, 0xff00, LK_SMEM, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            int address = c.address(pA);
+            c.data.write16(address,
+                        (int)(c.extend(c.data.read16(address)) + (short)pB));
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("sub", 0x0800, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.sub(pB, c.acc(pB), c.extend(c.read(pA)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("sub", 0x3e00, 0xfe00, SMEM_16_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.sub(pB, c.acc(pB), c.extend(c.read(pA)) << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("sub", 0xf010, 0xfcf0, LK_SHFT_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.sub(dstAcc(pB), c.acc(srcAcc(pB)),
+                        shift(c.extend(pA), shiftCount(pB)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("sub", 0xf061, 0xfcff, LK_16_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.sub(dstAcc(pB), c.acc(srcAcc(pB)), c.extend(pA) << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("sub", 0xf420, 0xfce0, SRC_SHIFT_DST, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.sub(dstAcc(pB), c.acc(dstAcc(pB)),
+                                    shift(c.acc(srcAcc(pB)), shiftCount(pB)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("subs", 0x0a00, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.sub(pB, c.acc(pB), c.read(pA));
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("and", 0x1800, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.reg[pB] &= c.read(pA);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("and", 0xf030, 0xfcf0, LK_SHFT_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB),
+                    c.reg[srcAcc(pB)] & (long)pA << shiftCount(pB));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("and", 0xf063, 0xfcff, LK_16_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB), c.reg[srcAcc(pB)] & (long)pA << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("andm", 0x6800, 0xff00, LK_SMEM, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            int address = c.address(pA);
+            c.data.write16(address, c.data.read16(address) & pB);
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("or", 0x1a00, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.reg[pB] |= c.read(pA);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("or", 0xf040, 0xfcf0, LK_SHFT_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB),
+                    c.reg[srcAcc(pB)] | (long)pA << shiftCount(pB));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("or", 0xf064, 0xfcff, LK_16_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB), c.reg[srcAcc(pB)] | (long)pA << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("orm", 0x6900, 0xff00, LK_SMEM, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            int address = c.address(pA);
+            c.data.write16(address, c.data.read16(address) | pB);
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("xor", 0x1c00, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.reg[pB] ^= c.read(pA);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("xor", 0xf050, 0xfcf0, LK_SHFT_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB),
+                    c.reg[srcAcc(pB)] ^ (long)pA << shiftCount(pB));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("xor", 0xf065, 0xfcff, LK_16_SD, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(dstAcc(pB), c.reg[srcAcc(pB)] ^ (long)pA << 16);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("xorm", 0x6a00, 0xff00, LK_SMEM, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            int address = c.address(pA);
+            c.data.write16(address, c.data.read16(address) ^ pB);
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("bitf", 0x6100, 0xff00, SMEM_LK, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setTC((c.read(pA) & pB) != 0);
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("mpyu", 0x2400, 0xfe00, SMEM_ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(pB, c.product((c.reg[T] & 0xffff) * c.read(pA)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("mpya", 0xf48c, 0xfeff, ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAccResult(pB, c.product((short)c.reg[T] * c.accHigh(A)));
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("max", 0xf486, 0xfeff, ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            boolean bigger = c.acc(A) > c.acc(B);
+            c.setAcc(pB, c.acc(bigger ? A : B));
+            c.setCarry(!bigger);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("min", 0xf487, 0xfeff, ACC, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            boolean smaller = c.acc(A) < c.acc(B);
+            c.setAcc(pB, c.acc(smaller ? A : B));
+            c.setCarry(!smaller);
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("neg", 0xf484, 0xfcff, SRC_DST, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAccResult(dstAcc(pB), -c.acc(srcAcc(pB)));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("abs", 0xf485, 0xfcff, SRC_DST, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAccResult(dstAcc(pB), Math.abs(c.acc(srcAcc(pB))));
+        }
+    });
+
+    pSet.addInstruction(
+            new C54xInstruction("sfta", 0xf460, 0xfce0, SRC_SHIFT_DST, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.shiftArithmetic(srcAcc(pB), dstAcc(pB), shiftCount(pB));
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("sftl", 0xf4e0, 0xfce0, SRC_SHIFT_DST, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.shiftLogical(srcAcc(pB), dstAcc(pB), shiftCount(pB));
+        }
+    });
+
+}//end of C54xInstructions::addArithmeticInstructions
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstructions::addControlInstructions
+//
+// Adds the program control, repeat, and status bit instructions to pSet.
+//
+
+static void addControlInstructions(InstructionSet pSet)
+{
+
+    pSet.addInstruction(
+            new C54xInstruction("nop", 0xf495, 0xffff, NONE, 1, 1, 1));
+    pSet.addInstruction(
+            flow(new C54xInstruction("idle", 0xf4e1, 0xfcff, IDLE, 1, 4, 4){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            //wait at the idle until an interrupt -- none are simulated yet,
+            //so the core skips ahead to its next event or the end of the
+            //run; see Core.skipSpin
+            pCore.pc = (pCore.pc - 1) & 0xffff;
+        }
+    }));
+
+    pSet.addInstruction(
+            flow(new C54xInstruction("b", 0xf073, 0xffff, PMAD, 2, 4, 4){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            pCore.pc = pA;
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("bc", 0xf800, 0xff00, COND_PMAD, 2, 3, 5){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            if (c.condition(pB)) {c.pc = pA; addTakenCycles(c);}
+        }
+    }));
+    pSet.addInstruction(
+        flow(new C54xInstruction("banz", 0x6c00, 0xff00, SMEM_PMAD, 2, 2, 4){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            //the register is tested before it is modified
+            boolean nonZero = c.reg[AR0 + (pA & 0x7)] != 0;
+            c.address(pA);
+            if (nonZero) {c.pc = pB; addTakenCycles(c);}
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("call", 0xf074, 0xffff, PMAD, 2, 4, 4){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.push(c.pc);
+            c.pc = pA;
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("cc", 0xf900, 0xff00, COND_PMAD, 2, 3, 5){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            if (c.condition(pB)) {c.push(c.pc); c.pc = pA; addTakenCycles(c);}
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("ret", 0xfc00, 0xffff, NONE, 1, 5, 5){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.pc = c.pop();
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("rete", 0xf4eb, 0xffff, NONE, 1, 5, 5){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.pc = c.pop();
+            c.reg[ST1] &= ~INTM;
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("rc", 0xfc00, 0xff00, COND, 1, 3, 5){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            if (c.condition(pB)) {c.pc = c.pop(); addTakenCycles(c);}
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("xc", 0xfd00, 0xfd00, N_COND, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            //when the condition is not met, the next pA words are skipped
+            if (!c.condition(pB)) {c.pc = (c.pc + pA) & 0xffff;}
+        }
+    }));
+
+    pSet.addInstruction(
+            flow(new C54xInstruction("rpt", 0xec00, 0xff00, K8, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            pCore.repeatNext(pA);
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("rpt", 0xf070, 0xffff, LK, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            pCore.repeatNext(pA);
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("rpt", 0x4700, 0xff00, SMEM, 1, 3, 3){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.repeatNext(c.read(pA));
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("rptz", 0xf071, 0xfeff, ACC_LK, 2, 2, 2){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.setAcc(pB, 0);
+            c.repeatNext(pA);
+        }
+    }));
+    pSet.addInstruction(
+            flow(new C54xInstruction("rptb", 0xf072, 0xffff, PMAD, 2, 4, 4){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            pCore.repeatBlock(pA);
+        }
+    }));
+
+    pSet.addInstruction(
+            new C54xInstruction("ssbx", 0xf7b0, 0xf7f0, SBIT, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.syncFlags();
+            c.reg[pA == 0 ? ST0 : ST1] |= 1L << pB;
+        }
+    });
+    pSet.addInstruction(
+            new C54xInstruction("rsbx", 0xf5b0, 0xf7f0, SBIT, 1, 1, 1){
+        @Override
+        public void execute(Core pCore, int pA, int pB)
+        {
+            C54xCore c = (C54xCore)pCore;
+            c.syncFlags();
+            c.reg[pA == 0 ? ST0 : ST1] &= ~(1L << pB);
+        }
+    });
+
+}//end of C54xInstructions::addControlInstructions
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstructions::flow
+//
+// Marks pInstruction as one which may change the flow of execution so that it
+// ends a basic block.
+//
+// Returns pInstruction.
+//
+
+static C54xInstruction flow(C54xInstruction pInstruction)
+{
+
+    pInstruction.endsBlock = true;
+
+    return(pInstruction);
+
+}//end of C54xInstructions::flow
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// C54xInstructions::prefixed
+//
+// Marks pInst as one of the two word shift instructions which are identified
+// by their second word and returns it.
+//
+
+static C54xInstruction prefixed(C54xInstruction pInst)
+{
+
+    pInst.setPrefix(SHIFT_PREFIX, SHIFT_PREFIX_MASK);
+
+    return(pInst);
+
+}//end of C54xInstructions::prefixed
+//-----------------------------------------------------------------------------
+
+}//end of class C54xInstructions
+//-----------------------------------------------------------------------------
+//-----------------------------------------------------------------------------
@@ -7,6 +7,11 @@
 *
 * This class provides base functionality for a TMS320VC5441 to be simulated.
 *
+* The TMS320VC5441 has four C54x cores arranged as two subsystems of two
+* cores each. The cores of a subsystem share the upper half of program
+* memory; each core has its own data memory and the lower half of program
+* memory. The cores are run in parallel by the base class.
+*
 * Open Source Policy:
 *
 * This source code is Public Domain and free to any interested party.  Any
@@ -17,6 +22,7 @@
 package specificchips;
 
 import dspsimulation.Chip;
+import dspsimulation.Core;
 
 //-----------------------------------------------------------------------------
 // class TMS320VC5441
@@ -25,6 +31,19 @@ import dspsimulation.Chip;
 public class TMS320VC5441 extends Chip
 {
 
+    //reset vector with the MP/MC pin high (microprocessor mode)
+    public static final int RESET_VECTOR = 0xff80;
+
+    public static final int NUM_CORES = 4;
+
+    //the clock the firmware sets up with the PLL, in cycles per second
+    public static final long CLOCK_RATE = 100000000;
+
+    //the program memory shared by the two cores of each subsystem
+
+    public static final int SHARED_PROGRAM_START = 0x8000;
+    public static final int SHARED_PROGRAM_LENGTH = 0x8000;
+
 //-----------------------------------------------------------------------------
 // TMS320VC5441::TMS320VC5441 (constructor)
 //
@@ -36,6 +55,9 @@ public TMS320VC5441()
 
     super("TMS320VC5441", "'5441");
 
+    numCores = NUM_CORES;
+    clockRate = CLOCK_RATE;
+
 }//end of TMS320VC5441::TMS320VC5441 (constructor)
 //-----------------------------------------------------------------------------
 
@@ -52,21 +74,83 @@ public void init()
     //allow base class to set up first
     super.init();
 
+    //add the C54x core instructions and build the dispatch tables
+    C54xInstructions.addInstructions(instructionSet);
+    instructionSet.compile();
+
+    //the C54x begins execution at the top of program memory after reset
+    for (Core c : cores) {c.resetVector = RESET_VECTOR;}
+
+    //cores A and B form one subsystem, C and D the other
+    shareProgram(0, 1);
+    shareProgram(2, 3);
+
 }//end of TMS320VC5441::init
 //-----------------------------------------------------------------------------
 
 //-----------------------------------------------------------------------------
-// TMS320VC5441::execute
+// TMS320VC5441::createCore
+//
+// Returns a new C54x core for position pIndex -- the cores are named A
+// through D.
+//
+
+@Override
+protected Core createCore(int pIndex)
+{
+
+    return(new C54xCore("Core " + (char)('A' + pIndex), instructionSet,
+                                                        PROGRAM_SIZE, pIndex));
+
+}//end of TMS320VC5441::createCore
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441::createInstance
 //
-// This method performs the functions expected of the instruction and operands
-// in pFullInstruction.
+// Returns a new, initialized TMS320VC5441.
 //
 
 @Override
-public void execute(String pFullInstruction)
+public Chip createInstance()
 {
 
-}//end of TMS320VC5441::execute
+    TMS320VC5441 chip = new TMS320VC5441();
+    chip.init();
+
+    return(chip);
+
+}//end of TMS320VC5441::createInstance
+//-----------------------------------------------------------------------------
+
+//-----------------------------------------------------------------------------
+// TMS320VC5441::shareProgram
+//
+// Maps the shared program memory of core pFirst into core pSecond. A write to
+// the shared memory by either core invalidates the decoded instructions of
+// both. The shared memory is registered with the core group so the cores can
+// be synchronized when accessing it.
+//
+
+private void shareProgram(int pFirst, int pSecond)
+{
+
+    Core first = cores[pFirst], second = cores[pSecond];
+
+    second.program.sharePages(first.program, SHARED_PROGRAM_START,
+                                                        SHARED_PROGRAM_LENGTH);
+
+    first.program.addCodeCache(SHARED_PROGRAM_START, SHARED_PROGRAM_LENGTH,
+                                                    second.getDecodeCache());
+    second.program.addCodeCache(SHARED_PROGRAM_START, SHARED_PROGRAM_LENGTH,
+                                                     first.getDecodeCache());
+
+    coreGroup.addSharedRegion(pFirst, first.program, SHARED_PROGRAM_START,
+                                                        SHARED_PROGRAM_LENGTH);
+    coreGroup.addSharedRegion(pSecond, second.program, SHARED_PROGRAM_START,
+                                                        SHARED_PROGRAM_LENGTH);
+
+}//end of TMS320VC5441::shareProgram
 //-----------------------------------------------------------------------------
 
 }//end of class TMS320VC5441